@@ -19,14 +19,24 @@
 package fr.cnes.sitools.extensions.astro.application.uws.client;
 
 import fr.cnes.sitools.extensions.astro.application.uws.common.Util;
-import fr.jmmc.jmcs.util.FileUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
@@ -40,11 +50,13 @@ import net.ivoa.xml.uws.v1.Parameters;
 import net.ivoa.xml.uws.v1.Results;
 import net.ivoa.xml.uws.v1.ShortJobDescription;
 import org.restlet.Client;
-import org.restlet.Context;
+import org.restlet.data.Encoding;
 import org.restlet.data.Form;
 import org.restlet.data.Method;
-import org.restlet.data.Protocol;
+import org.restlet.data.Preference;
+import org.restlet.data.Range;
 import org.restlet.data.Reference;
+import org.restlet.data.Status;
 import org.restlet.ext.html.FormDataSet;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ClientResource;
@@ -69,42 +81,192 @@ public final class ClientUWS {
     /** Package name for JAXB generated code */
     private static final String UWS_JAXB_PATH = "net.ivoa.xml.uws.v1";
 
+    /** max number of attempts to download a file */
+    private static final int DOWNLOAD_ATTEMPTS = 3;
+    /** download buffer size */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** active (not finished) job phases (UWS 1.1 PHASE filter) */
+    private static final List<ExecutionPhase> ACTIVE_PHASES = Collections.unmodifiableList(Arrays.asList(
+            ExecutionPhase.PENDING, ExecutionPhase.QUEUED, ExecutionPhase.EXECUTING,
+            ExecutionPhase.HELD, ExecutionPhase.SUSPENDED));
+
     /* reused JAXB Context to unmarshall UWS v1 elements */
     private static JAXBContext jaxbContext = null;
+    /** max number of pooled unmarshallers (-DClientUWS.maxUnmarshallers=8) */
+    private static final int MAX_UNMARSHALLERS = Integer.getInteger("ClientUWS.maxUnmarshallers", 8);
+    /* pool of unmarshallers (not thread-safe, so borrowed by one thread at a time) */
+    private static final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<Unmarshaller>(MAX_UNMARSHALLERS);
+
+    /** max number of http connections (-DClientUWS.maxTotalConnections=32) */
+    private static final int MAX_TOTAL_CONNECTIONS = Integer.getInteger("ClientUWS.maxTotalConnections", 32);
+    /** max number of http connections per host (-DClientUWS.maxConnectionsPerHost=16) */
+    private static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger("ClientUWS.maxConnectionsPerHost", 16);
+    /** delay in ms before stopping the previous http client once the transport changed (pending requests) */
+    private static final long STOP_DELAY = Long.getLong("ClientUWS.stopDelay", 30000L);
 
+    /* http transport (-DClientUWS.transport=apache|jdk) */
+    private static HttpTransport transport = HttpTransport.parse(System.getProperty("ClientUWS.transport"));
     /* reused restlet Http Client (thread-safe) */
     private static Client httpClient = null;
 
-    private static JAXBContext getJAXBContext() throws JAXBException {
+    private static synchronized JAXBContext getJAXBContext() throws JAXBException {
         if (jaxbContext == null) {
             jaxbContext = JAXBContext.newInstance(UWS_JAXB_PATH);
         }
         return jaxbContext;
     }
 
-    private static Object unmarshal(final String xml) throws ClientUWSException {
+    private static Object unmarshal(final InputStream in) throws ClientUWSException {
+        Unmarshaller um = unmarshallers.poll();
+        boolean reuse = false;
         try {
-            final Unmarshaller um = getJAXBContext().createUnmarshaller();
-            return um.unmarshal(new StringReader(xml));
+            if (um == null) {
+                um = getJAXBContext().createUnmarshaller();
+            }
+            final Object result = um.unmarshal(in);
+            reuse = true;
+            return result;
         } catch (JAXBException je) {
             throw new ClientUWSException(je);
+        } finally {
+            // discard the unmarshaller after any failure or if the pool is full:
+            if (reuse) {
+                unmarshallers.offer(um);
+            }
         }
     }
 
-    private static Client getClient() {
-        if (httpClient == null) {
-            final Context ctx = new Context();
-            // TODO: use NetworkingService settings:
-            ctx.getParameters().set("maxTotalConnections", "10");
-            ctx.getParameters().set("maxConnectionsPerHost", "5");
-            ctx.getParameters().set("idleCheckInterval", "10000"); // 10s
+    /**
+     * Check the response status then unmarshal the response entity directly from its stream
+     */
+    private static Object unmarshal(final ClientResource resource, final Representation representation,
+                                    final String errorMsg) throws ClientUWSException {
+        return unmarshal(resource, representation, errorMsg, null);
+    }
 
-            Context.setCurrent(ctx);
-            httpClient = new Client(ctx, Protocol.HTTP);
+    private static Object unmarshal(final ClientResource resource, final Representation representation,
+                                    final String errorMsg, final String errorArg) throws ClientUWSException {
+        final InputStream in = getStream(resource, representation, errorMsg, errorArg);
+        try {
+            final Object result = unmarshal(in);
+            // consume any trailing content to reuse the connection:
+            while (in.read() != -1) {
+                // skip
+            }
+            return result;
+        } catch (IOException ioe) {
+            throw new ClientUWSException(ioe);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Check the response status then parse the job phase from the response entity (job summary or plain text)
+     * without buffering it as String nor building the JAXB object graph (polling hot path)
+     */
+    private static ExecutionPhase parsePhase(final ClientResource resource, final Representation representation,
+                                             final boolean summary, final String errorMsg, final String errorArg) throws ClientUWSException {
+        final InputStream in = getStream(resource, representation, errorMsg, errorArg);
+        final PhaseParser.Buffer buffer;
+        try {
+            buffer = PhaseParser.read(in);
+        } catch (IOException ioe) {
+            throw new ClientUWSException(ioe);
+        } finally {
+            close(in);
+        }
+        final ExecutionPhase phase = (summary) ? PhaseParser.findElement(buffer) : PhaseParser.parseText(buffer);
+        if (phase != null) {
+            return phase;
+        }
+        if (summary) {
+            // unexpected layout: use the full JAXB decoding
+            @SuppressWarnings("unchecked")
+            final JobSummary jobSummary = ((JAXBElement<JobSummary>) unmarshal(buffer.newInputStream())).getValue();
+            return jobSummary.getPhase();
+        }
+        throw new ClientUWSException(resource.getStatus(),
+                (errorArg != null) ? (errorMsg + errorArg) : errorMsg);
+    }
+
+    private static void close(final InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ioe) {
+            _logger.debug("close failure", ioe);
+        }
+    }
+
+    private static InputStream getStream(final ClientResource resource, final Representation representation,
+                                         final String errorMsg, final String errorArg) throws ClientUWSException {
+        checkStatus(resource, errorMsg, errorArg);
+        try {
+            final InputStream in = (representation != null) ? representation.getStream() : null;
+            if (in == null) {
+                throw new ClientUWSException(resource.getStatus(),
+                        ((errorArg != null) ? (errorMsg + errorArg) : errorMsg) + " (empty response)");
+            }
+            return in;
+        } catch (IOException ioe) {
+            throw new ClientUWSException(ioe);
+        }
+    }
+
+    private static synchronized Client getClient() {
+        if (httpClient == null) {
+            _logger.info("getClient: transport = {} (max connections: {} total, {} per host)",
+                    transport, MAX_TOTAL_CONNECTIONS, MAX_CONNECTIONS_PER_HOST);
+            httpClient = transport.createClient(MAX_TOTAL_CONNECTIONS, MAX_CONNECTIONS_PER_HOST);
         }
         return httpClient;
     }
 
+    /**
+     * @return the http transport used by all clients
+     */
+    public static synchronized HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Change the http transport used by all clients (next requests)
+     * Note: pending requests complete with the previous http client, stopped after STOP_DELAY
+     * (connector threads and pooled connections released)
+     * @param newTransport http transport
+     */
+    public static synchronized void setTransport(final HttpTransport newTransport) {
+        if (newTransport != transport) {
+            transport = newTransport;
+            if (httpClient != null) {
+                stopLater(httpClient);
+                httpClient = null;
+            }
+        }
+    }
+
+    private static void stopLater(final Client client) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(STOP_DELAY);
+                } catch (InterruptedException ie) {
+                    _logger.debug("stopLater: interrupted", ie);
+                }
+                try {
+                    client.stop();
+                    _logger.debug("stopLater: previous http client stopped");
+                } catch (Exception e) {
+                    _logger.info("stopLater: failure", e);
+                }
+            }
+        }, "ClientUWS-stop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     // members:
     private final Reference serverUWS;
     private final Reference jobsUWS;
@@ -122,6 +284,13 @@ public final class ClientUWS {
         getClient();
     }
 
+    /**
+     * @return URL of the UWS server
+     */
+    public String getServerURL() {
+        return serverUWS.toString();
+    }
+
     private static void initClient(final ClientResource resource, final boolean followRedirect) {
         resource.setRetryOnError(false);
         resource.setFollowingRedirects(followRedirect);
@@ -234,8 +403,8 @@ public final class ClientUWS {
         final ClientResource resource = createJobResource(Method.GET, true);
         Representation representation = null;
         try {
-            return (Jobs) unmarshal(getText(resource, representation = resource.get(),
-                    "getJobs: Cannot retrieve the list of jobs"));
+            return (Jobs) unmarshal(resource, representation = resource.get(),
+                    "getJobs: Cannot retrieve the list of jobs");
         } catch (ResourceException re) {
             throw new ClientUWSException(re);
         } finally {
@@ -243,6 +412,53 @@ public final class ClientUWS {
         }
     }
 
+    /**
+     * Get the phases of the given jobs with a single job list request using UWS 1.1 filters
+     * (active phases and AFTER creation date). UWS 1.0 servers ignore filters and list all jobs.
+     * @param jobIds job IDs
+     * @param after lower bound of the job creation date (AFTER filter) or null
+     * @return phases of the listed jobs; missing jobs are either finished or filtered out
+     * and must be queried individually (getJobPhase)
+     * @exception ClientUWSException
+     */
+    public Map<String, ExecutionPhase> getJobPhases(final Collection<String> jobIds, final Date after) throws ClientUWSException {
+        if (jobIds.isEmpty()) {
+            throw new IllegalArgumentException("getJobPhases: jobIds cannot be empty");
+        }
+        final StringBuilder query = new StringBuilder(128);
+        for (ExecutionPhase phase : ACTIVE_PHASES) {
+            query.append((query.length() == 0) ? '?' : '&').append("PHASE=").append(phase.value());
+        }
+        ClientResource resource = null;
+        Representation representation = null;
+        try {
+            if (after != null) {
+                query.append("&AFTER=").append(Reference.encode(Util.convertIntoXMLGregorian(after).toXMLFormat()));
+            }
+            resource = createResource(Method.GET, jobsUWS.toString() + query, true);
+
+            final Jobs jobs = (Jobs) unmarshal(resource, representation = resource.get(),
+                    "getJobPhases: Cannot retrieve the list of jobs");
+
+            final Set<String> ids = (jobIds instanceof Set) ? (Set<String>) jobIds : new HashSet<String>(jobIds);
+            final Map<String, ExecutionPhase> phases = new HashMap<String, ExecutionPhase>(ids.size());
+            for (ShortJobDescription job : jobs.getJobref()) {
+                if (ids.contains(job.getId())) {
+                    phases.put(job.getId(), job.getPhase());
+                }
+            }
+            return phases;
+        } catch (DatatypeConfigurationException ex) {
+            throw new ClientUWSException(ex);
+        } catch (ResourceException re) {
+            throw new ClientUWSException(re);
+        } finally {
+            if (resource != null) {
+                release(resource, representation);
+            }
+        }
+    }
+
     /**
      * Get the remaining tasks. A remain task has the following status :
      * EXECUTING, QUEUED, PENDING, HELD
@@ -319,6 +535,54 @@ public final class ClientUWS {
         }
     }
 
+    /**
+     * Tell if the server already has the given content-addressed blob
+     * @param hash blob hash (hexadecimal SHA-256)
+     * @return true if the blob is available on the server
+     * @exception ClientUWSException
+     */
+    public boolean hasBlob(final String hash) throws ClientUWSException {
+        if (!Util.isSet(hash)) {
+            throw new IllegalArgumentException("hasBlob: hash is required");
+        }
+        final ClientResource resource = createResource(Method.HEAD, this.serverUWS.toString() + "blobs/" + hash, false);
+        Representation representation = null;
+        try {
+            representation = resource.head();
+            checkStatus(resource, "hasBlob: Cannot check the blob ", hash);
+            return true;
+        } catch (ResourceException re) {
+            if (Status.CLIENT_ERROR_NOT_FOUND.equals(re.getStatus())) {
+                return false;
+            }
+            throw new ClientUWSException(re);
+        } finally {
+            release(resource, representation);
+        }
+    }
+
+    /**
+     * Upload the given content-addressed blob
+     * @param hash blob hash (hexadecimal SHA-256) checked by the server
+     * @param blob blob content
+     * @exception ClientUWSException
+     */
+    public void putBlob(final String hash, final Representation blob) throws ClientUWSException {
+        if (!Util.isSet(hash)) {
+            throw new IllegalArgumentException("putBlob: hash is required");
+        }
+        final ClientResource resource = createResource(Method.PUT, this.serverUWS.toString() + "blobs/" + hash, false);
+        Representation representation = null;
+        try {
+            representation = resource.put(blob);
+            checkStatus(resource, "putBlob: Cannot upload the blob ", hash);
+        } catch (ResourceException re) {
+            throw new ClientUWSException(re);
+        } finally {
+            release(resource, representation);
+        }
+    }
+
     /**
      * Get information about a specific job
      * @param jobId Job ID
@@ -331,8 +595,8 @@ public final class ClientUWS {
         final ClientResource resource = createJobResource(Method.GET, jobId, "", true);
         Representation representation = null;
         try {
-            return ((JAXBElement<JobSummary>) unmarshal(getText(resource, representation = resource.get(),
-                    "getJobInfo: Cannot get information about job ", jobId))).getValue();
+            return ((JAXBElement<JobSummary>) unmarshal(resource, representation = resource.get(),
+                    "getJobInfo: Cannot get information about job ", jobId)).getValue();
         } catch (ResourceException re) {
             throw new ClientUWSException(re);
         } finally {
@@ -486,8 +750,33 @@ public final class ClientUWS {
         final ClientResource resource = createJobResource(Method.GET, jobId, "/phase", true);
         Representation representation = null;
         try {
-            return ExecutionPhase.valueOf(getText(resource, representation = resource.get(),
-                    "getJobPhase: Cannot get phase about job ", jobId));
+            return parsePhase(resource, representation = resource.get(), false,
+                    "getJobPhase: Cannot get phase about job ", jobId);
+        } catch (ResourceException re) {
+            throw new ClientUWSException(re);
+        } finally {
+            release(resource, representation);
+        }
+    }
+
+    /**
+     * Get Phase of a job using the UWS 1.1 blocking behaviour:
+     * the server returns as soon as the job phase differs from the given phase or the wait time elapses.
+     * Note: UWS 1.0 servers ignore WAIT and PHASE parameters and reply immediately.
+     * @param jobId Job ID
+     * @param phase current (known) phase
+     * @param waitSeconds max wait time in seconds
+     * @return Returns ExecutionPhase
+     * @exception ClientUWSException
+     */
+    public ExecutionPhase getJobPhase(final String jobId, final ExecutionPhase phase, final int waitSeconds) throws ClientUWSException {
+        checkJobId(jobId);
+        final ClientResource resource = createJobResource(Method.GET, jobId,
+                "?WAIT=" + waitSeconds + "&PHASE=" + phase.value(), true);
+        Representation representation = null;
+        try {
+            return parsePhase(resource, representation = resource.get(), true,
+                    "getJobPhase: Cannot get phase about job ", jobId);
         } catch (ResourceException re) {
             throw new ClientUWSException(re);
         } finally {
@@ -568,8 +857,8 @@ public final class ClientUWS {
         final ClientResource resource = createJobResource(Method.POST, jobId, "/error", true);
         Representation representation = null;
         try {
-            return ((JAXBElement<ErrorSummary>) unmarshal(getText(resource, representation = resource.get(),
-                    "getJobError: Cannot get error about job ", jobId))).getValue();
+            return ((JAXBElement<ErrorSummary>) unmarshal(resource, representation = resource.get(),
+                    "getJobError: Cannot get error about job ", jobId)).getValue();
         } catch (ResourceException re) {
             throw new ClientUWSException(re);
         } finally {
@@ -588,8 +877,8 @@ public final class ClientUWS {
         final ClientResource resource = createJobResource(Method.GET, jobId, "/results", true);
         Representation representation = null;
         try {
-            return (Results) unmarshal(getText(resource, representation = resource.get(),
-                    "getJobResults: Cannot get results about job ", jobId));
+            return (Results) unmarshal(resource, representation = resource.get(),
+                    "getJobResults: Cannot get results about job ", jobId);
         } catch (ResourceException re) {
             throw new ClientUWSException(re);
         } finally {
@@ -608,8 +897,8 @@ public final class ClientUWS {
         final ClientResource resource = createJobResource(Method.GET, jobId, "/parameters", true);
         Representation representation = null;
         try {
-            return (Parameters) unmarshal(getText(resource, representation = resource.get(),
-                    "getJobParameters: Cannot get parameters about job ", jobId));
+            return (Parameters) unmarshal(resource, representation = resource.get(),
+                    "getJobParameters: Cannot get parameters about job ", jobId);
         } catch (ResourceException re) {
             throw new ClientUWSException(re);
         } finally {
@@ -639,31 +928,143 @@ public final class ClientUWS {
         }
     }
 
+    /**
+     * Download the given url into the output file (streamed):
+     * accepts gzip content encoding and resumes interrupted transfers using byte ranges
+     * (up to DOWNLOAD_ATTEMPTS attempts; only identity-encoded transfers can be resumed).
+     * @param url url to download
+     * @param outputFile output file
+     * @return true if downloaded
+     * @exception ClientUWSException
+     */
     public boolean downloadFile(final String url, final File outputFile) throws ClientUWSException {
         if (!Util.isSet(url) || !Util.isSet(outputFile)) {
             throw new IllegalArgumentException("downloadFile: url and outputFile are required");
         }
+        boolean resumable = false;
+        for (int attempt = 1;; attempt++) {
+            final long offset = (resumable && outputFile.exists()) ? outputFile.length() : 0L;
+
+            final ClientResource resource = createResource(Method.GET, url, true);
+            if (offset != 0L) {
+                resource.setRanges(Collections.singletonList(new Range(offset, Range.SIZE_MAX)));
+            } else {
+                resource.getClientInfo().getAcceptedEncodings().add(new Preference<Encoding>(Encoding.GZIP));
+            }
+            Representation representation = null;
+            try {
+                representation = resource.get();
+
+                final boolean gzip = representation.getEncodings().contains(Encoding.GZIP);
+                final boolean append = (offset != 0L) && Status.SUCCESS_PARTIAL_CONTENT.equals(resource.getStatus());
+
+                // only uncompressed transfers can be resumed (ranges apply to the encoded entity):
+                resumable = !gzip;
+
+                final InputStream in = (gzip) ? new GZIPInputStream(representation.getStream(), BUFFER_SIZE) : representation.getStream();
+                saveStream(in, outputFile, append);
+
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("File '{}' saved ({} bytes{}{}).", outputFile, outputFile.length(),
+                            (gzip) ? ", gzip" : "", (append) ? ", resumed at " + offset : "");
+                }
+                return true;
+
+            } catch (IOException ioe) {
+                if (attempt < DOWNLOAD_ATTEMPTS) {
+                    _logger.info("downloadFile: transfer failure ({}), retrying '{}' (attempt {})", ioe.getMessage(), url, attempt + 1);
+                    if (!resumable && outputFile.exists()) {
+                        outputFile.delete();
+                    }
+                    continue;
+                }
+                if (outputFile.exists()) {
+                    outputFile.delete();
+                }
+                throw new ClientUWSException(ioe);
+            } catch (ResourceException re) {
+                throw new ClientUWSException(re);
+            } finally {
+                // the stream may be broken: do not fail on release
+                try {
+                    release(resource, representation);
+                } catch (ClientUWSException cue) {
+                    _logger.debug("downloadFile: release failure", cue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch a byte range of the given url (used to tail growing files)
+     * @param url url to fetch
+     * @param offset start offset
+     * @param max max number of bytes
+     * @return bytes (empty if no data available at this offset or not found yet)
+     * @exception ClientUWSException
+     */
+    public byte[] fetchRange(final String url, final long offset, final int max) throws ClientUWSException {
+        if (!Util.isSet(url)) {
+            throw new IllegalArgumentException("fetchRange: url is required");
+        }
         final ClientResource resource = createResource(Method.GET, url, true);
+        resource.setRanges(Collections.singletonList(new Range(offset, max)));
         Representation representation = null;
         try {
             representation = resource.get();
 
-            FileUtils.saveStream(representation.getStream(), outputFile);
-
-            if (_logger.isDebugEnabled()) {
-                _logger.debug("File '{}' saved ({} bytes).", outputFile, outputFile.length());
+            final InputStream in = representation.getStream();
+            if (in == null) {
+                return new byte[0];
             }
-            return true;
+            // server ignoring ranges (200): skip the beginning
+            long skip = (Status.SUCCESS_PARTIAL_CONTENT.equals(resource.getStatus())) ? 0L : offset;
+            while (skip > 0L) {
+                final long n = in.skip(skip);
+                if (n <= 0L) {
+                    return new byte[0];
+                }
+                skip -= n;
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(max, BUFFER_SIZE));
+            final byte[] buffer = new byte[Math.min(max, BUFFER_SIZE)];
+            int n;
+            while ((out.size() < max) && (n = in.read(buffer, 0, Math.min(buffer.length, max - out.size()))) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
 
         } catch (IOException ioe) {
-            if (outputFile.exists()) {
-                outputFile.delete();
-            }
             throw new ClientUWSException(ioe);
         } catch (ResourceException re) {
+            if (Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE.equals(re.getStatus())
+                    || Status.CLIENT_ERROR_NOT_FOUND.equals(re.getStatus())) {
+                return new byte[0];
+            }
             throw new ClientUWSException(re);
         } finally {
-            release(resource, representation);
+            try {
+                release(resource, representation);
+            } catch (ClientUWSException cue) {
+                _logger.debug("fetchRange: release failure", cue);
+            }
+        }
+    }
+
+    private static void saveStream(final InputStream in, final File outputFile, final boolean append) throws IOException {
+        final OutputStream out = new FileOutputStream(outputFile, append);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
         }
     }
 
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.cnes.sitools.extensions.astro.application.uws.client;
+
+import java.util.Collections;
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.data.Protocol;
+
+/**
+ * HTTP transports (restlet client connectors) usable by ClientUWS
+ */
+public enum HttpTransport {
+
+    /** Apache HttpClient 4 connector (restlet ext.httpclient): pool of persistent connections */
+    APACHE("org.restlet.ext.httpclient.HttpClientHelper"),
+    /** JDK HttpURLConnection connector (restlet engine): JVM wide keep-alive cache */
+    JDK("org.restlet.engine.connector.HttpClientHelper");
+
+    /** connector helper class name */
+    private final String helperClass;
+
+    private HttpTransport(final String helperClass) {
+        this.helperClass = helperClass;
+    }
+
+    /**
+     * @return connector helper class name
+     */
+    public String getHelperClass() {
+        return helperClass;
+    }
+
+    /**
+     * Create a new HTTP client using this transport
+     * @param maxTotalConnections max number of connections
+     * @param maxConnectionsPerHost max number of connections per host
+     * @return new restlet client
+     */
+    Client createClient(final int maxTotalConnections, final int maxConnectionsPerHost) {
+        final Context ctx = new Context();
+        switch (this) {
+            case APACHE:
+                ctx.getParameters().set("maxTotalConnections", String.valueOf(maxTotalConnections));
+                ctx.getParameters().set("maxConnectionsPerHost", String.valueOf(maxConnectionsPerHost));
+                ctx.getParameters().set("idleCheckInterval", "10000"); // 10s
+                break;
+            case JDK:
+                // the keep-alive cache size is read once by the JVM:
+                if (System.getProperty("http.maxConnections") == null) {
+                    System.setProperty("http.maxConnections", String.valueOf(maxConnectionsPerHost));
+                }
+                break;
+            default:
+        }
+        Context.setCurrent(ctx);
+        return new Client(ctx, Collections.singletonList(Protocol.HTTP), helperClass);
+    }
+
+    /**
+     * Parse the given transport name (case insensitive)
+     * @param name transport name or null
+     * @return transport (APACHE if null or unknown)
+     */
+    public static HttpTransport parse(final String name) {
+        if (name != null) {
+            for (HttpTransport transport : values()) {
+                if (transport.name().equalsIgnoreCase(name.trim())) {
+                    return transport;
+                }
+            }
+        }
+        return APACHE;
+    }
+}
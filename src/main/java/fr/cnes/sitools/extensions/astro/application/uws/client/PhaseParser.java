@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.cnes.sitools.extensions.astro.application.uws.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import net.ivoa.xml.uws.v1.ExecutionPhase;
+
+/**
+ * Allocation-free extraction of the job phase from UWS responses (polling hot path):
+ * the response is read into a reusable per-thread buffer and matched against the known phase values
+ * (no String nor JAXB object graph).
+ */
+final class PhaseParser {
+
+    /** initial buffer size */
+    private static final int BUFFER_SIZE = 4 * 1024;
+    /** phase values */
+    private static final ExecutionPhase[] PHASES = ExecutionPhase.values();
+    /** phase values as bytes */
+    private static final byte[][] PHASE_BYTES = new byte[PHASES.length][];
+    /** end of the phase element name */
+    private static final byte[] TAG = "phase>".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (int i = 0; i < PHASES.length; i++) {
+            PHASE_BYTES[i] = PHASES[i].value().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** per-thread buffer */
+    private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    /**
+     * Reusable byte buffer (per thread)
+     */
+    static final class Buffer {
+
+        /** data */
+        byte[] data = new byte[BUFFER_SIZE];
+        /** used length */
+        int length = 0;
+
+        /**
+         * @return new input stream on the buffered data (fallback)
+         */
+        InputStream newInputStream() {
+            return new ByteArrayInputStream(data, 0, length);
+        }
+    }
+
+    /**
+     * Read the whole stream into the per-thread buffer
+     * @param in input stream
+     * @return buffer (valid until the next call in the same thread)
+     * @throws IOException if the stream can not be read
+     */
+    static Buffer read(final InputStream in) throws IOException {
+        final Buffer buffer = BUFFER.get();
+        buffer.length = 0;
+        int n;
+        while ((n = in.read(buffer.data, buffer.length, buffer.data.length - buffer.length)) != -1) {
+            buffer.length += n;
+            if (buffer.length == buffer.data.length) {
+                // grow once for larger responses:
+                buffer.data = Arrays.copyOf(buffer.data, buffer.data.length * 2);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Find the phase element in the given job summary document
+     * @param buffer buffered document
+     * @return phase or null if not found
+     */
+    static ExecutionPhase findElement(final Buffer buffer) {
+        final byte[] data = buffer.data;
+        for (int i = indexOf(data, buffer.length, 0); i != -1; i = indexOf(data, buffer.length, i + 1)) {
+            if (isStartTag(data, i)) {
+                return match(data, skipWhitespace(data, i + TAG.length, buffer.length), buffer.length);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse the given plain text phase
+     * @param buffer buffered text
+     * @return phase or null if unknown
+     */
+    static ExecutionPhase parseText(final Buffer buffer) {
+        return match(buffer.data, skipWhitespace(buffer.data, 0, buffer.length), buffer.length);
+    }
+
+    private static ExecutionPhase match(final byte[] data, final int from, final int length) {
+        for (int p = 0; p < PHASES.length; p++) {
+            final byte[] value = PHASE_BYTES[p];
+            final int end = from + value.length;
+            if (end <= length && regionMatches(data, from, value)
+                    && (end == length || data[end] == '<' || isWhitespace(data[end]))) {
+                return PHASES[p];
+            }
+        }
+        return null;
+    }
+
+    /** @return true if the 'phase>' at the given position ends a start tag (&lt;phase&gt; or &lt;prefix:phase&gt;) */
+    private static boolean isStartTag(final byte[] data, final int pos) {
+        int i = pos - 1;
+        if (i < 0) {
+            return false;
+        }
+        if (data[i] == ':') {
+            // skip namespace prefix:
+            i--;
+            while (i >= 0 && data[i] != '<' && data[i] != '/' && !isWhitespace(data[i])) {
+                i--;
+            }
+        }
+        return (i >= 0) && (data[i] == '<');
+    }
+
+    private static int indexOf(final byte[] data, final int length, final int from) {
+        for (int i = from, last = length - TAG.length; i <= last; i++) {
+            if (regionMatches(data, i, TAG)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(final byte[] data, final int from, final byte[] value) {
+        for (int j = 0; j < value.length; j++) {
+            if (data[from + j] != value[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(final byte[] data, final int from, final int length) {
+        int i = from;
+        while (i < length && isWhitespace(data[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private PhaseParser() {
+        // forbidden
+    }
+}
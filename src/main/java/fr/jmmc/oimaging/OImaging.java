@@ -30,6 +30,7 @@ import fr.jmmc.oimaging.gui.action.CreateImageAction;
 import fr.jmmc.oimaging.gui.action.DeleteSelectionAction;
 import fr.jmmc.oimaging.gui.action.ExportFitsImageAction;
 import fr.jmmc.oimaging.gui.action.ExportOIFitsAction;
+import fr.jmmc.oimaging.gui.action.JobQueueAction;
 import fr.jmmc.oimaging.gui.action.LoadFitsImageAction;
 import fr.jmmc.oimaging.gui.action.LoadOIFitsAction;
 import fr.jmmc.oimaging.gui.action.RunMoreIterationsAction;
@@ -38,11 +39,14 @@ import fr.jmmc.oimaging.gui.action.ProcessImageAction;
 import fr.jmmc.oimaging.gui.action.OIFitsBrowserAction;
 import fr.jmmc.oimaging.gui.action.RunAction;
 import fr.jmmc.oimaging.gui.action.SetAsInitImgAction;
+import fr.jmmc.oimaging.gui.action.SweepAction;
 import fr.jmmc.oimaging.gui.action.SwitchTabAction;
 import fr.jmmc.oimaging.gui.action.TableEditorAction;
 import fr.jmmc.oimaging.interop.SendFitsAction;
 import fr.jmmc.oimaging.interop.SendOIFitsAction;
 import fr.jmmc.oimaging.model.IRModelManager;
+import fr.jmmc.oimaging.services.JobQueue;
+import fr.jmmc.oimaging.services.UwsJobCleaner;
 import fr.jmmc.oitools.image.FitsImageWriter;
 import fr.jmmc.oitools.model.DataModel;
 import java.awt.BorderLayout;
@@ -80,6 +84,8 @@ public final class OImaging extends App {
     private static final Logger logger = LoggerFactory.getLogger(OImaging.class.getName());
 
     public final static boolean DEV_MODE = "true".equalsIgnoreCase(System.getProperty("oimaging.devMode", "false"));
+    /** max delay in ms to delete finished remote jobs before quitting (-DOImaging.cleanupTimeout=10000) */
+    private static final long CLEANUP_TIMEOUT = Long.getLong("OImaging.cleanupTimeout", 10000L);
 
     /* members */
     /** main Panel */
@@ -211,8 +217,15 @@ public final class OImaging extends App {
         logger.debug("OifitsExplorerGui.finish() handler called.");
 
         // Can't exit if a job is running
-        if (IRModelManager.getInstance().getIRModel().isRunning()) {
-            MessagePane.showMessage("A job is running... Please wait for its completion or cancel it before quitting.");
+        if (JobQueue.getInstance().hasActiveJobs()) {
+            MessagePane.showMessage("Jobs are running... Please wait for their completion or cancel them (Job queue) before quitting.");
+            return false;
+        }
+
+        // Finished remote jobs are deleted in background (daemon threads): flush them before quitting
+        if (!UwsJobCleaner.getInstance().awaitCleanup(CLEANUP_TIMEOUT)
+                && !MessagePane.showConfirmMessage(UwsJobCleaner.getInstance().getPendingCount()
+                        + " finished job(s) could not be deleted on the remote server yet (they will expire on the server).\nQuit anyway ?")) {
             return false;
         }
 
@@ -336,6 +349,8 @@ public final class OImaging extends App {
 
         // Processing menu :
         new RunAction();
+        new SweepAction();
+        new JobQueueAction();
         new LoadResultAsInputAction();
         new RunMoreIterationsAction();
         new SetAsInitImgAction();
@@ -28,12 +28,41 @@ public class Preferences extends fr.jmmc.oiexplorer.core.Preferences {
     public final static String SERVER_MODE_AUTO = "auto";
     /** remote server mode = custom */
     public final static String SERVER_MODE_CUSTOM = "custom";
+    /** remote server balancing = least outstanding jobs */
+    public final static String SERVER_BALANCING_LEAST_JOBS = "leastJobs";
+    /** remote server balancing = lowest latency */
+    public final static String SERVER_BALANCING_LATENCY = "latency";
 
     /* Preferences */
     /** Preference : remote server mode */
     public final static String SERVER_MODE = "server.mode";
-    /** Preference : custom remote server */
+    /** Preference : custom remote server (several hosts separated by commas) */
     public final static String SERVER_CUSTOM = "server.custom";
+    /** Preference : remote server selection among several hosts (leastJobs or latency) */
+    public final static String SERVER_BALANCING = "server.balancing";
+    /** Preference : max number of concurrent jobs on the remote server */
+    public final static String SERVER_MAX_JOBS = "server.maxJobs";
+    /** Preference : compress the input file uploaded to the remote server (if supported) */
+    public final static String SERVER_COMPRESS_UPLOAD = "server.compressUpload";
+    /** Preference : upload the OIData tables once per session (content hash) then only the parameters (if supported) */
+    public final static String SERVER_DEDUP_UPLOAD = "server.dedupUpload";
+    /** Preference : retention (hours) of failed jobs on the remote server to collect their datasets (0 means deleted at once) */
+    public final static String SERVER_FAILED_RETENTION = "server.failedRetention";
+    /** Preference : retention (minutes) of completed jobs on the remote server to continue them (warm start; 0 disables continuation) */
+    public final static String SERVER_CONTINUATION_RETENTION = "server.continuationRetention";
+    /** Preference : worker agents (host[:port] separated by commas) */
+    public final static String WORKER_HOSTS = "workers.hosts";
+    /** Preference : token shared with worker agents (-DWorkerAgent.token) */
+    public final static String WORKER_TOKEN = "workers.token";
+    /** Preference : max wall-clock time (s) of local jobs (0 means unlimited) */
+    public final static String LOCAL_MAX_WALL_TIME = "local.maxWallTime";
+    /** Preference : max cpu time (s) of local jobs (0 means unlimited) */
+    public final static String LOCAL_MAX_CPU_TIME = "local.maxCpuTime";
+
+    /** Preference : disk budget (MB) of the reconstruction result cache (0 disables the cache) */
+    public final static String RESULTS_CACHE_MAX_SIZE = "results.cache.maxSize";
+    /** Preference : memory budget (MB) of loaded result files, least recently used ones are reloaded on demand (0 means unlimited) */
+    public final static String RESULTS_MEMORY_BUDGET = "results.memoryBudget";
 
     /** prefix for all results columns */
     public static final String RESULTS_COLUMNS_ALL = "results.columns.all";
@@ -95,6 +124,18 @@ public class Preferences extends fr.jmmc.oiexplorer.core.Preferences {
 
         setDefaultPreference(SERVER_MODE, SERVER_MODE_AUTO);
         setDefaultPreference(SERVER_CUSTOM, "");
+        setDefaultPreference(SERVER_BALANCING, SERVER_BALANCING_LEAST_JOBS);
+        setDefaultPreference(SERVER_MAX_JOBS, Integer.valueOf(4));
+        setDefaultPreference(SERVER_COMPRESS_UPLOAD, Boolean.FALSE);
+        setDefaultPreference(SERVER_DEDUP_UPLOAD, Boolean.FALSE);
+        setDefaultPreference(SERVER_FAILED_RETENTION, Integer.valueOf(0));
+        setDefaultPreference(SERVER_CONTINUATION_RETENTION, Integer.valueOf(0));
+        setDefaultPreference(WORKER_HOSTS, "");
+        setDefaultPreference(WORKER_TOKEN, "");
+        setDefaultPreference(LOCAL_MAX_WALL_TIME, Integer.valueOf(0));
+        setDefaultPreference(LOCAL_MAX_CPU_TIME, Integer.valueOf(0));
+        setDefaultPreference(RESULTS_CACHE_MAX_SIZE, Integer.valueOf(512));
+        setDefaultPreference(RESULTS_MEMORY_BUDGET, Integer.valueOf(256));
 
         // Use GD's prefered value for a better image viewing that isophot...
         setDefaultPreference(MODEL_IMAGE_LUT, ColorModels.COLOR_MODEL_HEAT);
@@ -144,7 +185,7 @@ public class Preferences extends fr.jmmc.oiexplorer.core.Preferences {
     private static List<String> generateAllColumns() {
         // All results columns order list, as of default (collected by FEST OImagingDocJUnitTest @ 2021.12.21)
         final List<String> COLUMNS_ALL = Arrays.asList(
-                "FILE", "INDEX", "JOB_DURATION", "SUCCESS", "CHISQ", "DELTA",
+                "FILE", "INDEX", "JOB_DURATION", "CPU_TIME", "PEAK_RSS", "IO_BYTES", "SUCCESS", "CHISQ", "DELTA",
                 "FLUX", "FLUXERR", "FOV", "JOBEND", "JOBSTART", "LAST_IMG",
                 "MAXITER", "NITER", "NP_MIN", "RATING", "RGL_NAME", "RGL_WGT",
                 "SOFTWARE", "TARGET", "USERNOTE", "VERSION", "WAVE_MAX", "WAVE_MIN",
@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.gui;
+
+import fr.jmmc.jmcs.App;
+import fr.jmmc.jmcs.gui.util.SwingUtils;
+import fr.jmmc.oimaging.services.ExecutionLogTail;
+import fr.jmmc.oimaging.services.JobQueue;
+import fr.jmmc.oimaging.services.JobQueueListener;
+import fr.jmmc.oimaging.services.ResultCache;
+import fr.jmmc.oimaging.services.RunJob;
+import fr.jmmc.oimaging.services.ServiceExecutors;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Panel listing the jobs of the JobQueue (queued, running and finished)
+ * and giving actions to cancel them. The execution log of the selected job
+ * is displayed live (tailed while the job runs).
+ */
+public final class JobQueuePanel extends JPanel implements JobQueueListener {
+
+    /** default serial UID for Serializable interface */
+    private static final long serialVersionUID = 1;
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(JobQueuePanel.class.getName());
+    /** refresh period (ms) to update job durations */
+    private static final int REFRESH_PERIOD = 1000;
+    /** period (ms) to read the execution log of the selected job */
+    private static final int LOG_PERIOD = 500;
+
+    /** shared dialog */
+    private static JDialog dialog = null;
+
+    /**
+     * Show the job queue dialog (non modal)
+     */
+    public static void showJobQueue() {
+        SwingUtils.invokeLaterEDT(new Runnable() {
+            @Override
+            public void run() {
+                if (dialog == null) {
+                    dialog = new JDialog(App.getFrame(), "Job queue", false);
+                    dialog.add(new JobQueuePanel());
+                    dialog.pack();
+                    dialog.setLocationRelativeTo(App.getFrame());
+                }
+                dialog.setVisible(true);
+                dialog.toFront();
+            }
+        });
+    }
+
+    /* members */
+    /** table model */
+    private final JobTableModel jobTableModel = new JobTableModel();
+    /** job table */
+    private final JTable jTableJobs = new JTable(jobTableModel);
+    /** result cache statistics */
+    private final JLabel jLabelCache = new JLabel();
+    /** timer refreshing durations while jobs are active */
+    private final Timer timerRefresh;
+    /** execution log of the selected job */
+    private final JTextArea jTextAreaLog = new JTextArea();
+    /** batched appender to the execution log */
+    private final LogAppender logAppender = new LogAppender(jTextAreaLog);
+    /** timer reading the execution log of the selected job */
+    private final Timer timerLog;
+    /** job whose log is displayed */
+    private RunJob logJob = null;
+    /** log tail of the displayed job (accessed by the reader task only once created) */
+    private ExecutionLogTail logTail = null;
+    /** true if the log tail was opened while the job was active */
+    private boolean logTailActive = false;
+    /** flag indicating a log read in progress */
+    private final AtomicBoolean logReading = new AtomicBoolean(false);
+
+    /**
+     * Creates new JobQueuePanel
+     */
+    public JobQueuePanel() {
+        super(new BorderLayout());
+
+        jTableJobs.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        jTableJobs.getColumnModel().getColumn(0).setPreferredWidth(40);
+        jTableJobs.getColumnModel().getColumn(5).setPreferredWidth(300);
+
+        jTableJobs.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(final ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    final int[] rows = jTableJobs.getSelectedRows();
+                    showLog((rows.length == 1) ? jobTableModel.getJob(jTableJobs.convertRowIndexToModel(rows[0])) : null);
+                }
+            }
+        });
+
+        final JScrollPane jScrollPane = new JScrollPane(jTableJobs);
+        jScrollPane.setPreferredSize(new Dimension(800, 250));
+
+        jTextAreaLog.setEditable(false);
+        jTextAreaLog.setFont(new Font(Font.MONOSPACED, Font.PLAIN, SwingUtils.adjustUISize(10)));
+        final JScrollPane jScrollPaneLog = new JScrollPane(jTextAreaLog);
+        jScrollPaneLog.setPreferredSize(new Dimension(800, 250));
+
+        final JSplitPane jSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, jScrollPane, jScrollPaneLog);
+        jSplitPane.setResizeWeight(0.5);
+        add(jSplitPane, BorderLayout.CENTER);
+
+        final JButton jButtonCancel = new JButton("Cancel selected");
+        jButtonCancel.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                for (int row : jTableJobs.getSelectedRows()) {
+                    jobTableModel.getJob(jTableJobs.convertRowIndexToModel(row)).cancel();
+                }
+            }
+        });
+        final JButton jButtonCancelAll = new JButton("Cancel all");
+        jButtonCancelAll.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                JobQueue.getInstance().cancelAll();
+            }
+        });
+        final JButton jButtonClear = new JButton("Clear finished");
+        jButtonClear.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                JobQueue.getInstance().clearFinishedJobs();
+            }
+        });
+
+        final JPanel jPanelButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        jPanelButtons.add(jButtonCancel);
+        jPanelButtons.add(jButtonCancelAll);
+        jPanelButtons.add(jButtonClear);
+
+        final JPanel jPanelBottom = new JPanel(new BorderLayout());
+        jLabelCache.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 6, 0, 6));
+        jPanelBottom.add(jLabelCache, BorderLayout.WEST);
+        jPanelBottom.add(jPanelButtons, BorderLayout.EAST);
+        add(jPanelBottom, BorderLayout.SOUTH);
+
+        timerRefresh = new Timer(REFRESH_PERIOD, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                refresh();
+            }
+        });
+        timerLog = new Timer(LOG_PERIOD, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                readLog();
+            }
+        });
+
+        JobQueue.getInstance().addListener(this);
+        refresh();
+    }
+
+    /**
+     * Listen to job changes (service threads)
+     * @param job updated job or null
+     */
+    @Override
+    public void jobChanged(final RunJob job) {
+        SwingUtils.invokeLaterEDT(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        });
+    }
+
+    /** reload the job list (EDT) */
+    private void refresh() {
+        final List<RunJob> jobs = JobQueue.getInstance().getJobs();
+        if (jobs.equals(jobTableModel.jobs)) {
+            // same jobs: keep selection
+            if (!jobs.isEmpty()) {
+                jobTableModel.fireTableRowsUpdated(0, jobs.size() - 1);
+            }
+        } else {
+            final RunJob selected = logJob;
+            jobTableModel.setJobs(jobs);
+            // restore selection:
+            final int row = (selected != null) ? jobs.indexOf(selected) : -1;
+            if (row != -1) {
+                final int viewRow = jTableJobs.convertRowIndexToView(row);
+                jTableJobs.getSelectionModel().setSelectionInterval(viewRow, viewRow);
+            }
+        }
+        final ResultCache cache = ResultCache.getInstance();
+        jLabelCache.setText(cache.isEnabled() ? cache.getStatistics() : "Result cache disabled");
+
+        if (JobQueue.getInstance().hasActiveJobs()) {
+            if (!timerRefresh.isRunning()) {
+                timerRefresh.start();
+            }
+        } else if (timerRefresh.isRunning()) {
+            timerRefresh.stop();
+        }
+    }
+
+    /**
+     * Display the execution log of the given job (EDT)
+     * @param job job or null to clear
+     */
+    private void showLog(final RunJob job) {
+        if (job == logJob) {
+            return;
+        }
+        closeLog();
+        logJob = job;
+        if (job != null) {
+            timerLog.start();
+            readLog();
+        }
+    }
+
+    private void closeLog() {
+        timerLog.stop();
+        logJob = null;
+        final ExecutionLogTail tail = logTail;
+        logTail = null;
+        if (tail != null) {
+            tail.close();
+        }
+        logAppender.setText(null);
+    }
+
+    /**
+     * Read the new log text of the displayed job in background then append it (batched)
+     */
+    private void readLog() {
+        final RunJob job = logJob;
+        if (job == null || !logReading.compareAndSet(false, true)) {
+            return;
+        }
+        final boolean finished = !job.getState().isActive();
+
+        if (logTail == null || (finished && logTailActive)) {
+            // (re)open the log: finished jobs read their final log file from the beginning
+            if (logTail != null) {
+                logTail.close();
+                logAppender.setText(null);
+            }
+            logTail = job.openExecutionLog();
+            logTailActive = !finished;
+            if (logTail == null) {
+                // not started yet
+                logReading.set(false);
+                return;
+            }
+        }
+        final ExecutionLogTail tail = logTail;
+
+        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                String text;
+                try {
+                    text = tail.read(finished);
+                } catch (IOException ioe) {
+                    logger.debug("readLog: failure", ioe);
+                    text = null;
+                }
+                final String newText = text;
+                SwingUtils.invokeLaterEDT(new Runnable() {
+                    @Override
+                    public void run() {
+                        logReading.set(false);
+                        if (tail == logTail) {
+                            logAppender.append(newText);
+                            if (finished && (newText == null || newText.isEmpty())) {
+                                // whole log read:
+                                timerLog.stop();
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Table model giving one row per job
+     */
+    private static final class JobTableModel extends AbstractTableModel {
+
+        /** default serial UID for Serializable interface */
+        private static final long serialVersionUID = 1;
+
+        private static final String[] COLUMNS = {"Job", "Service", "State", "Phase", "Duration (s)", "Message"};
+
+        /** jobs */
+        List<RunJob> jobs = Collections.emptyList();
+
+        void setJobs(final List<RunJob> jobs) {
+            this.jobs = jobs;
+            fireTableDataChanged();
+        }
+
+        RunJob getJob(final int row) {
+            return jobs.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return jobs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(final int row, final int column) {
+            final RunJob job = jobs.get(row);
+            switch (column) {
+                case 0:
+                    return job.getId();
+                case 1:
+                    return job.getService();
+                case 2:
+                    return job.getState();
+                case 3:
+                    return (job.getState() == RunJob.State.RUNNING) ? job.getPhase() : null;
+                case 4:
+                    return (job.getState() == RunJob.State.QUEUED) ? null : String.format("%.1f", job.getDuration() / 1000.0);
+                case 5:
+                    return job.getErrorMessage();
+                default:
+                    return null;
+            }
+        }
+    }
+}
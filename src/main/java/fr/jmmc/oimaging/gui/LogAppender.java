@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.gui;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append text to a text component by small batches (one per EDT event)
+ * so that multi-MB logs never stall the EDT. Must be used from the EDT.
+ */
+public final class LogAppender {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(LogAppender.class.getName());
+
+    /** max characters inserted per EDT event */
+    private static final int BATCH_SIZE = 32 * 1024;
+
+    /* members */
+    /** text component */
+    private final JTextComponent component;
+    /** pending text (not yet inserted) */
+    private final StringBuilder pending = new StringBuilder(BATCH_SIZE);
+    /** flag indicating that a batch is scheduled */
+    private boolean scheduled = false;
+    /** true to follow the end of the document */
+    private boolean follow = true;
+
+    /**
+     * Create an appender for the given text component
+     * @param component text component (not editable)
+     */
+    public LogAppender(final JTextComponent component) {
+        this.component = component;
+    }
+
+    /**
+     * Replace the text (cancel pending appends)
+     * @param text new text or null
+     */
+    public void setText(final String text) {
+        pending.setLength(0);
+        component.setText("");
+        append(text);
+    }
+
+    /**
+     * Append the given text (batched)
+     * @param text text to append or null
+     */
+    public void append(final String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        pending.append(text);
+        if (!scheduled) {
+            schedule();
+        }
+    }
+
+    /**
+     * @param follow true to scroll to the end of the document after each batch
+     */
+    public void setFollow(final boolean follow) {
+        this.follow = follow;
+    }
+
+    private void insertBatch() {
+        scheduled = false;
+        if (pending.length() == 0) {
+            return;
+        }
+        final int len = Math.min(BATCH_SIZE, pending.length());
+        final String batch = pending.substring(0, len);
+        pending.delete(0, len);
+
+        final Document doc = component.getDocument();
+        try {
+            doc.insertString(doc.getLength(), batch, null);
+        } catch (BadLocationException ble) {
+            logger.warn("insertBatch: failure", ble);
+        }
+        if (follow) {
+            component.setCaretPosition(doc.getLength());
+        }
+        if (pending.length() != 0) {
+            // next batch in another EDT event:
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        scheduled = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                insertBatch();
+            }
+        });
+    }
+}
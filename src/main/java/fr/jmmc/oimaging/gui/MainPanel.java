@@ -22,6 +22,7 @@ import fr.jmmc.oimaging.gui.action.ExportOIFitsAction;
 import fr.jmmc.oimaging.gui.action.LoadOIFitsAction;
 import fr.jmmc.oimaging.gui.action.LoadResultAsInputAction;
 import fr.jmmc.oimaging.gui.action.RunAction;
+import fr.jmmc.oimaging.gui.action.SweepAction;
 import fr.jmmc.oimaging.gui.action.RunMoreIterationsAction;
 import fr.jmmc.oimaging.gui.action.SetAsInitImgAction;
 import fr.jmmc.oimaging.interop.SendFitsAction;
@@ -91,6 +92,7 @@ public class MainPanel extends javax.swing.JPanel implements IRModelEventListene
  /* actions */
     private DeleteSelectionAction deleteSelectionAction;
     private RunAction runAction;
+    private SweepAction sweepAction;
     private Action exportOiFitsAction;
     private Action sendOiFitsAction;
     private Action exportFitsImageAction;
@@ -306,6 +308,7 @@ public class MainPanel extends javax.swing.JPanel implements IRModelEventListene
         deleteSelectionAction = (DeleteSelectionAction) ActionRegistrar.getInstance().get(DeleteSelectionAction.className, DeleteSelectionAction.actionName);
         runAction = (RunAction) ActionRegistrar.getInstance().get(RunAction.className, RunAction.actionName);
         jButtonRun.setAction(runAction);
+        sweepAction = (SweepAction) ActionRegistrar.getInstance().get(SweepAction.className, SweepAction.actionName);
 
         exportOiFitsAction = ActionRegistrar.getInstance().get(ExportOIFitsAction.className, ExportOIFitsAction.actionName);
         jButtonExportOIFits.setAction(exportOiFitsAction);
@@ -1107,6 +1110,7 @@ public class MainPanel extends javax.swing.JPanel implements IRModelEventListene
             // TODO make this idea more global and on an higher level Manager.setValid(true) e.g. ?
             final boolean modelOk = failures.isEmpty();
             runAction.setEnabled(modelOk);
+            sweepAction.setEnabled(modelOk);
 
             final StringBuffer sb = new StringBuffer(256);
             if (modelOk) {
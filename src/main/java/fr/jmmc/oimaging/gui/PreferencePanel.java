@@ -11,14 +11,29 @@ import fr.jmmc.jmcs.gui.action.ActionRegistrar;
 import fr.jmmc.oiexplorer.core.gui.IconComboBoxRenderer;
 import fr.jmmc.oimaging.Preferences;
 import fr.jmmc.oimaging.gui.action.TableEditorAction;
+import fr.jmmc.oimaging.services.RemoteExecutionMode;
+import fr.jmmc.oimaging.services.UwsEndpoint;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
 import java.awt.Image;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import javax.swing.DefaultComboBoxModel;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +49,17 @@ public final class PreferencePanel extends javax.swing.JPanel implements Observe
     /* members */
     /** preference singleton */
     private final Preferences myPreferences = Preferences.getInstance();
+    /** remote server balancing */
+    private final JComboBox jComboBoxBalancing = new JComboBox();
+    /** remote server endpoint statistics */
+    private final EndpointTableModel endpointTableModel = new EndpointTableModel();
+    /** timer refreshing endpoint statistics while displayed */
+    private final Timer timerEndpoints = new Timer(2000, new ActionListener() {
+        @Override
+        public void actionPerformed(final ActionEvent e) {
+            endpointTableModel.refresh();
+        }
+    });
 
     /**
      * Creates a new PreferencePanel
@@ -58,6 +84,9 @@ public final class PreferencePanel extends javax.swing.JPanel implements Observe
 
         this.jTextFieldServer.setText(myPreferences.getPreference(Preferences.SERVER_CUSTOM));
         this.jTextFieldServer.setEnabled(isServerCustom);
+        this.jTextFieldServer.setToolTipText("Server host(s): several hosts may be given separated by commas to share jobs");
+
+        initServerEndpoints();
 
         this.jComboBoxLUT.setModel(new DefaultComboBoxModel(ColorModels.getColorModelNames()));
         this.jComboBoxColorScale.setModel(new DefaultComboBoxModel(ColorScale.values()));
@@ -122,6 +151,65 @@ public final class PreferencePanel extends javax.swing.JPanel implements Observe
         });
     }
 
+    /**
+     * Add the balancing choice and the statistics of remote server endpoints
+     */
+    private void initServerEndpoints() {
+        final JLabel jLabelBalancing = new JLabel("Balancing");
+        GridBagConstraints gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 2;
+        gridBagConstraints.anchor = GridBagConstraints.EAST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 6);
+        jPanelServer.add(jLabelBalancing, gridBagConstraints);
+
+        jComboBoxBalancing.setModel(new DefaultComboBoxModel(new String[]{
+            Preferences.SERVER_BALANCING_LEAST_JOBS, Preferences.SERVER_BALANCING_LATENCY}));
+        jComboBoxBalancing.setToolTipText("Server receiving new jobs: least outstanding jobs or lowest latency");
+        jComboBoxBalancing.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                try {
+                    // will fire triggerObserversNotification so update() will be called
+                    myPreferences.setPreference(Preferences.SERVER_BALANCING, jComboBoxBalancing.getSelectedItem());
+                } catch (PreferencesException pe) {
+                    logger.error("property failure : ", pe);
+                }
+            }
+        });
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 2;
+        gridBagConstraints.anchor = GridBagConstraints.WEST;
+        gridBagConstraints.insets = new Insets(0, 4, 4, 4);
+        jPanelServer.add(jComboBoxBalancing, gridBagConstraints);
+
+        final JTable jTableEndpoints = new JTable(endpointTableModel);
+        jTableEndpoints.getColumnModel().getColumn(0).setPreferredWidth(250);
+        final JScrollPane jScrollPaneEndpoints = new JScrollPane(jTableEndpoints);
+        jScrollPaneEndpoints.setPreferredSize(new Dimension(500, 80));
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.gridwidth = 2;
+        gridBagConstraints.fill = GridBagConstraints.BOTH;
+        gridBagConstraints.insets = new Insets(0, 4, 4, 4);
+        jPanelServer.add(jScrollPaneEndpoints, gridBagConstraints);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        endpointTableModel.refresh();
+        timerEndpoints.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timerEndpoints.stop();
+        super.removeNotify();
+    }
+
     /**
      * Overriden method to give object identifier
      * @return string identifier
@@ -457,7 +545,74 @@ public final class PreferencePanel extends javax.swing.JPanel implements Observe
         this.jComboBoxColorScale.setSelectedItem(this.myPreferences.getImageColorScale());
         this.jComboBoxInterpolation.setSelectedItem(this.myPreferences.getImageInterpolation());
 
+        // Remote server:
+        this.jComboBoxBalancing.setSelectedItem(this.myPreferences.getPreference(Preferences.SERVER_BALANCING));
+
         // read prefs to set states of GUI elements
         this.jFieldTargetSep.setValue(this.myPreferences.getPreferenceAsDouble(Preferences.TARGET_MATCHER_SEPARATION));
     }
+
+    /**
+     * Table model giving the statistics of remote server endpoints
+     */
+    private static final class EndpointTableModel extends AbstractTableModel {
+
+        /** default serial UID for Serializable interface */
+        private static final long serialVersionUID = 1;
+
+        private static final String[] COLUMNS = {"Server", "Status", "Latency (ms)", "Running jobs", "Completed jobs", "Failovers", "Upload (MB/s)"};
+
+        /** endpoints */
+        private List<UwsEndpoint> endpoints = Collections.emptyList();
+
+        void refresh() {
+            final List<UwsEndpoint> list = RemoteExecutionMode.getEndpoints();
+            if (list.equals(endpoints)) {
+                if (!list.isEmpty()) {
+                    fireTableRowsUpdated(0, list.size() - 1);
+                }
+            } else {
+                endpoints = list;
+                fireTableDataChanged();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return endpoints.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(final int row, final int column) {
+            final UwsEndpoint endpoint = endpoints.get(row);
+            switch (column) {
+                case 0:
+                    return endpoint.getUrl();
+                case 1:
+                    return endpoint.getHealth();
+                case 2:
+                    return Double.isNaN(endpoint.getLatency()) ? null : String.format("%.0f", endpoint.getLatency());
+                case 3:
+                    return endpoint.getOutstandingJobs();
+                case 4:
+                    return endpoint.getCompletedJobs();
+                case 5:
+                    return endpoint.getFailovers();
+                case 6:
+                    return String.format("%.2f", endpoint.getUploadThroughput());
+                default:
+                    return null;
+            }
+        }
+    }
 }
@@ -113,6 +113,8 @@ public class ViewerPanel extends javax.swing.JPanel implements ChangeListener, O
 
     /** Slider panel */
     private final SliderPanel sliderPanel;
+    /** batched appender to the execution log (large logs) */
+    private LogAppender logAppender;
 
     private Component lastModelPanel;
     private Component lastResultPanel;
@@ -176,6 +178,9 @@ public class ViewerPanel extends javax.swing.JPanel implements ChangeListener, O
         }
 
         jEditorPaneExecutionLog.setFont(new Font("Monospaced", Font.PLAIN, SwingUtils.adjustUISize(10)));
+
+        logAppender = new LogAppender(jEditorPaneExecutionLog);
+        logAppender.setFollow(false);
     }
 
     /**
@@ -418,17 +423,18 @@ public class ViewerPanel extends javax.swing.JPanel implements ChangeListener, O
         jPanelImage.setLayout(new BorderLayout());
 
         if (result == null) {
-            jEditorPaneExecutionLog.setText("");
+            logAppender.setText(null);
             displaySelection(null);
             displayImage(null, null);
             displayOiFitsAndParams(null, null);
         } else {
             // execution log
-            jEditorPaneExecutionLog.setText(result.getExecutionLog());
+            logAppender.setText(result.getExecutionLog());
 
-            if (result.isValid()) {
-                final OIFitsFile oifitsFile = result.getOifitsFile();
+            // result file (reloaded if evicted from the result store):
+            final OIFitsFile oifitsFile = (result.isValid()) ? result.getOifitsFile() : null;
 
+            if (oifitsFile != null) {
                 // TODO have a look in the ouput param to look at right image ?
                 // show first one :
                 final List<FitsImageHDU> imageHdus = oifitsFile.getFitsImageHDUs();
@@ -476,9 +482,9 @@ public class ViewerPanel extends javax.swing.JPanel implements ChangeListener, O
 
             for (ServiceResult result : results) {
                 // TODO: generalize for comparison (sliders on cube or table)
-                final OIFitsFile oifitsFile = result.getOifitsFile();
+                final OIFitsFile oifitsFile = (result.isValid()) ? result.getOifitsFile() : null;
 
-                if (result.isValid()) {
+                if (oifitsFile != null) {
                     // TODO have a look in the ouput param to look at right image ?
                     // use first one :
                     final List<FitsImageHDU> imageHdus = oifitsFile.getFitsImageHDUs();
@@ -505,9 +511,9 @@ public class ViewerPanel extends javax.swing.JPanel implements ChangeListener, O
             logger.debug("displayGrid: global data range: [{} - {}]", globalDataRange[0], globalDataRange[1]);
 
             for (ServiceResult result : results) {
-                final OIFitsFile oifitsFile = result.getOifitsFile();
+                final OIFitsFile oifitsFile = (result.isValid()) ? result.getOifitsFile() : null;
 
-                if (result.isValid()) {
+                if (oifitsFile != null) {
                     final FitsImagePanel panel = new FitsImagePanel(Preferences.getInstance(), true, false, globalDataRange);
                     jPanelImage.add(panel);
 
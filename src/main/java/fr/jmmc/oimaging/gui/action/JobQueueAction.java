@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.gui.action;
+
+import fr.jmmc.jmcs.gui.action.RegisteredAction;
+import fr.jmmc.oimaging.gui.JobQueuePanel;
+import java.awt.event.ActionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Show the job queue (queued, running and finished jobs).
+ */
+public final class JobQueueAction extends RegisteredAction {
+
+    /** default serial UID for Serializable interface */
+    private static final long serialVersionUID = 1;
+    /** Class name. This name is used to register to the ActionRegistrar */
+    public final static String className = JobQueueAction.class.getName();
+    /** Action name. This name is used to register to the ActionRegistrar */
+    public final static String actionName = "showJobQueue";
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(className);
+
+    /**
+     * Public constructor that automatically register the action in RegisteredAction.
+     */
+    public JobQueueAction() {
+        super(className, actionName);
+    }
+
+    /**
+     * Handle the action event
+     * @param evt action event
+     */
+    @Override
+    public void actionPerformed(final ActionEvent evt) {
+        logger.debug("actionPerformed");
+        JobQueuePanel.showJobQueue();
+    }
+}
@@ -11,12 +11,17 @@ import fr.jmmc.jmcs.gui.action.RegisteredAction;
 import fr.jmmc.jmcs.gui.component.FileChooser;
 import fr.jmmc.jmcs.gui.component.MessagePane;
 import fr.jmmc.jmcs.gui.component.StatusBar;
+import fr.jmmc.jmcs.gui.task.Task;
+import fr.jmmc.jmcs.gui.task.TaskSwingWorker;
+import fr.jmmc.jmcs.gui.util.SwingUtils;
 import fr.jmmc.oiexplorer.core.gui.OIFitsCheckerPanel;
 import fr.jmmc.oimaging.Preferences;
 import fr.jmmc.oitools.model.OIFitsChecker;
+import fr.jmmc.oitools.model.OIFitsFile;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +41,8 @@ public final class LoadOIFitsAction extends RegisteredAction {
     private static final Logger logger = LoggerFactory.getLogger(className);
     /** OIFits MimeType */
     private final static MimeType mimeType = MimeType.OIFITS;
+    /** Task Load OIFits */
+    public static final Task TASK_LOAD_OIFITS = new Task("LOAD_OIFITS");
 
     /**
      * Public constructor that automatically register the action in RegisteredAction.
@@ -72,19 +79,70 @@ public final class LoadOIFitsAction extends RegisteredAction {
 
         // If a file was defined (No cancel in the dialog)
         if (files != null) {
-            final OIFitsChecker checker = OIFitsChecker.newInstance();
-            try {
-                IRModelManager.getInstance().loadOIFitsFiles(files, checker);
+            StatusBar.show("loading " + files.length + " file(s) ...");
+            // load and merge in background (progress shown in the status bar):
+            new LoadOIFitsWorker(files).executeTask();
+        }
+    }
+
+    /**
+     * Load and merge the OIFits files in background then add the merged file to the IR Model (EDT)
+     */
+    static final class LoadOIFitsWorker extends TaskSwingWorker<OIFitsFile> {
+
+        /** files to load */
+        private final File[] files;
+        /** checker component (single report) */
+        private final OIFitsChecker checker = OIFitsChecker.newInstance();
 
-                OIFitsCheckerPanel.displayReport(checker, Preferences.getInstance());
+        LoadOIFitsWorker(final File[] files) {
+            super(TASK_LOAD_OIFITS);
+            this.files = files;
+        }
 
+        @Override
+        public OIFitsFile computeInBackground() {
+            try {
+                return IRModelManager.getInstance().loadOIFitsFiles(files, checker, new IRModelManager.LoadListener() {
+                    @Override
+                    public void fileLoaded(final int index, final int count, final File file) {
+                        SwingUtils.invokeLaterEDT(new Runnable() {
+                            @Override
+                            public void run() {
+                                StatusBar.show("loaded file " + index + " / " + count + ": " + file.getName());
+                            }
+                        });
+                    }
+                });
             } catch (IOException ioe) {
-                StatusBar.show("Could not load OIFits files.");
-                MessagePane.showErrorMessage("Could not load OIFits file", ioe);
-            } catch (IllegalArgumentException iae) {
+                throw new IllegalStateException(ioe);
+            }
+        }
+
+        @Override
+        public void refreshUI(final OIFitsFile oiFitsFile) {
+            IRModelManager.getInstance().loadOIFitsFile(oiFitsFile);
+
+            OIFitsCheckerPanel.displayReport(checker, Preferences.getInstance());
+        }
+
+        @Override
+        public void handleException(final ExecutionException ee) {
+            StatusBar.show("Could not load OIFits files.");
+
+            Throwable cause = ee.getCause();
+            if ((cause instanceof IllegalStateException) && (cause.getCause() instanceof IOException)) {
+                // wrapped by computeInBackground():
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof IOException) {
+                MessagePane.showErrorMessage("Could not load OIFits file", cause);
+            } else if (cause instanceof IllegalArgumentException) {
                 // IllegalArgumentException matches unit conversion or mandatory CDELT keyword test
-                StatusBar.show("Could not load OIFits files.");
-                MessagePane.showErrorMessage("Could not load Fits Image: " + iae.getMessage(), "Could not load file");
+                MessagePane.showErrorMessage("Could not load Fits Image: " + cause.getMessage(), "Could not load file");
+            } else {
+                super.handleException(ee);
             }
         }
     }
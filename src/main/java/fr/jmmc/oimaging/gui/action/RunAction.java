@@ -7,33 +7,29 @@ import fr.jmmc.jmcs.gui.action.ActionRegistrar;
 import fr.jmmc.jmcs.gui.action.RegisteredAction;
 import fr.jmmc.jmcs.gui.component.MessagePane;
 import fr.jmmc.jmcs.gui.component.StatusBar;
-import fr.jmmc.jmcs.gui.task.Task;
-import fr.jmmc.jmcs.gui.task.TaskSwingWorker;
-import fr.jmmc.jmcs.gui.task.TaskSwingWorkerExecutor;
+import fr.jmmc.jmcs.gui.util.SwingUtils;
 import fr.jmmc.jmcs.util.ImageUtils;
-import fr.jmmc.jmcs.util.concurrent.ThreadExecutors;
 import fr.jmmc.oimaging.model.IRModel;
 import fr.jmmc.oimaging.model.IRModelManager;
+import fr.jmmc.oimaging.services.Continuation;
+import fr.jmmc.oimaging.services.JobQueue;
+import fr.jmmc.oimaging.services.JobQueueListener;
+import fr.jmmc.oimaging.services.RunJob;
 import fr.jmmc.oimaging.services.Service;
 import fr.jmmc.oimaging.services.ServiceResult;
-import fr.nom.tam.fits.FitsException;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.IOException;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import javax.swing.Action;
 import javax.swing.ImageIcon;
 import org.apache.commons.httpclient.ConnectTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class RunAction extends RegisteredAction {
+public class RunAction extends RegisteredAction implements JobQueueListener {
 
     private static final long serialVersionUID = 1L;
     /** Main logger */
@@ -43,198 +39,184 @@ public class RunAction extends RegisteredAction {
     /** Action name. This name is used to register to the ActionRegistrar */
     public static final String actionName = "run";
 
-    private static final boolean TEST_WORK_LOAD = false;
-    private static final int WORK_LOAD_JOBS = 500;
-
-    /** Task Run IR */
-    public static final Task TASK_RUN_IR = new Task("RUN_IR");
-    /** Spinner icon gif to decorate "cancel" label. */
+    /** Spinner icon gif to decorate "run" label while jobs are running. */
     private static final ImageIcon spinnerIcon = ImageUtils.loadResourceIcon("fr/jmmc/jmcs/resource/image/spinner.gif");
 
-    static {
-        if (TEST_WORK_LOAD) {
-            logger.warn("WARNING: TEST_WORK_LOAD=true (dev) - DO NOT USE IN PRODUCTION !");
-        }
-    }
-
     public RunAction() {
         super(className, actionName);
+
+        JobQueue.getInstance().addListener(this);
+    }
+
+    /**
+     * Listen to job changes to update the running state (spinner)
+     * @param job updated job
+     */
+    @Override
+    public void jobChanged(final RunJob job) {
+        SwingUtils.invokeLaterEDT(new Runnable() {
+            @Override
+            public void run() {
+                setRunningState(JobQueue.getInstance().getActiveJobCount());
+            }
+        });
     }
 
-    private void setRunningState(final IRModel irModel, boolean running) {
-        irModel.setRunning(running);
-        putValue(Action.NAME, (running) ? "Cancel" : "Run");
+    private void setRunningState(final int activeJobs) {
+        final boolean running = (activeJobs != 0);
         putValue(Action.LARGE_ICON_KEY, running ? spinnerIcon : null);
+        putValue(Action.SHORT_DESCRIPTION, running ? activeJobs + " job(s) queued or running" : null);
 
-        // update associated RunMoreIterationsAction label and icon
+        // update associated RunMoreIterationsAction icon
         Action runMoreIterationsAction = ActionRegistrar.getInstance().get(
                 RunMoreIterationsAction.CLASS_NAME, RunMoreIterationsAction.ACTION_NAME);
         if (runMoreIterationsAction != null) {
-            runMoreIterationsAction.putValue(RunMoreIterationsAction.NAME,
-                    running ? RunMoreIterationsAction.LABEL_CANCEL : RunMoreIterationsAction.LABEL_IDLE);
             runMoreIterationsAction.putValue(Action.LARGE_ICON_KEY, running ? spinnerIcon : null);
         }
     }
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        // TODO: make a snapshot of the required information from model
+        // make a snapshot of the required information from model
         final IRModel irModel = IRModelManager.getInstance().getIRModel();
-        if (irModel.isRunning()) {
-            // cancel job
-            TaskSwingWorkerExecutor.cancelTask(TASK_RUN_IR);
-            StatusBar.show("Process cancelled.");
-        } else {
-            try {
-                StatusBar.show("Spawn " + irModel.getSelectedService() + " process");
-                // change model state to lock it and extract its snapshot
-                setRunningState(irModel, true);
-                new RunFitActionWorker(irModel.getCliOptions(), irModel.prepareTempFile(), irModel, this).executeTask();
-            } catch (FitsException fe) {
-                setRunningState(irModel, false);
-                logger.error("Can't prepare temporary file before running process", fe);
-                StatusBar.show("Can't spawn new process: " + fe.getMessage());
-            } catch (IOException ioe) {
-                logger.error("Can't prepare temporary file before running process", ioe);
-                StatusBar.show("Can't spawn new process: " + ioe.getMessage());
-                setRunningState(irModel, false);
-            }
-        }
+        final Service service = irModel.getSelectedService();
+        final String cliOptions = irModel.getCliOptions();
+        // the input file is written in background (job pipeline):
+        final Callable<File> preparation = irModel.prepareInput(null);
+        // continue the previous job (warm start) if possible:
+        final Continuation continuation = irModel.prepareContinuation();
+
+        StatusBar.show("Spawn " + service + " process" + ((continuation != null) ? " (continuation)" : ""));
+
+        submit(irModel, service, cliOptions, preparation, continuation);
     }
 
-    static final class RunFitActionWorker extends TaskSwingWorker<ServiceResult> {
+    /**
+     * Submit a new job to the job queue: its result will be added to the given model (EDT)
+     * @param irModel model receiving the result
+     * @param service service to run
+     * @param cliOptions software options on command line or null
+     * @param preparation task writing the input file (see IRModel.prepareInput())
+     * @param continuation optional continuation of a previous job (see IRModel.prepareContinuation())
+     * @return submitted job
+     */
+    public static RunJob submit(final IRModel irModel, final Service service, final String cliOptions, final Callable<File> preparation,
+                                final Continuation continuation) {
+        return submit(irModel, service, cliOptions, preparation, continuation, new JobBatch(1));
+    }
 
-        private final String cliOptions;
-        private final File inputFile;
-        private final IRModel irModel;
-        private final RunAction parentAction;
+    /**
+     * Submit a new job of the given batch to the job queue: its result will be added to the given model (EDT)
+     * @param irModel model receiving the result
+     * @param service service to run
+     * @param cliOptions software options on command line or null
+     * @param preparation task writing the input file (see IRModel.prepareInput())
+     * @param continuation optional continuation of a previous job (see IRModel.prepareContinuation())
+     * @param batch batch of jobs submitted together (failures reported once)
+     * @return submitted job
+     */
+    static RunJob submit(final IRModel irModel, final Service service, final String cliOptions, final Callable<File> preparation,
+                         final Continuation continuation, final JobBatch batch) {
+        final RunJob job = JobQueue.getInstance().submit(service, cliOptions, preparation, continuation);
+
+        job.getFuture().whenComplete((result, th) -> SwingUtils.invokeLaterEDT(new Runnable() {
+            @Override
+            public void run() {
+                refreshUI(irModel, batch, job, result, th);
+            }
+        }));
+        return job;
+    }
 
-        RunFitActionWorker(String cliOptions, File inputFile, IRModel irModel, RunAction runAction) {
-            super(TASK_RUN_IR);
-            this.cliOptions = cliOptions;
-            this.inputFile = inputFile;
-            this.irModel = irModel; // only for callback
-            this.parentAction = runAction;
-        }
+    /**
+     * Handle the job end (EDT)
+     * @param irModel model receiving the result
+     * @param batch batch of the job
+     * @param job finished job
+     * @param serviceResult result or null if failed
+     * @param th exception or null if succeeded
+     */
+    private static void refreshUI(final IRModel irModel, final JobBatch batch, final RunJob job,
+                                  final ServiceResult serviceResult, final Throwable th) {
+        if (th != null) {
+            final Throwable cause = (th instanceof CompletionException && th.getCause() != null) ? th.getCause() : th;
+
+            if (cause instanceof CancellationException) {
+                StatusBar.show("Process cancelled.");
+            } else {
+                logger.warn("computeInBackground: exception: ", cause);
 
-        @Override
-        public ServiceResult computeInBackground() {
-            final Service service = irModel.getSelectedService();
-            ServiceResult result = null;
-            try {
-                if (TEST_WORK_LOAD) {
-                    final List<Callable<ServiceResult>> jobs = new ArrayList<>(WORK_LOAD_JOBS);
-
-                    for (int i = 0; i < WORK_LOAD_JOBS; i++) {
-                        jobs.add(new Callable<ServiceResult>() {
-                            @Override
-                            public ServiceResult call() throws Exception {
-                                ServiceResult r = service.getExecMode().reconstructsImage(service.getProgram(), cliOptions, inputFile);
-                                logger.warn("Result: {}", r);
-                                return r;
-                            }
-                        });
-                    }
-
-                    final List<Future<ServiceResult>> futures = new ArrayList<>(WORK_LOAD_JOBS);
-                    logger.warn("Spawning jobs: {}", WORK_LOAD_JOBS);
-
-                    for (int i = 0; i < WORK_LOAD_JOBS; i++) {
-                        futures.add(ThreadExecutors.getRunnerExecutor().submit(jobs.get(i)));
-                    }
-
-                    logger.warn("Waiting for completion...");
-
-                    for (int i = 0; i < WORK_LOAD_JOBS; i++) {
-                        try {
-                            result = futures.get(i).get(); // wait
-                        } catch (Exception e) {
-                            logger.warn("futures: exception: ", e);
-                            break;
-                        }
-                    }
-
-                    logger.warn("All jobs completed.");
-
-                    // result should be defined now !
-                    if (result == null) {
-                        throw new IllegalStateException("result is null");
-                    }
-                } else {
-                    result = service.getExecMode().reconstructsImage(service.getProgram(), cliOptions, inputFile);
-                }
-                result.setService(service);
-
-                if (result.getErrorMessage() == null) {
-                    // Result is valid only if the OIFITS file was downloaded successfully:
-                    boolean valid = result.getOifitsResultFile().exists();
-                    result.setValid(valid);
-
-                    if (!valid) {
-                        result.setErrorMessage("No OIFits ouput (probably a server error occured) !");
-                    }
-                }
-                return result;
-            } catch (IllegalStateException ise) {
-                logger.warn("computeInBackground: exception: ", ise);
-                throw ise;
-            } finally {
-                if (result != null) {
-                    result.setEndTime(new Date());
-                }
+                // error message given in the job queue window, the dialog is shown once the batch is finished:
+                batch.addFailure((cause instanceof Exception) ? (Exception) cause : new IllegalStateException(cause));
+                StatusBar.show("Error occured during process (job " + job.getId() + ") : " + cause.getMessage());
             }
+        } else if (!serviceResult.isCancelled()) {
+            irModel.addServiceResult(serviceResult);
+        } else {
+            StatusBar.show("Error occured during process : " + serviceResult.getErrorMessage());
         }
+        batch.jobFinished();
+    }
 
-        @Override
-        public void refreshUI(ServiceResult serviceResult) {
-            // action finished, we can change state and update model just after.
-            parentAction.setRunningState(irModel, false);
+    public static boolean filterNetworkException(Exception e) {
+        Throwable c = getRootCause(e);
+        return c != null
+                && (c instanceof UnknownHostException
+                || c instanceof ConnectTimeoutException);
+    }
 
-            if (!serviceResult.isCancelled()) {
-                this.irModel.addServiceResult(serviceResult);
-            } else {
-                StatusBar.show("Error occured during process : " + serviceResult.getErrorMessage());
-            }
+    private static Throwable getRootCause(final Throwable th) {
+        Throwable parent = th;
+        while (parent.getCause() != null) {
+            parent = parent.getCause();
         }
+        return parent;
+    }
+
+    /**
+     * Jobs submitted together (one run or one parameter sweep):
+     * failures are shown in a single error dialog once all jobs are finished (EDT only)
+     */
+    static final class JobBatch {
+
+        /** number of jobs */
+        private final int size;
+        /** number of finished jobs */
+        private int finished = 0;
+        /** number of failed jobs */
+        private int failures = 0;
+        /** first failure */
+        private Exception firstFailure = null;
 
         /**
-         * Refresh GUI when no data (null returned or cancelled) invoked by the Swing Event Dispatcher Thread (Swing EDT)
-         * @param cancelled true if task cancelled; false if null returned by computeInBackground()
+         * @param size number of jobs
          */
-        @Override
-        public void refreshNoData(final boolean cancelled) {
-            // action finished, we can change state.
-            parentAction.setRunningState(irModel, false);
+        JobBatch(final int size) {
+            this.size = size;
         }
 
-        @Override
-        public void handleException(ExecutionException ee) {
-            // action finished, we can change state.
-            parentAction.setRunningState(irModel, false);
-
-            // filter some exceptions to avoid feedback report
-            if (filterNetworkException(ee)) {
-                MessagePane.showErrorMessage("Please check your network setup", "Please check your network setup", ee);
-            } else {
-                super.handleException(ee);
+        void addFailure(final Exception e) {
+            failures++;
+            if (firstFailure == null) {
+                firstFailure = e;
             }
-
-            StatusBar.show("Error occured during process");
         }
 
-        public boolean filterNetworkException(Exception e) {
-            Throwable c = getRootCause(e);
-            return c != null
-                    && (c instanceof UnknownHostException
-                    || c instanceof ConnectTimeoutException);
-        }
+        void jobFinished() {
+            finished++;
+            if ((finished != size) || (firstFailure == null)) {
+                return;
+            }
+            final String message = (size == 1) ? "Error occured during process"
+                    : "Error occured during process: " + failures + " / " + size + " jobs failed (see the 'Job queue' window)";
 
-        private static Throwable getRootCause(final Throwable th) {
-            Throwable parent = th;
-            while (parent.getCause() != null) {
-                parent = parent.getCause();
+            // filter some exceptions to avoid feedback report
+            if (filterNetworkException(firstFailure)) {
+                MessagePane.showErrorMessage("Please check your network setup", "Please check your network setup", firstFailure);
+            } else {
+                MessagePane.showErrorMessage(message, firstFailure);
             }
-            return parent;
+            StatusBar.show(message);
         }
     }
 }
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.gui.action;
+
+import fr.jmmc.jmcs.App;
+import fr.jmmc.jmcs.gui.action.RegisteredAction;
+import fr.jmmc.jmcs.gui.component.MessagePane;
+import fr.jmmc.jmcs.gui.component.StatusBar;
+import fr.jmmc.oimaging.model.IRModel;
+import fr.jmmc.oimaging.model.IRModelManager;
+import fr.jmmc.oimaging.services.ParameterSweep;
+import fr.jmmc.oimaging.services.Service;
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Run a hyper-parameter sweep: one job per combination of the given keyword values,
+ * executed in parallel by the job queue; results are added as soon as each job completes.
+ */
+public final class SweepAction extends RegisteredAction {
+
+    /** default serial UID for Serializable interface */
+    private static final long serialVersionUID = 1;
+    /** Class name. This name is used to register to the ActionRegistrar */
+    public final static String className = SweepAction.class.getName();
+    /** Action name. This name is used to register to the ActionRegistrar */
+    public final static String actionName = "runSweep";
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(className);
+
+    /** default sweep definition */
+    private static final String DEFAULT_DEFINITION = "# one keyword per line: KEYWORD = list (v1, v2 ...) or range (start:stop:count or start:stop:countlog)\n"
+            + "RGL_WGT = 1e3:1e6:4log\n";
+
+    /* members */
+    /** last sweep definition */
+    private String definition = DEFAULT_DEFINITION;
+
+    /**
+     * Public constructor that automatically register the action in RegisteredAction.
+     */
+    public SweepAction() {
+        super(className, actionName);
+    }
+
+    /**
+     * Handle the action event
+     * @param evt action event
+     */
+    @Override
+    public void actionPerformed(final ActionEvent evt) {
+        logger.debug("actionPerformed");
+
+        final IRModel irModel = IRModelManager.getInstance().getIRModel();
+        final Service service = irModel.getSelectedService();
+
+        final JTextArea jTextArea = new JTextArea(definition, 8, 60);
+        jTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, jTextArea.getFont().getSize()));
+
+        final JPanel jPanel = new JPanel(new BorderLayout());
+        jPanel.add(new JLabel("Parameter sweep for " + service + " (max " + ParameterSweep.MAX_JOBS + " jobs):"), BorderLayout.NORTH);
+        jPanel.add(new JScrollPane(jTextArea), BorderLayout.CENTER);
+
+        if (JOptionPane.showConfirmDialog(App.getFrame(), jPanel, "Parameter sweep",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        definition = jTextArea.getText();
+
+        final ParameterSweep sweep;
+        try {
+            sweep = ParameterSweep.parse(definition, irModel.getImageOiData().getInputParam());
+        } catch (IllegalArgumentException iae) {
+            MessagePane.showErrorMessage("Invalid parameter sweep: " + iae.getMessage());
+            return;
+        }
+        final List<String> failures = new ArrayList<String>();
+        sweep.validate(service, failures);
+        if (!failures.isEmpty()) {
+            MessagePane.showErrorMessage("Invalid parameter sweep: " + failures);
+            return;
+        }
+        logger.info("actionPerformed: {}", sweep);
+
+        final String cliOptions = irModel.getCliOptions();
+        final List<Map<String, Object>> combinations = sweep.expand();
+        // failures are reported once for the whole sweep:
+        final RunAction.JobBatch batch = new RunAction.JobBatch(combinations.size());
+
+        for (Map<String, Object> keywordValues : combinations) {
+            // input files are written in background (job pipeline):
+            RunAction.submit(irModel, service, cliOptions, irModel.prepareInput(keywordValues), null, batch);
+        }
+        StatusBar.show("Spawn " + combinations.size() + " " + service + " processes (sweep)");
+    }
+}
@@ -9,8 +9,11 @@ import fr.jmmc.jmcs.util.DateUtils;
 import fr.jmmc.jmcs.util.FileUtils;
 import fr.jmmc.jmcs.util.StringUtils;
 import fr.jmmc.oiexplorer.core.util.FitsImageUtils;
+import fr.jmmc.oimaging.services.Continuation;
+import fr.jmmc.oimaging.services.FitsHduIndex;
 import fr.jmmc.oimaging.services.Service;
 import fr.jmmc.oimaging.services.ServiceList;
+import fr.jmmc.oimaging.services.ResultStore;
 import fr.jmmc.oimaging.services.ServiceResult;
 import fr.jmmc.oitools.image.FitsImage;
 import fr.jmmc.oitools.image.FitsImageFile;
@@ -31,10 +34,16 @@ import fr.nom.tam.fits.FitsDate;
 import fr.nom.tam.fits.FitsException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -66,6 +75,14 @@ public final class IRModel {
         NULL_IMAGE_HDU.setHduName("[No Image]");
     }
 
+    /** result file processing (also applied when reloaded from the result store) */
+    private static final ServiceResult.FileProcessor RESULT_FILE_PROCESSOR = new ServiceResult.FileProcessor() {
+        @Override
+        public void process(final ServiceResult serviceResult, final OIFitsFile oiFitsFile) {
+            processResultFile(serviceResult, oiFitsFile);
+        }
+    };
+
     public static boolean isImageNull(final FitsImageHDU imageHdu) {
         return (imageHdu == null || imageHdu == NULL_IMAGE_HDU);
     }
@@ -103,7 +120,7 @@ public final class IRModel {
      * is used in the GUI for selecting an initial image or a regulation image.
      * unicity of HDU_NAME among the library.
      */
-    private final List<FitsImageHDU> imageLibrary = new LinkedList<FitsImageHDU>();
+    private final ImageLibrary imageLibrary = new ImageLibrary();
     /** List model of target names */
     private final GenericListModel<String> targetListModel = new GenericListModel<String>(new ArrayList<String>(10), true);
     /** List of results */
@@ -117,11 +134,16 @@ public final class IRModel {
      */
     private final AtomicInteger resultCounter = new AtomicInteger(0);
 
-    /** status flag : set by RunAction */
-    private boolean running;
-
     /** export counter */
     private int exportCount;
+    /** version of the OIData tables (incremented when an oifits file is loaded) */
+    private int oidataVersion = 0;
+    /** result loaded as input that may be continued (warm start) */
+    private ServiceResult continuationSource = null;
+    /** OIData version when the continuation source was loaded */
+    private int continuationVersion = -1;
+    /** last prepared input (validated version and file) shared by preparation tasks */
+    private final PreparedInput preparedInput = new PreparedInput();
 
     protected IRModel() {
         reset();
@@ -136,55 +158,236 @@ public final class IRModel {
         this.selectedInputImageHDU = null;
         this.selectedRglPrioImageHdu = null;
         this.imageLibrary.clear();
+        for (ServiceResult serviceResult : this.serviceResults) {
+            ResultStore.getInstance().remove(serviceResult);
+        }
         this.serviceResults.clear();
         this.resultCounter.set(0);
+        this.continuationSource = null;
 
-        this.running = false;
         this.exportCount = 0;
 
         // reset oifitsFile and targetListModel
         resetOIFits();
     }
 
-    public File prepareTempFile() throws FitsException, IOException {
-        final OIFitsFile oiFitsFile = this.oifitsFile;
-        // validate OIFITS:
-        final OIFitsChecker checker = new OIFitsChecker();
-        oiFitsFile.check(checker);
-        // log validation results
-        logger.info("validation results:\n{}", checker.getCheckReport());
+    /**
+     * Snapshot the model (EDT) and return the task writing the input file of a new run
+     * (to be run on a worker thread, see JobQueue.submit()).
+     * OIFits validation is skipped while the OIData tables are unchanged (same version),
+     * the previous input file is reused if the whole input is unchanged
+     * and only its input parameter HDU is replaced if the OIData tables and images are unchanged.
+     * @param keywordValues input parameter keyword values to use (sweep) or null
+     * @return task returning the input file
+     */
+    public Callable<File> prepareInput(final Map<String, Object> keywordValues) {
+        // copy of the file (shared OIData tables) because the input form will modify the oifitsfile:
+        final OIFitsFile snapshot = new OIFitsFile(this.oifitsFile);
+        final ImageOiInputParam inputParam = snapshot.getImageOiData().getInputParam();
+
+        if (keywordValues != null) {
+            for (Map.Entry<String, Object> e : keywordValues.entrySet()) {
+                inputParam.setKeywordValue(e.getKey(), e.getValue());
+            }
+        }
+        final InputSignature signature = new InputSignature(oidataVersion, inputParam, this.oifitsFile.getFitsImageHDUs());
+        final File tmpFile = FileUtils.getTempFile(getTargetName(snapshot) + "_" + DateUtils.now_datetime() + "_" + (exportCount++) + ".fits");
 
-        // store original filename
-        final String originalAbsoluteFilePath = oiFitsFile.getAbsoluteFilePath();
+        return new Callable<File>() {
+            @Override
+            public File call() throws FitsException, IOException {
+                return writeTempFile(snapshot, signature, tmpFile);
+            }
+        };
+    }
 
-        File tmpFile = null;
-        try {
-            // get target name:
-            String targetName = null;
-            if (oiFitsFile.hasOiTarget()) {
-                final String[] targets = oiFitsFile.getOiTarget().getTarget();
-                if (targets != null && targets.length >= 1) {
-                    targetName = StringUtils.replaceNonAlphaNumericCharsByUnderscore(targets[0]);
+    /**
+     * Prepare the continuation (warm start) of the result loaded as input if possible:
+     * OIData tables are unchanged, same service and the previous job workspace is still kept by the server.
+     * The delta file gets only the changed input keywords and the selected images.
+     * @return continuation or null if the whole input must be run
+     */
+    public Continuation prepareContinuation() {
+        final ServiceResult previous = this.continuationSource;
+        if ((previous == null) || (continuationVersion != oidataVersion) || !previous.isContinuable()
+                || (previous.getInputParam() == null) || (previous.getService() == null) || (selectedService == null)
+                || !previous.getService().getProgram().equals(selectedService.getProgram())
+                || (previous.getService().getExecMode() != selectedService.getExecMode())) {
+            return null;
+        }
+        final ImageOiInputParam inputParam = this.oifitsFile.getImageOiData().getInputParam();
+        final ImageOiInputParam previousParam = previous.getInputParam();
+
+        final OIFitsFile delta = new OIFitsFile(OIFitsStandard.VERSION_1);
+        final ImageOiInputParam deltaParam = delta.getImageOiData().getInputParam();
+        final List<String> changedKeywords = new ArrayList<>();
+
+        for (KeywordMeta meta : inputParam.getKeywordsDesc().values()) {
+            final String name = meta.getName();
+            final Object value = inputParam.getKeywordValue(name);
+            final Object previousValue = (previousParam.hasKeywordMeta(name)) ? previousParam.getKeywordValue(name) : null;
+
+            // init image always given (last image of the previous job):
+            if (KEYWORD_INIT_IMG.equals(name) || ((value != null) ? !value.equals(previousValue) : (previousValue != null))) {
+                if (!deltaParam.hasKeywordMeta(name)) {
+                    deltaParam.addKeyword(meta);
                 }
+                deltaParam.setKeywordValue(name, value);
+                changedKeywords.add(name);
             }
-            if (StringUtils.isEmpty(targetName)) {
-                targetName = "undefined-target";
-            }
+        }
+        // selected images (init image and new regulation prior):
+        if (!isImageNull(selectedInputImageHDU)) {
+            delta.getFitsImageHDUs().add(selectedInputImageHDU);
+        }
+        if (!isImageNull(selectedRglPrioImageHdu) && (selectedRglPrioImageHdu != selectedInputImageHDU)
+                && changedKeywords.contains(KEYWORD_RGL_PRIO)) {
+            delta.getFitsImageHDUs().add(selectedRglPrioImageHdu);
+        }
+        final File deltaFile = FileUtils.getTempFile(getTargetName(this.oifitsFile) + "_" + DateUtils.now_datetime() + "_" + (exportCount++) + ".delta.fits");
 
-            // use target name + current date:
-            tmpFile = FileUtils.getTempFile(targetName + "_" + DateUtils.now_datetime() + "_" + exportCount + ".fits");
+        return new Continuation(previous, changedKeywords, new Callable<File>() {
+            @Override
+            public File call() throws FitsException, IOException {
+                OIFitsWriter.writeOIFits(deltaFile.getAbsolutePath(), delta);
+                return deltaFile;
+            }
+        });
+    }
 
+    /**
+     * Write the input file (worker thread)
+     * @param oiFitsFile model snapshot
+     * @param signature snapshot signature
+     * @param tmpFile file to write
+     * @return written file (a link to or a copy of the previous input file if the input is unchanged)
+     * @throws FitsException if the fits can not be written
+     * @throws IOException IO failure
+     */
+    private File writeTempFile(final OIFitsFile oiFitsFile, final InputSignature signature, final File tmpFile) throws FitsException, IOException {
+        File template = null;
+        synchronized (preparedInput) {
+            if ((preparedInput.file != null) && preparedInput.file.isFile()) {
+                if (signature.equals(preparedInput.signature)) {
+                    // each job needs its own input file as result file names derive from the input file name:
+                    logger.info("writeTempFile: input unchanged, reuse {} as {}", preparedInput.file, tmpFile);
+                    try {
+                        Files.createLink(tmpFile.toPath(), preparedInput.file.toPath());
+                    } catch (IOException | UnsupportedOperationException e) {
+                        logger.debug("writeTempFile: link failure, copy file", e);
+                        Files.copy(preparedInput.file.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return tmpFile;
+                }
+                if (signature.hasSameData(preparedInput.signature)) {
+                    template = preparedInput.file;
+                }
+            }
+            if (preparedInput.checkedVersion != signature.oidataVersion) {
+                // validate OIFITS:
+                final OIFitsChecker checker = new OIFitsChecker();
+                oiFitsFile.check(checker);
+                // log validation results
+                logger.info("validation results:\n{}", checker.getCheckReport());
+
+                preparedInput.checkedVersion = signature.oidataVersion;
+            }
+        }
+        boolean written = false;
+        if (template != null) {
+            // same OIData tables and images (sweep): copy their serialized HDUs and only write the input parameters:
+            try {
+                writeInputParam(template, oiFitsFile.getImageOiData().getInputParam(), tmpFile);
+                written = true;
+                logger.info("writeTempFile: OIData unchanged, input parameters of {} replaced in {}", template, tmpFile);
+            } catch (IOException | FitsException | RuntimeException e) {
+                logger.info("writeTempFile: failure to replace input parameters, write the whole file", e);
+            }
+        }
+        if (!written) {
             // Pre-processing:
             // Ensure OIFITS File is correct.
             OIFitsWriter.writeOIFits(tmpFile.getAbsolutePath(), oiFitsFile);
-        } finally {
-            //restore filename
-            oifitsFile.setAbsoluteFilePath(originalAbsoluteFilePath);
-            exportCount++;
+        }
+
+        synchronized (preparedInput) {
+            preparedInput.signature = signature;
+            preparedInput.file = tmpFile;
         }
         return tmpFile;
     }
 
+    /**
+     * Write the given file as a copy of the template file with the given input parameter HDU
+     * @param template previous input file (same OIData tables and images)
+     * @param inputParam input parameters to write
+     * @param tmpFile file to write
+     * @throws FitsException if the fits can not be written
+     * @throws IOException IO failure
+     */
+    private static void writeInputParam(final File template, final ImageOiInputParam inputParam, final File tmpFile) throws FitsException, IOException {
+        // input parameters alone (as the continuation delta file):
+        final OIFitsFile paramFile = new OIFitsFile(OIFitsStandard.VERSION_1);
+        final ImageOiInputParam params = paramFile.getImageOiData().getInputParam();
+
+        for (KeywordMeta meta : inputParam.getKeywordsDesc().values()) {
+            final String name = meta.getName();
+            if (!params.hasKeywordMeta(name)) {
+                params.addKeyword(meta);
+            }
+            params.setKeywordValue(name, inputParam.getKeywordValue(name));
+        }
+        params.getHeaderCards().addAll(inputParam.getHeaderCards());
+
+        final File paramTmpFile = new File(tmpFile.getAbsolutePath() + ".param");
+        try {
+            OIFitsWriter.writeOIFits(paramTmpFile.getAbsolutePath(), paramFile);
+
+            final FitsHduIndex.Hdu oldHdu = FitsHduIndex.read(template).find(FitsHduIndex.EXTNAME_INPUT_PARAM);
+            final FitsHduIndex.Hdu newHdu = FitsHduIndex.read(paramTmpFile).find(FitsHduIndex.EXTNAME_INPUT_PARAM);
+            if ((oldHdu == null) || (newHdu == null)) {
+                throw new IOException("Missing " + FitsHduIndex.EXTNAME_INPUT_PARAM + " HDU");
+            }
+            try (FileChannel src = FileChannel.open(template.toPath(), StandardOpenOption.READ);
+                    FileChannel param = FileChannel.open(paramTmpFile.toPath(), StandardOpenOption.READ);
+                    FileChannel dest = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                final long oldEnd = oldHdu.getOffset() + oldHdu.getSize();
+                transfer(src, 0L, oldHdu.getOffset(), dest);
+                transfer(param, newHdu.getOffset(), newHdu.getSize(), dest);
+                transfer(src, oldEnd, src.size() - oldEnd, dest);
+            }
+        } finally {
+            paramTmpFile.delete();
+        }
+    }
+
+    private static void transfer(final FileChannel src, final long position, final long count, final FileChannel dest) throws IOException {
+        long done = 0L;
+        while (done < count) {
+            final long n = src.transferTo(position + done, count - done, dest);
+            if (n <= 0L) {
+                throw new IOException("Unexpected end of file");
+            }
+            done += n;
+        }
+    }
+
+    private static String getTargetName(final OIFitsFile oiFitsFile) {
+        String targetName = null;
+        if (oiFitsFile.hasOiTarget()) {
+            final String[] targets = oiFitsFile.getOiTarget().getTarget();
+            if (targets != null && targets.length >= 1) {
+                targetName = StringUtils.replaceNonAlphaNumericCharsByUnderscore(targets[0]);
+            }
+        }
+        if (StringUtils.isEmpty(targetName)) {
+            targetName = "undefined-target";
+        }
+        return targetName;
+    }
+
     private void resetOIFits() {
         loadOIFits(new OIFitsFile(OIFitsStandard.VERSION_1));
         initSpecificParams(true); // force reset of specific parameters values
@@ -219,6 +422,7 @@ public final class IRModel {
     private void loadOIFits(final OIFitsFile oifitsFile, final boolean isResult) {
         // change current model immediately:
         this.oifitsFile = oifitsFile;
+        this.oidataVersion++;
 
         // get ImageOiData or create a new one
         final ImageOiInputParam inputParam = oifitsFile.getImageOiData().getInputParam();
@@ -363,19 +567,13 @@ public final class IRModel {
         final int nHdus = hdus.size();
         logger.debug("addFitsImageHDUs: {} ImageHDUs from {}", nHdus, filename);
 
-        final List<FitsImageHDU> prepHdus = new ArrayList<>(nHdus);
-
-        hdus.forEach(hdu -> {
-            // prepare images (negative values, padding, orientation):
-            FitsImageUtils.prepareImages(hdu);
-            prepHdus.add(hdu);
-        });
+        // prepare images (negative values, padding, orientation) in parallel:
+        ImagePreparation.prepare(hdus);
 
-        final int nPrepHdus = prepHdus.size();
-        final List<FitsImageHDU> libraryHdus = new ArrayList<>(nPrepHdus);
+        final List<FitsImageHDU> libraryHdus = new ArrayList<>(nHdus);
 
-        for (int i = 0; i < nPrepHdus; i++) {
-            final FitsImageHDU hdu = prepHdus.get(i);
+        for (int i = 0; i < nHdus; i++) {
+            final FitsImageHDU hdu = hdus.get(i);
             FitsImageHDU hduRef = null;
 
             // if earlySkipInitRgl enabled, we early skip when role is INIT or RGL
@@ -472,9 +670,12 @@ public final class IRModel {
     public boolean loadResultAsInput(ServiceResult serviceResult, boolean useLastImgAsInit) {
         boolean success = false;
 
-        if (serviceResult.isValid()) {
+        // result file (reloaded if evicted from the result store):
+        final OIFitsFile resultFile = (serviceResult.isValid()) ? serviceResult.getOifitsFile() : null;
+
+        if (resultFile != null) {
             // copy of the file. because the input form will modify the oifitsfile.
-            OIFitsFile oifitsfile = new OIFitsFile(serviceResult.getOifitsFile());
+            OIFitsFile oifitsfile = new OIFitsFile(resultFile);
 
             // find last img HDU if needed, and if it exists in the oifitsfile
             FitsImageHDU lastImgHdu = null;
@@ -493,6 +694,10 @@ public final class IRModel {
 
             this.loadOIFits(oifitsfile, true);
 
+            // remote job workspace kept by the server: next run may continue it while OIData are unchanged
+            this.continuationSource = (serviceResult.isContinuable()) ? serviceResult : null;
+            this.continuationVersion = oidataVersion;
+
             // if last img must becomes init image, set the equivalent of last img in library as init image.
             // if lastImgHdu == null, it will correctly set init img to null.
             if (useLastImgAsInit) {
@@ -678,7 +883,7 @@ public final class IRModel {
      * @return imageLibrary read-only (all write will throw an exception).
      */
     public List<FitsImageHDU> getImageLibrary() {
-        return Collections.unmodifiableList(imageLibrary);
+        return imageLibrary.asList();
     }
 
     /** 
@@ -736,18 +941,8 @@ public final class IRModel {
             // adding a date suffix (yyyy-MM-dd'T'HH:mm:ss)
             String suffix = "-" + DateUtils.now().substring(0, 19);
             if (existHduNameInImageLibrary(tryHduName + suffix)) {
-                // adding a _N suffix to the date suffix
-                int idx = 1;
-                String suffixAlt = suffix + "_" + idx;
-                for (;;) {
-                    if (!existHduNameInImageLibrary(tryHduName + suffixAlt)) {
-                        break;
-                    }
-                    // use another suffix (_nn):
-                    idx++;
-                    suffixAlt = suffix + "_" + idx;
-                }
-                suffix = suffixAlt;
+                // adding a _N suffix (_nn) to the date suffix
+                suffix += "_" + imageLibrary.nextSuffixIndex(tryHduName + suffix);
             }
 
             // Always ensure name fits in header card (we truncate tryHduName, not suffix)
@@ -769,13 +964,7 @@ public final class IRModel {
     }
 
     private boolean existHduNameInImageLibrary(final String hduName) {
-        // traverses the library until an equivalent HDU is found
-        for (FitsImageHDU libraryHDU : imageLibrary) {
-            if (libraryHDU.getHduName().equals(hduName)) {
-                return true;
-            }
-        }
-        return false;
+        return imageLibrary.containsName(hduName);
     }
 
     /**
@@ -793,36 +982,12 @@ public final class IRModel {
      * return null when no equivalent HDU has been found, or when hdu is null.
      */
     private FitsImageHDU findInImageLibrary(final FitsImageHDU hdu) {
-        // no need to search if hdu is null
-        if (hdu == null) {
-            return null;
-        }
-        // traverses the library until an equivalent HDU is found
-        for (FitsImageHDU libraryHDU : imageLibrary) {
-            if (hduEquals(libraryHDU, hdu)) {
-                return libraryHDU; // return the HDU from the library, not the target one !
-            }
+        // checksum index lookup (null if hdu is null or not found):
+        final FitsImageHDU libraryHDU = imageLibrary.find(hdu);
+        if (logger.isDebugEnabled() && (hdu != null)) {
+            logger.debug("hdu {} match: {}", hdu.getHduName(), (libraryHDU == null) ? "null" : libraryHDU.getHduName());
         }
-        // when no equivalent HDU is found, return null
-        return null;
-    }
-
-    /** 
-     * Identity function to be used for HDUs in imageLibrary.
-     * @param first HDU to compare to second. (optional)
-     * @param second HDU to compare to first. (optional)
-     * @return true if both contains same reference,
-     * or if both are null, or if both have same checksum. false otherwise.
-     * return false if one of them has checksum = 0. The decision to compute expensively the checksum is on the caller.
-     */
-    private static boolean hduEquals(final FitsImageHDU first, final FitsImageHDU second) {
-        boolean match = FitsImageHDU.MATCHER.match(first, second);
-        if (logger.isDebugEnabled()) {
-            logger.debug("hdus {} and {} match: {}",
-                    (first == null) ? "null" : first.getHduName(),
-                    (second == null) ? "null" : second.getHduName(), match);
-        }
-        return match;
+        return libraryHDU; // return the HDU from the library, not the target one !
     }
 
     // --- ServiceResult handling ---
@@ -837,13 +1002,11 @@ public final class IRModel {
 
     public void addServiceResult(final ServiceResult serviceResult) {
         loadLog(serviceResult);
-        // Load result:
+        // Read result parameters only (OIData tables and images are loaded on demand):
         try {
-            serviceResult.loadOIFitsFile();
-        } catch (FitsException fe) {
-            logger.error("Can't get imageHDU from result oifile", fe);
+            serviceResult.loadOIFitsHeaders();
         } catch (IOException ioe) {
-            logger.error("Can't get imageHDU from result oifile", ioe);
+            logger.error("Can't read the result oifile", ioe);
         }
         // last results is added at the beginning:
         getResultSets().add(0, serviceResult);
@@ -851,38 +1014,53 @@ public final class IRModel {
         if (serviceResult.isValid()) {
             serviceResult.setIndex(resultCounter.incrementAndGet());
 
-            postProcessOIFitsFile(serviceResult);
-
-            // prepare images in the result
-            for (FitsImageHDU fihdu : serviceResult.getOifitsFile().getFitsImageHDUs()) {
-                // set a hdu name if missing
-                if (fihdu.getHduName() == null || fihdu.getHduName().isEmpty()) {
-                    String filename = serviceResult.getOifitsFile().getFileName();
-                    if (filename == null || filename.isEmpty()) {
-                        fihdu.setHduName("untitled");
-                    } else { // use filename, maximum 50 characters
-                        fihdu.setHduName(filename.substring(0, Math.min(50, filename.length())));
-                    }
-                }
-                FitsImageUtils.prepareImages(fihdu);
+            // process the result file when loaded (also when reloaded after eviction from the result store):
+            serviceResult.setFileProcessor(RESULT_FILE_PROCESSOR);
+            if (serviceResult.isOifitsFileLoaded()) {
+                processResultFile(serviceResult, serviceResult.getOifitsFile());
+            } else {
+                postProcessOIFitsFile(serviceResult, serviceResult.getOutputParam());
             }
 
-            // better labels for images in the viewer panel
-            updateImageIdentifiers(serviceResult);
+            // keep the result file in memory within the memory budget:
+            ResultStore.getInstance().add(serviceResult);
         }
         // notify model update
         IRModelManager.getInstance().fireIRModelResultListChanged(this);
     }
 
-    /** 
-     * Add some OImaging specific keywords in the OIFitsFile.
-     * @param serviceResult required. serviceResult.getOiFitsFile() must not return null.
+    /**
+     * Process the result file: OImaging keywords, image preparation and identifiers
+     * @param serviceResult service result
+     * @param oiFitsFile result file
      */
-    private static void postProcessOIFitsFile(final ServiceResult serviceResult) {
-        final OIFitsFile oiFitsFile = serviceResult.getOifitsFile();
+    private static void processResultFile(final ServiceResult serviceResult, final OIFitsFile oiFitsFile) {
+        postProcessOIFitsFile(serviceResult, oiFitsFile.getImageOiData().getOutputParam());
+
+        for (FitsImageHDU fihdu : oiFitsFile.getFitsImageHDUs()) {
+            // set a hdu name if missing
+            if (fihdu.getHduName() == null || fihdu.getHduName().isEmpty()) {
+                String filename = oiFitsFile.getFileName();
+                if (filename == null || filename.isEmpty()) {
+                    fihdu.setHduName("untitled");
+                } else { // use filename, maximum 50 characters
+                    fihdu.setHduName(filename.substring(0, Math.min(50, filename.length())));
+                }
+            }
+        }
+        // prepare images in the result (parallel):
+        ImagePreparation.prepare(oiFitsFile.getFitsImageHDUs());
 
-        final ImageOiOutputParam outputParams = oiFitsFile.getImageOiData().getOutputParam();
+        // better labels for images in the viewer panel
+        updateImageIdentifiers(oiFitsFile.getFitsImageHDUs(), "result#" + serviceResult.getIndex());
+    }
 
+    /** 
+     * Add some OImaging specific keywords in the output parameters of the result.
+     * @param serviceResult required.
+     * @param outputParams output parameters of the result file. required.
+     */
+    private static void postProcessOIFitsFile(final ServiceResult serviceResult, final ImageOiOutputParam outputParams) {
         outputParams.addKeyword(KEYWORD_RATING);
         // set KEYWORD_RATING if missing
         outputParams.setKeywordDefaultInt(KEYWORD_RATING.getName(), 0);
@@ -907,12 +1085,16 @@ public final class IRModel {
 
     public void removeServiceResult(ServiceResult serviceResultToDelete) {
         getResultSets().remove(serviceResultToDelete);
+        ResultStore.getInstance().remove(serviceResultToDelete);
         // notify model update
         IRModelManager.getInstance().fireIRModelResultListChanged(this);
     }
 
     public void removeServiceResults(List<ServiceResult> selectedServicesList) {
         getResultSets().removeAll(selectedServicesList);
+        for (ServiceResult serviceResult : selectedServicesList) {
+            ResultStore.getInstance().remove(serviceResult);
+        }
         // notify model update
         IRModelManager.getInstance().fireIRModelResultListChanged(this);
     }
@@ -934,16 +1116,12 @@ public final class IRModel {
         updateImageIdentifiers(fitsImageHDU, "(mem)", 0);
     }
 
-    private void updateImageIdentifiers(ServiceResult serviceResult) {
-        updateImageIdentifiers(serviceResult.getOifitsFile().getFitsImageHDUs(), "result#" + serviceResult.getIndex());
-    }
-
     /** 
      * Update fitsImageIdentifier to be more user friendly in the GUI
      * @param fitsImageHDUs list of HDU to rename. the order will be used as the number so be exhaustive.
      * @param source where do the image come from. if from a run, it will be an index number. if not, the file name.
      */
-    private void updateImageIdentifiers(final List<FitsImageHDU> fitsImageHDUs, final String source) {
+    private static void updateImageIdentifiers(final List<FitsImageHDU> fitsImageHDUs, final String source) {
         int hduIndex = 0;
         for (FitsImageHDU fitsImageHDU : fitsImageHDUs) {
             updateImageIdentifiers(fitsImageHDU, source, hduIndex);
@@ -951,7 +1129,7 @@ public final class IRModel {
         }
     }
 
-    private void updateImageIdentifiers(final FitsImageHDU fitsImageHDU, final String source, final int hduIndex) {
+    private static void updateImageIdentifiers(final FitsImageHDU fitsImageHDU, final String source, final int hduIndex) {
         for (FitsImage fitsImage : fitsImageHDU.getFitsImages()) {
             String name = fitsImageHDU.getHduName() + " " + source + " hdu#" + hduIndex;
             if (fitsImage.getImageCount() > 1) {
@@ -1059,16 +1237,73 @@ public final class IRModel {
         }
     }
 
-    public boolean isRunning() {
-        return running;
+    @Override
+    public String toString() {
+        return "IRModel [" + oifitsFile + ", " + imageLibrary + ", " + selectedService + "]";
     }
 
-    public void setRunning(boolean running) {
-        this.running = running;
+    /**
+     * Last prepared input (guarded by itself)
+     */
+    private static final class PreparedInput {
+
+        /** OIData version validated last */
+        int checkedVersion = -1;
+        /** signature of the last written input */
+        InputSignature signature = null;
+        /** last written input file */
+        File file = null;
     }
 
-    @Override
-    public String toString() {
-        return "IRModel [" + oifitsFile + ", " + imageLibrary + ", " + selectedService + "]";
+    /**
+     * Signature of a run input: OIData version, input parameter values and images (same instances)
+     */
+    private static final class InputSignature {
+
+        /** OIData version */
+        final int oidataVersion;
+        /** input parameter values */
+        final Map<String, Object> params;
+        /** images */
+        final List<FitsImageHDU> images;
+
+        InputSignature(final int oidataVersion, final ImageOiInputParam inputParam, final List<FitsImageHDU> images) {
+            this.oidataVersion = oidataVersion;
+            this.params = new HashMap<>();
+            for (KeywordMeta meta : inputParam.getKeywordsDesc().values()) {
+                params.put(meta.getName(), inputParam.getKeywordValue(meta.getName()));
+            }
+            this.images = new ArrayList<>(images);
+        }
+
+        /**
+         * @param other other signature or null
+         * @return true if the OIData version and images are the same (input parameters may differ)
+         */
+        boolean hasSameData(final InputSignature other) {
+            if ((other == null) || (oidataVersion != other.oidataVersion) || (images.size() != other.images.size())) {
+                return false;
+            }
+            for (int i = 0, len = images.size(); i < len; i++) {
+                if (images.get(i) != other.images.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof InputSignature)) {
+                return false;
+            }
+            final InputSignature other = (InputSignature) obj;
+            return hasSameData(other) && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * oidataVersion + params.hashCode();
+        }
     }
 }
@@ -20,16 +20,20 @@ import fr.jmmc.oitools.meta.OIFitsStandard;
 import fr.jmmc.oitools.model.OIFitsChecker;
 import fr.jmmc.oitools.model.OIFitsFile;
 import fr.jmmc.oitools.model.OIFitsLoader;
-import fr.jmmc.oitools.model.OIFitsWriter;
 import fr.jmmc.oitools.processing.Merger;
 import fr.nom.tam.fits.FitsException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import org.apache.commons.httpclient.auth.AuthenticationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +49,11 @@ public final class IRModelManager {
     private static final Logger logger = LoggerFactory.getLogger(IRModelManager.class);
     /** fits extension including '.' (dot) character ie '.fits' */
     public final static String FITS_EXTENSION = "." + MimeType.OIFITS.getExtension();
+    /** number of threads loading OIFits files (-DIRModelManager.loadThreads=N) */
+    private static final int LOAD_THREADS = Integer.getInteger("IRModelManager.loadThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /** shared load pool (lazy) */
+    private static ForkJoinPool loadPool = null;
 
     /** package name for JAXB generated code */
     //private final static String IRMODEL_JAXB_PATH = IRModel.class.getPackage().getName();
@@ -167,41 +176,128 @@ public final class IRModelManager {
         RecentFilesManager.addFile(file);
     }
 
-    public void loadOIFitsFiles(File[] files, final OIFitsChecker checker) throws IOException {
+    /**
+     * Listener notified while OIFits files are loaded (loading thread)
+     */
+    public interface LoadListener {
+
+        /**
+         * Called once the given file is loaded
+         * @param index number of files loaded (1..count)
+         * @param count number of files to load
+         * @param file loaded file
+         */
+        public void fileLoaded(final int index, final int count, final File file);
+    }
+
+    /**
+     * Load the given OIFits files in parallel then merge them into a single OIFits file (not added to the IR Model):
+     * this method blocks until all files are loaded so it must not be called from the EDT.
+     * Each file is loaded by its own task (load pool) with its own checker component (not thread-safe),
+     * then the given checker validates the loaded files in file order to give a single report.
+     * @param files files to load
+     * @param checker checker component (single report)
+     * @param listener optional listener notified once each file is loaded (may be null)
+     * @return merged OIFits file (or the loaded file if only one) or null if no file
+     * @throws IOException if a fits file can not be loaded
+     */
+    public OIFitsFile loadOIFitsFiles(final File[] files, final OIFitsChecker checker, final LoadListener listener) throws IOException {
         if (files == null || files.length == 0) {
-            return;
+            return null;
         }
         if (files.length == 1) {
-            loadOIFitsFile(files[0]);
-            return;
+            final OIFitsFile oiFitsFile = loadOIFits(files[0].getAbsolutePath(), checker);
+            if (listener != null) {
+                listener.fileLoaded(1, 1, files[0]);
+            }
+            return oiFitsFile;
         }
+        final long startTime = System.nanoTime();
 
-        // Load all OIFits files (blocking, not async):
-        final List<OIFitsFile> oiFitsFiles = new ArrayList<>(files.length);
+        // Load all OIFits files in parallel:
+        final ForkJoinPool pool = getLoadPool();
+        final List<ForkJoinTask<OIFitsFile>> tasks = new ArrayList<>(files.length);
+
+        for (final File file : files) {
+            tasks.add(pool.submit(new Callable<OIFitsFile>() {
+                @Override
+                public OIFitsFile call() throws IOException {
+                    // checker components are not thread-safe: one per file
+                    return loadOIFits(file.getAbsolutePath(), OIFitsChecker.newInstance());
+                }
+            }));
+        }
 
-        for (File file : files) {
-            // may throw IOException:
-            final OIFitsFile oiFitsFile = loadOIFits(file.getAbsolutePath(), checker);
-            if (oiFitsFile != null) {
-                oiFitsFiles.add(oiFitsFile);
+        final List<OIFitsFile> oiFitsFiles = new ArrayList<>(files.length);
+        try {
+            for (int i = 0; i < files.length; i++) {
+                // may throw IOException:
+                oiFitsFiles.add(getLoaded(tasks.get(i)));
+                if (listener != null) {
+                    listener.fileLoaded(i + 1, files.length, files[i]);
+                }
             }
+        } finally {
+            // cancel pending tasks on failure:
+            for (ForkJoinTask<OIFitsFile> task : tasks) {
+                task.cancel(false);
+            }
+        }
+        logger.info("loadOIFitsFiles: {} files loaded in {} ms.", files.length, 1e-6d * (System.nanoTime() - startTime));
+
+        // single report (file order):
+        for (OIFitsFile oiFitsFile : oiFitsFiles) {
+            oiFitsFile.check(checker);
         }
 
-        // Merge all into single temporary file:
+        // Merge all into single file:
         final OIFitsFile mergedOIFitsFile = Merger.process(oiFitsFiles.toArray(new OIFitsFile[oiFitsFiles.size()]));
         logger.debug("Merged OIFits file: {}", mergedOIFitsFile);
 
-        // Save temporary file:
+        // Note: the merged file is never written (no longer a true local file) as nothing reads it:
+        // run inputs are written by IRModel.prepareInput() and the OIFits collection (plot) only uses its path
+        // as the file identifier; so it gets a temporary file path as identifier only:
         final File file = FileUtils.getTempFile("merged-", FITS_EXTENSION);
+        mergedOIFitsFile.setAbsoluteFilePath(file.getAbsolutePath());
+
+        logger.info("loadOIFitsFiles: duration = {} ms.", 1e-6d * (System.nanoTime() - startTime));
+
+        return mergedOIFitsFile;
+    }
+
+    /**
+     * Wait for the given load task
+     * @param task load task
+     * @return loaded OIFits File
+     * @throws IOException if the fits file can not be loaded
+     */
+    private static OIFitsFile getLoaded(final ForkJoinTask<OIFitsFile> task) throws IOException {
         try {
-            StatusBar.show("saving merged file: " + file.getAbsolutePath());
-            OIFitsWriter.writeOIFits(file.getAbsolutePath(), mergedOIFitsFile);
-        } catch (FitsException fe) {
-            throw new IOException("Unable to save merged file : " + file.getAbsolutePath(), fe);
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading files");
+        } catch (ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Could not load the file", cause);
         }
+    }
 
-        // loaded file must represent a true local file:
-        loadOIFitsFile(mergedOIFitsFile);
+    /**
+     * @return the pool used to load OIFits files in parallel
+     */
+    private static synchronized ForkJoinPool getLoadPool() {
+        if (loadPool == null) {
+            logger.debug("getLoadPool: {} threads", LOAD_THREADS);
+            loadPool = new ForkJoinPool(LOAD_THREADS);
+        }
+        return loadPool;
     }
 
     public void loadOIFitsFile(File file) throws IOException {
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.model;
+
+import fr.jmmc.oitools.image.FitsImageHDU;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Image library (insertion order) indexed by checksum and HDU_NAME:
+ * equivalent HDU lookups and name collision checks do not match every HDU of the library.
+ * Several HDUs may share a checksum: they are tried in library order (FitsImageHDU.MATCHER) as a linear scan.
+ * HDUs without checksum (0) can only match by reference.
+ * As HDUs may change once added, the indexes are synchronized with their current checksum and HDU_NAME
+ * before each lookup (field reads only).
+ */
+final class ImageLibrary {
+
+    /* members */
+    /** HDUs in insertion order */
+    private final List<FitsImageHDU> hdus = new ArrayList<FitsImageHDU>();
+    /** read-only view */
+    private final List<FitsImageHDU> view = Collections.unmodifiableList(hdus);
+    /** index entries in insertion order */
+    private final List<Entry> entries = new ArrayList<Entry>();
+    /** index entries keyed by HDU (reference) */
+    private final Map<FitsImageHDU, Entry> entryByHdu = new IdentityHashMap<FitsImageHDU, Entry>();
+    /** entries keyed by checksum (library order) */
+    private final Map<Long, List<Entry>> byChecksum = new HashMap<Long, List<Entry>>();
+    /** entries keyed by HDU_NAME */
+    private final Map<String, List<Entry>> byName = new HashMap<String, List<Entry>>();
+    /** next _N suffix index to try keyed by name prefix (lower indexes are used) */
+    private final Map<String, Integer> suffixIndexes = new HashMap<String, Integer>();
+    /** insertion counter (library order) */
+    private long sequence = 0L;
+
+    /**
+     * @return read-only list of HDUs (insertion order)
+     */
+    List<FitsImageHDU> asList() {
+        return view;
+    }
+
+    int size() {
+        return hdus.size();
+    }
+
+    FitsImageHDU get(final int index) {
+        return hdus.get(index);
+    }
+
+    /**
+     * @param hdu HDU (reference)
+     * @return index of the given HDU or -1 if not in the library
+     */
+    int indexOf(final FitsImageHDU hdu) {
+        if ((hdu == null) || !entryByHdu.containsKey(hdu)) {
+            return -1;
+        }
+        for (int i = 0, len = hdus.size(); i < len; i++) {
+            if (hdus.get(i) == hdu) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add the given HDU (HDU_NAME set and unique, no equivalent HDU in the library)
+     * @param hdu HDU to add
+     */
+    void add(final FitsImageHDU hdu) {
+        final Entry entry = new Entry(hdu, sequence++);
+        hdus.add(hdu);
+        entries.add(entry);
+        entryByHdu.put(hdu, entry);
+        indexChecksum(entry);
+        indexName(entry);
+    }
+
+    /**
+     * Remove the HDU at the given index
+     * @param index index
+     * @return removed HDU
+     */
+    FitsImageHDU remove(final int index) {
+        final FitsImageHDU hdu = hdus.remove(index);
+        final Entry entry = entries.remove(index);
+        entryByHdu.remove(hdu);
+        unindex(byChecksum, Long.valueOf(entry.checksum), entry);
+        unindexName(entry);
+        return hdu;
+    }
+
+    void clear() {
+        hdus.clear();
+        entries.clear();
+        entryByHdu.clear();
+        byChecksum.clear();
+        byName.clear();
+        suffixIndexes.clear();
+    }
+
+    /**
+     * Find an equivalent HDU (same reference or same checksum, see FitsImageHDU.MATCHER)
+     * @param hdu HDU to look up (optional)
+     * @return first equivalent HDU from the library (library order) or null
+     */
+    FitsImageHDU find(final FitsImageHDU hdu) {
+        if (hdu == null) {
+            return null;
+        }
+        sync();
+
+        final Entry self = entryByHdu.get(hdu);
+        final long checksum = hdu.getChecksum();
+        if (checksum != 0L) {
+            final List<Entry> candidates = byChecksum.get(Long.valueOf(checksum));
+            if (candidates != null) {
+                for (Entry candidate : candidates) {
+                    // the hdu itself if an earlier HDU does not match:
+                    if ((self != null) && (self.sequence < candidate.sequence)) {
+                        return hdu;
+                    }
+                    if (FitsImageHDU.MATCHER.match(candidate.hdu, hdu)) {
+                        return candidate.hdu;
+                    }
+                }
+            }
+        }
+        return (self != null) ? hdu : null;
+    }
+
+    /**
+     * @param hduName HDU_NAME
+     * @return true if an HDU of the library has the given HDU_NAME
+     */
+    boolean containsName(final String hduName) {
+        sync();
+        return byName.containsKey(hduName);
+    }
+
+    /**
+     * Return the first _N suffix index (starting at 1) such as (prefix + "_" + N) is not used
+     * @param prefix name prefix
+     * @return suffix index
+     */
+    int nextSuffixIndex(final String prefix) {
+        sync();
+        final Integer last = suffixIndexes.get(prefix);
+        int idx = (last != null) ? last.intValue() : 1;
+        while (byName.containsKey(prefix + "_" + idx)) {
+            idx++;
+        }
+        suffixIndexes.put(prefix, Integer.valueOf(idx));
+        return idx;
+    }
+
+    /** re-index the HDUs whose checksum or HDU_NAME changed since indexed */
+    private void sync() {
+        for (int i = 0, len = entries.size(); i < len; i++) {
+            final Entry entry = entries.get(i);
+            final long checksum = entry.hdu.getChecksum();
+            if (checksum != entry.checksum) {
+                unindex(byChecksum, Long.valueOf(entry.checksum), entry);
+                indexChecksum(entry);
+            }
+            final String name = entry.hdu.getHduName();
+            if ((name != entry.name) && ((name == null) || !name.equals(entry.name))) {
+                unindexName(entry);
+                indexName(entry);
+            }
+        }
+    }
+
+    private void indexChecksum(final Entry entry) {
+        entry.checksum = entry.hdu.getChecksum();
+        if (entry.checksum != 0L) {
+            index(byChecksum, Long.valueOf(entry.checksum), entry);
+        }
+    }
+
+    private void indexName(final Entry entry) {
+        entry.name = entry.hdu.getHduName();
+        index(byName, entry.name, entry);
+    }
+
+    private void unindexName(final Entry entry) {
+        unindex(byName, entry.name, entry);
+        // a lower suffix index may be free again:
+        suffixIndexes.clear();
+    }
+
+    /** add the given entry keeping the library order */
+    private static <K> void index(final Map<K, List<Entry>> map, final K key, final Entry entry) {
+        List<Entry> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Entry>(1);
+            map.put(key, list);
+        }
+        int i = list.size();
+        while ((i > 0) && (list.get(i - 1).sequence > entry.sequence)) {
+            i--;
+        }
+        list.add(i, entry);
+    }
+
+    private static <K> void unindex(final Map<K, List<Entry>> map, final K key, final Entry entry) {
+        final List<Entry> list = map.get(key);
+        if ((list != null) && list.remove(entry) && list.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return hdus.toString();
+    }
+
+    /**
+     * Indexed HDU state
+     */
+    private static final class Entry {
+
+        /** HDU */
+        final FitsImageHDU hdu;
+        /** insertion order */
+        final long sequence;
+        /** indexed checksum */
+        long checksum;
+        /** indexed HDU_NAME */
+        String name;
+
+        Entry(final FitsImageHDU hdu, final long sequence) {
+            this.hdu = hdu;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.model;
+
+import fr.jmmc.oiexplorer.core.util.FitsImageUtils;
+import fr.jmmc.oitools.image.FitsImageHDU;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Image preparation (negative values, padding, orientation) of HDU lists:
+ * HDUs are independent so they are prepared in parallel (fork-join common pool or the calling pool)
+ * giving the same images as the sequential path.
+ */
+final class ImagePreparation {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreparation.class.getName());
+
+    /** flag to prepare HDUs in parallel (-DImagePreparation.parallel=false to disable) */
+    private static final boolean PARALLEL = !"false".equalsIgnoreCase(System.getProperty("ImagePreparation.parallel"));
+    /** minimum number of images (all HDUs) to prepare in parallel (-DImagePreparation.minImages=2) */
+    private static final int MIN_IMAGES = Integer.getInteger("ImagePreparation.minImages", 2);
+
+    /**
+     * Prepare images of the given HDUs (in place)
+     * @param hdus HDUs to prepare
+     */
+    static void prepare(final List<FitsImageHDU> hdus) {
+        prepare(hdus, PARALLEL);
+    }
+
+    /**
+     * Prepare images of the given HDUs (in place)
+     * @param hdus HDUs to prepare
+     * @param parallel true to prepare HDUs in parallel
+     */
+    static void prepare(final List<FitsImageHDU> hdus, final boolean parallel) {
+        final int nHdus = hdus.size();
+        if (nHdus == 0) {
+            return;
+        }
+        final long startTime = System.nanoTime();
+
+        if (parallel && (nHdus > 1) && (getImageCount(hdus) >= MIN_IMAGES)) {
+            hdus.parallelStream().forEach(FitsImageUtils::prepareImages);
+        } else {
+            hdus.forEach(FitsImageUtils::prepareImages);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("prepare: {} HDUs prepared in {} ms.", nHdus, 1e-6d * (System.nanoTime() - startTime));
+        }
+    }
+
+    private static int getImageCount(final List<FitsImageHDU> hdus) {
+        int n = 0;
+        for (FitsImageHDU hdu : hdus) {
+            if (hdu != null) {
+                n += hdu.getFitsImages().size();
+            }
+        }
+        return n;
+    }
+
+    private ImagePreparation() {
+        // forbidden
+    }
+}
@@ -19,7 +19,6 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import fr.jmmc.oitools.fits.FitsUtils;
-import fr.jmmc.oitools.model.OIFitsFile;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -64,16 +63,17 @@ public class ResultSetTableModel extends ColumnDescTableModel {
 
         // 2. we add output columns to the set
         for (ServiceResult result : results) {
-            if (result.getOifitsFile() != null) {
-                final ImageOiOutputParam outputParam = result.getOifitsFile().getImageOiData().getOutputParam();
+            // resident parameters (no result file reload):
+            final ImageOiOutputParam outputParam = result.getOutputParam();
+            if (outputParam != null) {
                 processKeywordTable(columnDescMap, outputParam, OUTPUT_PARAM);
             }
         }
 
         // 3. we add input columns to the set
         for (ServiceResult result : results) {
-            if (result.getOifitsFile() != null) {
-                final ImageOiInputParam inputParam = result.getOifitsFile().getImageOiData().getInputParam();
+            final ImageOiInputParam inputParam = result.getInputParam();
+            if (inputParam != null) {
                 processKeywordTable(columnDescMap, inputParam, INPUT_PARAM);
             }
         }
@@ -149,8 +149,8 @@ public class ResultSetTableModel extends ColumnDescTableModel {
 
         switch (columnDesc.getSource()) {
             case OUTPUT_PARAM:
-                if (result.getOifitsFile() != null) {
-                    outputParam = result.getOifitsFile().getImageOiData().getOutputParam();
+                outputParam = result.getOutputParam();
+                if (outputParam != null) {
                     Object value = getKeywordValue(outputParam, columnDesc.getName());
                     if (value != null) {
                         return value;
@@ -159,8 +159,8 @@ public class ResultSetTableModel extends ColumnDescTableModel {
                 // no break: if nothing has been found in OUTPUT we fallback to INPUT
                 logger.debug("No value found in Output params. fallback to input params.");
             case INPUT_PARAM:
-                if (result.getOifitsFile() != null) {
-                    inputParam = result.getOifitsFile().getImageOiData().getInputParam();
+                inputParam = result.getInputParam();
+                if (inputParam != null) {
                     Object value = getKeywordValue(inputParam, columnDesc.getName());
                     if (value != null) {
                         return value;
@@ -175,6 +175,12 @@ public class ResultSetTableModel extends ColumnDescTableModel {
                         return result.getIndex();
                     case JOB_DURATION:
                         return result.getJobDuration();
+                    case CPU_TIME:
+                        return result.hasProcessMetrics() ? result.getCpuTime() : null;
+                    case PEAK_RSS:
+                        return result.hasProcessMetrics() ? result.getPeakRss() / (1024.0 * 1024.0) : null;
+                    case IO_BYTES:
+                        return result.hasProcessMetrics() ? result.getIoBytes() / (1024.0 * 1024.0) : null;
                     case SUCCESS:
                         return result.isValid();
                 }
@@ -213,20 +219,19 @@ public class ResultSetTableModel extends ColumnDescTableModel {
     }
 
     private static void setKeywordValue(final ServiceResult result, int source, String keyword, Object value) {
-        final OIFitsFile oIFitsFile = result.getOifitsFile();
-
-        if (oIFitsFile == null) {
+        if (result.getOutputParam() == null) {
             logger.info("Could not find the OiFitsFile in the ServiceResult.");
             return;
         }
 
+        // resident parameters (restored when the result file is reloaded):
         FitsTable fitsTable = null;
         switch (source) {
             case INPUT_PARAM:
-                fitsTable = oIFitsFile.getImageOiData().getInputParam();
+                fitsTable = result.getInputParam();
                 break;
             case OUTPUT_PARAM:
-                fitsTable = oIFitsFile.getImageOiData().getOutputParam();
+                fitsTable = result.getOutputParam();
                 break;
             case HARD_CODED:
                 logger.info("Cannot update HardCoded param.");
@@ -306,6 +311,9 @@ public class ResultSetTableModel extends ColumnDescTableModel {
     public final static String COLUMN_FILE = "FILE";
     public final static String COLUMN_INDEX = "INDEX";
     public final static String COLUMN_JOB_DURATION = "JOB_DURATION";
+    public final static String COLUMN_CPU_TIME = "CPU_TIME";
+    public final static String COLUMN_PEAK_RSS = "PEAK_RSS";
+    public final static String COLUMN_IO_BYTES = "IO_BYTES";
     public final static String COLUMN_SUCCESS = "SUCCESS";
 
     /**
@@ -316,6 +324,9 @@ public class ResultSetTableModel extends ColumnDescTableModel {
         FILE(COLUMN_FILE, String.class, "File"),
         INDEX(COLUMN_INDEX, Integer.class, "Index"),
         JOB_DURATION(COLUMN_JOB_DURATION, Double.class, "Job duration"),
+        CPU_TIME(COLUMN_CPU_TIME, Double.class, "CPU time"),
+        PEAK_RSS(COLUMN_PEAK_RSS, Double.class, "Peak memory (MB)"),
+        IO_BYTES(COLUMN_IO_BYTES, Double.class, "I/O (MB)"),
         SUCCESS(COLUMN_SUCCESS, Boolean.class, "Success");
 
         private final ColumnDesc columnDesc;
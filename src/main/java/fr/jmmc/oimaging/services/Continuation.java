@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Continuation (warm start) of a finished job: the service resumes from the workspace of the previous job
+ * so only the delta input file (changed keywords and images) is sent instead of the whole input file.
+ */
+public final class Continuation {
+
+    /* members */
+    /** previous job result */
+    private final ServiceResult previous;
+    /** names of the changed input keywords */
+    private final List<String> changedKeywords;
+    /** task writing the delta file */
+    private final Callable<File> preparation;
+    /** delta file (once prepared) */
+    private volatile File deltaFile = null;
+
+    /**
+     * Create a new continuation
+     * @param previous previous job result (continuable)
+     * @param changedKeywords names of the changed input keywords
+     * @param preparation task writing the delta file (worker thread)
+     */
+    public Continuation(final ServiceResult previous, final List<String> changedKeywords, final Callable<File> preparation) {
+        this.previous = previous;
+        this.changedKeywords = changedKeywords;
+        this.preparation = preparation;
+    }
+
+    /**
+     * Write the delta file
+     * @throws Exception if the delta file can not be written
+     */
+    void prepare() throws Exception {
+        this.deltaFile = preparation.call();
+    }
+
+    public ServiceResult getPrevious() {
+        return previous;
+    }
+
+    public List<String> getChangedKeywords() {
+        return changedKeywords;
+    }
+
+    /**
+     * @return delta file or null if not prepared
+     */
+    public File getDeltaFile() {
+        return deltaFile;
+    }
+
+    @Override
+    public String toString() {
+        return "Continuation[" + previous.getContinuationJobId() + "] " + changedKeywords;
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+/**
+ * Incremental reader of the execution log of a job (running or finished):
+ * each read() returns the text appended since the previous call (complete lines only
+ * while the log is growing, so multi-byte characters are never split).
+ * Note: not thread-safe (one reader thread at a time)
+ */
+public abstract class ExecutionLogTail {
+
+    /** max bytes fetched per read */
+    protected static final int MAX_CHUNK = 256 * 1024;
+
+    /**
+     * Create a tail reading the given local file
+     * @param file log file (may not exist yet)
+     * @return new tail
+     */
+    public static ExecutionLogTail forFile(final File file) {
+        return new FileLogTail(file);
+    }
+
+    /* members */
+    /** bytes consumed so far */
+    private long offset = 0L;
+    /** pending bytes (incomplete last line) */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1024);
+
+    protected ExecutionLogTail() {
+        super();
+    }
+
+    /**
+     * Fetch up to max bytes from the given offset
+     * @param offset start offset
+     * @param max max number of bytes
+     * @return bytes (empty if no new data)
+     * @throws IOException if the log can not be read
+     */
+    protected abstract byte[] fetch(final long offset, final int max) throws IOException;
+
+    /**
+     * Read the text appended since the last call
+     * @param flush true to return the incomplete last line too (job finished)
+     * @return new text (empty if none)
+     * @throws IOException if the log can not be read
+     */
+    public final String read(final boolean flush) throws IOException {
+        final byte[] data = fetch(offset, MAX_CHUNK);
+        offset += data.length;
+        pending.write(data, 0, data.length);
+
+        final byte[] bytes = pending.toByteArray();
+        int end = bytes.length;
+        if (!flush && (data.length < MAX_CHUNK)) {
+            // keep the incomplete last line:
+            while ((end > 0) && (bytes[end - 1] != '\n')) {
+                end--;
+            }
+        }
+        pending.reset();
+        pending.write(bytes, end, bytes.length - end);
+
+        return (end == 0) ? "" : new String(bytes, 0, end, Charset.defaultCharset());
+    }
+
+    /**
+     * @return number of bytes consumed so far
+     */
+    public final long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Release any resource
+     */
+    public void close() {
+        // no-op
+    }
+
+    /**
+     * Tail of a local log file (written by LocalLauncher or downloaded)
+     */
+    static final class FileLogTail extends ExecutionLogTail {
+
+        /** log file */
+        private final File file;
+
+        FileLogTail(final File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected byte[] fetch(final long offset, final int max) throws IOException {
+            if (!file.exists()) {
+                return new byte[0];
+            }
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final long len = Math.min(raf.length() - offset, max);
+                if (len <= 0L) {
+                    return new byte[0];
+                }
+                final byte[] data = new byte[(int) len];
+                raf.seek(offset);
+                raf.readFully(data);
+                return data;
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.nom.tam.fits.FitsException;
+import fr.nom.tam.fits.Header;
+import fr.nom.tam.util.BufferedFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index of the HDUs of a FITS file: headers are read by nom.tam and data units are skipped,
+ * giving the header and the byte range of each HDU (to read keywords or copy HDUs without parsing data).
+ */
+public final class FitsHduIndex {
+
+    /** input parameter extension name */
+    public static final String EXTNAME_INPUT_PARAM = "IMAGE-OI INPUT PARAM";
+    /** output parameter extension name */
+    public static final String EXTNAME_OUTPUT_PARAM = "IMAGE-OI OUTPUT PARAM";
+    /** FITS block size */
+    private static final long FITS_BLOCK = 2880L;
+
+    /* members */
+    /** HDUs in file order */
+    private final List<Hdu> hdus;
+
+    /**
+     * Read the HDU headers of the given file
+     * @param file FITS file
+     * @return HDU index
+     * @throws IOException if the file can not be read or is not a FITS file
+     * @throws FitsException if a header is invalid or truncated
+     */
+    public static FitsHduIndex read(final File file) throws IOException, FitsException {
+        final List<Hdu> hdus = new ArrayList<Hdu>(8);
+
+        final BufferedFile bf = new BufferedFile(file.getAbsolutePath(), "r");
+        try {
+            final long length = bf.length();
+            long offset = 0L;
+
+            while (offset + FITS_BLOCK <= length) {
+                bf.seek(offset);
+                final Header header = Header.readHeader(bf);
+                if (header == null) {
+                    break;
+                }
+                if ((offset == 0L) && !header.containsKey("SIMPLE")) {
+                    throw new IOException("Not a FITS file: " + file);
+                }
+                // header padded to the next block then data unit (padded):
+                final long dataOffset = align(bf.getFilePointer());
+                final long next = align(dataOffset + header.getDataSize());
+
+                hdus.add(new Hdu(header, offset, Math.min(next, length) - offset));
+                offset = next;
+            }
+        } finally {
+            bf.close();
+        }
+        if (hdus.isEmpty()) {
+            throw new IOException("Not a FITS file: " + file);
+        }
+        return new FitsHduIndex(hdus);
+    }
+
+    private static long align(final long position) {
+        return ((position + FITS_BLOCK - 1L) / FITS_BLOCK) * FITS_BLOCK;
+    }
+
+    private FitsHduIndex(final List<Hdu> hdus) {
+        this.hdus = Collections.unmodifiableList(hdus);
+    }
+
+    /**
+     * @return HDUs in file order (read-only)
+     */
+    public List<Hdu> getHdus() {
+        return hdus;
+    }
+
+    /**
+     * Return the first HDU having the given extension name
+     * @param extName extension name
+     * @return HDU or null if not found
+     */
+    public Hdu find(final String extName) {
+        for (Hdu hdu : hdus) {
+            if (extName.equals(hdu.getExtName())) {
+                return hdu;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * HDU header and byte range (header and data unit, padding included)
+     */
+    public static final class Hdu {
+
+        /** header */
+        private final Header header;
+        /** offset in the file */
+        private final long offset;
+        /** size in the file */
+        private final long size;
+
+        Hdu(final Header header, final long offset, final long size) {
+            this.header = header;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public Header getHeader() {
+            return header;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return extension name (trimmed) or null if undefined (primary HDU)
+         */
+        public String getExtName() {
+            final String extName = header.getStringValue("EXTNAME");
+            return (extName != null) ? extName.trim() : null;
+        }
+
+        @Override
+        public String toString() {
+            return "Hdu[" + getExtName() + "] @ " + offset + " (" + size + " bytes)";
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue of reconstruction jobs running concurrently.
+ * Each execution mode gets its own lane bounded by OImagingExecutionMode.getMaxConcurrentJobs():
+ * extra jobs wait in FIFO order until a slot is released.
+ */
+public final class JobQueue {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(JobQueue.class.getName());
+
+    /** max number of finished jobs kept in the job list */
+    private static final int MAX_FINISHED_JOBS = 100;
+    /** number of queued jobs per lane whose input is prepared ahead of dispatch (-DJobQueue.prepareLookahead=2) */
+    private static final int PREPARE_LOOKAHEAD = Integer.getInteger("JobQueue.prepareLookahead", 2);
+    /** max delay (s) to wait for a cancelled job to be aborted before releasing its slot (-DJobQueue.terminationTimeout=30) */
+    private static final long TERMINATION_TIMEOUT = Long.getLong("JobQueue.terminationTimeout", 30L);
+
+    /** singleton */
+    private static final JobQueue INSTANCE = new JobQueue();
+
+    /**
+     * @return the singleton
+     */
+    public static JobQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /* members */
+    /** lanes per execution mode (guarded by this) */
+    private final Map<OImagingExecutionMode, Lane> lanes = new IdentityHashMap<>(4);
+    /** all jobs in submit order (guarded by this) */
+    private final List<RunJob> jobs = new LinkedList<>();
+    /** listeners */
+    private final List<JobQueueListener> listeners = new CopyOnWriteArrayList<>();
+
+    private JobQueue() {
+        super();
+    }
+
+    /**
+     * Submit a new job (queued if its execution mode has no free slot)
+     * @param service service to run
+     * @param cliOptions software options on command line or null
+     * @param inputFile oifits file that must be used by the service
+     * @return new job
+     */
+    public RunJob submit(final Service service, final String cliOptions, final File inputFile) {
+        return submit(new RunJob(this, service, cliOptions, null, CompletableFuture.completedFuture(inputFile), null));
+    }
+
+    /**
+     * Submit a new job whose input file is prepared in background (preparation executor):
+     * the preparation starts when the job is dispatched or when it becomes one of the next queued jobs
+     * (PREPARE_LOOKAHEAD) so a large batch does not write all its input files at once
+     * @param service service to run
+     * @param cliOptions software options on command line or null
+     * @param preparation task writing the oifits file that must be used by the service
+     * @param continuation optional continuation of a previous job (delta file also prepared in background)
+     * @return new job
+     */
+    public RunJob submit(final Service service, final String cliOptions, final Callable<File> preparation,
+                         final Continuation continuation) {
+        return submit(new RunJob(this, service, cliOptions, preparation, new CompletableFuture<File>(), continuation));
+    }
+
+    private RunJob submit(final RunJob job) {
+        final Service service = job.getService();
+
+        synchronized (this) {
+            jobs.add(job);
+            purgeFinishedJobs();
+            getLane(service.getExecMode()).pending.add(job);
+        }
+        logger.info("submit: {}", job);
+
+        fireJobChanged(job);
+
+        dispatch(service.getExecMode());
+        return job;
+    }
+
+    /**
+     * Cancel the given job (removed from the queue or aborted if running)
+     * @param job job to cancel
+     * @return true if cancelled; false if already finished
+     */
+    boolean cancel(final RunJob job) {
+        final CompletableFuture<ServiceResult> execution;
+        synchronized (this) {
+            if (!job.getState().isActive()) {
+                return false;
+            }
+            if (job.getState() == RunJob.State.QUEUED) {
+                getLane(job.getService().getExecMode()).pending.remove(job);
+                job.setState(RunJob.State.CANCELLED);
+                execution = null;
+            } else {
+                execution = job.getExecution();
+                if (execution == null) {
+                    // not yet submitted: start() will cancel it
+                    job.setCancelRequested(true);
+                    return true;
+                }
+            }
+        }
+        logger.info("cancel: {}", job);
+
+        if (execution != null) {
+            // execution mode aborts the job and jobEnd() releases the slot once aborted:
+            execution.cancel(true);
+        } else {
+            job.getFuture().cancel(false);
+            fireJobChanged(job);
+        }
+        return true;
+    }
+
+    /**
+     * Cancel all active jobs
+     */
+    public void cancelAll() {
+        for (RunJob job : getJobs()) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * @return copy of the job list (submit order)
+     */
+    public synchronized List<RunJob> getJobs() {
+        return new ArrayList<>(jobs);
+    }
+
+    /**
+     * @return number of queued or running jobs
+     */
+    public synchronized int getActiveJobCount() {
+        int count = 0;
+        for (RunJob job : jobs) {
+            if (job.getState().isActive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if any job is queued or running
+     */
+    public boolean hasActiveJobs() {
+        return getActiveJobCount() != 0;
+    }
+
+    /**
+     * Remove all finished jobs from the job list
+     */
+    public void clearFinishedJobs() {
+        synchronized (this) {
+            for (Iterator<RunJob> it = jobs.iterator(); it.hasNext();) {
+                if (!it.next().getState().isActive()) {
+                    it.remove();
+                }
+            }
+        }
+        fireJobChanged(null);
+    }
+
+    public void addListener(final JobQueueListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final JobQueueListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start queued jobs of the given execution mode while slots are available
+     * @param execMode execution mode
+     */
+    private void dispatch(final OImagingExecutionMode execMode) {
+        for (;;) {
+            final RunJob job;
+            List<RunJob> lookahead = null;
+            synchronized (this) {
+                final Lane lane = getLane(execMode);
+                if (lane.pending.isEmpty() || (lane.running >= Math.max(1, execMode.getMaxConcurrentJobs()))) {
+                    job = null;
+                    if (!lane.pending.isEmpty()) {
+                        // prepare the input of the next queued jobs while waiting for a slot:
+                        lookahead = new ArrayList<>(PREPARE_LOOKAHEAD);
+                        for (Iterator<RunJob> it = lane.pending.iterator(); it.hasNext() && (lookahead.size() < PREPARE_LOOKAHEAD);) {
+                            lookahead.add(it.next());
+                        }
+                    }
+                } else {
+                    job = lane.pending.poll();
+                    lane.running++;
+                    job.setState(RunJob.State.RUNNING);
+                }
+            }
+            if (job == null) {
+                if (lookahead != null) {
+                    for (RunJob next : lookahead) {
+                        prepare(next);
+                    }
+                }
+                return;
+            }
+            start(job);
+        }
+    }
+
+    /**
+     * Start the input preparation of the given job (once) using the preparation executor
+     * @param job job to prepare
+     */
+    private void prepare(final RunJob job) {
+        if (!job.startPreparation()) {
+            return;
+        }
+        final CompletableFuture<File> input = job.getInput();
+
+        ServiceExecutors.getPrepareExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (job.getState() == RunJob.State.CANCELLED) {
+                    // cancelled while queued:
+                    input.cancel(false);
+                    return;
+                }
+                final Continuation continuation = job.getContinuation();
+                if (continuation != null) {
+                    try {
+                        continuation.prepare();
+                    } catch (Exception e) {
+                        // run the whole input file:
+                        logger.info("prepare: continuation preparation failure", e);
+                        job.setContinuation(null);
+                    }
+                }
+                try {
+                    input.complete(job.getPreparation().call());
+                } catch (Exception e) {
+                    logger.info("prepare: input preparation failure", e);
+                    input.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private void start(final RunJob job) {
+        logger.info("start: {}", job);
+
+        prepare(job);
+
+        final CompletableFuture<File> input = job.getInput();
+        if (!input.isDone()) {
+            job.setPhase(ServicePhase.PREPARING);
+        }
+        fireJobChanged(job);
+
+        // run once the input file is ready:
+        input.whenComplete((inputFile, th) -> {
+            if (th != null) {
+                final CompletableFuture<ServiceResult> failure = new CompletableFuture<>();
+                failure.completeExceptionally(th);
+                attach(job, failure);
+            } else {
+                run(job);
+            }
+        });
+    }
+
+    private void run(final RunJob job) {
+        final ResultCache cache = ResultCache.getInstance();
+        if (!cache.isEnabled()) {
+            execute(job);
+            return;
+        }
+        // hash the input file in background then look for a cached result:
+        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Service service = job.getService();
+                ServiceResult cached = null;
+                try {
+                    final String key = cache.getKey(service.getExecMode().getSolverIdentity(service.getProgram()),
+                            service.getProgram(), job.getCliOptions(), job.getInputFile());
+                    job.setCacheKey(key);
+                    cached = cache.lookup(key, job.getInputFile());
+                } catch (IOException | RuntimeException e) {
+                    logger.info("start: result cache failure", e);
+                }
+                if (cached != null) {
+                    attach(job, CompletableFuture.completedFuture(cached));
+                } else {
+                    execute(job);
+                }
+            }
+        });
+    }
+
+    private void execute(final RunJob job) {
+        final Service service = job.getService();
+
+        CompletableFuture<ServiceResult> execution;
+        try {
+            execution = service.getExecMode().reconstructsImageAsync(service.getProgram(), job.getCliOptions(), job.getInputFile(),
+                    job.getContinuation(), new ServiceProgressListener() {
+                @Override
+                public void phaseChanged(final ServiceResult result, final ServicePhase phase) {
+                    job.setResult(result);
+                    job.setPhase(phase);
+                    fireJobChanged(job);
+                }
+            });
+        } catch (RuntimeException re) {
+            execution = new CompletableFuture<>();
+            execution.completeExceptionally(re);
+        }
+        attach(job, execution);
+    }
+
+    private void attach(final RunJob job, final CompletableFuture<ServiceResult> execution) {
+        final boolean cancelRequested;
+        synchronized (this) {
+            job.setExecution(execution);
+            cancelRequested = job.isCancelRequested();
+        }
+        execution.whenComplete((result, th) -> jobEnd(job, result, th));
+
+        if (cancelRequested) {
+            execution.cancel(true);
+        }
+    }
+
+    private void jobEnd(final RunJob job, final ServiceResult result, final Throwable th) {
+        if (th != null) {
+            final Throwable cause = (th instanceof CompletionException && th.getCause() != null) ? th.getCause() : th;
+
+            if (cause instanceof CancellationException) {
+                job.setState(RunJob.State.CANCELLED);
+                job.getFuture().cancel(false);
+            } else {
+                logger.warn("jobEnd: {} failed", job, cause);
+                job.setErrorMessage(cause.getMessage());
+                job.setState(RunJob.State.FAILED);
+                job.getFuture().completeExceptionally(cause);
+            }
+        } else {
+            job.setResult(result);
+            postProcess(job, result);
+
+            job.setState(result.isCancelled() ? RunJob.State.CANCELLED : RunJob.State.DONE);
+            job.getFuture().complete(result);
+
+            final String cacheKey = job.getCacheKey();
+            if (cacheKey != null && result.isValid()) {
+                ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ResultCache.getInstance().store(cacheKey, result);
+                    }
+                });
+            }
+        }
+        logger.info("jobEnd: {}", job);
+        fireJobChanged(job);
+
+        final ServiceResult current = job.getResult();
+        if ((job.getState() == RunJob.State.CANCELLED) && (current != null) && !current.getTermination().isDone()) {
+            // cancelled: keep the slot until the execution mode has aborted the job (process killed, remote job aborted):
+            final AtomicBoolean released = new AtomicBoolean(false);
+            current.getTermination().whenComplete((v, t) -> releaseSlot(job, released));
+
+            ServiceExecutors.getScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!released.get()) {
+                        logger.warn("jobEnd: {} still running after {} s: release its slot", job, TERMINATION_TIMEOUT);
+                        releaseSlot(job, released);
+                    }
+                }
+            }, TERMINATION_TIMEOUT, TimeUnit.SECONDS);
+        } else {
+            releaseSlot(job, new AtomicBoolean(false));
+        }
+    }
+
+    /**
+     * Release the lane slot of the given job (once) then start next jobs
+     * @param job finished job
+     * @param released flag set once the slot is released
+     */
+    private void releaseSlot(final RunJob job, final AtomicBoolean released) {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        final OImagingExecutionMode execMode = job.getService().getExecMode();
+        synchronized (this) {
+            getLane(execMode).running--;
+        }
+        // start next jobs:
+        dispatch(execMode);
+    }
+
+    /**
+     * Complete the service result (service, validity, end time)
+     * @param job job
+     * @param result service result
+     */
+    private static void postProcess(final RunJob job, final ServiceResult result) {
+        result.setService(job.getService());
+
+        if (result.getErrorMessage() == null) {
+            // Result is valid only if the OIFITS file was downloaded successfully:
+            boolean valid = result.getOifitsResultFile().exists();
+            result.setValid(valid);
+
+            if (!valid) {
+                result.setErrorMessage("No OIFits ouput (probably a server error occured) !");
+            }
+        }
+        job.setErrorMessage(result.getErrorMessage());
+        result.setEndTime(new Date());
+    }
+
+    private void fireJobChanged(final RunJob job) {
+        for (JobQueueListener listener : listeners) {
+            try {
+                listener.jobChanged(job);
+            } catch (RuntimeException re) {
+                logger.warn("jobChanged: listener failure", re);
+            }
+        }
+    }
+
+    /**
+     * Return the lane of the given execution mode (guarded by this)
+     * @param execMode execution mode
+     * @return lane
+     */
+    private Lane getLane(final OImagingExecutionMode execMode) {
+        Lane lane = lanes.get(execMode);
+        if (lane == null) {
+            lane = new Lane();
+            lanes.put(execMode, lane);
+        }
+        return lane;
+    }
+
+    /** remove oldest finished jobs beyond MAX_FINISHED_JOBS (guarded by this) */
+    private void purgeFinishedJobs() {
+        int finished = 0;
+        for (RunJob job : jobs) {
+            if (!job.getState().isActive()) {
+                finished++;
+            }
+        }
+        for (Iterator<RunJob> it = jobs.iterator(); it.hasNext() && (finished > MAX_FINISHED_JOBS);) {
+            if (!it.next().getState().isActive()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * Pending jobs and running count of one execution mode
+     */
+    private static final class Lane {
+
+        /** queued jobs (FIFO) */
+        final ArrayDeque<RunJob> pending = new ArrayDeque<>();
+        /** number of running jobs */
+        int running = 0;
+    }
+}
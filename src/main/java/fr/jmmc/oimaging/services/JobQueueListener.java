@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+/**
+ * Listener notified when a job of the JobQueue changes (state or phase).
+ * Note: callbacks are invoked by service threads (not the Swing EDT).
+ */
+public interface JobQueueListener {
+
+    /**
+     * Handle the change of the given job
+     * @param job updated job
+     */
+    public void jobChanged(final RunJob job);
+}
@@ -7,10 +7,15 @@ import fr.jmmc.jmcs.util.FileUtils;
 import fr.jmmc.jmcs.util.StringUtils;
 import fr.jmmc.jmcs.util.runner.LocalLauncher;
 import fr.jmmc.jmcs.util.runner.RootContext;
-import fr.jmmc.jmcs.util.runner.RunState;
 import fr.jmmc.jmcs.util.runner.process.ProcessContext;
+import fr.jmmc.oimaging.Preferences;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +34,14 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
     /** task identifier for LocalExecutionMode */
     public final static String TASK_NAME = "LocalRunner";
 
+    /** interval (ms) between two checks of the job state */
+    public static final long POLL_INTERVAL = 100L;
+    /** interval (ms) between two samples of the job resource usage (-DLocalExecutionMode.sampleInterval=1000) */
+    private static final long SAMPLE_INTERVAL = Long.getLong("LocalExecutionMode.sampleInterval", 1000L);
+
+    /** preference singleton */
+    private final static Preferences PREFS = Preferences.getInstance();
+
     /** singleton */
     public static final LocalExecutionMode INSTANCE = new LocalExecutionMode();
 
@@ -46,6 +59,35 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
      * @throws IllegalStateException if the job can not be submitted to the job queue
      */
     public static void exec(final String software, final String cliOptions, final String inputFilename, final ServiceResult result) throws IllegalStateException {
+        final RootContext jobContext = start(software, cliOptions, inputFilename, result);
+
+        // monitor the job (watchdog limits and resource usage):
+        final CompletableFuture<ServiceResult> future = new CompletableFuture<>();
+        new LocalJobMonitor(jobContext, result, future).start();
+        try {
+            future.get();
+        } catch (InterruptedException ie) {
+            logger.warn("exec: interrupted", ie);
+            // the monitor kills the process:
+            future.cancel(true);
+            // Wait for process to die:
+            waitFor(jobContext);
+        } catch (ExecutionException ee) {
+            logger.info("exec: execution error", ee);
+        }
+    }
+
+    /**
+     * Start the application (asynchronously).
+     *
+     * @param software software to run
+     * @param cliOptions software options on command line or null
+     * @param inputFilename input filename
+     * @param result the service result pointing result file to write data into.
+     * @return job context
+     * @throws IllegalStateException if the job can not be submitted to the job queue
+     */
+    private static RootContext start(final String software, final String cliOptions, final String inputFilename, final ServiceResult result) throws IllegalStateException {
 
         if (StringUtils.isEmpty(software)) {
             throw new IllegalArgumentException("empty application name !");
@@ -71,10 +113,17 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
         } else {
             cmd = new String[]{software, cliOptions, inputFilename, outputFilename};
         }
-        final RunState state = exec(cmd, logFilename).getState();
+        return start(cmd, logFilename);
+    }
 
+    /**
+     * Update the service result from the final state of the given job
+     * @param jobContext job context (done)
+     * @param result the service result to update
+     */
+    private static void updateResult(final RootContext jobContext, final ServiceResult result) {
         // retrieve command execution status code
-        switch (state) {
+        switch (jobContext.getState()) {
             case STATE_CANCELED:
             case STATE_INTERRUPTED:
             case STATE_KILLED:
@@ -84,7 +133,7 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
         }
     }
 
-    private static RootContext exec(final String[] cmd, final String logFilename) {
+    private static RootContext start(final String[] cmd, final String logFilename) {
         // create the execution context with log file:
         final RootContext jobContext = LocalLauncher.prepareMainJob(APP_NAME, USER_NAME, FileUtils.getTempDirPath(), logFilename);
 
@@ -93,11 +142,14 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
         // Puts the job in the job queue (can throw IllegalStateException if job not queued)
         LocalLauncher.startJob(jobContext);
 
+        return jobContext;
+    }
+
+    private static void waitFor(final RootContext jobContext) {
         final Long jobId = jobContext.getId();
 
         // Wait for process completion
         try {
-            // TODO: use timeout to kill (too long or hanging) jobs anyway ?
             // Wait for task to be done :
             jobContext.getFuture().get();
         } catch (InterruptedException ie) {
@@ -118,7 +170,6 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
         } catch (ExecutionException ee) {
             logger.info("exec: execution error", ee);
         }
-        return jobContext;
     }
 
     @Override
@@ -128,12 +179,196 @@ public final class LocalExecutionMode implements OImagingExecutionMode {
         return result;
     }
 
+    @Override
+    public CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String cliOptions, final File inputFile,
+                                                                   final ServiceProgressListener listener) {
+        final ServiceResult result = new ServiceResult(inputFile);
+        final CompletableFuture<ServiceResult> future = new CompletableFuture<>();
+
+        ServiceProgressListener.fire(listener, result, ServicePhase.QUEUED);
+
+        final RootContext jobContext;
+        try {
+            jobContext = start(software, cliOptions, inputFile.getAbsolutePath(), result);
+        } catch (RuntimeException re) {
+            result.setTerminated();
+            future.completeExceptionally(re);
+            return future;
+        }
+        // no upload: the process reads the input file directly
+        ServiceProgressListener.fire(listener, result, ServicePhase.EXECUTING);
+
+        new LocalJobMonitor(jobContext, result, future).start();
+        return future;
+    }
+
+    @Override
+    public ExecutionLogTail openExecutionLog(final ServiceResult result) {
+        // LocalLauncher writes the process output into the log file:
+        return ExecutionLogTail.forFile(result.getExecutionLogResultFile());
+    }
+
+    @Override
+    public int getMaxConcurrentJobs() {
+        // solvers are mono-threaded: one job per core
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String getSolverIdentity(final String software) {
+        // executable path and modification date change when the solver is upgraded:
+        final File executable = LocalSolverProbe.resolve(software);
+        if (executable == null) {
+            return "local:" + software;
+        }
+        return "local:" + executable.getPath() + ':' + executable.lastModified();
+    }
+
+    /**
+     * Monitor a local job periodically using the shared scheduler (no thread blocked per job):
+     * the process is killed if it exceeds the wall-clock or cpu time limits (preferences)
+     * and its resource usage is recorded into the service result.
+     */
+    private static final class LocalJobMonitor implements Runnable {
+
+        /** job context */
+        private final RootContext jobContext;
+        /** service result to update */
+        private final ServiceResult result;
+        /** future to complete */
+        private final CompletableFuture<ServiceResult> future;
+        /** flag indicating that monitoring is over */
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        /** scheduled task */
+        private volatile ScheduledFuture<?> task = null;
+        /** resource usage of the job process */
+        private final ProcessStats stats;
+        /** wall-clock time limit (ms) or 0 */
+        private final long maxWallTime;
+        /** cpu time limit (s) or 0 */
+        private final int maxCpuTime;
+        /** start time (ns) */
+        private final long startTime = System.nanoTime();
+        /** last sample time (ns) */
+        private long lastSample = 0L;
+        /** reason why the job was killed by the watchdog or null */
+        private volatile String limitMessage = null;
+
+        LocalJobMonitor(final RootContext jobContext, final ServiceResult result, final CompletableFuture<ServiceResult> future) {
+            this.jobContext = jobContext;
+            this.result = result;
+            this.future = future;
+            this.stats = new ProcessStats(result.getOifitsResultFile().getAbsolutePath());
+            this.maxWallTime = 1000L * PREFS.getPreferenceAsInt(Preferences.LOCAL_MAX_WALL_TIME);
+            this.maxCpuTime = PREFS.getPreferenceAsInt(Preferences.LOCAL_MAX_CPU_TIME);
+        }
+
+        void start() {
+            task = ServiceExecutors.getScheduler().scheduleWithFixedDelay(this, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (done.get()) {
+                return;
+            }
+            if (future.isCancelled()) {
+                if (!result.isCancelled()) {
+                    logger.debug("Job[{}] cancelled: killing process", jobContext.getId());
+                    LocalLauncher.cancelOrKillJob(jobContext.getId());
+                    result.setCancelled(true);
+                }
+                // keep polling until the process is dead (JobQueue slot released then):
+                if (jobContext.getFuture().isDone()) {
+                    stop();
+                }
+            } else if (jobContext.getFuture().isDone()) {
+                stop();
+                try {
+                    if (ProcessStats.SUPPORTED) {
+                        result.setProcessMetrics(stats.getCpuTime(), stats.getPeakRss(), stats.getIoBytes());
+                    }
+                    if (limitMessage != null) {
+                        // killed by the watchdog: report an error (not a user cancellation)
+                        result.setErrorMessage(limitMessage);
+                    } else {
+                        updateResult(jobContext, result);
+                    }
+                    future.complete(result);
+                } catch (RuntimeException re) {
+                    future.completeExceptionally(re);
+                }
+            } else if (limitMessage == null) {
+                watch();
+            }
+        }
+
+        /**
+         * Sample the resource usage and check limits
+         */
+        private void watch() {
+            final long now = System.nanoTime();
+            if (now - lastSample >= SAMPLE_INTERVAL * 1000000L) {
+                lastSample = now;
+                stats.sample();
+            }
+            if ((maxWallTime > 0L) && ((now - startTime) / 1000000L > maxWallTime)) {
+                kill("wall-clock time limit (" + (maxWallTime / 1000L) + " s) exceeded");
+            } else if ((maxCpuTime > 0) && (stats.getCpuTime() > maxCpuTime)) {
+                kill("CPU time limit (" + maxCpuTime + " s) exceeded");
+            }
+        }
+
+        private void kill(final String reason) {
+            limitMessage = "Job killed: " + reason;
+            logger.warn("Job[{}] {}", jobContext.getId(), limitMessage);
+            LocalLauncher.cancelOrKillJob(jobContext.getId());
+        }
+
+        private void stop() {
+            done.set(true);
+            final ScheduledFuture<?> t = task;
+            if (t != null) {
+                t.cancel(false);
+            }
+            result.setTerminated();
+        }
+    }
+
     public boolean test(final String software) {
+        return test(software, 0L);
+    }
+
+    /**
+     * Test if the given software can be run locally (its help returns code=1)
+     * @param software software to run
+     * @param timeout max duration (ms) before the probe is killed (0 means no limit)
+     * @return true if the software is available
+     */
+    public boolean test(final String software, final long timeout) {
         logger.debug("test: software = '{}'", software);
 
         final String[] cmd = new String[]{software};
 
-        final RootContext ctx = exec(cmd, null); // no written log
+        final RootContext ctx = start(cmd, null); // no written log
+        if (timeout > 0L) {
+            try {
+                ctx.getFuture().get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException te) {
+                logger.info("test: software = '{}' timeout after {} ms", software, timeout);
+                LocalLauncher.cancelOrKillJob(ctx.getId());
+                return false;
+            } catch (InterruptedException ie) {
+                logger.debug("test: interrupted", ie);
+                LocalLauncher.cancelOrKillJob(ctx.getId());
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException ee) {
+                logger.debug("test: execution error", ee);
+            }
+        } else {
+            waitFor(ctx);
+        }
         logger.debug("test: ctx: {}", ctx);
 
         // ignore state (ERROR always as service help returns code=1)
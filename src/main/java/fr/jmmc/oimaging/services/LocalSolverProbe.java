@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detect local solver executables in background: probes run concurrently (with a timeout)
+ * and their results are cached on disk, keyed by the resolved executable path and its
+ * modification time, so that known solvers are available instantly at startup
+ * and re-validated lazily.
+ */
+final class LocalSolverProbe {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(LocalSolverProbe.class.getName());
+
+    /** probe timeout in ms (-DLocalSolverProbe.timeout=10000) */
+    private static final long PROBE_TIMEOUT = Long.getLong("LocalSolverProbe.timeout", 10000L);
+    /** delay in ms before re-validating cached results (-DLocalSolverProbe.revalidateDelay=5000) */
+    private static final long REVALIDATE_DELAY = Long.getLong("LocalSolverProbe.revalidateDelay", 5000L);
+    /** cache file */
+    private static final File CACHE_FILE = new File(SystemUtils.getUserHome() + "/.jmmc-oimaging/localSolvers.properties");
+
+    /** cache property suffixes */
+    private static final String KEY_PATH = ".path";
+    private static final String KEY_MTIME = ".mtime";
+    private static final String KEY_AVAILABLE = ".available";
+
+    /**
+     * Listener notified when a probe result differs from the initial state (probe thread)
+     */
+    interface Listener {
+
+        /**
+         * @param command solver command
+         * @param available true if the solver is available
+         */
+        void probed(final String command, final boolean available);
+    }
+
+    /* members */
+    /** local execution mode used to run probes */
+    private final LocalExecutionMode execMode;
+    /** cached results (guarded by this) */
+    private final Properties cache = new Properties();
+    /** probe executor (threads released when idle) */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Create a probe using the given execution mode
+     * @param execMode local execution mode
+     * @param threads max number of concurrent probes
+     */
+    LocalSolverProbe(final LocalExecutionMode execMode, final int threads) {
+        this.execMode = execMode;
+        this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), ServiceExecutors.newThreadFactory("LocalSolverProbe"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start probing the given solver commands in background:
+     * commands with an up-to-date cache entry are returned immediately and re-validated later,
+     * other ones are probed now.
+     * @param commands solver commands
+     * @param listener listener notified when the availability of a command changes
+     * @return commands known to be available (from cache)
+     */
+    Set<String> start(final List<String> commands, final Listener listener) {
+        loadCache();
+
+        final Set<String> available = new HashSet<String>(commands.size());
+
+        for (final String command : commands) {
+            final File executable = resolve(command);
+            if (executable == null) {
+                logger.debug("start: '{}' not found in PATH", command);
+                continue;
+            }
+            final Boolean cached = getCached(command, executable);
+            if (cached != null) {
+                logger.debug("start: '{}' available = {} (cached)", command, cached);
+                if (cached.booleanValue()) {
+                    available.add(command);
+                }
+                // lazy re-validation once the application is started:
+                ServiceExecutors.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(newProbe(command, executable, cached, listener));
+                    }
+                }, REVALIDATE_DELAY, TimeUnit.MILLISECONDS);
+            } else {
+                executor.execute(newProbe(command, executable, null, listener));
+            }
+        }
+        return available;
+    }
+
+    private Runnable newProbe(final String command, final File executable, final Boolean previous, final Listener listener) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                final boolean available = execMode.test(command, PROBE_TIMEOUT);
+
+                logger.info("probe: '{}' available = {} ({} ms)", command, available, (System.nanoTime() - start) / 1000000L);
+
+                putCached(command, executable, available);
+
+                if ((previous == null) ? available : (previous.booleanValue() != available)) {
+                    listener.probed(command, available);
+                }
+            }
+        };
+    }
+
+    /**
+     * Find the given command in the PATH directories
+     * @param command command name
+     * @return canonical executable file or null if not found
+     */
+    static File resolve(final String command) {
+        final String path = System.getenv("PATH");
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (!dir.isEmpty()) {
+                    final File file = new File(dir, command);
+                    if (file.isFile() && file.canExecute()) {
+                        try {
+                            return file.getCanonicalFile();
+                        } catch (IOException ioe) {
+                            logger.debug("resolve: failure", ioe);
+                            return file.getAbsoluteFile();
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized Boolean getCached(final String command, final File executable) {
+        final String available = cache.getProperty(command + KEY_AVAILABLE);
+        if (available != null
+                && executable.getPath().equals(cache.getProperty(command + KEY_PATH))
+                && String.valueOf(executable.lastModified()).equals(cache.getProperty(command + KEY_MTIME))) {
+            return Boolean.valueOf(available);
+        }
+        return null;
+    }
+
+    private synchronized void putCached(final String command, final File executable, final boolean available) {
+        cache.setProperty(command + KEY_PATH, executable.getPath());
+        cache.setProperty(command + KEY_MTIME, String.valueOf(executable.lastModified()));
+        cache.setProperty(command + KEY_AVAILABLE, String.valueOf(available));
+        saveCache();
+    }
+
+    private synchronized void loadCache() {
+        if (CACHE_FILE.isFile()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(CACHE_FILE);
+                cache.load(in);
+            } catch (IOException ioe) {
+                logger.info("loadCache: unable to read {}", CACHE_FILE, ioe);
+                cache.clear();
+            } finally {
+                close(in);
+            }
+        }
+    }
+
+    private synchronized void saveCache() {
+        final File dir = CACHE_FILE.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            logger.info("saveCache: unable to create {}", dir);
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(CACHE_FILE);
+            cache.store(out, "OImaging local solvers");
+        } catch (IOException ioe) {
+            logger.info("saveCache: unable to write {}", CACHE_FILE, ioe);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ioe) {
+                logger.debug("close: failure", ioe);
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.jmcs.util.FileUtils;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed OIData part of an input file (deduplicated upload):
+ * the input file is split (HDU level) into the OIData blob (OI_* binary tables, identified by its SHA-256 hash)
+ * and the parameter file (primary HDU, IMAGE-OI tables and images).
+ * The server rebuilds the input file by inserting the blob before the HDU at the insertion index of the parameter file.
+ * Splits are kept for the session (parameter sweeps share the same blob).
+ */
+final class OIDataBlob {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(OIDataBlob.class.getName());
+
+    /** FITS block size */
+    static final int FITS_BLOCK = 2880;
+    /** FITS card size */
+    private static final int CARD = 80;
+    /** prefix of OIData extension names */
+    private static final String OI_PREFIX = "OI_";
+    /** max number of splits kept for the session */
+    private static final int MAX_SPLITS = 64;
+    /** copy buffer size */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** splits keyed by input file (LRU, guarded by itself) */
+    private static final Map<File, OIDataBlob> SPLITS = new LinkedHashMap<File, OIDataBlob>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<File, OIDataBlob> eldest) {
+            if (size() > MAX_SPLITS) {
+                eldest.getValue().delete();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /* members */
+    /** input file length */
+    private final long inputLength;
+    /** input file last modification time */
+    private final long inputModified;
+    /** blob hash (hexadecimal SHA-256) */
+    final String hash;
+    /** OIData blob file */
+    final File blobFile;
+    /** parameter file (other HDUs) */
+    final File paramsFile;
+    /** index of the parameter HDU before which the blob is inserted */
+    final int insertIndex;
+
+    private OIDataBlob(final File input, final String hash, final File blobFile, final File paramsFile, final int insertIndex) {
+        this.inputLength = input.length();
+        this.inputModified = input.lastModified();
+        this.hash = hash;
+        this.blobFile = blobFile;
+        this.paramsFile = paramsFile;
+        this.insertIndex = insertIndex;
+    }
+
+    /**
+     * Return the split of the given input file (cached for the session)
+     * @param input input file
+     * @return split or null if the file has no OIData table (or is not a FITS file)
+     * @throws IOException if the file can not be split
+     */
+    static OIDataBlob get(final File input) throws IOException {
+        synchronized (SPLITS) {
+            final OIDataBlob split = SPLITS.get(input);
+            if ((split != null) && (split.inputLength == input.length()) && (split.inputModified == input.lastModified())) {
+                return split;
+            }
+        }
+        final OIDataBlob split = split(input);
+        if (split != null) {
+            synchronized (SPLITS) {
+                final OIDataBlob previous = SPLITS.put(input, split);
+                if (previous != null) {
+                    previous.delete();
+                }
+            }
+        }
+        return split;
+    }
+
+    private static OIDataBlob split(final File input) throws IOException {
+        final List<Hdu> hdus = readHdus(input);
+        long blobSize = 0L;
+        int insertIndex = -1;
+        for (int i = 0, params = 0; i < hdus.size(); i++) {
+            if (hdus.get(i).isOIData()) {
+                blobSize += hdus.get(i).length;
+                if (insertIndex == -1) {
+                    insertIndex = params;
+                }
+            } else {
+                params++;
+            }
+        }
+        if ((hdus.size() < 2) || (blobSize == 0L)) {
+            return null;
+        }
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 not supported", nsae);
+        }
+        final File blobFile = FileUtils.getTempFile(input.getName() + ".oidata");
+        final File paramsFile = FileUtils.getTempFile(input.getName() + ".params.fits");
+
+        final RandomAccessFile raf = new RandomAccessFile(input, "r");
+        try {
+            final OutputStream blobOut = new FileOutputStream(blobFile);
+            final OutputStream paramsOut = new FileOutputStream(paramsFile);
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (Hdu hdu : hdus) {
+                    raf.seek(hdu.offset);
+                    long remaining = hdu.length;
+                    while (remaining > 0L) {
+                        final int n = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (n == -1) {
+                            throw new EOFException("Truncated FITS file: " + input);
+                        }
+                        if (hdu.isOIData()) {
+                            md.update(buffer, 0, n);
+                            blobOut.write(buffer, 0, n);
+                        } else {
+                            paramsOut.write(buffer, 0, n);
+                        }
+                        remaining -= n;
+                    }
+                }
+            } finally {
+                try {
+                    blobOut.close();
+                } finally {
+                    paramsOut.close();
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        final StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        final OIDataBlob split = new OIDataBlob(input, sb.toString(), blobFile, paramsFile, insertIndex);
+
+        logger.debug("split: {} = blob {} ({} bytes) + params ({} bytes)", input, split.hash, blobFile.length(), paramsFile.length());
+        return split;
+    }
+
+    private void delete() {
+        blobFile.delete();
+        paramsFile.delete();
+    }
+
+    /**
+     * Read the HDU layout of the given FITS file
+     * @param file FITS file
+     * @return HDUs (in file order) or empty list if not a FITS file
+     * @throws IOException if the file can not be read
+     */
+    static List<Hdu> readHdus(final File file) throws IOException {
+        final List<Hdu> hdus = new ArrayList<Hdu>(8);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long length = raf.length();
+            final byte[] block = new byte[FITS_BLOCK];
+            long offset = 0L;
+
+            while (offset + FITS_BLOCK <= length) {
+                raf.seek(offset);
+                long pos = offset;
+                boolean end = false;
+                String extName = null;
+                int bitpix = 0, naxis = 0;
+                long pcount = 0L, gcount = 1L, elements = 1L;
+
+                while (!end) {
+                    raf.readFully(block);
+                    pos += FITS_BLOCK;
+                    for (int i = 0; (i < FITS_BLOCK) && !end; i += CARD) {
+                        final String card = new String(block, i, CARD, StandardCharsets.US_ASCII);
+                        final String key = card.substring(0, 8).trim();
+
+                        if ((pos == offset + FITS_BLOCK) && (i == 0) && !"SIMPLE".equals(key) && !"XTENSION".equals(key)) {
+                            // not a FITS header:
+                            return (hdus.isEmpty()) ? Collections.<Hdu>emptyList() : hdus;
+                        }
+                        if ("END".equals(key)) {
+                            end = true;
+                        } else if (card.charAt(8) == '=') {
+                            final String value = getValue(card);
+                            if ("BITPIX".equals(key)) {
+                                bitpix = Integer.parseInt(value);
+                            } else if ("NAXIS".equals(key)) {
+                                naxis = Integer.parseInt(value);
+                            } else if (key.startsWith("NAXIS")) {
+                                elements *= Long.parseLong(value);
+                            } else if ("PCOUNT".equals(key)) {
+                                pcount = Long.parseLong(value);
+                            } else if ("GCOUNT".equals(key)) {
+                                gcount = Long.parseLong(value);
+                            } else if ("EXTNAME".equals(key)) {
+                                extName = value;
+                            }
+                        }
+                    }
+                    if (!end && (pos + FITS_BLOCK > length)) {
+                        throw new EOFException("Truncated FITS header: " + file);
+                    }
+                }
+                final long dataSize = (naxis == 0) ? 0L : (Math.abs(bitpix) / 8) * gcount * (pcount + elements);
+                final long paddedSize = ((dataSize + FITS_BLOCK - 1) / FITS_BLOCK) * FITS_BLOCK;
+
+                final Hdu hdu = new Hdu(offset, (pos - offset) + paddedSize, extName);
+                hdus.add(hdu);
+                offset += hdu.length;
+            }
+        } finally {
+            raf.close();
+        }
+        return hdus;
+    }
+
+    private static String getValue(final String card) {
+        String value = card.substring(10);
+        if (value.trim().startsWith("'")) {
+            // string value:
+            final int start = value.indexOf('\'');
+            final int end = value.indexOf('\'', start + 1);
+            return (end > start) ? value.substring(start + 1, end).trim() : value.substring(start + 1).trim();
+        }
+        final int comment = value.indexOf('/');
+        if (comment != -1) {
+            value = value.substring(0, comment);
+        }
+        return value.trim();
+    }
+
+    /**
+     * HDU location in a FITS file
+     */
+    static final class Hdu {
+
+        /** header offset */
+        final long offset;
+        /** header and data length (padded) */
+        final long length;
+        /** extension name or null */
+        final String extName;
+
+        Hdu(final long offset, final long length, final String extName) {
+            this.offset = offset;
+            this.length = length;
+            this.extName = extName;
+        }
+
+        /**
+         * @return true if this HDU is an OIData table (OI_*)
+         */
+        boolean isOIData() {
+            return (offset != 0L) && (extName != null) && extName.startsWith(OI_PREFIX);
+        }
+
+        @Override
+        public String toString() {
+            return "HDU[" + extName + "] @" + offset + " (" + length + " bytes)";
+        }
+    }
+}
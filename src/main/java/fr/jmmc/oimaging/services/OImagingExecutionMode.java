@@ -4,6 +4,7 @@
 package fr.jmmc.oimaging.services;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface of OImaging services
@@ -20,4 +21,56 @@ public interface OImagingExecutionMode {
      */
     public ServiceResult reconstructsImage(final String software, final String cliOptions, final File inputFile);
 
+    /**
+     * Asynchronous interface: submit the job and return immediately.
+     * Cancelling the returned future aborts the job (process killed or remote job aborted):
+     * the execution mode calls ServiceResult.setTerminated() once the job no longer runs (JobQueue slot released then).
+     * @param software algorithm to run
+     * @param cliOptions software options on command line or null
+     * @param inputFile oifits file that must be used by the service.
+     * @param listener optional listener notified of phase changes (may be null)
+     * @return future completed with the service result or exceptionally (IllegalStateException)
+     */
+    public CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String cliOptions, final File inputFile,
+                                                                   final ServiceProgressListener listener);
+
+    /**
+     * Asynchronous interface continuing a finished job (warm start):
+     * the service resumes from the previous job workspace and only the delta file is sent.
+     * Execution modes without continuation support run the whole input file (default).
+     * @param software algorithm to run
+     * @param cliOptions software options on command line or null
+     * @param inputFile oifits file that must be used by the service (whole input).
+     * @param continuation previous job and prepared delta file
+     * @param listener optional listener notified of phase changes (may be null)
+     * @return future completed with the service result or exceptionally (IllegalStateException)
+     */
+    public default CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String cliOptions, final File inputFile,
+                                                                           final Continuation continuation,
+                                                                           final ServiceProgressListener listener) {
+        return reconstructsImageAsync(software, cliOptions, inputFile, listener);
+    }
+
+    /**
+     * @return max number of jobs running concurrently with this execution mode (JobQueue)
+     */
+    public int getMaxConcurrentJobs();
+
+    /**
+     * Open the execution log of the given job (running or finished) to read it incrementally
+     * @param result service result of the job (given to the ServiceProgressListener)
+     * @return log tail
+     */
+    public ExecutionLogTail openExecutionLog(final ServiceResult result);
+
+    /**
+     * Return the identity of the solver running the given software with this execution mode
+     * (part of the ResultCache key so that results of another mode, server or solver version are not reused).
+     * @param software algorithm to run
+     * @return solver identity
+     */
+    public default String getSolverIdentity(final String software) {
+        return getClass().getName() + ':' + software;
+    }
+
 }
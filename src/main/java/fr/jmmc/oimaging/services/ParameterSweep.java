@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oitools.image.ImageOiConstants;
+import fr.jmmc.oitools.image.ImageOiInputParam;
+import fr.jmmc.oitools.meta.KeywordMeta;
+import fr.jmmc.oitools.meta.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hyper-parameter sweep: ranges of values over input parameter keywords
+ * (standard ImageOiInputParam keywords like RGL_WGT, RGL_NAME, MAXITER or
+ * software-specific ones like RGL_TAU, RGL_GAMM, SWAVE0) expanded into
+ * the cartesian product of keyword values (one job per combination).
+ *
+ * Sweep definition: one keyword per line "KEYWORD = values" where values are:
+ * - a list: "1e3, 1e4, 1e5" or "mem_prior, compactness" (logical values: T or F)
+ * - a linear range: "start:stop:count" (numeric keywords)
+ * - a logarithmic range: "start:stop:countlog" (positive numeric keywords)
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public final class ParameterSweep {
+
+    /** max number of jobs in one sweep */
+    public static final int MAX_JOBS = Integer.getInteger("ParameterSweep.maxJobs", 1000);
+    /** log range suffix */
+    private static final String SUFFIX_LOG = "log";
+
+    /* members */
+    /** keyword values in declaration order */
+    private final Map<String, List<Object>> ranges = new LinkedHashMap<>();
+
+    /**
+     * Parse the given sweep definition using keyword types of the given input parameters
+     * @param definition sweep definition (one keyword per line)
+     * @param params input parameters giving supported keywords and their types
+     * @return new ParameterSweep
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public static ParameterSweep parse(final String definition, final ImageOiInputParam params) throws IllegalArgumentException {
+        final ParameterSweep sweep = new ParameterSweep();
+
+        for (String line : definition.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final int pos = line.indexOf('=');
+            if (pos <= 0) {
+                throw new IllegalArgumentException("Invalid line (KEYWORD = values expected): " + line);
+            }
+            final String keyword = line.substring(0, pos).trim().toUpperCase();
+            final KeywordMeta meta = params.getKeywordsDesc().get(keyword);
+            if (meta == null) {
+                throw new IllegalArgumentException("Unsupported keyword '" + keyword + "' for the current software");
+            }
+            if (sweep.ranges.containsKey(keyword)) {
+                throw new IllegalArgumentException("Keyword '" + keyword + "' defined twice");
+            }
+            sweep.ranges.put(keyword, parseValues(meta, line.substring(pos + 1).trim()));
+
+            // check the job count as soon as possible (expanded later):
+            final int count = sweep.getJobCount();
+            if (count > MAX_JOBS) {
+                throw new IllegalArgumentException("Too many jobs (" + count + " > " + MAX_JOBS + ")");
+            }
+        }
+        if (sweep.ranges.isEmpty()) {
+            throw new IllegalArgumentException("Empty sweep definition");
+        }
+        return sweep;
+    }
+
+    private static List<Object> parseValues(final KeywordMeta meta, final String values) throws IllegalArgumentException {
+        final Types type = meta.getDataType();
+        final List<Object> list = new ArrayList<>();
+
+        if (values.indexOf(':') != -1) {
+            if (type != Types.TYPE_DBL && type != Types.TYPE_INT) {
+                throw new IllegalArgumentException("Range not supported for keyword '" + meta.getName() + "' (not numeric)");
+            }
+            final String[] parts = values.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid range (start:stop:count expected) for keyword '" + meta.getName() + "': " + values);
+            }
+            String countValue = parts[2].trim().toLowerCase();
+            final boolean log = countValue.endsWith(SUFFIX_LOG);
+            if (log) {
+                countValue = countValue.substring(0, countValue.length() - SUFFIX_LOG.length()).trim();
+            }
+            final double start, stop;
+            final int count;
+            try {
+                start = Double.parseDouble(parts[0].trim());
+                stop = Double.parseDouble(parts[1].trim());
+                count = Integer.parseInt(countValue);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Invalid range for keyword '" + meta.getName() + "': " + values, nfe);
+            }
+            if (count < 1) {
+                throw new IllegalArgumentException("Invalid range count for keyword '" + meta.getName() + "': " + count);
+            }
+            if (count > MAX_JOBS) {
+                throw new IllegalArgumentException("Too many values for keyword '" + meta.getName() + "' (" + count + " > " + MAX_JOBS + ")");
+            }
+            if (log && (start <= 0.0 || stop <= 0.0)) {
+                throw new IllegalArgumentException("Logarithmic range requires positive values for keyword '" + meta.getName() + "'");
+            }
+            for (int i = 0; i < count; i++) {
+                final double t = (count == 1) ? 0.0 : ((double) i) / (count - 1);
+                final double value = (log)
+                        ? Math.exp(Math.log(start) + t * (Math.log(stop) - Math.log(start)))
+                        : start + t * (stop - start);
+
+                final Object converted = (type == Types.TYPE_INT) ? Integer.valueOf((int) Math.round(value)) : Double.valueOf(value);
+                if (!list.contains(converted)) {
+                    list.add(converted);
+                }
+            }
+        } else {
+            for (String value : values.split(",")) {
+                value = value.trim();
+                if (!value.isEmpty()) {
+                    list.add(convert(meta, value));
+                }
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("No value given for keyword '" + meta.getName() + "'");
+        }
+        return list;
+    }
+
+    private static Object convert(final KeywordMeta meta, final String value) throws IllegalArgumentException {
+        try {
+            switch (meta.getDataType()) {
+                case TYPE_DBL:
+                    return Double.valueOf(value);
+                case TYPE_INT:
+                    return Integer.valueOf(value);
+                case TYPE_LOGICAL:
+                    return parseLogical(meta, value);
+                default:
+                    return value;
+            }
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid value for keyword '" + meta.getName() + "': " + value, nfe);
+        }
+    }
+
+    private static Boolean parseLogical(final KeywordMeta meta, final String value) throws IllegalArgumentException {
+        // FITS logical values (T/F) or java booleans:
+        if ("T".equalsIgnoreCase(value) || "true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        }
+        if ("F".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Invalid logical value (T or F expected) for keyword '" + meta.getName() + "': " + value);
+    }
+
+    private ParameterSweep() {
+        super();
+    }
+
+    /**
+     * Check that swept values are supported by the given service
+     * @param service service to use
+     * @param failures list of failure messages to complete
+     */
+    public void validate(final Service service, final List<String> failures) {
+        final List<Object> rglNames = ranges.get(ImageOiConstants.KEYWORD_RGL_NAME);
+        if (rglNames != null) {
+            for (Object rglName : rglNames) {
+                boolean found = false;
+                for (String supported : service.getSupported_RGL_NAME()) {
+                    if (supported.trim().equals(rglName)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    failures.add("Unsupported " + ImageOiConstants.KEYWORD_RGL_NAME + " value '" + rglName + "' for " + service.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return swept keywords and their values (read-only)
+     */
+    public Map<String, List<Object>> getRanges() {
+        return Collections.unmodifiableMap(ranges);
+    }
+
+    /**
+     * @return number of jobs (combinations)
+     */
+    public int getJobCount() {
+        long count = 1L;
+        for (List<Object> values : ranges.values()) {
+            count *= values.size();
+            if (count > Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return (int) count;
+    }
+
+    /**
+     * Expand the sweep into keyword value combinations (last keyword varies fastest)
+     * @return list of keyword values (one map per job)
+     */
+    public List<Map<String, Object>> expand() {
+        final List<Map<String, Object>> combinations = new ArrayList<>(getJobCount());
+        combinations.add(new LinkedHashMap<String, Object>());
+
+        for (Map.Entry<String, List<Object>> e : ranges.entrySet()) {
+            final List<Map<String, Object>> next = new ArrayList<>(combinations.size() * e.getValue().size());
+            for (Map<String, Object> combination : combinations) {
+                for (Object value : e.getValue()) {
+                    final Map<String, Object> copy = new LinkedHashMap<>(combination);
+                    copy.put(e.getKey(), value);
+                    next.add(copy);
+                }
+            }
+            combinations.clear();
+            combinations.addAll(next);
+        }
+        return combinations;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterSweep" + ranges + " [" + getJobCount() + " jobs]";
+    }
+}
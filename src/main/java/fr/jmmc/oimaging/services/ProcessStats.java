@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resource usage of a local job (its process tree) sampled from the Linux /proc file system:
+ * cpu time (user + system, including reaped children), peak resident memory and I/O bytes.
+ * The peak memory is the maximum over samples of the summed resident memory (VmRSS) of the tree,
+ * at least the largest per-process peak (VmHWM) so short peaks between samples of a single process are not missed.
+ * Values are kept at their maximum across samples as /proc entries vanish when processes end.
+ * Only the job process tree is read at each sample (children files), not every process.
+ * Sampling does nothing on other platforms.
+ * Note: not thread-safe (sampled by the job monitor only)
+ */
+final class ProcessStats {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ProcessStats.class.getName());
+
+    /** proc file system */
+    private static final File PROC = new File("/proc");
+    /** true if the /proc file system is available (linux) */
+    static final boolean SUPPORTED = new File(PROC, "self/stat").canRead();
+    /** clock ticks per second (USER_HZ = 100 on linux) */
+    private static final double CLOCK_TICKS = 100.0;
+    /** pid of this JVM (parent of local jobs) */
+    private static final String JVM_PID = getJvmPid();
+    /** true if child processes can be read from /proc/[pid]/task/[tid]/children (linux 3.5+) */
+    private static final boolean CHILDREN_SUPPORTED = (JVM_PID != null)
+            && new File(PROC, JVM_PID + "/task/" + JVM_PID + "/children").canRead();
+
+    /* members */
+    /** command line argument identifying the job process (unique) */
+    private final String marker;
+    /** pid of the job process or null if not found yet */
+    private String rootPid = null;
+    /** cpu time (s) */
+    private double cpuTime = 0.0;
+    /** peak resident memory of the process tree (bytes) */
+    private long peakRss = 0L;
+    /** I/O bytes (read + written) */
+    private long ioBytes = 0L;
+
+    /**
+     * Create stats for the job process having the given argument in its command line
+     * @param marker command line argument identifying the job process
+     */
+    ProcessStats(final String marker) {
+        this.marker = marker;
+    }
+
+    /**
+     * Sample the resource usage of the job process tree
+     * @return true if the process tree is alive
+     */
+    boolean sample() {
+        if (!SUPPORTED || JVM_PID == null) {
+            return false;
+        }
+        // parent pid to child pids (full /proc scan only if children files are not available):
+        final Map<String, List<String>> scanned = (CHILDREN_SUPPORTED) ? null : scanChildren();
+
+        if (rootPid == null) {
+            rootPid = findRoot((scanned != null) ? scanned.get(JVM_PID) : readChildren(JVM_PID));
+            if (rootPid == null) {
+                return false;
+            }
+            logger.debug("sample: job process[{}] = '{}'", marker, rootPid);
+        }
+
+        long ticks = 0L;
+        long rss = 0L;
+        long hwm = 0L;
+        long io = 0L;
+
+        final List<String> tree = new ArrayList<String>(4);
+        tree.add(rootPid);
+        for (int i = 0; i < tree.size(); i++) {
+            final String pid = tree.get(i);
+            final String[] stat = readStat(pid);
+            if (stat == null) {
+                if (i == 0) {
+                    // job process ended:
+                    return false;
+                }
+                continue;
+            }
+            // utime, stime, cutime, cstime (fields 14 to 17):
+            for (int f = 11; f <= 14; f++) {
+                ticks += parseLong(stat[f]);
+            }
+            final String status = readFile(new File(PROC, pid + "/status"));
+            rss += readField(status, "VmRSS:") * 1024L;
+            hwm = Math.max(hwm, readField(status, "VmHWM:") * 1024L);
+            final String ioContent = readFile(new File(PROC, pid + "/io"));
+            io += readField(ioContent, "rchar:") + readField(ioContent, "wchar:");
+
+            final List<String> list = (scanned != null) ? scanned.get(pid) : readChildren(pid);
+            if (list != null) {
+                tree.addAll(list);
+            }
+        }
+
+        cpuTime = Math.max(cpuTime, ticks / CLOCK_TICKS);
+        // per-process peaks are not summed (not simultaneous):
+        peakRss = Math.max(peakRss, Math.max(rss, hwm));
+        ioBytes = Math.max(ioBytes, io);
+        return true;
+    }
+
+    /**
+     * @return cpu time (s)
+     */
+    double getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return peak resident memory of the process tree (bytes)
+     */
+    long getPeakRss() {
+        return peakRss;
+    }
+
+    /**
+     * @return I/O bytes (read + written)
+     */
+    long getIoBytes() {
+        return ioBytes;
+    }
+
+    /**
+     * Read the child processes of the given process (all its threads)
+     * @param pid process id
+     * @return child process ids
+     */
+    private static List<String> readChildren(final String pid) {
+        final List<String> list = new ArrayList<String>(4);
+        final String[] tids = new File(PROC, pid + "/task").list();
+        if (tids != null) {
+            for (String tid : tids) {
+                final String content = readFile(new File(PROC, pid + "/task/" + tid + "/children"));
+                if (content != null) {
+                    for (String child : content.trim().split(" ")) {
+                        if (!child.isEmpty()) {
+                            list.add(child);
+                        }
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Scan all processes (kernels without children files)
+     * @return parent pid to child pids
+     */
+    private static Map<String, List<String>> scanChildren() {
+        final Map<String, List<String>> children = new HashMap<String, List<String>>(256);
+
+        final String[] pids = PROC.list();
+        if (pids != null) {
+            for (String pid : pids) {
+                if (!isNumber(pid)) {
+                    continue;
+                }
+                final String[] stat = readStat(pid);
+                if (stat != null) {
+                    List<String> list = children.get(stat[1]);
+                    if (list == null) {
+                        list = new ArrayList<String>(4);
+                        children.put(stat[1], list);
+                    }
+                    list.add(pid);
+                }
+            }
+        }
+        return children;
+    }
+
+    private String findRoot(final List<String> candidates) {
+        if (candidates != null) {
+            for (String pid : candidates) {
+                final String cmdLine = readFile(new File(PROC, pid + "/cmdline"));
+                if (cmdLine != null && cmdLine.contains(marker)) {
+                    return pid;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the stat file of the given process
+     * @param pid process id
+     * @return fields after the command name (state is [0], ppid is [1]) or null
+     */
+    private static String[] readStat(final String pid) {
+        final String stat = readFile(new File(PROC, pid + "/stat"));
+        if (stat != null) {
+            // command name may contain spaces or parenthesis:
+            final int pos = stat.lastIndexOf(')');
+            if (pos != -1) {
+                final String[] fields = stat.substring(pos + 1).trim().split(" ");
+                if (fields.length > 14) {
+                    return fields;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long readField(final String content, final String name) {
+        if (content != null) {
+            for (String line : content.split("\n")) {
+                if (line.startsWith(name)) {
+                    final String value = line.substring(name.length()).trim();
+                    final int pos = value.indexOf(' ');
+                    return parseLong((pos != -1) ? value.substring(0, pos) : value);
+                }
+            }
+        }
+        return 0L;
+    }
+
+    private static String readFile(final File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+        } catch (IOException ioe) {
+            // process ended or not readable:
+            return null;
+        }
+    }
+
+    private static long parseLong(final String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            return 0L;
+        }
+    }
+
+    private static boolean isNumber(final String name) {
+        for (int i = 0, len = name.length(); i < len; i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+
+    private static String getJvmPid() {
+        if (SUPPORTED) {
+            try {
+                return new File(PROC, "self").getCanonicalFile().getName();
+            } catch (IOException ioe) {
+                logger.info("getJvmPid: failure", ioe);
+            }
+        }
+        return null;
+    }
+}
@@ -11,18 +11,32 @@ import fr.jmmc.oimaging.Preferences;
 import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.SocketException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import net.ivoa.xml.uws.v1.ExecutionPhase;
 import net.ivoa.xml.uws.v1.JobSummary;
 import net.ivoa.xml.uws.v1.ResultReference;
 import net.ivoa.xml.uws.v1.Results;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.ext.html.FormData;
 import org.restlet.ext.html.FormDataSet;
-import org.restlet.representation.FileRepresentation;
+import org.restlet.resource.ResourceException;
 import org.restlet.util.Series;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,103 +62,79 @@ public final class RemoteExecutionMode implements Observer, OImagingExecutionMod
     private final static Preferences PREFS = Preferences.getInstance();
 
     public static final String SERVICE_PATH = "oimaging/oimaging";
-    
-    public static final long POLL_INTERVAL = 200L;
 
-    private static final ClientFactory FACTORY = new ClientFactory();
+    /** submitted jobs (not yet deleted) keyed by service result */
+    private static final Map<ServiceResult, RemoteJob> ACTIVE_JOBS = new ConcurrentHashMap<>();
 
     /** singleton */
     public static final RemoteExecutionMode INSTANCE = new RemoteExecutionMode();
 
-    private static String SERVER_URL = null;
+    /** resolved server urls */
+    private static List<String> SERVER_URLS = null;
+    /** endpoint pool (created on demand) */
+    private static UwsEndpointPool POOL = null;
+    /** last server configuration (preferences) */
+    private static String serverConfig = null;
 
     private static String getServerHost(final boolean local, final boolean beta) {
         return ((local) ? "127.0.0.1:8080" : ((beta) ? "oimaging-beta.jmmc.fr" : "oimaging.jmmc.fr"));
     }
 
     private static String getServerURL(final String host) {
-        return "http://" + host + "/OImaging-uws/";
+        return (host.contains("://")) ? host : "http://" + host + "/OImaging-uws/";
     }
 
-    private static synchronized String resolveServerURL() {
-        if (SERVER_URL == null) {
+    /**
+     * @return server urls (custom mode accepts several hosts separated by commas or spaces)
+     */
+    private static synchronized List<String> resolveServerURLs() {
+        if (SERVER_URLS == null) {
+            final List<String> urls = new ArrayList<>(4);
             // Check server mode:
-            String host = null;
             if (PREFS.isServerModeCustom()) {
-                host = PREFS.getPreference(Preferences.SERVER_CUSTOM);
+                final String hosts = PREFS.getPreference(Preferences.SERVER_CUSTOM);
+                if (!StringUtils.isEmpty(hosts)) {
+                    for (String host : hosts.trim().split("[,\\s]+")) {
+                        if (!host.isEmpty() && !urls.contains(getServerURL(host))) {
+                            urls.add(getServerURL(host));
+                        }
+                    }
+                }
             }
-            if (StringUtils.isEmpty(host)) {
-                host = getServerHost(USE_LOCAL, USE_BETA);
+            if (urls.isEmpty()) {
+                urls.add(getServerURL(getServerHost(USE_LOCAL, USE_BETA)));
             }
-            SERVER_URL = getServerURL(host);
+            SERVER_URLS = urls;
 
-            _logger.debug("resolveServerURL: {}", SERVER_URL);
+            _logger.debug("resolveServerURLs: {}", SERVER_URLS);
         }
-        return SERVER_URL;
+        return SERVER_URLS;
     }
 
-    public static synchronized void resetRemoteServer() {
-        // clear SERVER_URL:
-        SERVER_URL = null;
-        // reset to be sure:
-        FACTORY.reset();
-    }
-
-    private final static class ClientFactory {
-
-        private final static boolean USE_CACHE = true;
-        
-        /** UWS client to execute IR on a remote server */
-        private ClientUWS uwsClient = null;
-
-        ClientFactory() {
+    private static synchronized UwsEndpointPool getPool() {
+        if (POOL == null) {
+            POOL = new UwsEndpointPool(resolveServerURLs(), SERVICE_PATH,
+                    Preferences.SERVER_BALANCING_LATENCY.equalsIgnoreCase(PREFS.getPreference(Preferences.SERVER_BALANCING))
+                    ? UwsEndpointPool.Balancing.LATENCY : UwsEndpointPool.Balancing.LEAST_JOBS);
+            POOL.start();
         }
+        return POOL;
+    }
 
-        /**
-         * try to connect to the OImaging server
-         * @return client
-         * @throws fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWSException
-         */
-        public ClientUWS getClient() throws ClientUWSException {
-            ClientUWS c = null;
-            if (uwsClient == null) {
-                ClientUWSException cue = null;
-                // Move it in a property file (or constant at least)
-                final String url = resolveServerURL();
-                try {
-                    c = new ClientUWS(url, SERVICE_PATH);
-
-                    // Get home page as an isAlive request:
-                    if (c.getHomePage() != null) {
-                        _logger.info("UWS service endpoint : '{}'", url);
-                    }
-                } catch (ClientUWSException ce) {
-                    _logger.info("UWS service endpoint unreachable: '{}'", url);
-                    if (cue == null) {
-                        cue = ce;
-                    }
-                } catch (Exception e) {
-                    // we should avoid to catch Exception, please catch e just before
-                    _logger.info("UWS service endpoint unreachable: '{}'", url);
-                    throw new IllegalStateException("UWS service endpoint unreachable: '" + url + "'", e);
-                }
-                if (c == null) {
-                    if (cue != null) {
-                        throw cue;
-                    }
-                    throw new ClientUWSException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "No available endpoint !");
-                }
-                if (USE_CACHE) {
-                    uwsClient = c;
-                } else {
-                    return c;
-                }
-            }
-            return uwsClient;
-        }
+    /**
+     * @return endpoints of the remote server pool (statistics)
+     */
+    public static List<UwsEndpoint> getEndpoints() {
+        return getPool().getEndpoints();
+    }
 
-        public void reset() {
-            this.uwsClient = null;
+    public static synchronized void resetRemoteServer() {
+        // clear SERVER_URLS:
+        SERVER_URLS = null;
+        // reset to be sure:
+        if (POOL != null) {
+            POOL.close();
+            POOL = null;
         }
     }
 
@@ -161,6 +151,15 @@ public final class RemoteExecutionMode implements Observer, OImagingExecutionMod
      */
     @Override
     public void update(final Observable o, final Object arg) {
+        // keep the endpoint pool (and its statistics) if the server configuration is unchanged:
+        final String config = PREFS.getPreference(Preferences.SERVER_MODE) + '|' + PREFS.getPreference(Preferences.SERVER_CUSTOM)
+                + '|' + PREFS.getPreference(Preferences.SERVER_BALANCING);
+        synchronized (RemoteExecutionMode.class) {
+            if (config.equals(serverConfig)) {
+                return;
+            }
+            serverConfig = config;
+        }
         resetRemoteServer();
     }
 
@@ -176,11 +175,55 @@ public final class RemoteExecutionMode implements Observer, OImagingExecutionMod
      * @throws java.net.URISyntaxException
      * @throws java.io.IOException
      */
-    @SuppressWarnings("SleepWhileInLoop")
     public void callUwsOimagingService(final String software, final String cliOptions,
                                        final String inputFilename, ServiceResult result)
             throws IllegalStateException, ClientUWSException, URISyntaxException, IOException {
 
+        final RemoteJob job = submitJob(software, cliOptions, inputFilename, result, new HashSet<UwsEndpoint>(4));
+
+        boolean cancelled = false;
+        try {
+            // wait for the job end (shared poller):
+            final CompletableFuture<ExecutionPhase> watch = UwsJobPoller.getInstance().watch(job.client, job.jobId);
+            ExecutionPhase phase;
+            try {
+                phase = watch.get();
+            } catch (InterruptedException ie) {
+                _logger.debug("Interrupted.");
+                watch.cancel(false);
+                abortJob(job, result);
+
+                cancelled = true;
+                phase = ExecutionPhase.ABORTED;
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof ClientUWSException) {
+                    throw (ClientUWSException) ee.getCause();
+                }
+                throw toIllegalStateException(ee);
+            }
+            processEndOfJob(job, phase, cancelled, result);
+        } finally {
+            deleteJob(job);
+        }
+    }
+
+    /**
+     * Create the remote job (upload input file) in autostart mode
+     *
+     * @param software software to run
+     * @param cliOptions software options on command line or null
+     * @param inputFilename input filename
+     * @param result the service result pointing result file to write data into.
+     * @param excluded endpoints to ignore (updated with unreachable endpoints)
+     * @return remote job (client and job identifier)
+     * @throws IllegalStateException if the job can not be submitted to the job queue
+     * @throws fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWSException
+     * @throws java.net.ConnectException
+     */
+    private static RemoteJob submitJob(final String software, final String cliOptions, final String inputFilename,
+                                       final ServiceResult result, final Set<UwsEndpoint> excluded)
+            throws IllegalStateException, ClientUWSException, ConnectException {
+
         if (StringUtils.isEmpty(software)) {
             throw new IllegalArgumentException("empty application name !");
         }
@@ -197,169 +240,702 @@ public final class RemoteExecutionMode implements Observer, OImagingExecutionMod
         _logger.info("callUwsOimagingService: software={} cliOptions={} inputFilenane={}",
                 software, cliOptions, inputFilename);
 
-        // prepare input of next uws call
-        final FormDataSet formDataSet = new FormDataSet();
-        formDataSet.setMultipart(true);
-
-        final Series<FormData> fdsEntries = formDataSet.getEntries();
-
-        // TODO declare field name as constant ( and share them with server side )
-        fdsEntries.add(new FormData("inputfile",
-                new FileRepresentation(new File(inputFilename), MediaType.IMAGE_ALL)));
-        fdsEntries.add(new FormData("software", software));
-
-        if (cliOptions != null) {
-            fdsEntries.add(new FormData("cliOptions", cliOptions));
-        }
+        final File inputFile = new File(inputFilename);
 
-        // start task in autostart mode
-        formDataSet.add("PHASE", "RUN");
+        // create job on the selected endpoint (failover to other endpoints if unreachable):
+        final UwsEndpointPool pool = getPool();
+        final Set<UwsEndpoint> retried = new HashSet<>(4);
+        ConnectException lastFailure = null;
 
-        // create job
+        UwsEndpoint endpoint = null;
         ClientUWS client = null;
         String jobId = null;
+        UploadRepresentation upload = null;
+        UploadRepresentation blobUpload = null;
+        OIDataBlob blob = null;
+        boolean blobRetried = false;
+
+        while (jobId == null) {
+            endpoint = pool.select(excluded);
+            if (endpoint == null) {
+                if (lastFailure != null) {
+                    throw lastFailure;
+                }
+                throw new ClientUWSException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "No available endpoint !");
+            }
+            client = endpoint.getClient();
+
+            // split the OIData tables (deduplicated upload) if enabled and supported by this server:
+            blob = (PREFS.getPreferenceAsBoolean(Preferences.SERVER_DEDUP_UPLOAD) && endpoint.isBlobUploadSupported())
+                    ? getBlob(inputFile) : null;
+            blobUpload = null;
 
-        boolean retry = true;
-        while (client == null) {
-            // may throw IllegalStateException if no running service available:
-            client = FACTORY.getClient();
+            // compress the input file if enabled and not rejected by this server:
+            upload = new UploadRepresentation((blob != null) ? blob.paramsFile : inputFile,
+                    PREFS.getPreferenceAsBoolean(Preferences.SERVER_COMPRESS_UPLOAD) && endpoint.isCompressedUploadSupported());
 
             try {
-                jobId = client.createJob(formDataSet);
+                if (blob != null) {
+                    blobUpload = uploadBlob(endpoint, client, blob);
+                }
+                jobId = client.createJob(createForm(software, cliOptions, upload, null, blob));
             } catch (ClientUWSException cue) {
                 final Throwable rootCause = getRootCause(cue);
                 if (rootCause instanceof ConnectException) {
-                    if (retry) {
-                        _logger.debug("ConnectException caught: ", rootCause);
-                        // retry once if connect exception:
-                        retry = false;
-                        // reset to be sure:
-                        FACTORY.reset();
-                        client = null;
-                        jobId = null;
+                    _logger.debug("ConnectException caught: ", rootCause);
+                    lastFailure = (ConnectException) rootCause;
+                    if (retried.add(endpoint)) {
+                        // retry once with a new client:
+                        endpoint.resetClient();
                     } else {
-                        // throw ConnectException
-                        throw (ConnectException) rootCause;
+                        _logger.info("UWS service endpoint unreachable: '{}'", endpoint.getUrl());
+                        endpoint.setHealth(UwsEndpoint.Health.DOWN);
+                        excluded.add(endpoint);
+                    }
+                } else if ((blob != null) && isClientError(cue) && isBlobMissing(client, blob)) {
+                    // blob evicted by the server: upload it again once, then disable deduplication
+                    endpoint.forgetBlob(blob.hash);
+                    if (blobRetried) {
+                        _logger.info("UWS server rejected the deduplicated upload, upload the whole input: {}", cue.getMessage());
+                        endpoint.setBlobUploadSupported(false);
                     }
+                    blobRetried = true;
+                } else if (upload.isCompressed() && isClientError(cue)) {
+                    // server rejects compressed upload: retry uncompressed
+                    _logger.info("UWS server rejected the compressed upload, retry uncompressed: {}", cue.getMessage());
+                    endpoint.setCompressedUploadSupported(false);
                 } else {
                     throw cue;
                 }
             }
         }
+        endpoint.jobSubmitted(upload);
+
+        if (blob != null) {
+            // whole input size but only the bytes actually sent:
+            result.setUploadMetrics(inputFile.length(),
+                    upload.getSentBytes() + ((blobUpload != null) ? blobUpload.getSentBytes() : 0L),
+                    upload.getDuration() + ((blobUpload != null) ? blobUpload.getDuration() : 0L));
+        } else {
+            result.setUploadMetrics(upload.getRawBytes(), upload.getSentBytes(), upload.getDuration());
+        }
 
-        boolean cancelled = false;
+        if (_logger.isInfoEnabled()) {
+            _logger.info("Job[{}] upload: {} bytes sent ({} bytes{}{}) in {} ms ({} MB/s)", jobId,
+                    result.getUploadSentBytes(), result.getUploadRawBytes(), (upload.isCompressed()) ? " gzip" : "",
+                    (blob != null) ? ((blobUpload != null) ? " blob uploaded" : " blob reused") : "",
+                    result.getUploadDuration(), String.format("%.2f", result.getUploadThroughput()));
+        }
+        final RemoteJob job = new RemoteJob(endpoint, client, jobId, software, cliOptions, inputFilename);
+        ACTIVE_JOBS.put(result, job);
+        return job;
+    }
+
+    /**
+     * Create the remote job continuing the previous job on its server (autostart mode): only the delta file is uploaded
+     *
+     * @param software software to run
+     * @param cliOptions software options on command line or null
+     * @param inputFilename whole input filename (failover)
+     * @param continuation previous job and delta file
+     * @param result the service result pointing result file to write data into.
+     * @return remote job or null if the previous job can not be continued (whole input file needed)
+     */
+    private static RemoteJob submitContinuation(final String software, final String cliOptions, final String inputFilename,
+                                                final Continuation continuation, final ServiceResult result) {
+        final ServiceResult previous = continuation.getPrevious();
+        final File deltaFile = continuation.getDeltaFile();
+        if ((deltaFile == null) || !previous.isContinuable()) {
+            return null;
+        }
+        UwsEndpoint endpoint = null;
+        for (UwsEndpoint e : getPool().getEndpoints()) {
+            if (e.getUrl().equals(previous.getContinuationServer()) && (e.getHealth() != UwsEndpoint.Health.DOWN)) {
+                endpoint = e;
+                break;
+            }
+        }
+        if (endpoint == null) {
+            _logger.info("callUwsOimagingService: server of job '{}' unavailable, run the whole input", previous.getContinuationJobId());
+            return null;
+        }
+        _logger.info("callUwsOimagingService: software={} cliOptions={} continue job '{}' with {}",
+                software, cliOptions, previous.getContinuationJobId(), continuation.getChangedKeywords());
+
+        final ClientUWS client = endpoint.getClient();
+        final UploadRepresentation upload = new UploadRepresentation(deltaFile,
+                PREFS.getPreferenceAsBoolean(Preferences.SERVER_COMPRESS_UPLOAD) && endpoint.isCompressedUploadSupported());
+        final String jobId;
         try {
-            // Get the first state:
-            ExecutionPhase phase = client.getJobPhase(jobId);
+            jobId = client.createJob(createForm(software, cliOptions, upload, continuation, null));
+        } catch (ClientUWSException cue) {
+            // previous job expired or continuation not supported by this server:
+            _logger.info("UWS server can not continue job '{}', run the whole input: {}", previous.getContinuationJobId(), cue.getMessage());
+            return null;
+        }
+        endpoint.jobSubmitted(upload);
 
-            _logger.debug("getJobPhase[{}] : {}", jobId, phase);
-            
-            while ((phase == ExecutionPhase.EXECUTING) || (phase == ExecutionPhase.QUEUED)) {
-                try {
-                    Thread.sleep(POLL_INTERVAL);
-                } catch (InterruptedException ie) {
-                    _logger.debug("Interrupted.");
-                    result.setErrorMessage("Cancelled job.");
-
-                    _logger.debug("Job[{}] aborting ...", jobId);
-                    client.setAbortJob(jobId);
-                    _logger.debug("Job[{}] aborted.", jobId);
-
-                    cancelled = true;
-                    phase = ExecutionPhase.ABORTED;
-                    break;
-                }
-                phase = client.getJobPhase(jobId);
+        result.setUploadMetrics(upload.getRawBytes(), upload.getSentBytes(), upload.getDuration());
 
-                _logger.debug("getJobPhase[{}] : {}", jobId, phase);
+        _logger.info("Job[{}] continuation upload: {} bytes sent in {} ms", jobId, upload.getSentBytes(), upload.getDuration());
 
-                // TODO timeout ? or just wait 'Cancel' button
-            }
-            _logger.info("End of execution for job '{}' in phase '{}'", jobId, phase);
+        final RemoteJob job = new RemoteJob(endpoint, client, jobId, software, cliOptions, inputFilename);
+        ACTIVE_JOBS.put(result, job);
+        return job;
+    }
 
-            if (phase == ExecutionPhase.COMPLETED) {
-                prepareResult(client, jobId, result);
-            } else if (!cancelled || (phase != ExecutionPhase.ABORTED)) {
-                JobSummary jobInfo = client.getJobInfo(jobId);
-                _logger.error("Error in execution for job '{}': {} ", jobId, jobInfo.getErrorSummary());
+    /**
+     * Split the given input file for the deduplicated upload
+     * @param inputFile input file
+     * @return split or null to upload the whole input file
+     */
+    private static OIDataBlob getBlob(final File inputFile) {
+        try {
+            return OIDataBlob.get(inputFile);
+        } catch (IOException ioe) {
+            _logger.info("Unable to split the input file '{}', upload the whole input", inputFile, ioe);
+            return null;
+        }
+    }
 
-                result.setErrorMessage("Execution error: "
-                        + ((jobInfo.getErrorSummary() != null) ? jobInfo.getErrorSummary() : phase));
-            }
-            if (cancelled || (phase == ExecutionPhase.ABORTED)) {
-                result.setCancelled(true);
-            }
-        } finally {
-            // TODO: decide if cleanup is delayed on the server-side to collect datasets in error:
-            if (true) {
-                try {
-                    client.deleteJobInfo(jobId);
-                } catch (ClientUWSException cue) {
-                    _logger.warn("Can't delete job '{}'", jobId, cue);
-                }
+    /**
+     * Upload the OIData blob unless the server already has it
+     * @param endpoint endpoint
+     * @param client UWS client of the endpoint
+     * @param blob OIData blob
+     * @return blob upload or null if the blob was already available on the server
+     * @throws ClientUWSException if the blob can not be checked or uploaded
+     */
+    private static UploadRepresentation uploadBlob(final UwsEndpoint endpoint, final ClientUWS client,
+                                                   final OIDataBlob blob) throws ClientUWSException {
+        if (endpoint.hasKnownBlob(blob.hash) || client.hasBlob(blob.hash)) {
+            endpoint.addKnownBlob(blob.hash);
+            return null;
+        }
+        // uncompressed as the server checks the blob hash:
+        final UploadRepresentation blobUpload = new UploadRepresentation(blob.blobFile, false);
+        client.putBlob(blob.hash, blobUpload);
+        endpoint.addKnownBlob(blob.hash);
+
+        _logger.debug("blob {} uploaded: {} bytes in {} ms", blob.hash, blobUpload.getSentBytes(), blobUpload.getDuration());
+        return blobUpload;
+    }
+
+    /**
+     * Check if the given blob is missing on the server (job creation rejected)
+     * @param client UWS client of the endpoint
+     * @param blob OIData blob
+     * @return true if the server does not have the blob; false if it has it or if it can not be checked
+     */
+    private static boolean isBlobMissing(final ClientUWS client, final OIDataBlob blob) {
+        try {
+            return !client.hasBlob(blob.hash);
+        } catch (ClientUWSException | RuntimeException e) {
+            _logger.debug("Unable to check the blob {}", blob.hash, e);
+            return false;
+        }
+    }
+
+    /**
+     * Prepare the multipart form to create the job in autostart mode
+     * @param software software to run
+     * @param cliOptions software options on command line or null
+     * @param upload input file representation
+     * @param continuation continuation of a previous job or null
+     * @param blob OIData blob (the upload only contains the other HDUs) or null
+     * @return form data set
+     */
+    private static FormDataSet createForm(final String software, final String cliOptions, final UploadRepresentation upload,
+                                          final Continuation continuation, final OIDataBlob blob) {
+        final FormDataSet formDataSet = new FormDataSet();
+        formDataSet.setMultipart(true);
+
+        final Series<FormData> fdsEntries = formDataSet.getEntries();
+
+        // TODO declare field name as constant ( and share them with server side )
+        fdsEntries.add(new FormData("inputfile", upload));
+        if (upload.isCompressed()) {
+            // tell the server to decompress the input file:
+            fdsEntries.add(new FormData("inputfileEncoding", "gzip"));
+        }
+        fdsEntries.add(new FormData("software", software));
+
+        if (cliOptions != null) {
+            fdsEntries.add(new FormData("cliOptions", cliOptions));
+        }
+        if (continuation != null) {
+            // the server merges the delta file into the previous job input:
+            fdsEntries.add(new FormData("continueJob", continuation.getPrevious().getContinuationJobId()));
+            fdsEntries.add(new FormData("changedKeywords", String.join(",", continuation.getChangedKeywords())));
+        }
+        if (blob != null) {
+            // the server inserts the OIData blob into the input file:
+            fdsEntries.add(new FormData("oidataBlob", blob.hash));
+            fdsEntries.add(new FormData("oidataBlobIndex", Integer.toString(blob.insertIndex)));
+        }
+
+        // start task in autostart mode
+        formDataSet.add("PHASE", "RUN");
+
+        return formDataSet;
+    }
+
+    /**
+     * @param cue exception
+     * @return true if the server replied with a client error status (4xx)
+     */
+    private static boolean isClientError(final ClientUWSException cue) {
+        Status status = cue.getStatus();
+        if ((status == null) && (cue.getCause() instanceof ResourceException)) {
+            status = ((ResourceException) cue.getCause()).getStatus();
+        }
+        return (status != null) && status.isClientError();
+    }
+
+    private static void abortJob(final RemoteJob job, final ServiceResult result) throws ClientUWSException {
+        result.setErrorMessage("Cancelled job.");
+
+        _logger.debug("Job[{}] aborting ...", job.jobId);
+        job.client.setAbortJob(job.jobId);
+        _logger.debug("Job[{}] aborted.", job.jobId);
+    }
+
+    /**
+     * Process the end of the given job: download results or get error information
+     * @param job remote job
+     * @param phase last execution phase
+     * @param cancelled true if the job was cancelled
+     * @param result the service result to update
+     * @throws ClientUWSException
+     * @throws URISyntaxException
+     * @throws IOException
+     */
+    private static void processEndOfJob(final RemoteJob job, final ExecutionPhase phase, final boolean cancelled,
+                                        final ServiceResult result)
+            throws ClientUWSException, URISyntaxException, IOException {
+
+        final ClientUWS client = job.client;
+        final String jobId = job.jobId;
+
+        _logger.info("End of execution for job '{}' in phase '{}'", jobId, phase);
+
+        if (phase == ExecutionPhase.COMPLETED) {
+            prepareResult(client, jobId, result);
+            job.endpoint.jobCompleted();
+
+            final int continuationMinutes = PREFS.getPreferenceAsInt(Preferences.SERVER_CONTINUATION_RETENTION);
+            if (continuationMinutes > 0) {
+                // keep the job workspace on the server to continue this job:
+                job.continuable = true;
+                result.setContinuation(job.endpoint.getUrl(), jobId,
+                        System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(continuationMinutes));
             }
+        } else if (!cancelled || (phase != ExecutionPhase.ABORTED)) {
+            job.failed = true;
+            JobSummary jobInfo = client.getJobInfo(jobId);
+            _logger.error("Error in execution for job '{}': {} ", jobId, jobInfo.getErrorSummary());
+
+            result.setErrorMessage("Execution error: "
+                    + ((jobInfo.getErrorSummary() != null) ? jobInfo.getErrorSummary() : phase));
+        }
+        if (cancelled || (phase == ExecutionPhase.ABORTED)) {
+            result.setCancelled(true);
+        }
+    }
+
+    private static void deleteJob(final RemoteJob job) {
+        releaseJob(job);
+        // background cleanup (failed jobs may be retained on the server-side to collect their datasets):
+        UwsJobCleaner.getInstance().schedule(job.client, job.jobId, job.failed, job.continuable);
+    }
+
+    /**
+     * Forget the given job (no more active on its endpoint)
+     * @param job remote job
+     */
+    private static void releaseJob(final RemoteJob job) {
+        ACTIVE_JOBS.values().remove(job);
+        if (job.released.compareAndSet(false, true)) {
+            job.endpoint.jobReleased();
         }
     }
 
-    private static void prepareResult(final ClientUWS client, String jobId, ServiceResult result)
+    /**
+     * Download all result files concurrently (logfile, outputfile and any additional result)
+     * @param client UWS client
+     * @param jobId job identifier
+     * @param result service result to update
+     * @throws ClientUWSException
+     * @throws URISyntaxException
+     * @throws IOException
+     */
+    private static void prepareResult(final ClientUWS client, final String jobId, final ServiceResult result)
             throws ClientUWSException, URISyntaxException, IOException {
 
         final Results results = client.getJobResults(jobId);
 
+        final List<Future<?>> downloads = new ArrayList<>(results.getResult().size());
+
         for (ResultReference resultRef : results.getResult()) {
             final String id = resultRef.getId();
             final String href = resultRef.getHref();
 
+            final File outputFile;
             if ("logfile".equals(id)) {
-                // get logfile
-                _logger.info("Downloading logfile from: {}", href);
+                outputFile = result.getExecutionLogResultFile();
+            } else if ("outputfile".equals(id)) {
+                outputFile = result.getOifitsResultFile();
+            } else {
+                // store additional information (intermediate images ...):
+                outputFile = result.newAdditionalResultFile(id, getExtension(href));
+            }
+            downloads.add(ServiceExecutors.getDownloadExecutor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws ClientUWSException {
+                    _logger.info("Downloading {} from: {}", id, href);
 
-                if (client.downloadFile(resultRef.getHref(), result.getExecutionLogResultFile())) {
-                    _logger.info("logfile downloaded at: {}", result.getExecutionLogResultFile());
+                    if (client.downloadFile(href, outputFile)) {
+                        _logger.info("{} downloaded at: {}", id, outputFile);
+                    }
+                    return null;
                 }
-            } else if ("outputfile".equals(id)) {
-                // get result file
-                _logger.info("Downloading outputfile from: {}", href);
+            }));
+        }
 
-                if (client.downloadFile(href, result.getOifitsResultFile())) {
-                    _logger.info("outputfile downloaded at: {}", result.getOifitsResultFile());
+        // wait for all downloads and report the first failure:
+        ClientUWSException failure = null;
+        for (Future<?> download : downloads) {
+            try {
+                download.get();
+            } catch (InterruptedException ie) {
+                for (Future<?> d : downloads) {
+                    d.cancel(true);
+                }
+                throw new IOException("Interrupted while downloading results", ie);
+            } catch (ExecutionException ee) {
+                final Throwable cause = ee.getCause();
+                if (failure == null) {
+                    failure = (cause instanceof ClientUWSException) ? (ClientUWSException) cause : new ClientUWSException(cause);
                 }
-            } else {
-                // TODO: FIX such error
-                // store additional information
-                throw new IllegalStateException("UWS service returned more results than required : " + id);
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @param href result url
+     * @return file extension (including '.') of the last path segment or empty
+     */
+    private static String getExtension(final String href) {
+        final String name = href.substring(href.lastIndexOf('/') + 1);
+        final int pos = name.lastIndexOf('.');
+        return ((pos > 0) && (pos < name.length() - 1) && (name.indexOf('?') == -1)) ? name.substring(pos) : "";
     }
 
     @Override
     public ServiceResult reconstructsImage(final String software, final String options, final File inputFile) {
         final ServiceResult result = new ServiceResult(inputFile);
 
-        Exception e = null;
         try {
             // TODO add log output retrieval
             callUwsOimagingService(software, options, inputFile.getAbsolutePath(), result);
         } catch (IllegalStateException ise) {
             throw ise;
-        } catch (ClientUWSException ce) {
-            final Throwable rootCause = getRootCause(ce);
-            if (rootCause instanceof ConnectException) {
-                e = (ConnectException) rootCause;
-            } else {
-                e = ce;
+        } catch (ClientUWSException | IOException | URISyntaxException e) {
+            throw toIllegalStateException(e);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String options, final File inputFile,
+                                                                   final ServiceProgressListener listener) {
+        return reconstructsImageAsync(software, options, inputFile, null, listener);
+    }
+
+    @Override
+    public CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String options, final File inputFile,
+                                                                   final Continuation continuation,
+                                                                   final ServiceProgressListener listener) {
+        final ServiceResult result = new ServiceResult(inputFile);
+        final CompletableFuture<ServiceResult> future = new CompletableFuture<>();
+
+        ServiceProgressListener.fire(listener, result, ServicePhase.QUEUED);
+
+        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    // cancelled before upload:
+                    result.setTerminated();
+                    return;
+                }
+                ServiceProgressListener.fire(listener, result, ServicePhase.UPLOADING);
+                final RemoteJob job;
+                try {
+                    final RemoteJob continued = (continuation != null)
+                            ? submitContinuation(software, options, inputFile.getAbsolutePath(), continuation, result) : null;
+                    job = (continued != null) ? continued
+                            : submitJob(software, options, inputFile.getAbsolutePath(), result, new HashSet<UwsEndpoint>(4));
+                } catch (IllegalStateException ise) {
+                    result.setTerminated();
+                    future.completeExceptionally(ise);
+                    return;
+                } catch (ClientUWSException | IOException e) {
+                    result.setTerminated();
+                    future.completeExceptionally(toIllegalStateException(e));
+                    return;
+                }
+                ServiceProgressListener.fire(listener, result, ServicePhase.EXECUTING);
+
+                new RemoteJobMonitor(job, result, future, listener, new HashSet<UwsEndpoint>(4)).start();
             }
-        } catch (URISyntaxException use) {
-            e = use;
-        } catch (ConnectException ce) {
-            e = ce;
-        } catch (IOException ioe) {
-            e = ioe;
+        });
+        return future;
+    }
+
+    @Override
+    public ExecutionLogTail openExecutionLog(final ServiceResult result) {
+        final RemoteJob job = ACTIVE_JOBS.get(result);
+        if (job != null) {
+            return new RemoteLogTail(job);
         }
-        if (e != null) {
-            throw new IllegalStateException(e);
+        // finished job: use the downloaded log file:
+        return ExecutionLogTail.forFile(result.getExecutionLogResultFile());
+    }
+
+    @Override
+    public int getMaxConcurrentJobs() {
+        return PREFS.getPreferenceAsInt(Preferences.SERVER_MAX_JOBS);
+    }
+
+    @Override
+    public String getSolverIdentity(final String software) {
+        return "remote:" + resolveServerURLs() + ':' + software;
+    }
+
+    /**
+     * Wrap the given exception (root cause if ConnectException) into an IllegalStateException
+     * @param e exception to wrap
+     * @return IllegalStateException
+     */
+    private static IllegalStateException toIllegalStateException(final Exception e) {
+        final Throwable rootCause = getRootCause(e);
+        if (rootCause instanceof ConnectException) {
+            return new IllegalStateException(rootCause);
+        }
+        return new IllegalStateException(e);
+    }
+
+    /**
+     * Remote job reference (endpoint, client and job identifier) with its submission parameters (failover)
+     */
+    private static final class RemoteJob {
+
+        /** endpoint running the job */
+        final UwsEndpoint endpoint;
+        /** UWS client used to create the job */
+        final ClientUWS client;
+        /** job identifier */
+        final String jobId;
+        /** software to run */
+        final String software;
+        /** software options on command line or null */
+        final String cliOptions;
+        /** input filename */
+        final String inputFilename;
+        /** flag indicating that the job is no more counted by its endpoint */
+        final AtomicBoolean released = new AtomicBoolean(false);
+        /** flag indicating that the job failed */
+        volatile boolean failed = false;
+        /** flag indicating that the job workspace is kept on the server (continuation) */
+        volatile boolean continuable = false;
+
+        RemoteJob(final UwsEndpoint endpoint, final ClientUWS client, final String jobId,
+                  final String software, final String cliOptions, final String inputFilename) {
+            this.endpoint = endpoint;
+            this.client = client;
+            this.jobId = jobId;
+            this.software = software;
+            this.cliOptions = cliOptions;
+            this.inputFilename = inputFilename;
+        }
+    }
+
+    /**
+     * Tail the log of a running remote job using ranged fetches (rate limited)
+     */
+    private static final class RemoteLogTail extends ExecutionLogTail {
+
+        /** min interval (ms) between two fetches */
+        private static final long FETCH_INTERVAL = 2000L;
+
+        /** remote job */
+        private final RemoteJob job;
+        /** log file url (resolved once available) */
+        private String href = null;
+        /** last fetch time */
+        private long lastFetch = 0L;
+
+        RemoteLogTail(final RemoteJob job) {
+            this.job = job;
+        }
+
+        @Override
+        protected byte[] fetch(final long offset, final int max) throws IOException {
+            final long now = System.currentTimeMillis();
+            if (now - lastFetch < FETCH_INTERVAL) {
+                return new byte[0];
+            }
+            lastFetch = now;
+            try {
+                if (href == null) {
+                    for (ResultReference resultRef : job.client.getJobResults(job.jobId).getResult()) {
+                        if ("logfile".equals(resultRef.getId())) {
+                            href = resultRef.getHref();
+                            break;
+                        }
+                    }
+                    if (href == null) {
+                        // not available yet:
+                        return new byte[0];
+                    }
+                }
+                return job.client.fetchRange(href, offset, max);
+            } catch (ClientUWSException cue) {
+                throw new IOException("Can't fetch the log of job '" + job.jobId + "'", cue);
+            }
+        }
+    }
+
+    /**
+     * Monitor a remote job using the shared UWS job poller (no thread blocked per job).
+     * The job end (downloads, cleanup) or its cancellation is processed by the shared I/O executor.
+     */
+    private static final class RemoteJobMonitor {
+
+        /** remote job */
+        private final RemoteJob job;
+        /** service result to update */
+        private final ServiceResult result;
+        /** future to complete */
+        private final CompletableFuture<ServiceResult> future;
+        /** optional listener */
+        private final ServiceProgressListener listener;
+        /** flag indicating that the job end is handled (completion or cancellation) */
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        /** endpoints that failed while running this job */
+        private final Set<UwsEndpoint> excluded;
+
+        RemoteJobMonitor(final RemoteJob job, final ServiceResult result, final CompletableFuture<ServiceResult> future,
+                         final ServiceProgressListener listener, final Set<UwsEndpoint> excluded) {
+            this.job = job;
+            this.result = result;
+            this.future = future;
+            this.listener = listener;
+            this.excluded = excluded;
+        }
+
+        void start() {
+            final CompletableFuture<ExecutionPhase> watch = UwsJobPoller.getInstance().watch(job.client, job.jobId);
+
+            future.whenComplete((r, th) -> {
+                if (future.isCancelled()) {
+                    watch.cancel(false);
+                    if (done.compareAndSet(false, true)) {
+                        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                cancel();
+                            }
+                        });
+                    }
+                }
+            });
+            watch.whenComplete((phase, th) -> {
+                if ((th instanceof CancellationException) || !done.compareAndSet(false, true)) {
+                    return;
+                }
+                if (th != null) {
+                    if (!future.isDone() && (getRootCause(th) instanceof SocketException)) {
+                        // endpoint died: resubmit the job to another endpoint
+                        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                failover(th);
+                            }
+                        });
+                        return;
+                    }
+                    deleteJob(job);
+                    result.setTerminated();
+                    final Throwable cause = (th instanceof CompletionException && th.getCause() != null) ? th.getCause() : th;
+                    future.completeExceptionally((cause instanceof Exception)
+                            ? toIllegalStateException((Exception) cause) : new IllegalStateException(cause));
+                } else {
+                    ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            complete(phase);
+                        }
+                    });
+                }
+            });
+        }
+
+        private void failover(final Throwable th) {
+            _logger.warn("UWS service endpoint '{}' failed while running job '{}': resubmitting to another endpoint",
+                    job.endpoint.getUrl(), job.jobId, th);
+
+            job.endpoint.setHealth(UwsEndpoint.Health.DOWN);
+            job.endpoint.jobMoved();
+            excluded.add(job.endpoint);
+            // the dead server can not delete the job:
+            releaseJob(job);
+
+            final RemoteJob newJob;
+            try {
+                ServiceProgressListener.fire(listener, result, ServicePhase.UPLOADING);
+                newJob = submitJob(job.software, job.cliOptions, job.inputFilename, result, excluded);
+            } catch (ClientUWSException | IOException | RuntimeException e) {
+                result.setTerminated();
+                future.completeExceptionally(toIllegalStateException(e));
+                return;
+            }
+            ServiceProgressListener.fire(listener, result, ServicePhase.EXECUTING);
+
+            new RemoteJobMonitor(newJob, result, future, listener, excluded).start();
+        }
+
+        private void cancel() {
+            try {
+                abortJob(job, result);
+            } catch (ClientUWSException | RuntimeException e) {
+                _logger.warn("Can't abort job '{}'", job.jobId, e);
+            } finally {
+                result.setCancelled(true);
+                deleteJob(job);
+                // aborted (or abort failed: no longer monitored):
+                result.setTerminated();
+            }
+        }
+
+        private void complete(final ExecutionPhase phase) {
+            try {
+                if (phase == ExecutionPhase.COMPLETED) {
+                    ServiceProgressListener.fire(listener, result, ServicePhase.DOWNLOADING);
+                }
+                processEndOfJob(job, phase, false, result);
+                future.complete(result);
+            } catch (ClientUWSException | URISyntaxException | IOException | RuntimeException e) {
+                future.completeExceptionally(toIllegalStateException(e));
+            } finally {
+                deleteJob(job);
+                result.setTerminated();
+            }
         }
-        return result;
     }
 
     private static Throwable getRootCause(final Throwable th) {
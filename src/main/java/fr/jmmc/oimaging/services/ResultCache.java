@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oimaging.Preferences;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of reconstruction results (output OIFits and execution log)
+ * keyed by a hash (SHA-256) of the solver identity (execution mode, executable or servers),
+ * the program, its command line options and the exact input file bytes.
+ * Entries are evicted in LRU order when the disk budget (preference 'results.cache.maxSize' in MB) is exceeded.
+ */
+public final class ResultCache {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ResultCache.class.getName());
+
+    /** preference singleton */
+    private final static Preferences PREFS = Preferences.getInstance();
+    /** cache directory */
+    private static final File CACHE_DIR = new File(SystemUtils.getUserHome() + "/.jmmc-oimaging/results/");
+    /** temporary file extension (incomplete entries) */
+    private static final String TMP_EXT = ".tmp";
+    /** read buffer size */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** singleton */
+    private static final ResultCache INSTANCE = new ResultCache(CACHE_DIR);
+
+    /**
+     * @return the singleton
+     */
+    public static ResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    /* members */
+    /** cache directory */
+    private final File dir;
+    /** entry sizes keyed by hash in LRU order (guarded by this) */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+    /** total size in bytes (guarded by this) */
+    private long totalSize = 0L;
+    /** flag indicating that the cache directory was scanned (guarded by this) */
+    private boolean loaded = false;
+    /** hit counter */
+    private final AtomicLong hits = new AtomicLong(0L);
+    /** miss counter */
+    private final AtomicLong misses = new AtomicLong(0L);
+
+    private ResultCache(final File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return true if the cache is enabled (disk budget &gt; 0)
+     */
+    public boolean isEnabled() {
+        return getMaxSize() > 0L;
+    }
+
+    /**
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return hit / miss statistics (user display)
+     */
+    public String getStatistics() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return "Result cache: " + h + " hits / " + total + " lookups"
+                + ((total != 0L) ? " (" + Math.round(100.0 * h / total) + "%)" : "");
+    }
+
+    /**
+     * Compute the cache key of the given run
+     * @param solverIdentity solver identity given by the execution mode (see OImagingExecutionMode.getSolverIdentity)
+     * @param program program to run
+     * @param cliOptions software options on command line or null
+     * @param inputFile input file
+     * @return hexadecimal hash
+     * @throws IOException if the input file can not be read
+     */
+    public String getKey(final String solverIdentity, final String program, final String cliOptions, final File inputFile) throws IOException {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 not supported", nsae);
+        }
+        md.update(solverIdentity.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(program.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        if (cliOptions != null) {
+            md.update(cliOptions.getBytes(StandardCharsets.UTF_8));
+        }
+        md.update((byte) 0);
+
+        final InputStream in = new FileInputStream(inputFile);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        final StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return a new service result (copy of the cached files) for the given key
+     * @param key cache key
+     * @param inputFile input file
+     * @return service result or null if not cached
+     */
+    public ServiceResult lookup(final String key, final File inputFile) {
+        synchronized (this) {
+            load();
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                logger.info("lookup: miss [{}] (hits: {} misses: {})", key, hits, misses);
+                return null;
+            }
+        }
+        final File cachedOutput = getOutputFile(key);
+        final File cachedLog = getLogFile(key);
+
+        final ServiceResult result = new ServiceResult(inputFile);
+        try {
+            Files.copy(cachedOutput.toPath(), result.getOifitsResultFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (cachedLog.exists()) {
+                Files.copy(cachedLog.toPath(), result.getExecutionLogResultFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ioe) {
+            logger.info("lookup: invalid entry [{}]", key, ioe);
+            remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        // keep LRU order across sessions:
+        cachedOutput.setLastModified(System.currentTimeMillis());
+
+        hits.incrementAndGet();
+        logger.info("lookup: hit [{}] (hits: {} misses: {})", key, hits, misses);
+        return result;
+    }
+
+    /**
+     * Store the files of the given (valid) service result
+     * @param key cache key
+     * @param result service result
+     */
+    public void store(final String key, final ServiceResult result) {
+        final long maxSize = getMaxSize();
+        synchronized (this) {
+            load();
+            if (entries.containsKey(key)) {
+                return;
+            }
+        }
+        final File output = result.getOifitsResultFile();
+        final File log = result.getExecutionLogResultFile();
+        if (!result.isValid() || !output.exists() || output.length() + log.length() > maxSize) {
+            return;
+        }
+        try {
+            // log first as the output file marks a complete entry:
+            if (log.exists()) {
+                copy(log, getLogFile(key));
+            }
+            copy(output, getOutputFile(key));
+        } catch (IOException ioe) {
+            logger.info("store: failure [{}]", key, ioe);
+            return;
+        }
+        final long size = getOutputFile(key).length() + getLogFile(key).length();
+        synchronized (this) {
+            if (entries.put(key, Long.valueOf(size)) == null) {
+                totalSize += size;
+            }
+            logger.debug("store: [{}] {} bytes (total: {} bytes)", key, size, totalSize);
+            evict(maxSize);
+        }
+    }
+
+    private synchronized void remove(final String key) {
+        final Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size.longValue();
+        }
+        getOutputFile(key).delete();
+        getLogFile(key).delete();
+    }
+
+    /** remove least recently used entries until the total size fits the disk budget (guarded by this) */
+    private void evict(final long maxSize) {
+        for (Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator(); (totalSize > maxSize) && it.hasNext();) {
+            final Map.Entry<String, Long> e = it.next();
+            it.remove();
+            totalSize -= e.getValue().longValue();
+            getOutputFile(e.getKey()).delete();
+            getLogFile(e.getKey()).delete();
+            logger.debug("evict: [{}]", e.getKey());
+        }
+    }
+
+    /** scan the cache directory once (guarded by this) */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            logger.info("load: unable to create {}", dir);
+            return;
+        }
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // oldest first:
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File f1, final File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(TMP_EXT)) {
+                // incomplete entry:
+                file.delete();
+            } else if (name.endsWith(ServiceResult.RESULT_FILE_EXT)) {
+                final String key = name.substring(0, name.length() - ServiceResult.RESULT_FILE_EXT.length());
+                final long size = file.length() + getLogFile(key).length();
+                entries.put(key, Long.valueOf(size));
+                totalSize += size;
+            }
+        }
+        logger.info("load: {} entries ({} bytes) in {}", entries.size(), totalSize, dir);
+        evict(getMaxSize());
+    }
+
+    /**
+     * Copy the source file into the cache (atomic rename of a temporary file)
+     */
+    private void copy(final File source, final File dest) throws IOException {
+        final File tmp = File.createTempFile(dest.getName(), TMP_EXT, dir);
+        try {
+            Files.copy(source.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private File getOutputFile(final String key) {
+        return new File(dir, key + ServiceResult.RESULT_FILE_EXT);
+    }
+
+    private File getLogFile(final String key) {
+        return new File(dir, key + ServiceResult.LOG_FILE_EXT);
+    }
+
+    /**
+     * @return disk budget in bytes
+     */
+    private static long getMaxSize() {
+        return PREFS.getPreferenceAsInt(Preferences.RESULTS_CACHE_MAX_SIZE) * 1024L * 1024L;
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oitools.fits.FitsHeaderCard;
+import fr.jmmc.oitools.fits.FitsTable;
+import fr.jmmc.oitools.fits.FitsUtils;
+import fr.jmmc.oitools.image.ImageOiData;
+import fr.jmmc.oitools.meta.OIFitsStandard;
+import fr.jmmc.oitools.model.OIFitsFile;
+import fr.nom.tam.fits.FitsException;
+import fr.nom.tam.fits.HeaderCard;
+import fr.nom.tam.util.Cursor;
+import java.io.File;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Header-only reader of result files: HDU headers are read by nom.tam (FitsHduIndex) and data units are skipped,
+ * so only the IMAGE-OI parameter HDUs are parsed (keywords of the results table) while OIData tables and image data
+ * are loaded on demand by OIFitsLoader. Long string values (CONTINUE cards) are supported.
+ * As OIFitsLoader, software-specific keywords are kept as header cards (typed by FitsHeaderCard.parseValue).
+ */
+final class ResultHeaders {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ResultHeaders.class.getName());
+
+    /** long string continuation keyword */
+    private static final String KEYWORD_CONTINUE = "CONTINUE";
+
+    /**
+     * Read the input and output parameters of the given result file
+     * @param file result file
+     * @return OIFits file holding only the IMAGE-OI parameters (no OIData table nor image)
+     * @throws IOException if the file can not be read or is not a FITS file
+     */
+    static OIFitsFile read(final File file) throws IOException {
+        final FitsHduIndex index;
+        try {
+            index = FitsHduIndex.read(file);
+        } catch (FitsException fe) {
+            throw new IOException("Invalid FITS header: " + file, fe);
+        }
+        final OIFitsFile header = new OIFitsFile(OIFitsStandard.VERSION_1);
+        final ImageOiData imageOiData = header.getImageOiData();
+
+        readParams(index.find(FitsHduIndex.EXTNAME_INPUT_PARAM), imageOiData.getInputParam());
+        readParams(index.find(FitsHduIndex.EXTNAME_OUTPUT_PARAM), imageOiData.getOutputParam());
+
+        logger.debug("read: {}", file);
+        return header;
+    }
+
+    private static void readParams(final FitsHduIndex.Hdu hdu, final FitsTable params) {
+        if (hdu == null) {
+            return;
+        }
+        String key = null;
+        String value = null;
+        String comment = null;
+
+        for (Cursor<String, HeaderCard> it = hdu.getHeader().iterator(); it.hasNext();) {
+            final HeaderCard card = it.next();
+
+            if (KEYWORD_CONTINUE.equals(card.getKey())) {
+                // long string not merged by nom.tam: 'part1&' followed by CONTINUE 'part2':
+                if ((value != null) && value.endsWith("&")) {
+                    value = value.substring(0, value.length() - 1) + getContinueValue(card.toString());
+                }
+                continue;
+            }
+            if (key != null) {
+                parseKeyword(params, key, value, comment);
+                key = null;
+            }
+            if (card.isKeyValuePair()) {
+                key = card.getKey();
+                value = card.getValue();
+                comment = card.getComment();
+            }
+        }
+        if (key != null) {
+            parseKeyword(params, key, value, comment);
+        }
+    }
+
+    private static void parseKeyword(final FitsTable params, final String key, final String value, final String comment) {
+        if (key.isEmpty() || (value == null) || FitsUtils.isStandardKeyword(key)) {
+            return;
+        }
+        try {
+            if (params.hasKeywordMeta(key)) {
+                final Object typed = toValue(params.getKeywordsDesc().get(key).getBaseClass(), value);
+                if (typed != null) {
+                    params.setKeywordValue(key, typed);
+                }
+            } else {
+                // unknown keyword (software specific): header card as OIFitsLoader (typed by FitsHeaderCard.parseValue):
+                params.getHeaderCards().add(new FitsHeaderCard(key, value, (comment != null) ? comment : ""));
+            }
+        } catch (NumberFormatException nfe) {
+            logger.debug("parseKeyword: invalid value for {}: {}", key, value);
+        }
+    }
+
+    private static Object toValue(final Class<?> type, final String value) {
+        if ((type == Integer.class) || (type == int.class)) {
+            return Integer.valueOf(value.trim());
+        } else if ((type == Double.class) || (type == double.class) || (type == Float.class) || (type == float.class)) {
+            return Double.valueOf(value.trim().replace('D', 'E'));
+        } else if ((type == Boolean.class) || (type == boolean.class)) {
+            return Boolean.valueOf("T".equals(value.trim()));
+        } else if (type == String.class) {
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * Return the string value of the given CONTINUE card image ('' is an escaped quote)
+     * @param card card image
+     * @return string value (trailing spaces removed) or empty string
+     */
+    private static String getContinueValue(final String card) {
+        final String value = card.substring(KEYWORD_CONTINUE.length());
+        final int start = value.indexOf('\'');
+        if ((start == -1) || !value.substring(0, start).trim().isEmpty()) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = start + 1; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            if (ch == '\'') {
+                if ((i + 1 < value.length()) && (value.charAt(i + 1) == '\'')) {
+                    sb.append(ch);
+                    i++;
+                } else {
+                    break;
+                }
+            } else {
+                sb.append(ch);
+            }
+        }
+        // trailing spaces are not significant:
+        int end = sb.length();
+        while ((end > 0) && (sb.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return sb.substring(0, end);
+    }
+
+    private ResultHeaders() {
+        // forbidden
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oimaging.Preferences;
+import fr.jmmc.oitools.model.OIFitsFile;
+import fr.jmmc.oitools.model.OIFitsLoader;
+import fr.nom.tam.fits.FitsException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory-bounded store of the result OIFits files (OIData tables and images):
+ * result files are resident (strongly referenced) in LRU order up to the memory budget (preference).
+ * Least recently used files are then evicted to soft references (collected by the GC when the heap is low)
+ * and reloaded from the result file on demand; result metadata (parameters, index, timings) always remain resident.
+ * Results added with their headers only are loaded on first use.
+ * The memory size of a result file is estimated by its file size.
+ */
+public final class ResultStore {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ResultStore.class.getName());
+
+    /** preference singleton */
+    private final static Preferences PREFS = Preferences.getInstance();
+
+    /** singleton */
+    private static final ResultStore INSTANCE = new ResultStore();
+
+    /**
+     * @return the singleton
+     */
+    public static ResultStore getInstance() {
+        return INSTANCE;
+    }
+
+    /* members */
+    /** resident results with their estimated size in LRU order (guarded by this) */
+    private final LinkedHashMap<ServiceResult, Long> resident = new LinkedHashMap<ServiceResult, Long>(64, 0.75f, true);
+    /** estimated size in bytes of resident result files (guarded by this) */
+    private long residentSize = 0L;
+    /** number of results not resident: evicted or not loaded yet (guarded by this) */
+    private int unloadedCount = 0;
+    /** number of evictions (guarded by this) */
+    private long evictions = 0L;
+    /** number of evicted files still softly reachable when requested (guarded by this) */
+    private long softHits = 0L;
+    /** number of files loaded on demand (guarded by this) */
+    private long loads = 0L;
+
+    private ResultStore() {
+        // private
+    }
+
+    /**
+     * Add the given result then evict other results if the memory budget is exceeded.
+     * If only its headers were read (ServiceResult.loadOIFitsHeaders), its result file is loaded on demand.
+     * @param result result to add
+     */
+    public synchronized void add(final ServiceResult result) {
+        if (!result.isStored()) {
+            result.setStored(true);
+            if (result.getResidentOifitsFile() != null) {
+                admit(result);
+            } else {
+                unloadedCount++;
+            }
+        }
+    }
+
+    /**
+     * Remove the given result (discarded)
+     * @param result result to remove
+     */
+    public synchronized void remove(final ServiceResult result) {
+        if (result.isStored()) {
+            result.setStored(false);
+            final Long size = resident.remove(result);
+            if (size != null) {
+                residentSize -= size.longValue();
+            } else {
+                unloadedCount--;
+            }
+        }
+    }
+
+    /**
+     * Mark the given result as recently used
+     * @param result resident result
+     */
+    synchronized void touch(final ServiceResult result) {
+        resident.get(result);
+    }
+
+    /**
+     * Return the result file not resident: evicted but still softly reachable or (re)loaded from the result file
+     * @param result result not resident
+     * @return result file or null if it can not be loaded
+     */
+    OIFitsFile restore(final ServiceResult result) {
+        synchronized (this) {
+            if (!result.isStored()) {
+                return null;
+            }
+            OIFitsFile oiFitsFile = result.getResidentOifitsFile();
+            if (oiFitsFile != null) {
+                return oiFitsFile;
+            }
+            oiFitsFile = result.recoverEvicted();
+            if (oiFitsFile != null) {
+                softHits++;
+                unloadedCount--;
+                admit(result);
+                return oiFitsFile;
+            }
+        }
+        // load outside the lock:
+        final OIFitsFile oiFitsFile = load(result);
+
+        synchronized (this) {
+            final OIFitsFile current = result.getResidentOifitsFile();
+            if (current != null) {
+                // loaded concurrently:
+                return current;
+            }
+            if ((oiFitsFile == null) || !result.isStored()) {
+                return oiFitsFile;
+            }
+            result.setResidentOifitsFile(oiFitsFile);
+            loads++;
+            unloadedCount--;
+            admit(result);
+        }
+        return oiFitsFile;
+    }
+
+    private static OIFitsFile load(final ServiceResult result) {
+        final File file = result.getOifitsResultFile();
+        logger.debug("load: {}", file);
+        try {
+            final OIFitsFile oiFitsFile = OIFitsLoader.loadOIFits(file.getAbsolutePath());
+            result.processReloaded(oiFitsFile);
+            return oiFitsFile;
+        } catch (IOException | FitsException e) {
+            logger.error("Can't load the result file: {}", file, e);
+            result.setValid(false);
+            return null;
+        }
+    }
+
+    /**
+     * Make the given result resident then evict the least recently used results above the memory budget (guarded by this)
+     * @param result result to keep resident
+     */
+    private void admit(final ServiceResult result) {
+        final long size = result.getOifitsResultFile().length();
+        resident.put(result, Long.valueOf(size));
+        residentSize += size;
+
+        final long budget = getBudget();
+        if ((budget > 0L) && (residentSize > budget)) {
+            int n = 0;
+            for (Iterator<Map.Entry<ServiceResult, Long>> it = resident.entrySet().iterator(); it.hasNext() && (residentSize > budget);) {
+                final Map.Entry<ServiceResult, Long> e = it.next();
+                final ServiceResult eldest = e.getKey();
+                // keep the given result and results that can not be reloaded:
+                if ((eldest != result) && eldest.getOifitsResultFile().isFile()) {
+                    it.remove();
+                    residentSize -= e.getValue().longValue();
+                    eldest.evict();
+                    unloadedCount++;
+                    n++;
+                }
+            }
+            evictions += n;
+            if ((n != 0) && logger.isDebugEnabled()) {
+                logger.debug("evicted {} results: {}", n, getStatistics());
+            }
+        }
+    }
+
+    /**
+     * @return memory budget in bytes (0 means unlimited)
+     */
+    public long getBudget() {
+        return PREFS.getPreferenceAsInt(Preferences.RESULTS_MEMORY_BUDGET) * 1024L * 1024L;
+    }
+
+    /**
+     * @return estimated size in bytes of resident result files
+     */
+    public synchronized long getResidentSize() {
+        return residentSize;
+    }
+
+    /**
+     * @return number of resident results
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * @return number of results not resident: evicted or not loaded yet (loaded on demand)
+     */
+    public synchronized int getUnloadedCount() {
+        return unloadedCount;
+    }
+
+    /**
+     * @return number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of evicted files still in memory when requested
+     */
+    public synchronized long getSoftHits() {
+        return softHits;
+    }
+
+    /**
+     * @return number of files loaded on demand from the result file
+     */
+    public synchronized long getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return memory usage statistics
+     */
+    public synchronized String getStatistics() {
+        return String.format("%d resident results (%.1f / %d MB), %d unloaded, %d evictions, %d soft hits, %d loads",
+                resident.size(), residentSize / (1024.0 * 1024.0), getBudget() / (1024L * 1024L),
+                unloadedCount, evictions, softHits, loads);
+    }
+
+    @Override
+    public String toString() {
+        return "ResultStore[" + getStatistics() + "]";
+    }
+
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reconstruction job handled by the JobQueue
+ */
+public final class RunJob {
+
+    /** job state */
+    public enum State {
+        /** waiting for a free slot */
+        QUEUED,
+        /** submitted to its execution mode */
+        RUNNING,
+        /** result available */
+        DONE,
+        /** execution failure */
+        FAILED,
+        /** cancelled by the user */
+        CANCELLED;
+
+        /**
+         * @return true if the job is queued or running
+         */
+        public boolean isActive() {
+            return (this == QUEUED) || (this == RUNNING);
+        }
+    }
+
+    /** job identifier generator */
+    private final static AtomicInteger ID_COUNTER = new AtomicInteger(0);
+
+    /* members */
+    /** job identifier */
+    private final int id;
+    /** owner queue */
+    private final JobQueue queue;
+    /** service to run */
+    private final Service service;
+    /** software options on command line or null */
+    private final String cliOptions;
+    /** task writing the input file or null if given */
+    private final Callable<File> preparation;
+    /** flag set once the input preparation is started */
+    private final AtomicBoolean preparing = new AtomicBoolean(false);
+    /** input file (prepared in background) */
+    private final CompletableFuture<File> input;
+    /** optional continuation of a previous job */
+    private volatile Continuation continuation;
+    /** submit timestamp (ms) */
+    private final long submitTime;
+    /** start timestamp (ms) */
+    private volatile long startTime = 0L;
+    /** end timestamp (ms) */
+    private volatile long endTime = 0L;
+    /** current state */
+    private volatile State state = State.QUEUED;
+    /** last phase reported by the execution mode */
+    private volatile ServicePhase phase = ServicePhase.QUEUED;
+    /** error message if failed */
+    private volatile String errorMessage = null;
+    /** service result (known once the execution mode reported a phase) */
+    private volatile ServiceResult result = null;
+    /** flag indicating that cancel was requested before the execution was submitted */
+    private volatile boolean cancelRequested = false;
+    /** pending execution (given by the execution mode) */
+    private volatile CompletableFuture<ServiceResult> execution = null;
+    /** result cache key (null if not cached) */
+    private volatile String cacheKey = null;
+    /** future given to callers */
+    private final CompletableFuture<ServiceResult> future = new CompletableFuture<>();
+
+    RunJob(final JobQueue queue, final Service service, final String cliOptions, final Callable<File> preparation,
+           final CompletableFuture<File> input, final Continuation continuation) {
+        this.id = ID_COUNTER.incrementAndGet();
+        this.queue = queue;
+        this.service = service;
+        this.cliOptions = cliOptions;
+        this.preparation = preparation;
+        this.input = input;
+        this.continuation = continuation;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Cancel this job (removed from the queue or aborted if running)
+     * @return true if cancelled; false if already finished
+     */
+    public boolean cancel() {
+        return queue.cancel(this);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Service getService() {
+        return service;
+    }
+
+    public String getCliOptions() {
+        return cliOptions;
+    }
+
+    /**
+     * @return input file or null if not yet prepared (or if its preparation failed)
+     */
+    public File getInputFile() {
+        return (input.isDone() && !input.isCompletedExceptionally()) ? input.join() : null;
+    }
+
+    CompletableFuture<File> getInput() {
+        return input;
+    }
+
+    Callable<File> getPreparation() {
+        return preparation;
+    }
+
+    /**
+     * Mark the input preparation as started
+     * @return true if the input must be prepared now; false if given or already started
+     */
+    boolean startPreparation() {
+        return (preparation != null) && preparing.compareAndSet(false, true);
+    }
+
+    /**
+     * @return continuation of a previous job or null
+     */
+    public Continuation getContinuation() {
+        return continuation;
+    }
+
+    void setContinuation(final Continuation continuation) {
+        this.continuation = continuation;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return elapsed time (ms) since start (or total duration if finished)
+     */
+    public long getDuration() {
+        if (startTime == 0L) {
+            return 0L;
+        }
+        return ((endTime != 0L) ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public ServicePhase getPhase() {
+        return phase;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return service result (in progress or final) or null if not started
+     */
+    public ServiceResult getResult() {
+        return result;
+    }
+
+    /**
+     * Open the execution log of this job (running or finished)
+     * @return log tail or null if not started
+     */
+    public ExecutionLogTail openExecutionLog() {
+        final ServiceResult r = result;
+        return (r != null) ? service.getExecMode().openExecutionLog(r) : null;
+    }
+
+    /**
+     * @return future completed with the (post-processed) service result
+     */
+    public CompletableFuture<ServiceResult> getFuture() {
+        return future;
+    }
+
+    void setState(final State state) {
+        this.state = state;
+        if (state == State.RUNNING) {
+            this.startTime = System.currentTimeMillis();
+        } else if (!state.isActive()) {
+            this.endTime = System.currentTimeMillis();
+        }
+    }
+
+    void setPhase(final ServicePhase phase) {
+        this.phase = phase;
+    }
+
+    void setResult(final ServiceResult result) {
+        this.result = result;
+    }
+
+    void setErrorMessage(final String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void setCancelRequested(final boolean cancelRequested) {
+        this.cancelRequested = cancelRequested;
+    }
+
+    CompletableFuture<ServiceResult> getExecution() {
+        return execution;
+    }
+
+    void setExecution(final CompletableFuture<ServiceResult> execution) {
+        this.execution = execution;
+    }
+
+    String getCacheKey() {
+        return cacheKey;
+    }
+
+    void setCacheKey(final String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    @Override
+    public String toString() {
+        return "RunJob[" + id + "][" + service + "] " + state + ((state == State.RUNNING) ? " (" + phase + ")" : "");
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared thread pools used by execution modes to run jobs asynchronously:
+ * - a small scheduler to monitor running jobs (no thread blocked per job)
+ * - a bounded I/O pool to perform blocking transfers (upload, download)
+ * - a bounded download pool to fetch result files concurrently (used from I/O tasks)
+ * - a small preparation pool to write job input files (not queued ahead of I/O tasks)
+ */
+public final class ServiceExecutors {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ServiceExecutors.class.getName());
+
+    /** number of scheduler threads (-DServiceExecutors.schedulerThreads=2) */
+    private static final int SCHEDULER_THREADS = Integer.getInteger("ServiceExecutors.schedulerThreads", 2);
+    /** number of I/O threads (-DServiceExecutors.ioThreads=8) */
+    private static final int IO_THREADS = Integer.getInteger("ServiceExecutors.ioThreads", 8);
+    /** number of download threads (-DServiceExecutors.downloadThreads=4) */
+    private static final int DOWNLOAD_THREADS = Integer.getInteger("ServiceExecutors.downloadThreads", 4);
+    /** number of preparation threads (-DServiceExecutors.prepareThreads=2) */
+    private static final int PREPARE_THREADS = Integer.getInteger("ServiceExecutors.prepareThreads", 2);
+
+    /** shared scheduler */
+    private static ScheduledExecutorService scheduler = null;
+    /** shared I/O executor */
+    private static ExecutorService ioExecutor = null;
+    /** shared download executor */
+    private static ExecutorService downloadExecutor = null;
+    /** shared preparation executor */
+    private static ExecutorService prepareExecutor = null;
+
+    /**
+     * @return the shared scheduler used to monitor jobs
+     */
+    public static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            logger.debug("getScheduler: {} threads", SCHEDULER_THREADS);
+            scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS, newThreadFactory("ServiceScheduler"));
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return the shared executor used to perform blocking I/O
+     */
+    public static synchronized ExecutorService getIOExecutor() {
+        if (ioExecutor == null) {
+            logger.debug("getIOExecutor: {} threads", IO_THREADS);
+            ioExecutor = Executors.newFixedThreadPool(IO_THREADS, newThreadFactory("ServiceIO"));
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * Note: distinct from the I/O executor as I/O tasks wait for downloads (no pool starvation)
+     * @return the shared executor used to download result files
+     */
+    public static synchronized ExecutorService getDownloadExecutor() {
+        if (downloadExecutor == null) {
+            logger.debug("getDownloadExecutor: {} threads", DOWNLOAD_THREADS);
+            downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREADS, newThreadFactory("ServiceDownload"));
+        }
+        return downloadExecutor;
+    }
+
+    /**
+     * @return the shared executor used to write job input files
+     */
+    public static synchronized ExecutorService getPrepareExecutor() {
+        if (prepareExecutor == null) {
+            logger.debug("getPrepareExecutor: {} threads", PREPARE_THREADS);
+            prepareExecutor = Executors.newFixedThreadPool(PREPARE_THREADS, newThreadFactory("ServicePrepare"));
+        }
+        return prepareExecutor;
+    }
+
+    /**
+     * Create a thread factory giving named daemon threads
+     * @param prefix thread name prefix
+     * @return thread factory
+     */
+    static ThreadFactory newThreadFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private ServiceExecutors() {
+        // forbidden
+    }
+}
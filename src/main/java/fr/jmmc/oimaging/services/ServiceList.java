@@ -4,6 +4,7 @@
 package fr.jmmc.oimaging.services;
 
 import fr.jmmc.jmcs.gui.component.GenericListModel;
+import fr.jmmc.jmcs.gui.util.SwingUtils;
 import fr.jmmc.jmcs.util.StringUtils;
 import fr.jmmc.oimaging.model.IRModel;
 import fr.jmmc.oimaging.services.software.SoftwareInputParam;
@@ -11,7 +12,12 @@ import fr.jmmc.oitools.fits.FitsHeaderCard;
 import fr.jmmc.oitools.fits.FitsTable;
 import fr.jmmc.oitools.model.OIFitsFile;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.ComboBoxModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -31,6 +37,9 @@ public final class ServiceList {
     public static final String CMD_SPARCO = "sparco-ci";
     public static final String CMD_WISARD = "wisard-ci";
 
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ServiceList.class.getName());
+
     /** Singleton instance */
     private static ServiceList _instance = null;
 
@@ -38,6 +47,8 @@ public final class ServiceList {
     final Service preferedService;
     /** service list */
     final GenericListModel<Service> availableServices;
+    /** local services (added once detected) keyed by command */
+    private final Map<String, Service> localServices = new LinkedHashMap<String, Service>(8);
 
     private ServiceList() {
         final OImagingExecutionMode remoteExecutionMode = RemoteExecutionMode.INSTANCE;
@@ -59,17 +70,57 @@ public final class ServiceList {
         if (ENABLE_LOCAL_MODE) {
             final LocalExecutionMode localExecutionMode = LocalExecutionMode.INSTANCE;
 
-            if (localExecutionMode.test(CMD_BSMEM)) {
-                availableServices.add(new Service(SERVICE_BSMEM + " (local)", CMD_BSMEM, localExecutionMode, "", swParamBsmem));
-            }
-            if (localExecutionMode.test(CMD_MIRA)) {
-                availableServices.add(new Service(SERVICE_MIRA + " (local)", CMD_MIRA, localExecutionMode, "", swParamMira));
-            }
-            if (localExecutionMode.test(CMD_SPARCO)) {
-                availableServices.add(new Service(SERVICE_SPARCO + " (local)", CMD_SPARCO, localExecutionMode, "", swParamSparco));
+            localServices.put(CMD_BSMEM, new Service(SERVICE_BSMEM + " (local)", CMD_BSMEM, localExecutionMode, "", swParamBsmem));
+            localServices.put(CMD_MIRA, new Service(SERVICE_MIRA + " (local)", CMD_MIRA, localExecutionMode, "", swParamMira));
+            localServices.put(CMD_SPARCO, new Service(SERVICE_SPARCO + " (local)", CMD_SPARCO, localExecutionMode, "", swParamSparco));
+            localServices.put(CMD_WISARD, new Service(SERVICE_WISARD + " (local)", CMD_WISARD, localExecutionMode, "", swParamWisard));
+
+            // probe local solvers in background (cached results are available immediately):
+            final LocalSolverProbe probe = new LocalSolverProbe(localExecutionMode, localServices.size());
+
+            final Set<String> available = probe.start(new ArrayList<String>(localServices.keySet()), new LocalSolverProbe.Listener() {
+                @Override
+                public void probed(final String command, final boolean available) {
+                    SwingUtils.invokeLaterEDT(new Runnable() {
+                        @Override
+                        public void run() {
+                            updateLocalService(command, available);
+                        }
+                    });
+                }
+            });
+            for (Service service : localServices.values()) {
+                if (available.contains(service.getProgram())) {
+                    availableServices.add(service);
+                }
             }
-            if (localExecutionMode.test(CMD_WISARD)) {
-                availableServices.add(new Service(SERVICE_WISARD + " (local)", CMD_WISARD, localExecutionMode, "", swParamWisard));
+        }
+
+        // worker agents (preference 'workers.hosts'):
+        final WorkerExecutionMode workerExecutionMode = WorkerExecutionMode.INSTANCE;
+        if (workerExecutionMode.isConfigured()) {
+            availableServices.add(new Service(SERVICE_BSMEM + " (workers)", CMD_BSMEM, workerExecutionMode, "", swParamBsmem));
+            availableServices.add(new Service(SERVICE_MIRA + " (workers)", CMD_MIRA, workerExecutionMode, "", swParamMira));
+            availableServices.add(new Service(SERVICE_SPARCO + " (workers)", CMD_SPARCO, workerExecutionMode, "", swParamSparco));
+            availableServices.add(new Service(SERVICE_WISARD + " (workers)", CMD_WISARD, workerExecutionMode, "", swParamWisard));
+        }
+    }
+
+    /**
+     * Add or remove the local service of the given command (EDT)
+     * @param command solver command
+     * @param available true if the solver is available
+     */
+    private void updateLocalService(final String command, final boolean available) {
+        final Service service = localServices.get(command);
+        if (service != null) {
+            logger.info("Local service '{}' available: {}", service.getName(), available);
+            if (available) {
+                if (!availableServices.contains(service)) {
+                    availableServices.add(service);
+                }
+            } else {
+                availableServices.remove(service);
             }
         }
     }
@@ -0,0 +1,20 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+/**
+ * Progress phases of a reconstruction job (reported to ServiceProgressListener)
+ */
+public enum ServicePhase {
+    /** input file being written */
+    PREPARING,
+    /** job accepted, waiting for a free slot */
+    QUEUED,
+    /** input file being sent to the service */
+    UPLOADING,
+    /** software running */
+    EXECUTING,
+    /** result files being retrieved */
+    DOWNLOADING;
+}
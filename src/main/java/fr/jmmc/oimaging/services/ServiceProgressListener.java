@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener notified when an asynchronous reconstruction job changes its phase.
+ * Note: callbacks are invoked by service threads (not the Swing EDT).
+ */
+public interface ServiceProgressListener {
+
+    /**
+     * Handle the phase change of the given job
+     * @param result service result of the job
+     * @param phase new phase
+     */
+    public void phaseChanged(final ServiceResult result, final ServicePhase phase);
+
+    /**
+     * Notify the given listener (if any) and never propagate its exceptions
+     * @param listener listener to notify (may be null)
+     * @param result service result of the job
+     * @param phase new phase
+     */
+    public static void fire(final ServiceProgressListener listener, final ServiceResult result, final ServicePhase phase) {
+        if (listener != null) {
+            try {
+                listener.phaseChanged(result, phase);
+            } catch (RuntimeException re) {
+                LoggerFactory.getLogger(ServiceProgressListener.class.getName()).warn("phaseChanged: listener failure", re);
+            }
+        }
+    }
+}
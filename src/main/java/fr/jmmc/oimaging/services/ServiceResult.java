@@ -4,12 +4,21 @@
 package fr.jmmc.oimaging.services;
 
 import fr.jmmc.jmcs.util.FileUtils;
+import fr.jmmc.jmcs.util.StringUtils;
+import fr.jmmc.oitools.fits.FitsTable;
+import fr.jmmc.oitools.image.ImageOiInputParam;
+import fr.jmmc.oitools.image.ImageOiOutputParam;
+import fr.jmmc.oitools.meta.KeywordMeta;
 import fr.jmmc.oitools.model.OIFitsFile;
 import fr.jmmc.oitools.model.OIFitsLoader;
 import fr.nom.tam.fits.FitsException;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,8 +53,39 @@ public final class ServiceResult {
 
     private Service service;
 
+    /** upload metrics (remote jobs): input file size, sent bytes (compressed) and transfer duration (ms) */
+    private long uploadRawBytes = 0L;
+    private long uploadSentBytes = 0L;
+    private long uploadDuration = 0L;
+
+    /** resource usage (local jobs): cpu time (s), peak resident memory and I/O bytes (undefined if cpuTime is NaN) */
+    private double cpuTime = Double.NaN;
+    private long peakRss = 0L;
+    private long ioBytes = 0L;
+
+    /** continuation (remote jobs): server url, identifier and expiry time (ms) of the job workspace kept by the server */
+    private String continuationServer = null;
+    private String continuationJobId = null;
+    private long continuationExpiry = 0L;
+
+    /** completed once the job no longer runs in its execution mode (process exited, remote job ended or aborted) */
+    private final CompletableFuture<Void> termination = new CompletableFuture<Void>();
+
+    /** additional result files (remote jobs) keyed by result identifier */
+    private final Map<String, File> additionalResultFiles = new LinkedHashMap<String, File>(4);
+
     // Post process cached data
-    private OIFitsFile oiFitsFile = null;
+    /** result file: resident or evicted by the ResultStore (reloaded on demand) */
+    private volatile OIFitsFile oiFitsFile = null;
+    /** evicted result file (guarded by ResultStore) */
+    private SoftReference<OIFitsFile> evictedFile = null;
+    /** true if managed by the ResultStore (guarded by ResultStore) */
+    private boolean stored = false;
+    /** resident metadata: input and output parameters of the result file */
+    private volatile ImageOiInputParam inputParam = null;
+    private volatile ImageOiOutputParam outputParam = null;
+    /** processing applied to the result file once loaded or reloaded */
+    private FileProcessor fileProcessor = null;
     private String executionLog = null;
 
     /** the extension for fits file */
@@ -95,6 +135,8 @@ public final class ServiceResult {
         if ((oiFitsFile == null) && (oifitsResultFile != null) && oifitsResultFile.exists()) {
             try {
                 oiFitsFile = OIFitsLoader.loadOIFits(oifitsResultFile.getAbsolutePath());
+                inputParam = oiFitsFile.getImageOiData().getInputParam();
+                outputParam = oiFitsFile.getImageOiData().getOutputParam();
             } catch (IOException | FitsException e) {
                 setValid(false);
                 throw e;
@@ -102,10 +144,134 @@ public final class ServiceResult {
         }
     }
 
+    /**
+     * Read the parameters of the result file (header keywords only): OIData tables and images are loaded
+     * on demand by getOifitsFile() once added to the ResultStore
+     * @throws IOException if the result file can not be read
+     */
+    public void loadOIFitsHeaders() throws IOException {
+        if ((outputParam == null) && (oiFitsFile == null) && (oifitsResultFile != null) && oifitsResultFile.exists()) {
+            try {
+                final OIFitsFile headers = ResultHeaders.read(oifitsResultFile);
+                inputParam = headers.getImageOiData().getInputParam();
+                outputParam = headers.getImageOiData().getOutputParam();
+            } catch (IOException | RuntimeException e) {
+                setValid(false);
+                throw (e instanceof IOException) ? (IOException) e : new IOException("Invalid result file: " + oifitsResultFile, e);
+            }
+        }
+    }
+
+    /**
+     * Return the result file (reloaded if evicted by the ResultStore)
+     * @return result file or null if not loaded or not reloadable
+     */
     public OIFitsFile getOifitsFile() {
+        final OIFitsFile file = oiFitsFile;
+        if (file != null) {
+            ResultStore.getInstance().touch(this);
+            return file;
+        }
+        return ResultStore.getInstance().restore(this);
+    }
+
+    /**
+     * @return true if the result file is in memory (loaded and not evicted)
+     */
+    public boolean isOifitsFileLoaded() {
+        return oiFitsFile != null;
+    }
+
+    /**
+     * @return input parameters of the result file (always resident) or null if not loaded
+     */
+    public ImageOiInputParam getInputParam() {
+        return inputParam;
+    }
+
+    /**
+     * @return output parameters of the result file (always resident) or null if not loaded
+     */
+    public ImageOiOutputParam getOutputParam() {
+        return outputParam;
+    }
+
+    /**
+     * Define the processing applied to the result file once loaded (also applied when reloaded)
+     * @param fileProcessor processing
+     */
+    public void setFileProcessor(final FileProcessor fileProcessor) {
+        this.fileProcessor = fileProcessor;
+    }
+
+    OIFitsFile getResidentOifitsFile() {
         return oiFitsFile;
     }
 
+    void setResidentOifitsFile(final OIFitsFile oiFitsFile) {
+        this.oiFitsFile = oiFitsFile;
+    }
+
+    boolean isStored() {
+        return stored;
+    }
+
+    void setStored(final boolean stored) {
+        this.stored = stored;
+    }
+
+    /**
+     * Evict the result file to a soft reference
+     */
+    void evict() {
+        final OIFitsFile file = oiFitsFile;
+        if (file != null) {
+            evictedFile = new SoftReference<OIFitsFile>(file);
+            oiFitsFile = null;
+        }
+    }
+
+    /**
+     * @return evicted result file made resident again or null if collected
+     */
+    OIFitsFile recoverEvicted() {
+        final OIFitsFile file = (evictedFile != null) ? evictedFile.get() : null;
+        evictedFile = null;
+        oiFitsFile = file;
+        return file;
+    }
+
+    /**
+     * Process the reloaded result file and restore the resident parameter values (edited rating, comment ...)
+     * @param file reloaded result file
+     */
+    void processReloaded(final OIFitsFile file) {
+        if (fileProcessor != null) {
+            fileProcessor.process(this, file);
+        }
+        final ImageOiInputParam newInputParam = file.getImageOiData().getInputParam();
+        final ImageOiOutputParam newOutputParam = file.getImageOiData().getOutputParam();
+        copyKeywords(inputParam, newInputParam);
+        copyKeywords(outputParam, newOutputParam);
+        inputParam = newInputParam;
+        outputParam = newOutputParam;
+    }
+
+    private static void copyKeywords(final FitsTable from, final FitsTable to) {
+        if (from != null) {
+            for (KeywordMeta keyword : from.getKeywordsDesc().values()) {
+                if (!to.hasKeywordMeta(keyword.getName())) {
+                    if (to.hasHeaderCards() && (to.findFirstHeaderCard(keyword.getName()) != null)) {
+                        // unchanged header card (read as keyword from headers):
+                        continue;
+                    }
+                    to.addKeyword(keyword);
+                }
+                to.setKeywordValue(keyword.getName(), from.getKeywordValue(keyword.getName()));
+            }
+        }
+    }
+
     public File getExecutionLogResultFile() {
         return executionLogResultFile;
     }
@@ -128,6 +294,20 @@ public final class ServiceResult {
         this.cancelled = cancelled;
     }
 
+    /**
+     * @return future completed once the job no longer runs in its execution mode (it may be cancelled before)
+     */
+    public CompletableFuture<Void> getTermination() {
+        return termination;
+    }
+
+    /**
+     * Indicate that the job no longer runs in its execution mode (process exited, remote job ended or aborted)
+     */
+    public void setTerminated() {
+        termination.complete(null);
+    }
+
     public boolean isValid() {
         return valid;
     }
@@ -182,6 +362,121 @@ public final class ServiceResult {
         this.service = service;
     }
 
+    /**
+     * Return the file to store the given additional result (created in the temporary folder)
+     * @param id result identifier
+     * @param extension file extension (including '.') or empty
+     * @return file to write
+     */
+    public File newAdditionalResultFile(final String id, final String extension) {
+        final File file = FileUtils.getTempFile(inputFile.getName() + "." + StringUtils.replaceNonAlphaNumericCharsByUnderscore(id) + extension);
+        synchronized (additionalResultFiles) {
+            additionalResultFiles.put(id, file);
+        }
+        return file;
+    }
+
+    /**
+     * @return copy of additional result files keyed by result identifier
+     */
+    public Map<String, File> getAdditionalResultFiles() {
+        synchronized (additionalResultFiles) {
+            return new LinkedHashMap<String, File>(additionalResultFiles);
+        }
+    }
+
+    public long getUploadRawBytes() {
+        return uploadRawBytes;
+    }
+
+    public long getUploadSentBytes() {
+        return uploadSentBytes;
+    }
+
+    public long getUploadDuration() {
+        return uploadDuration;
+    }
+
+    /**
+     * @return upload throughput in MB/s (sent bytes) or 0 if undefined
+     */
+    public double getUploadThroughput() {
+        return (uploadDuration > 0L) ? (uploadSentBytes / (1024.0 * 1024.0)) / (uploadDuration / 1000.0) : 0.0;
+    }
+
+    public void setUploadMetrics(final long rawBytes, final long sentBytes, final long duration) {
+        this.uploadRawBytes = rawBytes;
+        this.uploadSentBytes = sentBytes;
+        this.uploadDuration = duration;
+    }
+
+    /**
+     * @return true if resource usage was measured (local jobs)
+     */
+    public boolean hasProcessMetrics() {
+        return !Double.isNaN(cpuTime);
+    }
+
+    /**
+     * @return cpu time in seconds or NaN if undefined
+     */
+    public double getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return peak resident memory in bytes
+     */
+    public long getPeakRss() {
+        return peakRss;
+    }
+
+    /**
+     * @return I/O bytes (read + written)
+     */
+    public long getIoBytes() {
+        return ioBytes;
+    }
+
+    public void setProcessMetrics(final double cpuTime, final long peakRss, final long ioBytes) {
+        this.cpuTime = cpuTime;
+        this.peakRss = peakRss;
+        this.ioBytes = ioBytes;
+    }
+
+    /**
+     * @return true if the job workspace is still kept by the service (continuation)
+     */
+    public boolean isContinuable() {
+        return (continuationJobId != null) && (System.currentTimeMillis() < continuationExpiry);
+    }
+
+    /**
+     * @return url of the server keeping the job workspace or null
+     */
+    public String getContinuationServer() {
+        return continuationServer;
+    }
+
+    /**
+     * @return identifier of the job whose workspace is kept or null
+     */
+    public String getContinuationJobId() {
+        return continuationJobId;
+    }
+
+    /**
+     * Define the job workspace kept by the service to continue this job
+     * @param server server url
+     * @param jobId job identifier
+     * @param expiry expiry time (ms)
+     */
+    public void setContinuation(final String server, final String jobId, final long expiry) {
+        this.continuationServer = server;
+        this.continuationJobId = jobId;
+        this.continuationExpiry = expiry;
+    }
+
     /**
      * @return the index
      */
@@ -196,4 +491,17 @@ public final class ServiceResult {
         this.index = index;
     }
 
+    /**
+     * Processing applied to the result file once loaded
+     */
+    public interface FileProcessor {
+
+        /**
+         * Process the given result file
+         * @param result service result
+         * @param oiFitsFile result file
+         */
+        void process(ServiceResult result, OIFitsFile oiFitsFile);
+    }
+
 }
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.restlet.data.Disposition;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+/**
+ * Streamed upload of the input file (optionally gzip compressed on the fly).
+ * The file is never buffered in memory: it is copied to the request stream
+ * (chunked transfer when compressed as the size is unknown) and transfer metrics are measured.
+ */
+final class UploadRepresentation extends OutputRepresentation {
+
+    /** gzip file extension */
+    static final String GZIP_EXT = ".gz";
+    /** copy buffer size */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* members */
+    /** file to upload */
+    private final File file;
+    /** true to compress on the fly */
+    private final boolean compress;
+    /** bytes read from the file */
+    private volatile long rawBytes = 0L;
+    /** bytes written to the request stream */
+    private volatile long sentBytes = 0L;
+    /** transfer duration (ms) */
+    private volatile long duration = 0L;
+
+    /**
+     * Create the upload representation of the given file
+     * @param file file to upload
+     * @param compress true to compress on the fly (gzip)
+     */
+    UploadRepresentation(final File file, final boolean compress) {
+        super((compress) ? MediaType.APPLICATION_GNU_ZIP : MediaType.IMAGE_ALL,
+                (compress) ? UNKNOWN_SIZE : file.length());
+        this.file = file;
+        this.compress = compress;
+
+        final Disposition disposition = new Disposition(Disposition.TYPE_ATTACHMENT);
+        disposition.setFilename((compress) ? file.getName() + GZIP_EXT : file.getName());
+        setDisposition(disposition);
+    }
+
+    @Override
+    public void write(final OutputStream outputStream) throws IOException {
+        final long start = System.nanoTime();
+
+        final CountingOutputStream counter = new CountingOutputStream(outputStream);
+        final OutputStream out = (compress) ? new GZIPOutputStream(counter, BUFFER_SIZE) : counter;
+
+        long read = 0L;
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                read += n;
+            }
+            if (compress) {
+                // write gzip trailer without closing the request stream:
+                ((GZIPOutputStream) out).finish();
+            }
+            out.flush();
+        } finally {
+            in.close();
+            rawBytes = read;
+            sentBytes = counter.count;
+            duration = (System.nanoTime() - start) / 1000000L;
+        }
+    }
+
+    boolean isCompressed() {
+        return compress;
+    }
+
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    long getSentBytes() {
+        return sentBytes;
+    }
+
+    long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Output stream counting written bytes
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        /** written bytes */
+        long count = 0L;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the request stream is managed by the http connector
+            flush();
+        }
+    }
+}
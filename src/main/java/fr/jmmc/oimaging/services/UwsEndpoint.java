@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWS;
+import fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWSException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One remote UWS server (OImaging-uws instance) of the endpoint pool:
+ * its health (checked in background), latency, outstanding jobs and throughput statistics.
+ */
+public final class UwsEndpoint {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(UwsEndpoint.class.getName());
+
+    /** smoothing factor of the latency average */
+    private static final double LATENCY_ALPHA = 0.3;
+
+    /**
+     * Endpoint health
+     */
+    public enum Health {
+        /** not checked yet */
+        UNKNOWN,
+        /** last check or request succeeded */
+        UP,
+        /** last check or connection failed */
+        DOWN;
+    }
+
+    /* members */
+    /** server url */
+    private final String url;
+    /** service path */
+    private final String servicePath;
+    /** UWS client (created once) */
+    private ClientUWS client = null;
+    /** health */
+    private volatile Health health = Health.UNKNOWN;
+    /** average latency (ms) of health checks or NaN */
+    private volatile double latency = Double.NaN;
+    /** number of submitted jobs not yet deleted */
+    private final AtomicInteger outstandingJobs = new AtomicInteger(0);
+    /** number of completed jobs */
+    private final AtomicLong completedJobs = new AtomicLong(0L);
+    /** number of failovers (jobs moved to another endpoint) */
+    private final AtomicLong failovers = new AtomicLong(0L);
+    /** uploaded bytes */
+    private final AtomicLong uploadBytes = new AtomicLong(0L);
+    /** upload duration (ms) */
+    private final AtomicLong uploadDuration = new AtomicLong(0L);
+    /** false if the server rejected a compressed upload */
+    private volatile boolean compressedUploadSupported = true;
+    /** false if the server does not support deduplicated (blob) uploads */
+    private volatile boolean blobUploadSupported = true;
+    /** hashes of the OIData blobs known by the server (session) */
+    private final Set<String> knownBlobs = ConcurrentHashMap.newKeySet();
+
+    UwsEndpoint(final String url, final String servicePath) {
+        this.url = url;
+        this.servicePath = servicePath;
+    }
+
+    /**
+     * @return UWS client of this endpoint
+     */
+    synchronized ClientUWS getClient() {
+        if (client == null) {
+            client = new ClientUWS(url, servicePath);
+        }
+        return client;
+    }
+
+    /**
+     * Discard the UWS client (recreated on next use)
+     */
+    synchronized void resetClient() {
+        client = null;
+    }
+
+    /**
+     * Check if the endpoint is alive (home page) and measure its latency
+     * @return true if alive
+     */
+    boolean checkHealth() {
+        final long start = System.nanoTime();
+        try {
+            getClient().getHomePage();
+            updateLatency((System.nanoTime() - start) / 1e6);
+            setHealth(Health.UP);
+            return true;
+        } catch (ClientUWSException | RuntimeException e) {
+            logger.debug("checkHealth: '{}' unreachable", url, e);
+            setHealth(Health.DOWN);
+            return false;
+        }
+    }
+
+    private void updateLatency(final double value) {
+        final double avg = latency;
+        latency = Double.isNaN(avg) ? value : (LATENCY_ALPHA * value + (1.0 - LATENCY_ALPHA) * avg);
+    }
+
+    void setHealth(final Health health) {
+        if (this.health != health) {
+            logger.info("UWS endpoint '{}': {}", url, health);
+            this.health = health;
+        }
+    }
+
+    void jobSubmitted(final UploadRepresentation upload) {
+        outstandingJobs.incrementAndGet();
+        uploadBytes.addAndGet(upload.getSentBytes());
+        uploadDuration.addAndGet(upload.getDuration());
+        setHealth(Health.UP);
+    }
+
+    void jobReleased() {
+        outstandingJobs.decrementAndGet();
+    }
+
+    void jobCompleted() {
+        completedJobs.incrementAndGet();
+    }
+
+    void jobMoved() {
+        failovers.incrementAndGet();
+    }
+
+    boolean isCompressedUploadSupported() {
+        return compressedUploadSupported;
+    }
+
+    void setCompressedUploadSupported(final boolean supported) {
+        this.compressedUploadSupported = supported;
+    }
+
+    boolean isBlobUploadSupported() {
+        return blobUploadSupported;
+    }
+
+    void setBlobUploadSupported(final boolean supported) {
+        this.blobUploadSupported = supported;
+    }
+
+    boolean hasKnownBlob(final String hash) {
+        return knownBlobs.contains(hash);
+    }
+
+    void addKnownBlob(final String hash) {
+        knownBlobs.add(hash);
+    }
+
+    void forgetBlob(final String hash) {
+        knownBlobs.remove(hash);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Health getHealth() {
+        return health;
+    }
+
+    /**
+     * @return average latency (ms) of health checks or NaN if unknown
+     */
+    public double getLatency() {
+        return latency;
+    }
+
+    public int getOutstandingJobs() {
+        return outstandingJobs.get();
+    }
+
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    public long getFailovers() {
+        return failovers.get();
+    }
+
+    /**
+     * @return upload throughput in MB/s or 0 if undefined
+     */
+    public double getUploadThroughput() {
+        final long duration = uploadDuration.get();
+        return (duration > 0L) ? (uploadBytes.get() / (1024.0 * 1024.0)) / (duration / 1000.0) : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
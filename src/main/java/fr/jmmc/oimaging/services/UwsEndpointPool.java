@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of UWS endpoints checked in background (home page) to select the endpoint
+ * receiving a new job: healthy endpoints first, then by least outstanding jobs or lowest latency.
+ */
+final class UwsEndpointPool {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(UwsEndpointPool.class.getName());
+
+    /** health check period in ms (-DUwsEndpointPool.healthPeriod=30000) */
+    private static final long HEALTH_PERIOD = Long.getLong("UwsEndpointPool.healthPeriod", 30000L);
+
+    /**
+     * Endpoint selection policy
+     */
+    enum Balancing {
+        /** least outstanding jobs (then lowest latency) */
+        LEAST_JOBS,
+        /** lowest latency (then least outstanding jobs) */
+        LATENCY;
+    }
+
+    /* members */
+    /** endpoints */
+    private final List<UwsEndpoint> endpoints;
+    /** selection policy */
+    private final Balancing balancing;
+    /** health check task */
+    private ScheduledFuture<?> healthTask = null;
+
+    /**
+     * Create a pool for the given server urls
+     * @param urls server urls
+     * @param servicePath service path
+     * @param balancing selection policy
+     */
+    UwsEndpointPool(final List<String> urls, final String servicePath, final Balancing balancing) {
+        final List<UwsEndpoint> list = new ArrayList<UwsEndpoint>(urls.size());
+        for (String url : urls) {
+            list.add(new UwsEndpoint(url, servicePath));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.balancing = balancing;
+        logger.info("UWS endpoints: {} (balancing: {})", endpoints, balancing);
+    }
+
+    /**
+     * Start background health checks
+     */
+    synchronized void start() {
+        if (healthTask == null) {
+            healthTask = ServiceExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    for (final UwsEndpoint endpoint : endpoints) {
+                        // blocking request: use the I/O executor
+                        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                endpoint.checkHealth();
+                            }
+                        });
+                    }
+                }
+            }, 0L, HEALTH_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop background health checks
+     */
+    synchronized void close() {
+        if (healthTask != null) {
+            healthTask.cancel(false);
+            healthTask = null;
+        }
+    }
+
+    /**
+     * @return endpoints
+     */
+    List<UwsEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Select the endpoint for a new job
+     * @param excluded endpoints to ignore (failed)
+     * @return endpoint or null if none available
+     */
+    UwsEndpoint select(final Set<UwsEndpoint> excluded) {
+        UwsEndpoint best = null;
+        for (UwsEndpoint endpoint : endpoints) {
+            if (!excluded.contains(endpoint) && ((best == null) || (compare(endpoint, best) < 0))) {
+                best = endpoint;
+            }
+        }
+        logger.debug("select: {}", best);
+        return best;
+    }
+
+    private int compare(final UwsEndpoint e1, final UwsEndpoint e2) {
+        // down endpoints last (they may be back):
+        final boolean down1 = (e1.getHealth() == UwsEndpoint.Health.DOWN);
+        final boolean down2 = (e2.getHealth() == UwsEndpoint.Health.DOWN);
+        if (down1 != down2) {
+            return (down1) ? 1 : -1;
+        }
+        final int byJobs = Integer.compare(e1.getOutstandingJobs(), e2.getOutstandingJobs());
+        final int byLatency = compareLatency(e1.getLatency(), e2.getLatency());
+
+        if (balancing == Balancing.LATENCY) {
+            return (byLatency != 0) ? byLatency : byJobs;
+        }
+        return (byJobs != 0) ? byJobs : byLatency;
+    }
+
+    private static int compareLatency(final double l1, final double l2) {
+        // unknown latency last:
+        if (Double.isNaN(l1)) {
+            return Double.isNaN(l2) ? 0 : 1;
+        }
+        return Double.isNaN(l2) ? -1 : Double.compare(l1, l2);
+    }
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWS;
+import fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWSException;
+import fr.jmmc.oimaging.Preferences;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background cleanup of finished UWS jobs, out of the job latency:
+ * - pending deletions are batched (one I/O task per server every batch delay)
+ * - failed requests are retried with a growing delay
+ * - failed jobs may be kept on the server (retention preference) to collect their datasets
+ *   and completed jobs may be kept to continue them (warm start):
+ *   their destruction time is set instead of deleting them
+ * Pending cleanups must be flushed before exiting (see awaitCleanup) as they run on daemon threads.
+ */
+public final class UwsJobCleaner {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(UwsJobCleaner.class.getName());
+
+    /** delay in ms to batch deletions (-DUwsJobCleaner.batchDelay=500) */
+    private static final long BATCH_DELAY = Long.getLong("UwsJobCleaner.batchDelay", 500L);
+    /** max number of deletions per batch */
+    private static final int MAX_BATCH = 32;
+    /** max number of attempts per job */
+    private static final int MAX_ATTEMPTS = 4;
+
+    /** singleton */
+    private static final UwsJobCleaner INSTANCE = new UwsJobCleaner();
+
+    /**
+     * @return the singleton
+     */
+    public static UwsJobCleaner getInstance() {
+        return INSTANCE;
+    }
+
+    /* members */
+    /** pending deletions */
+    private final ConcurrentLinkedQueue<Cleanup> queue = new ConcurrentLinkedQueue<Cleanup>();
+    /** number of cleanups being processed (out of the queue) */
+    private final AtomicInteger inProgress = new AtomicInteger(0);
+    /** scheduled flush (guarded by this) */
+    private ScheduledFuture<?> flushTask = null;
+
+    private UwsJobCleaner() {
+        super();
+    }
+
+    /**
+     * Schedule the cleanup of the given finished job
+     * @param client UWS client
+     * @param jobId job identifier
+     * @param failed true if the job failed (may be retained on the server)
+     * @param continuable true if the job may be continued (retained on the server)
+     */
+    void schedule(final ClientUWS client, final String jobId, final boolean failed, final boolean continuable) {
+        queue.add(new Cleanup(client, jobId, failed, continuable));
+        scheduleFlush(BATCH_DELAY);
+    }
+
+    /**
+     * @return number of pending cleanups (queued or in progress)
+     */
+    public int getPendingCount() {
+        return queue.size() + inProgress.get();
+    }
+
+    /**
+     * Process pending cleanups at once (retry delays ignored) in the calling thread
+     * and wait for the cleanups in progress (before exiting)
+     * @param timeout max delay in ms
+     * @return true if no cleanup remains pending
+     */
+    public boolean awaitCleanup(final long timeout) {
+        final long deadline = System.currentTimeMillis() + timeout;
+
+        while (getPendingCount() != 0 && System.currentTimeMillis() < deadline) {
+            final Cleanup cleanup = queue.poll();
+            if (cleanup != null) {
+                inProgress.incrementAndGet();
+                final List<Cleanup> batch = new ArrayList<Cleanup>(1);
+                batch.add(cleanup);
+                process(batch);
+            } else {
+                // cleanups in progress (I/O tasks):
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        final int pending = getPendingCount();
+        if (pending != 0) {
+            logger.warn("awaitCleanup: {} jobs not deleted on their server", pending);
+        }
+        return pending == 0;
+    }
+
+    private synchronized void scheduleFlush(final long delay) {
+        if (flushTask == null) {
+            flushTask = ServiceExecutors.getScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        synchronized (this) {
+            flushTask = null;
+        }
+        final long now = System.currentTimeMillis();
+        final Map<ClientUWS, List<Cleanup>> batches = new HashMap<ClientUWS, List<Cleanup>>();
+        final List<Cleanup> delayed = new ArrayList<Cleanup>();
+
+        long nextRetry = Long.MAX_VALUE;
+        for (int n = 0; n < MAX_BATCH; n++) {
+            final Cleanup cleanup = queue.poll();
+            if (cleanup == null) {
+                break;
+            }
+            if (cleanup.nextAttempt > now) {
+                delayed.add(cleanup);
+                nextRetry = Math.min(nextRetry, cleanup.nextAttempt);
+                continue;
+            }
+            List<Cleanup> batch = batches.get(cleanup.client);
+            if (batch == null) {
+                batch = new ArrayList<Cleanup>();
+                batches.put(cleanup.client, batch);
+            }
+            batch.add(cleanup);
+        }
+        queue.addAll(delayed);
+
+        for (final List<Cleanup> batch : batches.values()) {
+            inProgress.addAndGet(batch.size());
+            try {
+                ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(batch);
+                    }
+                });
+            } catch (RejectedExecutionException ree) {
+                logger.warn("flush: rejected cleanup of {} jobs", batch.size(), ree);
+                queue.addAll(batch);
+                inProgress.addAndGet(-batch.size());
+            }
+        }
+        if (!queue.isEmpty()) {
+            scheduleFlush((delayed.size() == queue.size()) ? Math.max(BATCH_DELAY, nextRetry - now) : BATCH_DELAY);
+        }
+    }
+
+    /**
+     * Process the given cleanups (counted in progress)
+     * @param batch cleanups of the same server
+     */
+    private void process(final List<Cleanup> batch) {
+        final int retentionHours = Preferences.getInstance().getPreferenceAsInt(Preferences.SERVER_FAILED_RETENTION);
+        final int continuationMinutes = Preferences.getInstance().getPreferenceAsInt(Preferences.SERVER_CONTINUATION_RETENTION);
+
+        for (Cleanup cleanup : batch) {
+            try {
+                if (cleanup.failed && (retentionHours > 0)) {
+                    cleanup.client.setJobDestructionTime(cleanup.jobId,
+                            new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(retentionHours)));
+                    logger.info("Failed job '{}' kept on the server for {} hours", cleanup.jobId, retentionHours);
+                } else if (cleanup.continuable && (continuationMinutes > 0)) {
+                    cleanup.client.setJobDestructionTime(cleanup.jobId,
+                            new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(continuationMinutes)));
+                    logger.debug("Job '{}' kept on the server for {} minutes (continuation)", cleanup.jobId, continuationMinutes);
+                } else {
+                    cleanup.client.deleteJobInfo(cleanup.jobId);
+                    logger.debug("Job '{}' deleted", cleanup.jobId);
+                }
+            } catch (ClientUWSException | RuntimeException e) {
+                if (++cleanup.attempts < MAX_ATTEMPTS) {
+                    logger.debug("Can't delete job '{}' (attempt {}): retry later", cleanup.jobId, cleanup.attempts, e);
+                    cleanup.nextAttempt = System.currentTimeMillis() + (BATCH_DELAY << (2 * cleanup.attempts));
+                    queue.add(cleanup);
+                } else {
+                    logger.warn("Can't delete job '{}'", cleanup.jobId, e);
+                }
+            } finally {
+                // decremented after any retry is queued:
+                inProgress.decrementAndGet();
+            }
+        }
+        if (!queue.isEmpty()) {
+            scheduleFlush(BATCH_DELAY);
+        }
+    }
+
+    /**
+     * Pending cleanup of one job
+     */
+    private static final class Cleanup {
+
+        /** UWS client */
+        final ClientUWS client;
+        /** job identifier */
+        final String jobId;
+        /** true if the job failed */
+        final boolean failed;
+        /** true if the job may be continued */
+        final boolean continuable;
+        /** number of failed attempts */
+        int attempts = 0;
+        /** time (ms) of the next attempt */
+        long nextAttempt = 0L;
+
+        Cleanup(final ClientUWS client, final String jobId, final boolean failed, final boolean continuable) {
+            this.client = client;
+            this.jobId = jobId;
+            this.failed = failed;
+            this.continuable = continuable;
+        }
+    }
+}
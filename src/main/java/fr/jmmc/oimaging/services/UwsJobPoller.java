@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWS;
+import fr.cnes.sitools.extensions.astro.application.uws.client.ClientUWSException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.ivoa.xml.uws.v1.ExecutionPhase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single poller tracking the phase of all active UWS jobs:
+ * - one scheduler tick dispatches phase queries (at most one in flight per job) to the shared I/O executor
+ * - adaptive backoff: the poll interval of a job grows while its phase does not change
+ * - UWS 1.1 blocking queries (?WAIT=) are used for a few jobs when the server supports them
+ *   (servers replying immediately to blocking queries are detected and polled instead)
+ * - bulk queries: when several jobs are active on the same server, their phases are read with
+ *   a single job list request (UWS 1.1 filters); unlisted jobs are then queried individually.
+ *   Per-job queries are bounded (maxFetches).
+ * Blocking or bulk queries are disabled on a server after repeated failures (strikes per server URL,
+ * so client resets keep them) then probed again after a delay.
+ * The future returned by watch() completes with the terminal phase of the job.
+ */
+final class UwsJobPoller {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(UwsJobPoller.class.getName());
+
+    /** min poll interval in ms (-DUwsJobPoller.minInterval=100) */
+    private static final long MIN_INTERVAL = Long.getLong("UwsJobPoller.minInterval", 100L);
+    /** max poll interval in ms (-DUwsJobPoller.maxInterval=2000) */
+    private static final long MAX_INTERVAL = Long.getLong("UwsJobPoller.maxInterval", 2000L);
+    /** backoff factor applied while the job phase is unchanged */
+    private static final double BACKOFF = 1.5;
+    /** blocking query wait time in seconds (-DUwsJobPoller.wait=10; 0 disables blocking queries) */
+    private static final int WAIT_SECONDS = Integer.getInteger("UwsJobPoller.wait", 10);
+    /** max number of concurrent blocking queries (-DUwsJobPoller.waiters=2) to leave http connections for other requests */
+    private static final int MAX_WAITERS = Integer.getInteger("UwsJobPoller.waiters", 2);
+    /** a blocking query returning faster than this (ms) without phase change means WAIT is not supported */
+    private static final long WAIT_MIN_BLOCK = 500L;
+    /** number of immediate replies before giving up blocking queries on a server */
+    private static final int MAX_WAIT_STRIKES = 2;
+    /** max number of concurrent per-job queries (-DUwsJobPoller.maxFetches=4) */
+    private static final int MAX_FETCHES = Integer.getInteger("UwsJobPoller.maxFetches", 4);
+    /** margin (ms) applied to the AFTER filter of bulk queries to tolerate clock skew */
+    private static final long AFTER_MARGIN = 5 * 60 * 1000L;
+    /** number of useless or failed bulk queries (in a row) before giving up bulk queries on a server */
+    private static final int MAX_BULK_STRIKES = 3;
+    /** delay in ms before probing again blocking or bulk queries on a server (-DUwsJobPoller.retryDelay=300000) */
+    private static final long RETRY_DELAY = Long.getLong("UwsJobPoller.retryDelay", 5 * 60 * 1000L);
+
+    /** singleton */
+    private static final UwsJobPoller INSTANCE = new UwsJobPoller();
+
+    /**
+     * @return the singleton
+     */
+    static UwsJobPoller getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param phase UWS execution phase
+     * @return true if the job is still queued or executing
+     */
+    static boolean isRunning(final ExecutionPhase phase) {
+        return (phase == ExecutionPhase.EXECUTING) || (phase == ExecutionPhase.QUEUED);
+    }
+
+    /* members */
+    /** active jobs */
+    private final Set<PolledJob> jobs = ConcurrentHashMap.newKeySet();
+    /** immediate replies to blocking queries per server URL */
+    private final Map<String, Strikes> waitStrikes = new ConcurrentHashMap<>();
+    /** number of blocking queries in flight */
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    /** useless or failed bulk queries per server URL */
+    private final Map<String, Strikes> bulkStrikes = new ConcurrentHashMap<>();
+    /** number of per-job queries in flight */
+    private final AtomicInteger fetches = new AtomicInteger(0);
+    /** scheduled tick (guarded by this) */
+    private ScheduledFuture<?> tickTask = null;
+
+    private UwsJobPoller() {
+        super();
+    }
+
+    /**
+     * Start watching the given job
+     * @param client UWS client
+     * @param jobId job identifier
+     * @return future completed with the terminal phase (or exceptionally if the phase can not be retrieved);
+     * cancel it to stop watching the job
+     */
+    CompletableFuture<ExecutionPhase> watch(final ClientUWS client, final String jobId) {
+        final PolledJob job = new PolledJob(client, jobId);
+        jobs.add(job);
+        job.future.whenComplete((phase, th) -> jobs.remove(job));
+
+        logger.debug("watch[{}]: {} active jobs", jobId, jobs.size());
+        startTick();
+        return job.future;
+    }
+
+    /**
+     * @return number of watched jobs
+     */
+    int getJobCount() {
+        return jobs.size();
+    }
+
+    private synchronized void startTick() {
+        if (tickTask == null) {
+            tickTask = ServiceExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }, MIN_INTERVAL, MIN_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopTickIfIdle() {
+        if (jobs.isEmpty() && tickTask != null) {
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+    }
+
+    private void tick() {
+        if (jobs.isEmpty()) {
+            stopTickIfIdle();
+            return;
+        }
+        final long now = System.currentTimeMillis();
+
+        // group active jobs per server:
+        final Map<ClientUWS, List<PolledJob>> groups = new HashMap<>();
+        for (PolledJob job : jobs) {
+            if (!job.future.isDone()) {
+                groups.computeIfAbsent(job.client, c -> new ArrayList<>()).add(job);
+            }
+        }
+        for (Map.Entry<ClientUWS, List<PolledJob>> e : groups.entrySet()) {
+            final List<PolledJob> group = e.getValue();
+            if ((group.size() > 1) && isBulkSupported(e.getKey())) {
+                pollGroup(e.getKey(), group, now);
+            } else {
+                for (PolledJob job : group) {
+                    pollJob(job, (group.size() == 1), now);
+                }
+            }
+        }
+    }
+
+    private void pollGroup(final ClientUWS client, final List<PolledJob> group, final long now) {
+        boolean due = false;
+        for (PolledJob job : group) {
+            if (now >= job.nextPoll) {
+                due = true;
+                break;
+            }
+        }
+        if (!due) {
+            return;
+        }
+        final List<PolledJob> batch = new ArrayList<>(group.size());
+        for (PolledJob job : group) {
+            if (job.inFlight.compareAndSet(false, true)) {
+                batch.add(job);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    pollBatch(client, batch);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            logger.warn("tick: rejected bulk poll for {} jobs", batch.size(), ree);
+            for (PolledJob job : batch) {
+                release(job, false);
+            }
+        }
+    }
+
+    private void pollJob(final PolledJob job, final boolean allowWait, final long now) {
+        if ((now < job.nextPoll) || job.future.isDone()) {
+            return;
+        }
+        if (fetches.incrementAndGet() > MAX_FETCHES) {
+            // retry on next tick:
+            fetches.decrementAndGet();
+            return;
+        }
+        if (!job.inFlight.compareAndSet(false, true)) {
+            fetches.decrementAndGet();
+            return;
+        }
+        final boolean useWait = allowWait && useWait(job);
+        try {
+            ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        poll(job, useWait);
+                    } finally {
+                        fetches.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            logger.warn("tick: rejected poll for job '{}'", job.jobId, ree);
+            fetches.decrementAndGet();
+            release(job, useWait);
+        }
+    }
+
+    private boolean isBulkSupported(final ClientUWS client) {
+        final Strikes strikes = bulkStrikes.get(client.getServerURL());
+        return (strikes == null) || strikes.isAllowed(System.currentTimeMillis());
+    }
+
+    private Strikes getBulkStrikes(final ClientUWS client) {
+        return bulkStrikes.computeIfAbsent(client.getServerURL(), u -> new Strikes(MAX_BULK_STRIKES));
+    }
+
+    private void pollBatch(final ClientUWS client, final List<PolledJob> batch) {
+        final Map<String, PolledJob> byId = new HashMap<>(batch.size());
+        long after = Long.MAX_VALUE;
+        for (PolledJob job : batch) {
+            byId.put(job.jobId, job);
+            after = Math.min(after, job.watchTime);
+        }
+        Map<String, ExecutionPhase> phases = null;
+        try {
+            final long start = System.currentTimeMillis();
+
+            phases = client.getJobPhases(byId.keySet(), new Date(after - AFTER_MARGIN));
+
+            logger.debug("getJobPhases[{} jobs] : {} listed ({} ms)", batch.size(), phases.size(), (System.currentTimeMillis() - start));
+
+        } catch (ClientUWSException | RuntimeException e) {
+            logger.debug("Bulk phase query failed: use per-job queries", e);
+            if (getBulkStrikes(client).strike(System.currentTimeMillis())) {
+                logger.info("Bulk phase queries failed {} times: use per-job queries", MAX_BULK_STRIKES, e);
+            }
+        }
+        final long now = System.currentTimeMillis();
+        boolean running = false;
+        for (PolledJob job : batch) {
+            final ExecutionPhase phase = (phases != null) ? phases.get(job.jobId) : null;
+            if (phase != null) {
+                try {
+                    update(job, job.lastPhase, phase, false, now);
+                } finally {
+                    release(job, false);
+                }
+            } else {
+                // finished or not listed: query the job itself (concurrent per-job queries bounded by maxFetches)
+                running |= isRunning(job.lastPhase);
+                job.nextPoll = 0L;
+                release(job, false);
+                pollJob(job, false, now);
+            }
+        }
+        if (phases != null) {
+            if (phases.isEmpty() && running) {
+                // no active job listed: filters or listing not usable on this server
+                if (getBulkStrikes(client).strike(now)) {
+                    logger.info("UWS server does not list active jobs: use per-job queries");
+                }
+            } else if (!phases.isEmpty()) {
+                getBulkStrikes(client).reset();
+            }
+        }
+    }
+
+    private boolean useWait(final PolledJob job) {
+        if ((WAIT_SECONDS <= 0) || (job.lastPhase == null) || !isWaitSupported(job.client)) {
+            return false;
+        }
+        if (waiters.incrementAndGet() > MAX_WAITERS) {
+            waiters.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isWaitSupported(final ClientUWS client) {
+        final Strikes strikes = waitStrikes.get(client.getServerURL());
+        return (strikes == null) || strikes.isAllowed(System.currentTimeMillis());
+    }
+
+    private void poll(final PolledJob job, final boolean useWait) {
+        try {
+            final long start = System.currentTimeMillis();
+            final ExecutionPhase previous = job.lastPhase;
+
+            final ExecutionPhase phase = (useWait)
+                    ? job.client.getJobPhase(job.jobId, previous, WAIT_SECONDS)
+                    : job.client.getJobPhase(job.jobId);
+
+            final long now = System.currentTimeMillis();
+
+            logger.debug("getJobPhase[{}] : {} ({} ms, wait: {})", job.jobId, phase, (now - start), useWait);
+
+            if (useWait && (phase == previous)) {
+                final Strikes strikes = waitStrikes.computeIfAbsent(job.client.getServerURL(), u -> new Strikes(MAX_WAIT_STRIKES));
+                if ((now - start) < WAIT_MIN_BLOCK) {
+                    if (strikes.strike(now)) {
+                        logger.info("UWS server does not support blocking phase queries (WAIT): use polling");
+                    }
+                } else {
+                    strikes.reset();
+                }
+            }
+
+            update(job, previous, phase, useWait, now);
+
+        } catch (ClientUWSException | RuntimeException e) {
+            job.future.completeExceptionally(e);
+        } finally {
+            release(job, useWait);
+        }
+    }
+
+    private static void update(final PolledJob job, final ExecutionPhase previous, final ExecutionPhase phase,
+                               final boolean useWait, final long now) {
+        if (!isRunning(phase)) {
+            job.future.complete(phase);
+            return;
+        }
+        // adaptive backoff:
+        job.interval = (phase != previous) ? MIN_INTERVAL : Math.min((long) (job.interval * BACKOFF), MAX_INTERVAL);
+        job.lastPhase = phase;
+        // blocking queries already waited on the server side:
+        job.nextPoll = (useWait) ? now : now + job.interval;
+    }
+
+    private void release(final PolledJob job, final boolean useWait) {
+        if (useWait) {
+            waiters.decrementAndGet();
+        }
+        job.inFlight.set(false);
+    }
+
+    /**
+     * Consecutive failures of an optional server feature (blocking or bulk queries):
+     * the feature is disabled after max strikes then probed again once after RETRY_DELAY
+     */
+    private static final class Strikes {
+
+        /** max number of strikes */
+        private final int max;
+        /** number of strikes in a row (guarded by this) */
+        private int count = 0;
+        /** time (ms) of the next probe once disabled (guarded by this) */
+        private long retryTime = 0L;
+
+        Strikes(final int max) {
+            this.max = max;
+        }
+
+        /**
+         * @param now current time (ms)
+         * @return true if the feature may be used
+         */
+        synchronized boolean isAllowed(final long now) {
+            if (count < max) {
+                return true;
+            }
+            if (now >= retryTime) {
+                // probe again: disabled by the next strike
+                count = max - 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Add a strike
+         * @param now current time (ms)
+         * @return true if the feature is now disabled
+         */
+        synchronized boolean strike(final long now) {
+            if (count >= max) {
+                return false;
+            }
+            if (++count == max) {
+                retryTime = now + RETRY_DELAY;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Reset strikes (feature working)
+         */
+        synchronized void reset() {
+            count = 0;
+        }
+    }
+
+    /**
+     * Polling state of one job
+     */
+    private static final class PolledJob {
+
+        /** UWS client */
+        final ClientUWS client;
+        /** job identifier */
+        final String jobId;
+        /** future completed with the terminal phase */
+        final CompletableFuture<ExecutionPhase> future = new CompletableFuture<>();
+        /** flag indicating a phase query in flight */
+        final AtomicBoolean inFlight = new AtomicBoolean(false);
+        /** last known phase (null before the first query) */
+        volatile ExecutionPhase lastPhase = null;
+        /** current poll interval (ms) */
+        volatile long interval = MIN_INTERVAL;
+        /** next poll time (ms) */
+        volatile long nextPoll = 0L;
+        /** watch start time (ms) i.e. after the job creation */
+        final long watchTime = System.currentTimeMillis();
+
+        PolledJob(final ClientUWS client, final String jobId) {
+            this.client = client;
+            this.jobId = jobId;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Worker agent running reconstruction jobs sent by WorkerExecutionMode (see WorkerProtocol):
+ * each job runs through the given execution mode (LocalExecutionMode i.e. *-ci executables by default)
+ * with at most 'capacity' jobs at once; the job log is streamed while running then the result file is returned.
+ * Only requests giving the shared token are accepted, only solver commands (ServiceList) are run
+ * and the input size is limited; the agent listens on the loopback interface unless a bind address is given.
+ * Connections are bounded (handler threads) and must send their request before the read timeout.
+ * Start it with: java -DWorkerAgent.token=secret -cp ... fr.jmmc.oimaging.services.WorkerAgent [port] [capacity] [bind address]
+ */
+public final class WorkerAgent {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(WorkerAgent.class.getName());
+
+    /** interval (ms) between log chunks and cancellation checks */
+    private static final int LOG_INTERVAL = 250;
+    /** heartbeat interval (ms) when the log does not grow */
+    private static final long HEARTBEAT_INTERVAL = 5000L;
+    /** max delay (s) to wait for a cancelled job to be aborted before releasing its slot (-DWorkerAgent.terminationTimeout=30) */
+    private static final long TERMINATION_TIMEOUT = Long.getLong("WorkerAgent.terminationTimeout", 30L);
+    /** read timeout (ms) of requests and input files (-DWorkerAgent.readTimeout=60000) */
+    private static final int READ_TIMEOUT = Integer.getInteger("WorkerAgent.readTimeout", 60000);
+    /** max number of connections handled at once (-DWorkerAgent.maxConnections; 2 x capacity + 4 by default) */
+    private static final int MAX_CONNECTIONS = Integer.getInteger("WorkerAgent.maxConnections", 0);
+    /** max input size in MB (-DWorkerAgent.maxInputSize=512) */
+    private static final long MAX_INPUT_SIZE = Long.getLong("WorkerAgent.maxInputSize", 512L) * 1024L * 1024L;
+    /** solver commands accepted */
+    private static final Set<String> SOFTWARES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            ServiceList.CMD_BSMEM, ServiceList.CMD_MIRA, ServiceList.CMD_SPARCO, ServiceList.CMD_WISARD)));
+
+    /* members */
+    /** execution mode running jobs */
+    private final OImagingExecutionMode executionMode;
+    /** max number of concurrent jobs */
+    private final int capacity;
+    /** token shared with clients */
+    private final String token;
+    /** job slots */
+    private final Semaphore slots;
+    /** server socket */
+    private final ServerSocket serverSocket;
+    /** connection handlers (bounded) */
+    private final ThreadPoolExecutor handlers;
+
+    /**
+     * Create an agent listening on the given address and port
+     * @param bindAddress address (host name or IP) to listen on or null to listen on the loopback interface
+     * @param port port (0 means any free port)
+     * @param capacity max number of concurrent jobs
+     * @param token token shared with clients (required)
+     * @param executionMode execution mode running jobs
+     * @throws IOException if the port can not be bound
+     * @throws IllegalArgumentException if the token is empty
+     */
+    public WorkerAgent(final String bindAddress, final int port, final int capacity, final String token,
+                       final OImagingExecutionMode executionMode) throws IOException, IllegalArgumentException {
+        if ((token == null) || token.isEmpty()) {
+            throw new IllegalArgumentException("Missing worker token (-DWorkerAgent.token) !");
+        }
+        this.executionMode = executionMode;
+        this.capacity = capacity;
+        this.token = token;
+        this.slots = new Semaphore(capacity);
+        this.handlers = new ThreadPoolExecutor(0, (MAX_CONNECTIONS > 0) ? MAX_CONNECTIONS : 2 * capacity + 4,
+                60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), ServiceExecutors.newThreadFactory("WorkerAgent"));
+        this.serverSocket = new ServerSocket(port, 50,
+                (bindAddress != null) ? InetAddress.getByName(bindAddress) : InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return listening port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return max number of concurrent jobs
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of running jobs
+     */
+    public int getRunningJobs() {
+        return capacity - slots.availablePermits();
+    }
+
+    /**
+     * Start accepting connections (background thread)
+     */
+    public void start() {
+        final Thread acceptor = ServiceExecutors.newThreadFactory("WorkerAgentAccept").newThread(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Worker agent listening on {}:{} (capacity: {})", serverSocket.getInetAddress(), getPort(), capacity);
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        try {
+                            handlers.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    handle(socket);
+                                }
+                            });
+                        } catch (RejectedExecutionException ree) {
+                            logger.warn("Too many connections: reject {}", socket.getRemoteSocketAddress());
+                            close(socket);
+                        }
+                    } catch (IOException ioe) {
+                        if (!serverSocket.isClosed()) {
+                            logger.warn("accept failure", ioe);
+                        }
+                    }
+                }
+            }
+        });
+        acceptor.start();
+    }
+
+    /**
+     * Stop accepting connections and abort running jobs
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException ioe) {
+            logger.debug("close failure", ioe);
+        }
+        handlers.shutdownNow();
+    }
+
+    private void handle(final Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            // idle or slow peers must not pin handler threads:
+            socket.setSoTimeout(READ_TIMEOUT);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), WorkerProtocol.BUFFER_SIZE));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), WorkerProtocol.BUFFER_SIZE));
+
+            final byte type;
+            try {
+                type = WorkerProtocol.readHeader(in, token);
+            } catch (SecurityException se) {
+                logger.warn("Rejected request from {}: {}", socket.getRemoteSocketAddress(), se.getMessage());
+                sendError(out, "Unauthorized");
+                return;
+            }
+            switch (type) {
+                case WorkerProtocol.REQ_HELLO:
+                    out.writeByte(WorkerProtocol.REP_HELLO);
+                    out.writeInt(capacity);
+                    out.writeInt(getRunningJobs());
+                    out.flush();
+                    break;
+                case WorkerProtocol.REQ_RUN:
+                    run(socket, in, out);
+                    break;
+                default:
+                    sendError(out, "Unsupported request: " + type);
+            }
+        } catch (IOException ioe) {
+            logger.debug("connection failure", ioe);
+        } finally {
+            close(socket);
+        }
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            logger.debug("close failure", ioe);
+        }
+    }
+
+    private void run(final Socket socket, final DataInputStream in, final DataOutputStream out) throws IOException {
+        final String software = WorkerProtocol.readString(in);
+        final String cliOptions = WorkerProtocol.readString(in);
+
+        if (!SOFTWARES.contains(software)) {
+            logger.warn("Rejected software from {}: {}", socket.getRemoteSocketAddress(), software);
+            sendError(out, "Unsupported software: " + software);
+            return;
+        }
+        // take a slot before storing the input:
+        if (!slots.tryAcquire()) {
+            WorkerProtocol.skipFile(in, MAX_INPUT_SIZE);
+            out.writeByte(WorkerProtocol.REP_BUSY);
+            out.flush();
+            return;
+        }
+        try {
+            final File inputFile = File.createTempFile("worker-", ServiceResult.FITS_FILE_EXT);
+            try {
+                try {
+                    WorkerProtocol.readFile(in, inputFile, MAX_INPUT_SIZE);
+                } catch (IOException ioe) {
+                    logger.info("Input failure from {}: {}", socket.getRemoteSocketAddress(), ioe.getMessage());
+                    sendError(out, ioe.getMessage());
+                    return;
+                }
+                execute(socket, in, out, software, cliOptions, inputFile);
+            } finally {
+                inputFile.delete();
+            }
+        } finally {
+            slots.release();
+        }
+    }
+
+    /**
+     * Wait for the given cancelled job to be aborted by the execution mode
+     * @param result service result or null if not started
+     */
+    private static void awaitTermination(final ServiceResult result) {
+        if (result == null) {
+            return;
+        }
+        try {
+            result.getTermination().get(TERMINATION_TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException te) {
+            logger.warn("Cancelled job still running after {} s: release its slot", TERMINATION_TIMEOUT);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            logger.debug("termination failure", ee);
+        }
+    }
+
+    private static void sendError(final DataOutputStream out, final String message) {
+        try {
+            out.writeByte(WorkerProtocol.REP_ERROR);
+            WorkerProtocol.writeString(out, message);
+            out.flush();
+        } catch (IOException ioe) {
+            logger.debug("write failure", ioe);
+        }
+    }
+
+    private void execute(final Socket socket, final DataInputStream in, final DataOutputStream out,
+                         final String software, final String cliOptions, final File inputFile) throws IOException {
+
+        logger.info("Job start: software={} cliOptions={} input={} bytes", software, cliOptions, inputFile.length());
+
+        // capture the service result (first phase notification) to tail its log file:
+        final AtomicReference<ServiceResult> resultRef = new AtomicReference<ServiceResult>();
+        final CompletableFuture<ServiceResult> future;
+        try {
+            future = executionMode.reconstructsImageAsync(software, cliOptions, inputFile, new ServiceProgressListener() {
+                @Override
+                public void phaseChanged(final ServiceResult result, final ServicePhase phase) {
+                    resultRef.compareAndSet(null, result);
+                }
+            });
+        } catch (RuntimeException re) {
+            out.writeByte(WorkerProtocol.REP_ERROR);
+            WorkerProtocol.writeString(out, re.getMessage());
+            out.flush();
+            return;
+        }
+        out.writeByte(WorkerProtocol.REP_STARTED);
+        out.flush();
+
+        socket.setSoTimeout(LOG_INTERVAL);
+        long logOffset = 0L;
+        long lastSent = System.currentTimeMillis();
+        ServiceResult result = null;
+        try {
+            while (result == null) {
+                // wait for a cancellation message (or the client disconnection) up to the log interval:
+                try {
+                    final int msg = in.read();
+                    if ((msg == -1) || (msg == WorkerProtocol.MSG_CANCEL)) {
+                        logger.info("Job cancelled by the client");
+                        future.cancel(true);
+                    }
+                } catch (SocketTimeoutException ste) {
+                    // no message
+                }
+                if (future.isDone()) {
+                    try {
+                        result = future.get();
+                    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+                        logger.info("Job failure", e);
+                        final ServiceResult partial = resultRef.get();
+                        if (future.isCancelled()) {
+                            // keep the slot until the job is aborted:
+                            awaitTermination(partial);
+                        }
+                        if (partial != null) {
+                            logOffset = sendLog(out, partial.getExecutionLogResultFile(), logOffset);
+                        }
+                        out.writeByte(WorkerProtocol.REP_ERROR);
+                        WorkerProtocol.writeString(out, (future.isCancelled()) ? "Cancelled job." : String.valueOf(e.getMessage()));
+                        out.flush();
+                        return;
+                    }
+                }
+                final ServiceResult current = (result != null) ? result : resultRef.get();
+                final long offset = (current != null) ? sendLog(out, current.getExecutionLogResultFile(), logOffset) : logOffset;
+                final long now = System.currentTimeMillis();
+                if (offset != logOffset) {
+                    logOffset = offset;
+                    lastSent = now;
+                } else if (now - lastSent > HEARTBEAT_INTERVAL) {
+                    out.writeByte(WorkerProtocol.REP_LOG);
+                    out.writeInt(0);
+                    lastSent = now;
+                }
+                out.flush();
+            }
+        } catch (SocketException se) {
+            logger.info("Client disconnected: cancel job");
+            future.cancel(true);
+            awaitTermination(resultRef.get());
+            throw se;
+        }
+        logger.info("Job end: cancelled={} error={}", result.isCancelled(), result.getErrorMessage());
+
+        out.writeByte(WorkerProtocol.REP_RESULT);
+        out.writeBoolean(result.isCancelled());
+        WorkerProtocol.writeString(out, result.getErrorMessage());
+        out.writeDouble(result.getCpuTime());
+        out.writeLong(result.getPeakRss());
+        out.writeLong(result.getIoBytes());
+        WorkerProtocol.writeFile(out, result.getOifitsResultFile());
+        out.flush();
+
+        result.getOifitsResultFile().delete();
+        result.getExecutionLogResultFile().delete();
+    }
+
+    /**
+     * Send the log bytes appended since the given offset
+     * @return new offset
+     */
+    private static long sendLog(final DataOutputStream out, final File logFile, final long offset) throws IOException {
+        if (!logFile.isFile() || (logFile.length() <= offset)) {
+            return offset;
+        }
+        long pos = offset;
+        final RandomAccessFile raf = new RandomAccessFile(logFile, "r");
+        try {
+            final byte[] buffer = new byte[WorkerProtocol.BUFFER_SIZE];
+            raf.seek(pos);
+            int n;
+            while ((n = raf.read(buffer)) > 0) {
+                out.writeByte(WorkerProtocol.REP_LOG);
+                out.writeInt(n);
+                out.write(buffer, 0, n);
+                pos += n;
+            }
+        } finally {
+            raf.close();
+        }
+        return pos;
+    }
+
+    /**
+     * Start a worker agent running local solvers
+     * (token given by -DWorkerAgent.token or the OIMAGING_WORKER_TOKEN environment variable)
+     * @param args [port] [capacity] [bind address (loopback by default)]
+     * @throws IOException if the port can not be bound
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final int port = (args.length > 0) ? Integer.parseInt(args[0]) : WorkerProtocol.DEFAULT_PORT;
+        final int capacity = (args.length > 1) ? Integer.parseInt(args[1]) : LocalExecutionMode.INSTANCE.getMaxConcurrentJobs();
+        final String bindAddress = (args.length > 2) ? args[2] : null;
+        final String token = System.getProperty("WorkerAgent.token", System.getenv("OIMAGING_WORKER_TOKEN"));
+
+        final WorkerAgent agent = new WorkerAgent(bindAddress, port, capacity, token, LocalExecutionMode.INSTANCE);
+        agent.start();
+        logger.info("Worker agent started on {}:{}", agent.serverSocket.getInetAddress(), agent.getPort());
+
+        // keep the JVM alive (daemon threads):
+        while (true) {
+            TimeUnit.MINUTES.sleep(1L);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.jmcs.util.StringUtils;
+import fr.jmmc.oimaging.Preferences;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execution mode sending jobs to a pool of worker agents (see WorkerAgent) running the *-ci executables:
+ * input and result files are streamed over a compact TCP protocol (see WorkerProtocol)
+ * and jobs are balanced by capacity-aware work stealing (see WorkerPool).
+ * Agents are given by the preference 'workers.hosts' (host[:port] separated by commas).
+ */
+public final class WorkerExecutionMode implements OImagingExecutionMode {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(WorkerExecutionMode.class.getName());
+
+    /** preference singleton */
+    private final static Preferences PREFS = Preferences.getInstance();
+
+    /** singleton (agents given by preferences) */
+    public static final WorkerExecutionMode INSTANCE = new WorkerExecutionMode(null, null);
+
+    /**
+     * @return agent addresses given by the preference 'workers.hosts'
+     */
+    public static List<String> getConfiguredHosts() {
+        final String hosts = PREFS.getPreference(Preferences.WORKER_HOSTS);
+        if (StringUtils.isEmpty(hosts)) {
+            return Collections.emptyList();
+        }
+        final List<String> list = new ArrayList<String>(4);
+        for (String host : hosts.trim().split("[,\\s]+")) {
+            if (!host.isEmpty() && !list.contains(host)) {
+                list.add(host);
+            }
+        }
+        return list;
+    }
+
+    /* members */
+    /** fixed agent addresses or null to use preferences */
+    private final List<String> hosts;
+    /** fixed token or null to use preferences */
+    private final String token;
+    /** worker pool (created once) */
+    private WorkerPool pool = null;
+
+    /**
+     * Create an execution mode using the given agents
+     * @param hosts agent addresses (host[:port]) or null to use preferences
+     * @param token token shared with agents or null to use preferences
+     */
+    WorkerExecutionMode(final List<String> hosts, final String token) {
+        this.hosts = hosts;
+        this.token = token;
+    }
+
+    /**
+     * @return true if worker agents are defined
+     */
+    public boolean isConfigured() {
+        return !((hosts != null) ? hosts : getConfiguredHosts()).isEmpty();
+    }
+
+    synchronized WorkerPool getPool() throws IllegalStateException {
+        if (pool == null) {
+            final List<String> list = (hosts != null) ? hosts : getConfiguredHosts();
+            if (list.isEmpty()) {
+                throw new IllegalStateException("No worker node defined (preference '" + Preferences.WORKER_HOSTS + "') !");
+            }
+            final String sharedToken = (token != null) ? token : PREFS.getPreference(Preferences.WORKER_TOKEN);
+            if (StringUtils.isEmpty(sharedToken)) {
+                throw new IllegalStateException("No worker token defined (preference '" + Preferences.WORKER_TOKEN + "') !");
+            }
+            pool = new WorkerPool(list, sharedToken);
+            pool.start();
+        }
+        return pool;
+    }
+
+    /**
+     * Stop the worker pool (recreated on next use)
+     */
+    public synchronized void close() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    @Override
+    public ServiceResult reconstructsImage(final String software, final String cliOptions, final File inputFile) {
+        final ServiceResult result = new ServiceResult(inputFile);
+        final CompletableFuture<ServiceResult> future = submit(software, cliOptions, result, null);
+        try {
+            future.get();
+        } catch (InterruptedException ie) {
+            logger.warn("reconstructsImage: interrupted", ie);
+            future.cancel(true);
+            result.setCancelled(true);
+        } catch (ExecutionException ee) {
+            logger.info("reconstructsImage: execution error", ee);
+            result.setErrorMessage(ee.getCause().getMessage());
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String cliOptions, final File inputFile,
+                                                                   final ServiceProgressListener listener) {
+        return submit(software, cliOptions, new ServiceResult(inputFile), listener);
+    }
+
+    private CompletableFuture<ServiceResult> submit(final String software, final String cliOptions, final ServiceResult result,
+                                                    final ServiceProgressListener listener) {
+        final CompletableFuture<ServiceResult> future = new CompletableFuture<>();
+        final WorkerPool.WorkerJob job = new WorkerPool.WorkerJob(software, cliOptions, result, future, listener);
+
+        ServiceProgressListener.fire(listener, result, ServicePhase.QUEUED);
+
+        future.whenComplete((r, th) -> {
+            if (future.isCancelled()) {
+                job.cancel();
+                if (!job.attempting) {
+                    // queued: never started
+                    result.setTerminated();
+                }
+            }
+        });
+        try {
+            getPool().submit(job);
+        } catch (IllegalStateException ise) {
+            future.completeExceptionally(ise);
+        }
+        return future;
+    }
+
+    @Override
+    public int getMaxConcurrentJobs() {
+        try {
+            return getPool().getCapacity();
+        } catch (IllegalStateException ise) {
+            return 1;
+        }
+    }
+
+    @Override
+    public String getSolverIdentity(final String software) {
+        return "worker:" + ((hosts != null) ? hosts : getConfiguredHosts()) + ':' + software;
+    }
+
+    @Override
+    public ExecutionLogTail openExecutionLog(final ServiceResult result) {
+        // log chunks are appended to the local log file while running:
+        return ExecutionLogTail.forFile(result.getExecutionLogResultFile());
+    }
+}
@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of worker agents (see WorkerAgent) with capacity-aware work-stealing scheduling:
+ * - a new job is queued on the node having the lowest load (queued + running jobs / capacity)
+ * - a node with a free slot runs the head of its own queue or steals the tail of the most loaded node queue
+ * - node capacities are read in background (HELLO); unreachable nodes are skipped and their jobs requeued
+ */
+final class WorkerPool {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(WorkerPool.class.getName());
+
+    /** node check period in ms (-DWorkerPool.checkPeriod=15000) */
+    private static final long CHECK_PERIOD = Long.getLong("WorkerPool.checkPeriod", 15000L);
+    /** connect timeout in ms */
+    private static final int CONNECT_TIMEOUT = 5000;
+    /** read timeout in ms (agents send heartbeats while running) */
+    private static final int READ_TIMEOUT = 60000;
+    /** delay in ms before retrying a job refused by a busy node */
+    private static final long BUSY_DELAY = 1000L;
+    /** max attempts per job (node failures) */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /* members */
+    /** nodes */
+    private final List<WorkerNode> nodes;
+    /** job threads (blocked on their connection; bounded by the total capacity) */
+    private final ExecutorService executor = Executors.newCachedThreadPool(ServiceExecutors.newThreadFactory("WorkerJob"));
+    /** node check task */
+    private ScheduledFuture<?> checkTask = null;
+
+    /**
+     * Create a pool for the given agents
+     * @param hosts agent addresses (host[:port])
+     * @param token token shared with agents
+     */
+    WorkerPool(final List<String> hosts, final String token) {
+        final List<WorkerNode> list = new ArrayList<WorkerNode>(hosts.size());
+        for (String host : hosts) {
+            final int pos = host.lastIndexOf(':');
+            list.add((pos > 0)
+                    ? new WorkerNode(host.substring(0, pos), Integer.parseInt(host.substring(pos + 1)), token)
+                    : new WorkerNode(host, WorkerProtocol.DEFAULT_PORT, token));
+        }
+        this.nodes = Collections.unmodifiableList(list);
+        logger.info("Worker nodes: {}", nodes);
+    }
+
+    /**
+     * Check nodes now and then periodically (background)
+     */
+    synchronized void start() {
+        if (checkTask == null) {
+            checkTask = ServiceExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    for (final WorkerNode node : nodes) {
+                        ServiceExecutors.getIOExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (node.check()) {
+                                    schedule();
+                                }
+                            }
+                        });
+                    }
+                }
+            }, 0L, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop checks and abort running jobs
+     */
+    synchronized void close() {
+        if (checkTask != null) {
+            checkTask.cancel(false);
+            checkTask = null;
+        }
+        executor.shutdownNow();
+    }
+
+    List<WorkerNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return total capacity of available nodes (1 at least)
+     */
+    int getCapacity() {
+        int capacity = 0;
+        for (WorkerNode node : nodes) {
+            if (!node.down) {
+                capacity += node.capacity;
+            }
+        }
+        return Math.max(1, capacity);
+    }
+
+    /**
+     * Queue the given job on the least loaded node
+     * @param job job to run
+     */
+    void submit(final WorkerJob job) {
+        WorkerNode best = null;
+        for (WorkerNode node : nodes) {
+            if (!node.down && !job.failedNodes.contains(node) && ((best == null) || (node.getLoad() < best.getLoad()))) {
+                best = node;
+            }
+        }
+        if (best == null) {
+            job.future.completeExceptionally(new IllegalStateException("No worker node available !"));
+            return;
+        }
+        best.queue.addLast(job);
+        schedule();
+    }
+
+    /**
+     * Start queued jobs on nodes having free slots (own queue first, then steal)
+     */
+    private synchronized void schedule() {
+        for (WorkerNode node : nodes) {
+            while (!node.down && (node.running.get() < node.capacity)) {
+                WorkerJob job = node.queue.pollFirst();
+                if (job == null) {
+                    job = steal(node);
+                    if (job == null) {
+                        break;
+                    }
+                    node.stolen.incrementAndGet();
+                }
+                if (job.future.isDone()) {
+                    // cancelled while queued
+                    continue;
+                }
+                node.running.incrementAndGet();
+                start(node, job);
+            }
+        }
+    }
+
+    private WorkerJob steal(final WorkerNode thief) {
+        WorkerNode victim = null;
+        for (WorkerNode node : nodes) {
+            if ((node != thief) && !node.queue.isEmpty() && ((victim == null) || (node.getLoad() > victim.getLoad()))) {
+                victim = node;
+            }
+        }
+        if (victim != null) {
+            // steal the most recent job, never one that failed on the thief:
+            for (Iterator<WorkerJob> it = victim.queue.descendingIterator(); it.hasNext();) {
+                final WorkerJob job = it.next();
+                if (!job.failedNodes.contains(thief) && victim.queue.removeLastOccurrence(job)) {
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void start(final WorkerNode node, final WorkerJob job) {
+        job.attempting = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    run(node, job);
+                } finally {
+                    node.running.decrementAndGet();
+                    job.attempting = false;
+                    if (job.future.isDone()) {
+                        // connection closed: the agent aborts the job
+                        job.result.setTerminated();
+                    }
+                    schedule();
+                }
+            }
+        });
+    }
+
+    private void run(final WorkerNode node, final WorkerJob job) {
+        job.attempts++;
+        try {
+            if (node.execute(job)) {
+                node.completed.incrementAndGet();
+            } else {
+                // busy node (capacity changed): lower its capacity until the next check and requeue later
+                node.capacity = Math.max(1, node.running.get() - 1);
+                job.attempts--;
+                ServiceExecutors.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        node.queue.addFirst(job);
+                        schedule();
+                    }
+                }, BUSY_DELAY, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException ioe) {
+            if (job.future.isDone()) {
+                return;
+            }
+            if (job.started) {
+                logger.warn("Worker node {} failed while running a job", node, ioe);
+            } else {
+                logger.info("Worker node {} unreachable", node, ioe);
+            }
+            node.setDown(true);
+            job.failedNodes.add(node);
+            // move its queued jobs to other nodes:
+            WorkerJob queued;
+            while ((queued = node.queue.pollFirst()) != null) {
+                submit(queued);
+            }
+            if (job.attempts < MAX_ATTEMPTS) {
+                job.reset();
+                submit(job);
+            } else {
+                job.future.completeExceptionally(new IllegalStateException("Worker execution failed: " + ioe.getMessage(), ioe));
+            }
+        } catch (RuntimeException re) {
+            job.future.completeExceptionally(re);
+        }
+    }
+
+    /**
+     * Job sent to a worker node
+     */
+    static final class WorkerJob {
+
+        /** software to run */
+        final String software;
+        /** software options on command line or null */
+        final String cliOptions;
+        /** service result to fill */
+        final ServiceResult result;
+        /** future completed with the result */
+        final CompletableFuture<ServiceResult> future;
+        /** progress listener (may be null) */
+        final ServiceProgressListener listener;
+        /** nodes that failed running this job */
+        final List<WorkerNode> failedNodes = Collections.synchronizedList(new ArrayList<WorkerNode>(2));
+        /** number of attempts */
+        int attempts = 0;
+        /** true once started on a node */
+        volatile boolean started = false;
+        /** socket of the running attempt (closed to cancel) */
+        volatile Socket socket = null;
+        /** true while an attempt runs on a node (job thread) */
+        volatile boolean attempting = false;
+
+        WorkerJob(final String software, final String cliOptions, final ServiceResult result,
+                  final CompletableFuture<ServiceResult> future, final ServiceProgressListener listener) {
+            this.software = software;
+            this.cliOptions = cliOptions;
+            this.result = result;
+            this.future = future;
+            this.listener = listener;
+        }
+
+        void reset() {
+            started = false;
+            socket = null;
+            result.getExecutionLogResultFile().delete();
+        }
+
+        /**
+         * Cancel the running attempt (the agent aborts the job when the connection is closed)
+         */
+        void cancel() {
+            final Socket s = socket;
+            if (s != null) {
+                try {
+                    s.getOutputStream().write(WorkerProtocol.MSG_CANCEL);
+                    s.getOutputStream().flush();
+                } catch (IOException ioe) {
+                    logger.debug("cancel: failure", ioe);
+                }
+                try {
+                    s.close();
+                } catch (IOException ioe) {
+                    logger.debug("cancel: close failure", ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * One worker agent
+     */
+    static final class WorkerNode {
+
+        /** agent host */
+        final String host;
+        /** agent port */
+        final int port;
+        /** token shared with the agent */
+        private final String token;
+        /** capacity (from HELLO) */
+        volatile int capacity = 1;
+        /** true if unreachable */
+        volatile boolean down = false;
+        /** running jobs */
+        final AtomicInteger running = new AtomicInteger(0);
+        /** queued jobs */
+        final Deque<WorkerJob> queue = new ConcurrentLinkedDeque<WorkerJob>();
+        /** completed jobs */
+        final AtomicLong completed = new AtomicLong(0L);
+        /** jobs stolen from other nodes */
+        final AtomicLong stolen = new AtomicLong(0L);
+
+        WorkerNode(final String host, final int port, final String token) {
+            this.host = host;
+            this.port = port;
+            this.token = token;
+        }
+
+        /**
+         * @return load ratio (queued and running jobs per slot)
+         */
+        double getLoad() {
+            return (queue.size() + running.get()) / (double) capacity;
+        }
+
+        void setDown(final boolean down) {
+            if (this.down != down) {
+                logger.info("Worker node {}: {}", this, (down) ? "down" : "up");
+                this.down = down;
+            }
+        }
+
+        /**
+         * Read the node capacity (HELLO)
+         * @return true if the node is available
+         */
+        boolean check() {
+            try {
+                final Socket socket = connect();
+                try {
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    WorkerProtocol.writeHeader(out, WorkerProtocol.REQ_HELLO, token);
+                    out.flush();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final byte reply = in.readByte();
+                    if (reply == WorkerProtocol.REP_ERROR) {
+                        throw new IOException("Worker node error: " + WorkerProtocol.readString(in));
+                    }
+                    if (reply != WorkerProtocol.REP_HELLO) {
+                        throw new IOException("Unexpected reply");
+                    }
+                    capacity = Math.max(1, in.readInt());
+                    logger.debug("Worker node {}: capacity {} running {}", this, capacity, in.readInt());
+                } finally {
+                    socket.close();
+                }
+                setDown(false);
+                return true;
+            } catch (IOException ioe) {
+                logger.debug("Worker node {} unreachable", this, ioe);
+                setDown(true);
+                return false;
+            }
+        }
+
+        private Socket connect() throws IOException {
+            final Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT);
+            } catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+            return socket;
+        }
+
+        /**
+         * Run the given job on this node (blocking)
+         * @param job job to run
+         * @return false if the node was busy (job not run)
+         * @throws IOException if the node failed
+         */
+        boolean execute(final WorkerJob job) throws IOException {
+            final ServiceResult result = job.result;
+            final Socket socket = connect();
+            job.socket = socket;
+            try {
+                if (job.future.isDone()) {
+                    return true;
+                }
+                ServiceProgressListener.fire(job.listener, result, ServicePhase.UPLOADING);
+
+                final long start = System.currentTimeMillis();
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), WorkerProtocol.BUFFER_SIZE));
+                WorkerProtocol.writeHeader(out, WorkerProtocol.REQ_RUN, token);
+                WorkerProtocol.writeString(out, job.software);
+                WorkerProtocol.writeString(out, job.cliOptions);
+                WorkerProtocol.writeFile(out, result.getInputFile());
+                out.flush();
+
+                final long sent = result.getInputFile().length();
+                result.setUploadMetrics(sent, sent, System.currentTimeMillis() - start);
+
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), WorkerProtocol.BUFFER_SIZE));
+                final OutputStream log = new FileOutputStream(result.getExecutionLogResultFile());
+                try {
+                    while (true) {
+                        final byte reply;
+                        try {
+                            reply = in.readByte();
+                        } catch (IOException ioe) {
+                            if (job.future.isCancelled()) {
+                                result.setCancelled(true);
+                                return true;
+                            }
+                            throw ioe;
+                        }
+                        switch (reply) {
+                            case WorkerProtocol.REP_BUSY:
+                                logger.debug("Worker node {} busy", this);
+                                return false;
+                            case WorkerProtocol.REP_STARTED:
+                                job.started = true;
+                                ServiceProgressListener.fire(job.listener, result, ServicePhase.EXECUTING);
+                                break;
+                            case WorkerProtocol.REP_LOG:
+                                final int length = in.readInt();
+                                if ((length < 0) || (length > WorkerProtocol.BUFFER_SIZE)) {
+                                    throw new IOException("Invalid log chunk length: " + length);
+                                }
+                                final byte[] chunk = new byte[length];
+                                in.readFully(chunk);
+                                log.write(chunk);
+                                log.flush();
+                                break;
+                            case WorkerProtocol.REP_ERROR:
+                                result.setErrorMessage(WorkerProtocol.readString(in));
+                                result.setCancelled(job.future.isCancelled());
+                                job.future.complete(result);
+                                return true;
+                            case WorkerProtocol.REP_RESULT:
+                                ServiceProgressListener.fire(job.listener, result, ServicePhase.DOWNLOADING);
+                                result.setCancelled(in.readBoolean());
+                                final String error = WorkerProtocol.readString(in);
+                                if (error != null) {
+                                    result.setErrorMessage(error);
+                                }
+                                final double cpuTime = in.readDouble();
+                                final long peakRss = in.readLong();
+                                final long ioBytes = in.readLong();
+                                if (!Double.isNaN(cpuTime)) {
+                                    result.setProcessMetrics(cpuTime, peakRss, ioBytes);
+                                }
+                                WorkerProtocol.readFile(in, result.getOifitsResultFile());
+                                job.future.complete(result);
+                                return true;
+                            default:
+                                throw new IOException("Unexpected reply: " + reply);
+                        }
+                    }
+                } finally {
+                    log.close();
+                }
+            } finally {
+                job.socket = null;
+                socket.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ':' + port;
+        }
+    }
+}
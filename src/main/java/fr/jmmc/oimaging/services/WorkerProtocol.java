@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Compact binary protocol between WorkerExecutionMode and WorkerAgent (one TCP connection per request):
+ * <pre>
+ * request : MAGIC(int) VERSION(byte) type(byte) token(str) ...
+ *   HELLO : -&gt; REP_HELLO capacity(int) running(int)
+ *   RUN   : software(str) cliOptions(str) input(file)
+ *           -&gt; REP_BUSY | REP_ERROR message(str) (unauthorized, unsupported software or input too large)
+ *            | REP_STARTED then REP_LOG length(int) bytes ... (empty chunks are heartbeats)
+ *              then REP_RESULT cancelled(bool) error(str) cpuTime(double) peakRss(long) ioBytes(long) output(file)
+ *           the client may send MSG_CANCEL (or close the connection) to cancel the job
+ * str  : present(bool) [UTF]
+ * file : length(long, -1 if missing) bytes
+ * </pre>
+ * The token is the secret shared by clients and agents: agents reject requests giving another token.
+ */
+final class WorkerProtocol {
+
+    /** magic number ("OIMW") */
+    static final int MAGIC = 0x4F494D57;
+    /** protocol version */
+    static final byte VERSION = 2;
+    /** default agent port */
+    static final int DEFAULT_PORT = 7070;
+
+    /* requests */
+    /** request agent capacity */
+    static final byte REQ_HELLO = 1;
+    /** request job execution */
+    static final byte REQ_RUN = 2;
+
+    /* client messages while running */
+    /** cancel the job */
+    static final byte MSG_CANCEL = 1;
+
+    /* replies */
+    /** capacity reply */
+    static final byte REP_HELLO = 1;
+    /** all slots busy: retry later or elsewhere */
+    static final byte REP_BUSY = 2;
+    /** job started */
+    static final byte REP_STARTED = 3;
+    /** log chunk */
+    static final byte REP_LOG = 4;
+    /** job result */
+    static final byte REP_RESULT = 5;
+    /** request failure */
+    static final byte REP_ERROR = 6;
+
+    /** stream buffer size */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Write the request header
+     * @param out output stream
+     * @param type request type
+     * @param token shared token
+     * @throws IOException if an I/O error occurred
+     */
+    static void writeHeader(final DataOutputStream out, final byte type, final String token) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+        writeString(out, token);
+    }
+
+    /**
+     * Read the request header (type) then check the token
+     * @param in input stream
+     * @param token expected token
+     * @return request type
+     * @throws IOException if an I/O error occurred or the peer does not speak this protocol
+     * @throws SecurityException if the peer gave another token
+     */
+    static byte readHeader(final DataInputStream in, final String token) throws IOException, SecurityException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid worker protocol header");
+        }
+        final byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported worker protocol version: " + version);
+        }
+        final byte type = in.readByte();
+        final String peerToken = readString(in);
+        if ((peerToken == null) || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), peerToken.getBytes(StandardCharsets.UTF_8))) {
+            throw new SecurityException("Invalid worker token");
+        }
+        return type;
+    }
+
+    static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(final DataInputStream in) throws IOException {
+        return (in.readBoolean()) ? in.readUTF() : null;
+    }
+
+    /**
+     * Stream the given file (length then content)
+     * @param out output stream
+     * @param file file (may not exist)
+     * @throws IOException if an I/O error occurred
+     */
+    static void writeFile(final DataOutputStream out, final File file) throws IOException {
+        if ((file == null) || !file.isFile()) {
+            out.writeLong(-1L);
+            return;
+        }
+        final long length = file.length();
+        out.writeLong(length);
+        final InputStream in = new FileInputStream(file);
+        try {
+            copy(in, out, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Receive a file into the given file
+     * @param in input stream
+     * @param file file to write (deleted if the peer had no file)
+     * @return true if a file was received
+     * @throws IOException if an I/O error occurred
+     */
+    static boolean readFile(final DataInputStream in, final File file) throws IOException {
+        return readFile(in, file, Long.MAX_VALUE);
+    }
+
+    /**
+     * Receive a file into the given file if its length is within the given limit
+     * @param in input stream
+     * @param file file to write (deleted if the peer had no file)
+     * @param maxLength max accepted length (bytes)
+     * @return true if a file was received
+     * @throws IOException if an I/O error occurred or the file is too large (nothing written)
+     */
+    static boolean readFile(final DataInputStream in, final File file, final long maxLength) throws IOException {
+        final long length = in.readLong();
+        if (length < 0L) {
+            file.delete();
+            return false;
+        }
+        if (length > maxLength) {
+            throw new IOException("File too large: " + length + " bytes (max " + maxLength + ")");
+        }
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            copy(in, out, length);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * Receive a file and discard it (nothing written)
+     * @param in input stream
+     * @param maxLength max accepted length (bytes)
+     * @throws IOException if an I/O error occurred or the file is too large
+     */
+    static void skipFile(final DataInputStream in, final long maxLength) throws IOException {
+        final long length = in.readLong();
+        if (length > maxLength) {
+            throw new IOException("File too large: " + length + " bytes (max " + maxLength + ")");
+        }
+        long remaining = length;
+        while (remaining > 0L) {
+            final int n = in.skipBytes((int) Math.min(BUFFER_SIZE, remaining));
+            if (n <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Truncated file transfer: " + remaining + " bytes missing");
+                }
+                remaining--;
+            } else {
+                remaining -= n;
+            }
+        }
+    }
+
+    private static void copy(final InputStream in, final OutputStream out, final long length) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0L) {
+            final int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n == -1) {
+                throw new EOFException("Truncated file transfer: " + remaining + " bytes missing");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private WorkerProtocol() {
+        // forbidden
+    }
+}
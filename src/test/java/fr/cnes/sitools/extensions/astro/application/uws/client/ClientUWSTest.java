@@ -4,6 +4,7 @@
 package fr.cnes.sitools.extensions.astro.application.uws.client;
 
 import fr.jmmc.oimaging.services.RemoteExecutionMode;
+import fr.jmmc.oimaging.services.StandInUwsServer;
 import java.io.File;
 import net.ivoa.xml.uws.v1.Jobs;
 import org.junit.After;
@@ -27,18 +28,21 @@ public class ClientUWSTest {
     protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(ClientUWSTest.class.getName());
 
     static ClientUWS instance;
+    /** in-JVM stand-in server (no external service) */
+    static StandInUwsServer server;
 
     public ClientUWSTest() {
     }
 
     @BeforeClass
-    public static void setUpClass() {
-        instance = new ClientUWS("http://127.0.0.1:8080/OImaging-uws/", RemoteExecutionMode.SERVICE_PATH);
+    public static void setUpClass() throws Exception {
+        server = new StandInUwsServer(0);
+        instance = new ClientUWS(server.start(), RemoteExecutionMode.SERVICE_PATH);
     }
 
     @AfterClass
-    public static void tearDownClass() {
-
+    public static void tearDownClass() throws Exception {
+        server.stop();
     }
 
     @Before
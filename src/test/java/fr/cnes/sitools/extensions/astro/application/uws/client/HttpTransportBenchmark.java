@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.cnes.sitools.extensions.astro.application.uws.client;
+
+import fr.jmmc.oimaging.services.RemoteExecutionMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compare http transports of ClientUWS on concurrent requests (home page)
+ * against a local UWS server (skipped if unreachable).
+ * Run with mvn test -Dtest=HttpTransportBenchmark (-DHttpTransportBenchmark.url=... to target another server).
+ */
+public class HttpTransportBenchmark {
+
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(HttpTransportBenchmark.class.getName());
+
+    private static final String SERVER_URL = System.getProperty("HttpTransportBenchmark.url", "http://127.0.0.1:8080/OImaging-uws/");
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 400;
+    private static final int WARMUP = 20;
+
+    @AfterClass
+    public static void tearDownClass() {
+        ClientUWS.setTransport(HttpTransport.APACHE);
+    }
+
+    @Test
+    public void compareTransports() throws Exception {
+        for (HttpTransport transport : HttpTransport.values()) {
+            ClientUWS.setTransport(transport);
+            final ClientUWS client = new ClientUWS(SERVER_URL, RemoteExecutionMode.SERVICE_PATH);
+
+            try {
+                client.getHomePage();
+            } catch (ClientUWSException cue) {
+                logger.info("UWS server unreachable: {}", SERVER_URL);
+                Assume.assumeNoException(cue);
+            }
+
+            for (int i = 0; i < WARMUP; i++) {
+                client.getHomePage();
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(REQUESTS);
+                for (int i = 0; i < REQUESTS; i++) {
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws ClientUWSException {
+                            client.getHomePage();
+                            return null;
+                        }
+                    });
+                }
+                final long start = System.nanoTime();
+                for (Future<Void> f : executor.invokeAll(tasks)) {
+                    f.get();
+                }
+                final double elapsed = (System.nanoTime() - start) / 1e6;
+
+                logger.info("transport {}: {} requests ({} threads) in {} ms: {} req/s", transport, REQUESTS, THREADS,
+                        String.format("%.1f", elapsed), String.format("%.1f", REQUESTS / (elapsed / 1000.0)));
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
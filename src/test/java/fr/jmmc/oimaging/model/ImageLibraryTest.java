@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.model;
+
+import fr.jmmc.oitools.image.FitsImageHDU;
+import fr.jmmc.oitools.model.OIFitsLoader;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Indexed image library: find, containsName and nextSuffixIndex must give the same results
+ * as a linear scan of the library (FitsImageHDU.MATCHER), including after HDU changes.
+ */
+public class ImageLibraryTest {
+
+    private static final File INPUT_FILE = new File("src/test/resources/Bin_Ary--MIRC_H_with_img.fits");
+    private static final String[] NAMES = {"img", "img_1", "img_2", "img_3", "other", "other_1"};
+    private static final String[] PREFIXES = {"img", "other", "none"};
+
+    /** HDUs: copies of the same images (same checksums) and HDUs without checksum */
+    private static final List<FitsImageHDU> pool = new ArrayList<FitsImageHDU>();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pool.addAll(OIFitsLoader.loadOIFits(INPUT_FILE.getAbsolutePath()).getFitsImageHDUs());
+            pool.add(new FitsImageHDU());
+        }
+    }
+
+    @Test
+    public void sameChecksum() {
+        final List<FitsImageHDU> copies = new ArrayList<FitsImageHDU>();
+        for (FitsImageHDU hdu : pool) {
+            if ((hdu.getChecksum() != 0L) && (hdu.getChecksum() == pool.get(0).getChecksum())) {
+                copies.add(hdu);
+            }
+        }
+        Assert.assertTrue("copies", copies.size() >= 2);
+
+        final ImageLibrary library = new ImageLibrary();
+        copies.get(0).setHduName("first");
+        library.add(copies.get(0));
+        copies.get(1).setHduName("second");
+        library.add(copies.get(1));
+
+        // first HDU in library order:
+        Assert.assertSame("find", copies.get(0), library.find(copies.get(1)));
+        library.remove(0);
+        Assert.assertSame("find after remove", copies.get(1), library.find(copies.get(0)));
+    }
+
+    @Test
+    public void renamed() {
+        final ImageLibrary library = new ImageLibrary();
+        final FitsImageHDU hdu = pool.get(0);
+        hdu.setHduName("img_1");
+        library.add(hdu);
+        Assert.assertEquals("suffix", 2, library.nextSuffixIndex("img"));
+
+        // HDU changed once added:
+        hdu.setHduName("renamed");
+        Assert.assertFalse("old name", library.containsName("img_1"));
+        Assert.assertTrue("new name", library.containsName("renamed"));
+        Assert.assertEquals("suffix", 1, library.nextSuffixIndex("img"));
+    }
+
+    @Test
+    public void sameAsLinearScan() {
+        final Random random = new Random(12345L);
+        final ImageLibrary library = new ImageLibrary();
+        final List<FitsImageHDU> reference = new ArrayList<FitsImageHDU>();
+
+        for (int n = 0; n < 500; n++) {
+            final int op = random.nextInt(4);
+            if ((op <= 1) && (reference.size() < pool.size())) {
+                // add an HDU not in the library:
+                FitsImageHDU hdu;
+                do {
+                    hdu = pool.get(random.nextInt(pool.size()));
+                } while (indexOf(reference, hdu) != -1);
+                hdu.setHduName(NAMES[random.nextInt(NAMES.length)]);
+                library.add(hdu);
+                reference.add(hdu);
+            } else if ((op == 2) && !reference.isEmpty()) {
+                final int index = random.nextInt(reference.size());
+                Assert.assertSame("remove", reference.remove(index), library.remove(index));
+            } else if (!reference.isEmpty()) {
+                // rename an HDU of the library:
+                reference.get(random.nextInt(reference.size())).setHduName(NAMES[random.nextInt(NAMES.length)]);
+            }
+
+            Assert.assertEquals("size", reference.size(), library.size());
+            for (FitsImageHDU hdu : pool) {
+                Assert.assertSame("find " + n, linearFind(reference, hdu), library.find(hdu));
+                Assert.assertEquals("indexOf " + n, indexOf(reference, hdu), library.indexOf(hdu));
+            }
+            for (String name : NAMES) {
+                Assert.assertEquals("containsName " + name, linearContainsName(reference, name), library.containsName(name));
+            }
+            for (String prefix : PREFIXES) {
+                Assert.assertEquals("nextSuffixIndex " + prefix, linearNextSuffixIndex(reference, prefix), library.nextSuffixIndex(prefix));
+            }
+        }
+    }
+
+    private static FitsImageHDU linearFind(final List<FitsImageHDU> library, final FitsImageHDU hdu) {
+        for (FitsImageHDU libraryHDU : library) {
+            if (FitsImageHDU.MATCHER.match(libraryHDU, hdu)) {
+                return libraryHDU;
+            }
+        }
+        return null;
+    }
+
+    private static boolean linearContainsName(final List<FitsImageHDU> library, final String hduName) {
+        for (FitsImageHDU libraryHDU : library) {
+            if (libraryHDU.getHduName().equals(hduName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int linearNextSuffixIndex(final List<FitsImageHDU> library, final String prefix) {
+        int idx = 1;
+        while (linearContainsName(library, prefix + "_" + idx)) {
+            idx++;
+        }
+        return idx;
+    }
+
+    private static int indexOf(final List<FitsImageHDU> library, final FitsImageHDU hdu) {
+        for (int i = 0; i < library.size(); i++) {
+            if (library.get(i) == hdu) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
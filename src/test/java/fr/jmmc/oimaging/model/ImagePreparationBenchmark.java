@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.model;
+
+import fr.jmmc.oitools.image.FitsImage;
+import fr.jmmc.oitools.image.FitsImageHDU;
+import fr.jmmc.oitools.model.OIFitsLoader;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scaling of the image preparation of HDU lists with the number of threads:
+ * prepared images must be identical to the sequential path.
+ * Run with mvn test -Dtest=ImagePreparationBenchmark
+ * (-DImagePreparationBenchmark.file=cube.fits .copies=16 .runs=3)
+ */
+public class ImagePreparationBenchmark {
+
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(ImagePreparationBenchmark.class.getName());
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final File INPUT_FILE = new File(System.getProperty("ImagePreparationBenchmark.file",
+            "src/test/resources/Bin_Ary--MIRC_H_with_img.fits"));
+    private static final int COPIES = Integer.getInteger("ImagePreparationBenchmark.copies", 16);
+    private static final int RUNS = Integer.getInteger("ImagePreparationBenchmark.runs", 3);
+
+    @Test
+    public void measureScaling() throws Exception {
+        // reference: sequential path
+        final List<FitsImageHDU> reference = loadHdus();
+        long start = System.nanoTime();
+        ImagePreparation.prepare(reference, false);
+        final double sequential = (System.nanoTime() - start) / 1e6;
+        logger.info("sequential: {} HDUs prepared in {} ms", reference.size(), String.format("%.1f", sequential));
+
+        for (int threads : THREADS) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                double best = Double.MAX_VALUE;
+                for (int run = 0; run < RUNS; run++) {
+                    final List<FitsImageHDU> hdus = loadHdus();
+
+                    start = System.nanoTime();
+                    // parallel streams run in the calling pool:
+                    pool.submit(() -> ImagePreparation.prepare(hdus, true)).get();
+                    best = Math.min(best, (System.nanoTime() - start) / 1e6);
+
+                    assertSameImages(reference, hdus);
+                }
+                logger.info("threads {}: {} HDUs prepared in {} ms (speedup {})", threads, reference.size(),
+                        String.format("%.1f", best), String.format("%.2f", sequential / best));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static List<FitsImageHDU> loadHdus() throws Exception {
+        final List<FitsImageHDU> hdus = new ArrayList<FitsImageHDU>();
+        for (int i = 0; i < COPIES; i++) {
+            hdus.addAll(OIFitsLoader.loadOIFits(INPUT_FILE.getAbsolutePath()).getFitsImageHDUs());
+        }
+        Assert.assertFalse("no image HDU in " + INPUT_FILE, hdus.isEmpty());
+        return hdus;
+    }
+
+    private static void assertSameImages(final List<FitsImageHDU> expected, final List<FitsImageHDU> actual) {
+        Assert.assertEquals("HDUs", expected.size(), actual.size());
+        for (int i = 0, len = expected.size(); i < len; i++) {
+            final List<FitsImage> expectedImages = expected.get(i).getFitsImages();
+            final List<FitsImage> actualImages = actual.get(i).getFitsImages();
+            Assert.assertEquals("images", expectedImages.size(), actualImages.size());
+            for (int j = 0, n = expectedImages.size(); j < n; j++) {
+                Assert.assertTrue("image " + i + "." + j,
+                        Arrays.deepEquals(expectedImages.get(j).getData(), actualImages.get(j).getData()));
+            }
+        }
+    }
+}
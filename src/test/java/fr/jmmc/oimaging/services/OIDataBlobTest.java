@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oimaging.Preferences;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deduplicated upload (OIData blob) against the in-JVM stand-in UWS server:
+ * the OIData tables are uploaded once and the server rebuilds the same input file.
+ */
+public class OIDataBlobTest {
+
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(OIDataBlobTest.class.getName());
+
+    private static final File INPUT_FILE = new File("src/test/resources/Bin_Ary--MIRC_H_with_img.fits");
+
+    private static StandInUwsServer server = null;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new StandInUwsServer(0);
+        server.setSolver(StandInUwsServer.Solver.SLEEP);
+        server.setSolverDuration(50L);
+        final String url = server.start();
+
+        final Preferences prefs = Preferences.getInstance();
+        prefs.setPreference(Preferences.SERVER_MODE, Preferences.SERVER_MODE_CUSTOM);
+        prefs.setPreference(Preferences.SERVER_CUSTOM, url);
+        prefs.setPreference(Preferences.SERVER_DEDUP_UPLOAD, Boolean.TRUE);
+        RemoteExecutionMode.resetRemoteServer();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        final Preferences prefs = Preferences.getInstance();
+        prefs.setPreference(Preferences.SERVER_MODE, Preferences.SERVER_MODE_AUTO);
+        prefs.setPreference(Preferences.SERVER_CUSTOM, "");
+        prefs.setPreference(Preferences.SERVER_DEDUP_UPLOAD, Boolean.FALSE);
+        RemoteExecutionMode.resetRemoteServer();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void split() throws Exception {
+        final List<OIDataBlob.Hdu> hdus = OIDataBlob.readHdus(INPUT_FILE);
+        long length = 0L;
+        for (OIDataBlob.Hdu hdu : hdus) {
+            Assert.assertEquals("HDU offset", length, hdu.offset);
+            length += hdu.length;
+        }
+        Assert.assertEquals("file length", INPUT_FILE.length(), length);
+
+        final OIDataBlob blob = OIDataBlob.get(INPUT_FILE);
+        Assert.assertNotNull("blob", blob);
+        Assert.assertSame("cached split", blob, OIDataBlob.get(INPUT_FILE));
+        Assert.assertEquals("split length", INPUT_FILE.length(), blob.blobFile.length() + blob.paramsFile.length());
+        Assert.assertEquals("hash length", 64, blob.hash.length());
+
+        for (OIDataBlob.Hdu hdu : OIDataBlob.readHdus(blob.paramsFile)) {
+            Assert.assertFalse("OIData HDU in parameters: " + hdu, hdu.isOIData());
+        }
+    }
+
+    @Test
+    public void uploadOnce() throws Exception {
+        final byte[] expected = Files.readAllBytes(INPUT_FILE.toPath());
+        final long blobUploads = server.getBlobUploads();
+
+        for (int i = 0; i < 3; i++) {
+            final File output = File.createTempFile("blob-", ".output.fits");
+            final File log = File.createTempFile("blob-", ".log");
+            try {
+                final ServiceResult result = new ServiceResult(INPUT_FILE, output, log);
+                RemoteExecutionMode.INSTANCE.callUwsOimagingService("WISARD", null, INPUT_FILE.getAbsolutePath(), result);
+
+                Assert.assertNull("job error", result.getErrorMessage());
+                // the stand-in solver returns the rebuilt input file:
+                Assert.assertArrayEquals("rebuilt input file", expected, Files.readAllBytes(output.toPath()));
+                Assert.assertEquals("raw bytes", INPUT_FILE.length(), result.getUploadRawBytes());
+
+                logger.info("job {}: {} bytes sent", i, result.getUploadSentBytes());
+                if (i != 0) {
+                    Assert.assertTrue("only parameters sent", result.getUploadSentBytes() < INPUT_FILE.length());
+                }
+            } finally {
+                output.delete();
+                log.delete();
+            }
+        }
+        Assert.assertEquals("blob uploads", blobUploads + 1L, server.getBlobUploads());
+        Assert.assertTrue("jobs from blob", server.getBlobJobs() >= 3L);
+    }
+}
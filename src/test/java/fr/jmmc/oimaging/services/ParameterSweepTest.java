@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oitools.image.ImageOiInputParam;
+import fr.jmmc.oitools.meta.KeywordMeta;
+import fr.jmmc.oitools.meta.Types;
+import fr.jmmc.oitools.model.OIFitsFile;
+import fr.jmmc.oitools.model.OIFitsStandard;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Sweep definition parsing: lists, linear and logarithmic ranges, integer rounding,
+ * job count limit and invalid definitions.
+ */
+public class ParameterSweepTest {
+
+    private static final double EPSILON = 1e-9;
+
+    private static ImageOiInputParam params = null;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        params = new OIFitsFile(OIFitsStandard.VERSION_1).getImageOiData().getInputParam();
+        params.addKeyword(new KeywordMeta("SW_DBL", "double keyword", Types.TYPE_DBL));
+        params.addKeyword(new KeywordMeta("SW_INT", "integer keyword", Types.TYPE_INT));
+        params.addKeyword(new KeywordMeta("SW_LOG", "logical keyword", Types.TYPE_LOGICAL));
+        params.addKeyword(new KeywordMeta("SW_STR", "string keyword", Types.TYPE_CHAR));
+    }
+
+    @Test
+    public void lists() {
+        final ParameterSweep sweep = ParameterSweep.parse(
+                "# comment\n"
+                + "sw_dbl = 1e3, 1e4\n"
+                + "\n"
+                + "SW_INT = 10, 20, 30\n"
+                + "SW_LOG = T, f, true, FALSE\n"
+                + "SW_STR = mem_prior, compactness\n", params);
+
+        final Map<String, List<Object>> ranges = sweep.getRanges();
+        Assert.assertEquals("keywords", Arrays.asList("SW_DBL", "SW_INT", "SW_LOG", "SW_STR"), Arrays.asList(ranges.keySet().toArray()));
+        Assert.assertEquals("SW_DBL", Arrays.<Object>asList(1e3, 1e4), ranges.get("SW_DBL"));
+        Assert.assertEquals("SW_INT", Arrays.<Object>asList(10, 20, 30), ranges.get("SW_INT"));
+        Assert.assertEquals("SW_LOG", Arrays.<Object>asList(Boolean.TRUE, Boolean.FALSE, Boolean.TRUE, Boolean.FALSE), ranges.get("SW_LOG"));
+        Assert.assertEquals("SW_STR", Arrays.<Object>asList("mem_prior", "compactness"), ranges.get("SW_STR"));
+
+        Assert.assertEquals("jobs", 2 * 3 * 4 * 2, sweep.getJobCount());
+
+        final List<Map<String, Object>> combinations = sweep.expand();
+        Assert.assertEquals("combinations", sweep.getJobCount(), combinations.size());
+        // last keyword varies fastest:
+        Assert.assertEquals("first", "mem_prior", combinations.get(0).get("SW_STR"));
+        Assert.assertEquals("second", "compactness", combinations.get(1).get("SW_STR"));
+        Assert.assertEquals("last", 1e4, combinations.get(combinations.size() - 1).get("SW_DBL"));
+    }
+
+    @Test
+    public void linearRange() {
+        final List<Object> values = ParameterSweep.parse("SW_DBL = 0 : 1 : 5", params).getRanges().get("SW_DBL");
+        assertValues(new double[]{0.0, 0.25, 0.5, 0.75, 1.0}, values);
+
+        final List<Object> single = ParameterSweep.parse("SW_DBL = 2:8:1", params).getRanges().get("SW_DBL");
+        assertValues(new double[]{2.0}, single);
+    }
+
+    @Test
+    public void logRange() {
+        final List<Object> values = ParameterSweep.parse("SW_DBL = 1:1000:4log", params).getRanges().get("SW_DBL");
+        assertValues(new double[]{1.0, 10.0, 100.0, 1000.0}, values);
+    }
+
+    @Test
+    public void intRangeRoundedAndDistinct() {
+        // 1, 1.5, 2, 2.5, 3 rounded to 1, 2, 2, 3, 3:
+        Assert.assertEquals("linear", Arrays.<Object>asList(1, 2, 3),
+                ParameterSweep.parse("SW_INT = 1:3:5", params).getRanges().get("SW_INT"));
+
+        // 1, 3.16, 10, 31.6, 100:
+        Assert.assertEquals("log", Arrays.<Object>asList(1, 3, 10, 32, 100),
+                ParameterSweep.parse("SW_INT = 1:100:5log", params).getRanges().get("SW_INT"));
+    }
+
+    @Test
+    public void maxJobs() {
+        final int max = ParameterSweep.MAX_JOBS;
+        Assert.assertEquals("max jobs", max, ParameterSweep.parse("SW_DBL = 1:2:" + max, params).getJobCount());
+
+        assertInvalid("SW_DBL = 1:2:" + (max + 1));
+        assertInvalid("SW_DBL = 1:2:" + max + "\nSW_LOG = T, F");
+        // huge ranges are rejected before being expanded:
+        assertInvalid("SW_DBL = 1:10:2000000000");
+        assertInvalid("SW_INT = 1:10:2000000000log");
+        assertInvalid("SW_DBL = 1:2:" + max + "\nSW_INT = 1:2:" + max + "\nSW_STR = a, b");
+    }
+
+    @Test
+    public void invalidDefinitions() {
+        assertInvalid("");
+        assertInvalid("# only comments\n\n");
+        assertInvalid("SW_DBL 1, 2");
+        assertInvalid("= 1, 2");
+        assertInvalid("UNKNOWN = 1, 2");
+        assertInvalid("SW_DBL = 1\nSW_DBL = 2");
+        assertInvalid("SW_DBL = ,");
+        assertInvalid("SW_DBL = 1, abc");
+        assertInvalid("SW_INT = 1.5");
+        assertInvalid("SW_LOG = T, yes");
+        assertInvalid("SW_LOG = 1");
+        assertInvalid("SW_STR = a:b:2");
+        assertInvalid("SW_LOG = 0:1:2");
+        assertInvalid("SW_DBL = 1:2");
+        assertInvalid("SW_DBL = 1:2:3:4");
+        assertInvalid("SW_DBL = 1:x:3");
+        assertInvalid("SW_DBL = 1:2:0");
+        assertInvalid("SW_DBL = 0:10:3log");
+        assertInvalid("SW_DBL = -1:10:3log");
+    }
+
+    private static void assertValues(final double[] expected, final List<Object> values) {
+        Assert.assertEquals("count", expected.length, values.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertTrue("type", values.get(i) instanceof Double);
+            Assert.assertEquals("value " + i, expected[i], ((Double) values.get(i)).doubleValue(), EPSILON * Math.max(1.0, expected[i]));
+        }
+    }
+
+    private static void assertInvalid(final String definition) {
+        try {
+            ParameterSweep.parse(definition, params);
+            Assert.fail("IllegalArgumentException expected for: " + definition);
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
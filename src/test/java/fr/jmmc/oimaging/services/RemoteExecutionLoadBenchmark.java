@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oimaging.Preferences;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load generator measuring RemoteExecutionMode throughput, latency percentiles and thread usage
+ * as the number of concurrent jobs grows, against the in-JVM stand-in UWS server (no network).
+ * Run with mvn test -Dtest=RemoteExecutionLoadBenchmark
+ * (-DRemoteExecutionLoadBenchmark.jobs=64 .solverDuration=200 .latency=2 .errorRate=0 .failureRate=0)
+ */
+public class RemoteExecutionLoadBenchmark {
+
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(RemoteExecutionLoadBenchmark.class.getName());
+
+    private static final int[] CONCURRENCY = {1, 2, 4, 8, 16, 32};
+    private static final int JOBS = Integer.getInteger("RemoteExecutionLoadBenchmark.jobs", 64);
+    private static final long SOLVER_DURATION = Long.getLong("RemoteExecutionLoadBenchmark.solverDuration", 200L);
+    private static final long LATENCY = Long.getLong("RemoteExecutionLoadBenchmark.latency", 2L);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("RemoteExecutionLoadBenchmark.errorRate", "0"));
+    private static final double FAILURE_RATE = Double.parseDouble(System.getProperty("RemoteExecutionLoadBenchmark.failureRate", "0"));
+
+    private static final File INPUT_FILE = new File("src/test/resources/Bin_Ary--MIRC_H_with_img.fits");
+
+    private static StandInUwsServer server = null;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new StandInUwsServer(0);
+        server.setSolverDuration(SOLVER_DURATION);
+        server.setLatency(LATENCY);
+        server.setErrorRate(ERROR_RATE);
+        server.setFailureRate(FAILURE_RATE);
+        final String url = server.start();
+
+        final Preferences prefs = Preferences.getInstance();
+        prefs.setPreference(Preferences.SERVER_MODE, Preferences.SERVER_MODE_CUSTOM);
+        prefs.setPreference(Preferences.SERVER_CUSTOM, url);
+        RemoteExecutionMode.resetRemoteServer();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        final Preferences prefs = Preferences.getInstance();
+        prefs.setPreference(Preferences.SERVER_MODE, Preferences.SERVER_MODE_AUTO);
+        prefs.setPreference(Preferences.SERVER_CUSTOM, "");
+        RemoteExecutionMode.resetRemoteServer();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void measureLoad() throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        for (int concurrency : CONCURRENCY) {
+            final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            try {
+                final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(JOBS);
+                for (int i = 0; i < JOBS; i++) {
+                    tasks.add(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            return runJob();
+                        }
+                    });
+                }
+                threads.resetPeakThreadCount();
+                final long requests = server.getRequests();
+                final long start = System.nanoTime();
+
+                final long[] latencies = new long[JOBS];
+                int failures = 0;
+                int n = 0;
+                for (Future<Long> f : executor.invokeAll(tasks)) {
+                    final long latency = f.get();
+                    if (latency < 0L) {
+                        failures++;
+                    }
+                    latencies[n++] = Math.abs(latency);
+                }
+                final double elapsed = (System.nanoTime() - start) / 1e6;
+                Arrays.sort(latencies);
+
+                logger.info("concurrency {}: {} jobs ({} failed) in {} ms: {} jobs/s, latency p50 {} ms p99 {} ms, "
+                        + "{} requests, threads {} (peak {})",
+                        concurrency, JOBS, failures, String.format("%.1f", elapsed),
+                        String.format("%.2f", JOBS / (elapsed / 1000.0)),
+                        percentile(latencies, 0.50), percentile(latencies, 0.99),
+                        server.getRequests() - requests, threads.getThreadCount(), threads.getPeakThreadCount());
+
+                if ((ERROR_RATE == 0.0) && (FAILURE_RATE == 0.0)) {
+                    Assert.assertEquals("failed jobs", 0, failures);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Run one job synchronously
+     * @return job latency in ms (negative if the job failed)
+     */
+    private static long runJob() throws Exception {
+        final File output = File.createTempFile("load-", ".output.fits");
+        final File log = File.createTempFile("load-", ".log");
+        final ServiceResult result = new ServiceResult(INPUT_FILE, output, log);
+
+        final long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            RemoteExecutionMode.INSTANCE.callUwsOimagingService("WISARD", null, INPUT_FILE.getAbsolutePath(), result);
+            failed = (result.getErrorMessage() != null) || !output.exists() || (output.length() == 0L);
+        } catch (Exception e) {
+            logger.debug("job failure", e);
+            failed = true;
+        } finally {
+            output.delete();
+            log.delete();
+        }
+        final long latency = Math.max(1L, (System.nanoTime() - start) / 1000000L);
+        return (failed) ? -latency : latency;
+    }
+
+    private static long percentile(final long[] sorted, final double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
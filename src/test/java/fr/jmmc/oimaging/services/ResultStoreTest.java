@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import fr.jmmc.oimaging.Preferences;
+import fr.jmmc.oitools.fits.FitsHeaderCard;
+import fr.jmmc.oitools.fits.FitsTable;
+import fr.jmmc.oitools.fits.FitsUtils;
+import fr.jmmc.oitools.image.ImageOiOutputParam;
+import fr.jmmc.oitools.meta.KeywordMeta;
+import fr.jmmc.oitools.meta.Types;
+import fr.jmmc.oitools.model.OIFitsFile;
+import fr.jmmc.oitools.model.OIFitsLoader;
+import fr.jmmc.oitools.model.OIFitsWriter;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory-bounded result store: eviction above the memory budget, transparent restore, resident parameters
+ * and lazy results (headers only, loaded on demand).
+ */
+public class ResultStoreTest {
+
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(ResultStoreTest.class.getName());
+
+    private static final File RESULT_FILE = new File("src/test/resources/Bin_Ary--MIRC_H_with_img.fits");
+    private static final KeywordMeta KEYWORD_NOTE = new KeywordMeta("USERNOTE", "User comment", Types.TYPE_CHAR);
+
+    private static final List<ServiceResult> results = new ArrayList<ServiceResult>();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        // 1 MB budget ~ 4 result files:
+        Preferences.getInstance().setPreference(Preferences.RESULTS_MEMORY_BUDGET, Integer.valueOf(1));
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        for (ServiceResult result : results) {
+            ResultStore.getInstance().remove(result);
+        }
+        Preferences.getInstance().setPreference(Preferences.RESULTS_MEMORY_BUDGET, Integer.valueOf(256));
+    }
+
+    private static ServiceResult newResult() throws Exception {
+        final ServiceResult result = new ServiceResult(RESULT_FILE, RESULT_FILE, new File("none.log"));
+        result.loadOIFitsFile();
+        result.setValid(true);
+        results.add(result);
+        return result;
+    }
+
+    @Test
+    public void evictAndRestore() throws Exception {
+        final ResultStore store = ResultStore.getInstance();
+        final long evictions = store.getEvictions();
+
+        for (int i = 0; i < 8; i++) {
+            store.add(newResult());
+        }
+        logger.info("store: {}", store.getStatistics());
+
+        Assert.assertTrue("evictions", store.getEvictions() > evictions);
+        Assert.assertTrue("resident size", store.getResidentSize() <= store.getBudget());
+        Assert.assertNotNull("latest result resident", results.get(results.size() - 1).getResidentOifitsFile());
+
+        for (ServiceResult result : results) {
+            Assert.assertNotNull("metadata resident", result.getOutputParam());
+            Assert.assertNotNull("restored result file", result.getOifitsFile());
+        }
+        logger.info("store: {}", store.getStatistics());
+    }
+
+    @Test
+    public void reloadKeepsParameters() throws Exception {
+        final ServiceResult result = newResult();
+        final ImageOiOutputParam outputParam = result.getOutputParam();
+        if (!outputParam.hasKeywordMeta(KEYWORD_NOTE.getName())) {
+            outputParam.addKeyword(KEYWORD_NOTE);
+        }
+        outputParam.setKeywordValue(KEYWORD_NOTE.getName(), "edited");
+
+        // simulate the reload of a collected result file:
+        result.processReloaded(OIFitsLoader.loadOIFits(RESULT_FILE.getAbsolutePath()));
+
+        Assert.assertNotSame("new parameters", outputParam, result.getOutputParam());
+        Assert.assertEquals("edited value", "edited", result.getOutputParam().getKeywordValue(KEYWORD_NOTE.getName()));
+    }
+
+    @Test
+    public void lazyHeaders() throws Exception {
+        final ServiceResult result = new ServiceResult(RESULT_FILE, RESULT_FILE, new File("none.log"));
+        result.loadOIFitsHeaders();
+        result.setValid(true);
+        results.add(result);
+
+        Assert.assertFalse("headers only", result.isOifitsFileLoaded());
+
+        final OIFitsFile full = OIFitsLoader.loadOIFits(RESULT_FILE.getAbsolutePath());
+        checkKeywords(full.getImageOiData().getInputParam(), result.getInputParam());
+        checkKeywords(full.getImageOiData().getOutputParam(), result.getOutputParam());
+
+        final long loads = ResultStore.getInstance().getLoads();
+        ResultStore.getInstance().add(result);
+        Assert.assertNotNull("loaded on demand", result.getOifitsFile());
+        Assert.assertTrue("loaded", result.isOifitsFileLoaded());
+        Assert.assertEquals("loads", loads + 1L, ResultStore.getInstance().getLoads());
+    }
+
+    @Test
+    public void lazyHeadersSoftwareKeywords() throws Exception {
+        // result file with software-specific keywords:
+        final OIFitsFile source = OIFitsLoader.loadOIFits(RESULT_FILE.getAbsolutePath());
+        final ImageOiOutputParam outputParam = source.getImageOiData().getOutputParam();
+        outputParam.getHeaderCards().add(new FitsHeaderCard("SW_INT", "42", "integer value"));
+        outputParam.getHeaderCards().add(new FitsHeaderCard("SW_BIG", "12345678901", "long value"));
+        outputParam.getHeaderCards().add(new FitsHeaderCard("SW_DBL", "1.5E-3", "double value"));
+        outputParam.getHeaderCards().add(new FitsHeaderCard("SW_LOG", "T", "logical value"));
+        outputParam.getHeaderCards().add(new FitsHeaderCard("SW_STR", "it's 12", "string value"));
+        // long string (CONTINUE cards):
+        final StringBuilder sb = new StringBuilder(200);
+        for (int i = 0; i < 20; i++) {
+            sb.append("value-").append(i).append(' ');
+        }
+        outputParam.getHeaderCards().add(new FitsHeaderCard("SW_LONG", sb.toString().trim(), "long string value"));
+
+        final File file = File.createTempFile("headers-", ServiceResult.FITS_FILE_EXT);
+        try {
+            OIFitsWriter.writeOIFits(file.getAbsolutePath(), source);
+
+            final OIFitsFile full = OIFitsLoader.loadOIFits(file.getAbsolutePath());
+            Assert.assertNotNull("software keyword", full.getImageOiData().getOutputParam().findFirstHeaderCard("SW_INT"));
+
+            final OIFitsFile headers = ResultHeaders.read(file);
+            checkKeywords(full.getImageOiData().getInputParam(), headers.getImageOiData().getInputParam());
+            checkKeywords(full.getImageOiData().getOutputParam(), headers.getImageOiData().getOutputParam());
+
+            // file released once read:
+            Assert.assertTrue("deleted", file.delete());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void checkKeywords(final FitsTable expected, final FitsTable actual) {
+        for (KeywordMeta keyword : expected.getKeywordsDesc().values()) {
+            final Object value = expected.getKeywordValue(keyword.getName());
+            if (value != null) {
+                Assert.assertEquals(keyword.getName(), String.valueOf(value).trim(),
+                        String.valueOf(actual.getKeywordValue(keyword.getName())).trim());
+            }
+        }
+        if (expected.hasHeaderCards()) {
+            for (FitsHeaderCard card : expected.getHeaderCards()) {
+                if (!FitsUtils.isStandardKeyword(card.getKey())) {
+                    final FitsHeaderCard actualCard = actual.findFirstHeaderCard(card.getKey());
+                    Assert.assertNotNull(card.getKey(), actualCard);
+                    // same value and type (results table columns):
+                    Assert.assertEquals(card.getKey(), card.parseValue(), actualCard.parseValue());
+                }
+            }
+        }
+    }
+}
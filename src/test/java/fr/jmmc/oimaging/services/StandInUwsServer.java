@@ -0,0 +1,801 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.namespace.QName;
+import net.ivoa.xml.uws.v1.ErrorSummary;
+import net.ivoa.xml.uws.v1.ErrorType;
+import net.ivoa.xml.uws.v1.ExecutionPhase;
+import net.ivoa.xml.uws.v1.JobSummary;
+import net.ivoa.xml.uws.v1.Jobs;
+import net.ivoa.xml.uws.v1.ObjectFactory;
+import net.ivoa.xml.uws.v1.ResultReference;
+import net.ivoa.xml.uws.v1.Results;
+import net.ivoa.xml.uws.v1.ShortJobDescription;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.restlet.Application;
+import org.restlet.Component;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.ext.fileupload.RestletFileUpload;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.representation.StringRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-JVM stand-in of the OImaging-uws server implementing the UWS job endpoints used by ClientUWS
+ * (job creation, phase, blocking and bulk queries, results, abort, deletion, continuation and OIData blobs)
+ * with a fake solver, optional latency and error injection. Used by tests and benchmarks (no network nor external service).
+ * Run main() to serve http://127.0.0.1:8080/OImaging-uws/ for -DRemoteExecutionMode.local=true
+ */
+public final class StandInUwsServer {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(StandInUwsServer.class.getName());
+
+    /** UWS v1 namespace */
+    private static final String UWS_NS = "http://www.ivoa.net/xml/UWS/v1.0";
+    /** application path */
+    private static final String ROOT_PATH = "/OImaging-uws";
+    /** job list path */
+    private static final String JOBS_PATH = ROOT_PATH + '/' + RemoteExecutionMode.SERVICE_PATH;
+    /** OIData blob path */
+    private static final String BLOBS_PATH = ROOT_PATH + "/blobs/";
+    /** max WAIT duration (s) */
+    private static final int MAX_WAIT = 60;
+    /** side of the image added by the IMAGE solver */
+    private static final int IMAGE_SIZE = 32;
+    /** FITS block size */
+    private static final int FITS_BLOCK = 2880;
+
+    /**
+     * Fake solver behaviour
+     */
+    public enum Solver {
+        /** sleep then return the input file unchanged */
+        SLEEP,
+        /** sleep then return the input file with an additional image HDU */
+        IMAGE;
+    }
+
+    /* members */
+    /** requested port (0 means any free port) */
+    private final int port;
+    /** restlet component (running) */
+    private Component component = null;
+    /** actual port */
+    private int actualPort = -1;
+    /** jobs keyed by identifier */
+    private final Map<String, StandInJob> jobs = new ConcurrentHashMap<String, StandInJob>();
+    /** job identifier sequence */
+    private final AtomicLong sequence = new AtomicLong(0L);
+    /** fake solver executor */
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4, ServiceExecutors.newThreadFactory("StandInUwsServer-solver"));
+    /** JAXB context to marshal UWS v1 elements */
+    private final JAXBContext jaxbContext;
+    /** working directory */
+    private final File workDir;
+    /** number of handled requests */
+    private final AtomicLong requests = new AtomicLong(0L);
+    /** number of injected errors */
+    private final AtomicLong injectedErrors = new AtomicLong(0L);
+    /** number of continued jobs */
+    private final AtomicLong continuations = new AtomicLong(0L);
+    /** number of uploaded OIData blobs */
+    private final AtomicLong blobUploads = new AtomicLong(0L);
+    /** number of jobs created from a stored OIData blob */
+    private final AtomicLong blobJobs = new AtomicLong(0L);
+    /** OIData blob directory */
+    private final File blobDir;
+    /* settings */
+    /** fake solver */
+    private volatile Solver solver = Solver.IMAGE;
+    /** fake solver duration (ms) */
+    private volatile long solverDuration = 200L;
+    /** latency (ms) added to every request */
+    private volatile long latency = 0L;
+    /** probability of a request failing with 503 */
+    private volatile double errorRate = 0.0;
+    /** probability of a job ending in ERROR */
+    private volatile double failureRate = 0.0;
+    /** true to support UWS 1.1 blocking and filtered queries (WAIT, PHASE, AFTER) */
+    private volatile boolean uws11 = true;
+
+    /**
+     * Create a stand-in server
+     * @param port port to listen on (0 means any free port)
+     * @throws IOException if the working directory can not be created
+     * @throws JAXBException if the JAXB context can not be created
+     */
+    public StandInUwsServer(final int port) throws IOException, JAXBException {
+        this.port = port;
+        this.jaxbContext = JAXBContext.newInstance("net.ivoa.xml.uws.v1");
+        this.workDir = Files.createTempDirectory("standin-uws").toFile();
+        this.blobDir = new File(workDir, "blobs");
+        this.blobDir.mkdir();
+    }
+
+    /**
+     * Start listening on 127.0.0.1
+     * @return server url (home page)
+     * @throws Exception if the server can not start
+     */
+    public synchronized String start() throws Exception {
+        if (component == null) {
+            component = new Component();
+            final Server server = component.getServers().add(Protocol.HTTP, "127.0.0.1", port);
+            server.getContext().getParameters().add("maxThreads", "128");
+            component.getDefaultHost().attach(ROOT_PATH, new Application() {
+                @Override
+                public Restlet createInboundRoot() {
+                    return new Restlet(getContext()) {
+                        @Override
+                        public void handle(final Request request, final Response response) {
+                            StandInUwsServer.this.handle(request, response);
+                        }
+                    };
+                }
+            });
+            component.start();
+            actualPort = server.getActualPort();
+            logger.info("Stand-in UWS server started: {}", getUrl());
+        }
+        return getUrl();
+    }
+
+    /**
+     * Stop the server and discard all jobs
+     * @throws Exception if the server can not stop
+     */
+    public synchronized void stop() throws Exception {
+        if (component != null) {
+            component.stop();
+            component = null;
+        }
+        executor.shutdownNow();
+        for (StandInJob job : jobs.values()) {
+            job.delete();
+        }
+        jobs.clear();
+        final File[] blobs = blobDir.listFiles();
+        if (blobs != null) {
+            for (File blob : blobs) {
+                blob.delete();
+            }
+        }
+        blobDir.delete();
+        workDir.delete();
+    }
+
+    /**
+     * @return server url (home page) as expected by ClientUWS
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + actualPort + ROOT_PATH + '/';
+    }
+
+    public void setSolver(final Solver solver) {
+        this.solver = solver;
+    }
+
+    public void setSolverDuration(final long solverDuration) {
+        this.solverDuration = solverDuration;
+    }
+
+    public void setLatency(final long latency) {
+        this.latency = latency;
+    }
+
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setFailureRate(final double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void setUws11(final boolean uws11) {
+        this.uws11 = uws11;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getContinuations() {
+        return continuations.get();
+    }
+
+    public long getBlobUploads() {
+        return blobUploads.get();
+    }
+
+    public long getBlobJobs() {
+        return blobJobs.get();
+    }
+
+    /**
+     * @return number of jobs not deleted
+     */
+    public int getJobCount() {
+        return jobs.size();
+    }
+
+    private void handle(final Request request, final Response response) {
+        requests.incrementAndGet();
+        try {
+            if (latency > 0L) {
+                Thread.sleep(latency);
+            }
+            if ((errorRate > 0.0) && (ThreadLocalRandom.current().nextDouble() < errorRate)) {
+                injectedErrors.incrementAndGet();
+                response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "injected error");
+                return;
+            }
+            final String path = request.getResourceRef().getPath();
+            if (path.equals(ROOT_PATH) || path.equals(ROOT_PATH + '/')) {
+                response.setEntity(new StringRepresentation("OImaging-uws stand-in server", MediaType.TEXT_PLAIN));
+            } else if (path.startsWith(BLOBS_PATH)) {
+                handleBlob(path.substring(BLOBS_PATH.length()), request, response);
+            } else if (path.startsWith(JOBS_PATH)) {
+                final String[] segments = path.substring(JOBS_PATH.length()).replaceFirst("^/", "").split("/");
+                if (segments[0].isEmpty()) {
+                    handleJobs(request, response);
+                } else {
+                    final StandInJob job = jobs.get(segments[0]);
+                    if (job == null) {
+                        response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+                    } else {
+                        handleJob(job, Arrays.copyOfRange(segments, 1, segments.length), request, response);
+                    }
+                }
+            } else {
+                response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+        } catch (IOException | JAXBException | FileUploadException | RuntimeException e) {
+            logger.warn("handle: failure on {} {}", request.getMethod(), request.getResourceRef(), e);
+            response.setStatus(Status.SERVER_ERROR_INTERNAL, e.getMessage());
+        }
+    }
+
+    private void handleJobs(final Request request, final Response response)
+            throws IOException, JAXBException, FileUploadException {
+        if (Method.POST.equals(request.getMethod())) {
+            final StandInJob job = createJob(request);
+            if (job == null) {
+                response.setStatus(Status.CLIENT_ERROR_NOT_FOUND, "Unknown job to continue or OIData blob");
+                return;
+            }
+            response.redirectSeeOther(jobUrl(request, job));
+        } else if (Method.GET.equals(request.getMethod())) {
+            final Form query = request.getResourceRef().getQueryAsForm();
+            final Set<String> phases = new HashSet<String>(Arrays.asList(query.getValuesArray("PHASE")));
+            final String after = query.getFirstValue("AFTER");
+            final long afterTime = (uws11 && (after != null)) ? DatatypeConverter.parseDateTime(after).getTimeInMillis() : Long.MIN_VALUE;
+
+            final Jobs list = new Jobs();
+            for (StandInJob job : jobs.values()) {
+                final ExecutionPhase phase = job.getPhase();
+                if (uws11 && ((!phases.isEmpty() && !phases.contains(phase.value())) || (job.creationTime <= afterTime))) {
+                    continue;
+                }
+                final ShortJobDescription desc = new ShortJobDescription();
+                desc.setId(job.id);
+                desc.setPhase(phase);
+                desc.setHref(jobUrl(request, job));
+                list.getJobref().add(desc);
+            }
+            response.setEntity(marshal(list));
+        } else {
+            response.setStatus(Status.CLIENT_ERROR_METHOD_NOT_ALLOWED);
+        }
+    }
+
+    private void handleJob(final StandInJob job, final String[] segments, final Request request, final Response response)
+            throws JAXBException, InterruptedException {
+        final Method method = request.getMethod();
+        final String resource = (segments.length != 0) ? segments[0] : "";
+
+        if (resource.isEmpty()) {
+            if (Method.DELETE.equals(method)) {
+                jobs.remove(job.id);
+                job.delete();
+                response.redirectSeeOther(request.getResourceRef().getParentRef().toString());
+            } else {
+                final Form query = request.getResourceRef().getQueryAsForm();
+                final String wait = query.getFirstValue("WAIT");
+                final String phase = query.getFirstValue("PHASE");
+                if (uws11 && (wait != null)) {
+                    job.awaitChange((phase != null) ? ExecutionPhase.fromValue(phase) : job.getPhase(),
+                            TimeUnit.SECONDS.toMillis(Math.min(Integer.parseInt(wait), MAX_WAIT)));
+                }
+                response.setEntity(marshal(new ObjectFactory().createJob(job.toSummary(request))));
+            }
+        } else if ("phase".equals(resource)) {
+            if (Method.POST.equals(method)) {
+                final String phase = new Form(request.getEntity()).getFirstValue("PHASE");
+                if ("RUN".equalsIgnoreCase(phase)) {
+                    job.run();
+                } else if ("ABORT".equalsIgnoreCase(phase)) {
+                    job.abort();
+                }
+                response.redirectSeeOther(jobUrl(request, job));
+            } else {
+                response.setEntity(new StringRepresentation(job.getPhase().value(), MediaType.TEXT_PLAIN));
+            }
+        } else if ("results".equals(resource)) {
+            if (segments.length == 1) {
+                response.setEntity(marshal(job.toResults(request)));
+            } else {
+                final File file = ("outputfile".equals(segments[1])) ? job.output : ("logfile".equals(segments[1])) ? job.log : null;
+                if ((file == null) || !file.exists()) {
+                    response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+                } else {
+                    response.setEntity(new FileRepresentation(file, MediaType.APPLICATION_OCTET_STREAM));
+                }
+            }
+        } else if ("error".equals(resource)) {
+            final ErrorSummary error = job.toErrorSummary();
+            if (error == null) {
+                response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            } else {
+                response.setEntity(marshal(new JAXBElement<ErrorSummary>(new QName(UWS_NS, "errorSummary"), ErrorSummary.class, error)));
+            }
+        } else if ("destruction".equals(resource)) {
+            if (Method.POST.equals(method)) {
+                response.redirectSeeOther(jobUrl(request, job));
+            } else {
+                response.setEntity(new StringRepresentation("", MediaType.TEXT_PLAIN));
+            }
+        } else {
+            response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+        }
+    }
+
+    private void handleBlob(final String hash, final Request request, final Response response) throws IOException {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            response.setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid blob hash");
+            return;
+        }
+        final File blob = new File(blobDir, hash);
+        final Method method = request.getMethod();
+
+        if (Method.HEAD.equals(method) || Method.GET.equals(method)) {
+            if (!blob.isFile()) {
+                response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            } else if (Method.GET.equals(method)) {
+                response.setEntity(new FileRepresentation(blob, MediaType.APPLICATION_OCTET_STREAM));
+            }
+        } else if (Method.PUT.equals(method)) {
+            // store then check the content hash:
+            final File tmp = new File(blobDir, hash + ".part" + sequence.incrementAndGet());
+            final MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new IllegalStateException("SHA-256 not supported", nsae);
+            }
+            final InputStream in = new DigestInputStream(request.getEntity().getStream(), md);
+            try {
+                Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                in.close();
+            }
+            if (!hash.equals(DatatypeConverter.printHexBinary(md.digest()).toLowerCase())) {
+                tmp.delete();
+                response.setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Blob hash mismatch");
+                return;
+            }
+            Files.move(tmp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            blobUploads.incrementAndGet();
+            response.setStatus(Status.SUCCESS_CREATED);
+        } else {
+            response.setStatus(Status.CLIENT_ERROR_METHOD_NOT_ALLOWED);
+        }
+    }
+
+    private StandInJob createJob(final Request request) throws IOException, FileUploadException {
+        final StandInJob job = new StandInJob(Long.toString(sequence.incrementAndGet()));
+
+        boolean gzip = false;
+        boolean run = false;
+        String continueJob = null;
+        String changedKeywords = null;
+        String blobHash = null;
+        int blobIndex = 0;
+        File upload = null;
+        final List<FileItem> items = new RestletFileUpload(new DiskFileItemFactory()).parseRepresentation(request.getEntity());
+        for (FileItem item : items) {
+            if (item.isFormField()) {
+                if ("inputfileEncoding".equals(item.getFieldName())) {
+                    gzip = "gzip".equalsIgnoreCase(item.getString());
+                } else if ("PHASE".equals(item.getFieldName())) {
+                    run = "RUN".equalsIgnoreCase(item.getString());
+                } else if ("continueJob".equals(item.getFieldName())) {
+                    continueJob = item.getString();
+                } else if ("changedKeywords".equals(item.getFieldName())) {
+                    changedKeywords = item.getString();
+                } else if ("oidataBlob".equals(item.getFieldName())) {
+                    blobHash = item.getString();
+                } else if ("oidataBlobIndex".equals(item.getFieldName())) {
+                    blobIndex = Integer.parseInt(item.getString());
+                }
+            } else if ("inputfile".equals(item.getFieldName())) {
+                upload = new File(workDir, job.id + ".upload");
+                try {
+                    item.write(upload);
+                } catch (Exception e) {
+                    throw new IOException("Can't store the uploaded file", e);
+                }
+            }
+            item.delete();
+        }
+        if (continueJob != null) {
+            // continuation: reuse the previous job input (the delta file is not merged by this stand-in)
+            final StandInJob previous = jobs.get(continueJob);
+            if ((previous == null) || !previous.input.isFile()) {
+                if (upload != null) {
+                    upload.delete();
+                }
+                return null;
+            }
+            copy(previous.input, job.input, false);
+            appendLog(job.log, "continue job " + continueJob + " (changed keywords: " + changedKeywords + ")");
+            continuations.incrementAndGet();
+            if (upload != null) {
+                upload.delete();
+            }
+        } else if (blobHash != null) {
+            // deduplicated upload: insert the stored OIData blob into the parameter file
+            final File blob = new File(blobDir, blobHash);
+            if ((upload == null) || !blob.isFile()) {
+                if (upload != null) {
+                    upload.delete();
+                }
+                return null;
+            }
+            final File params = new File(workDir, job.id + ".params");
+            copy(upload, params, gzip);
+            upload.delete();
+            insertBlob(params, blob, blobIndex, job.input);
+            params.delete();
+            blobJobs.incrementAndGet();
+        } else if (upload != null) {
+            copy(upload, job.input, gzip);
+            upload.delete();
+        }
+        jobs.put(job.id, job);
+        if (run) {
+            job.run();
+        }
+        return job;
+    }
+
+    private StringRepresentation marshal(final Object element) throws JAXBException {
+        final Marshaller marshaller = jaxbContext.createMarshaller();
+        final StringWriter sw = new StringWriter(1024);
+        marshaller.marshal(element, sw);
+        return new StringRepresentation(sw.toString(), MediaType.TEXT_XML);
+    }
+
+    private static String jobUrl(final Request request, final StandInJob job) {
+        return request.getHostRef().toString() + JOBS_PATH + '/' + job.id;
+    }
+
+    private static void copy(final File from, final File to, final boolean gunzip) throws IOException {
+        final InputStream in = (gunzip) ? new GZIPInputStream(Files.newInputStream(from.toPath())) : Files.newInputStream(from.toPath());
+        try {
+            Files.copy(in, to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the parameter file with the OIData blob inserted before its HDU at the given index
+     * @param params parameter file (FITS)
+     * @param blob OIData blob (OI_* HDUs)
+     * @param index parameter HDU index before which the blob is inserted
+     * @param to file to write
+     * @throws IOException if a file can not be read or written
+     */
+    private static void insertBlob(final File params, final File blob, final int index, final File to) throws IOException {
+        final List<OIDataBlob.Hdu> hdus = OIDataBlob.readHdus(params);
+        final long split = (index < hdus.size()) ? hdus.get(index).offset : params.length();
+
+        final OutputStream out = Files.newOutputStream(to.toPath());
+        try {
+            final InputStream in = Files.newInputStream(params.toPath());
+            try {
+                final byte[] buffer = new byte[FITS_BLOCK];
+                for (long remaining = split; remaining > 0L; remaining -= FITS_BLOCK) {
+                    // HDUs are FITS block aligned:
+                    readFully(in, buffer);
+                    out.write(buffer);
+                }
+                Files.copy(blob.toPath(), out);
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void readFully(final InputStream in, final byte[] buffer) throws IOException {
+        for (int off = 0, n; off < buffer.length; off += n) {
+            n = in.read(buffer, off, buffer.length - off);
+            if (n == -1) {
+                throw new IOException("Truncated FITS file");
+            }
+        }
+    }
+
+    /**
+     * Append a float image extension (gradient) to the given FITS file
+     * @param file FITS file
+     * @throws IOException if the file can not be written
+     */
+    private static void appendImageHDU(final File file) throws IOException {
+        final StringBuilder header = new StringBuilder(FITS_BLOCK);
+        card(header, "XTENSION= 'IMAGE   '");
+        card(header, "BITPIX  =                  -32");
+        card(header, "NAXIS   =                    2");
+        card(header, String.format("NAXIS1  = %20d", IMAGE_SIZE));
+        card(header, String.format("NAXIS2  = %20d", IMAGE_SIZE));
+        card(header, "PCOUNT  =                    0");
+        card(header, "GCOUNT  =                    1");
+        card(header, "HDUNAME = 'STANDIN '");
+        card(header, "END");
+        while (header.length() % FITS_BLOCK != 0) {
+            header.append(' ');
+        }
+        final int dataSize = IMAGE_SIZE * IMAGE_SIZE * 4;
+        final byte[] data = new byte[((dataSize + FITS_BLOCK - 1) / FITS_BLOCK) * FITS_BLOCK];
+        for (int i = 0, n = IMAGE_SIZE * IMAGE_SIZE; i < n; i++) {
+            final int bits = Float.floatToIntBits((float) i / n);
+            data[4 * i] = (byte) (bits >>> 24);
+            data[4 * i + 1] = (byte) (bits >>> 16);
+            data[4 * i + 2] = (byte) (bits >>> 8);
+            data[4 * i + 3] = (byte) bits;
+        }
+        final OutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(header.toString().getBytes(StandardCharsets.US_ASCII));
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void card(final StringBuilder header, final String card) {
+        header.append(card);
+        for (int i = card.length(); i < 80; i++) {
+            header.append(' ');
+        }
+    }
+
+    private static void appendLog(final File log, final String line) {
+        try {
+            Files.write(log.toPath(), (new Date() + " " + line + '\n').getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ioe) {
+            logger.debug("appendLog: failure", ioe);
+        }
+    }
+
+    /**
+     * Stand-in job (phase guarded by this)
+     */
+    private final class StandInJob {
+
+        /** job identifier */
+        final String id;
+        /** creation time (ms) */
+        final long creationTime = System.currentTimeMillis();
+        /** input file */
+        final File input;
+        /** output file */
+        final File output;
+        /** log file */
+        final File log;
+        /** phase */
+        private ExecutionPhase phase = ExecutionPhase.PENDING;
+        /** error message */
+        private String error = null;
+        /** solver task */
+        private ScheduledFuture<?> task = null;
+
+        StandInJob(final String id) {
+            this.id = id;
+            this.input = new File(workDir, id + "-input.fits");
+            this.output = new File(workDir, id + "-output.fits");
+            this.log = new File(workDir, id + "-log.txt");
+        }
+
+        synchronized ExecutionPhase getPhase() {
+            return phase;
+        }
+
+        private synchronized void setPhase(final ExecutionPhase phase) {
+            this.phase = phase;
+            notifyAll();
+        }
+
+        synchronized ExecutionPhase awaitChange(final ExecutionPhase known, final long timeout) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while ((phase == known) && (remaining > 0L)) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return phase;
+        }
+
+        synchronized void run() {
+            if (phase != ExecutionPhase.PENDING) {
+                return;
+            }
+            setPhase(ExecutionPhase.EXECUTING);
+            appendLog(log, "start " + solver + " solver (" + solverDuration + " ms)");
+            task = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            }, solverDuration, TimeUnit.MILLISECONDS);
+        }
+
+        private void finish() {
+            String message = null;
+            if ((failureRate > 0.0) && (ThreadLocalRandom.current().nextDouble() < failureRate)) {
+                message = "injected failure";
+            } else {
+                try {
+                    copy(input, output, false);
+                    if (solver == Solver.IMAGE) {
+                        appendImageHDU(output);
+                    }
+                } catch (IOException ioe) {
+                    message = ioe.getMessage();
+                }
+            }
+            appendLog(log, (message == null) ? "done" : "error: " + message);
+            synchronized (this) {
+                if (phase == ExecutionPhase.EXECUTING) {
+                    error = message;
+                    setPhase((message == null) ? ExecutionPhase.COMPLETED : ExecutionPhase.ERROR);
+                }
+            }
+        }
+
+        synchronized void abort() {
+            if (task != null) {
+                task.cancel(false);
+            }
+            if ((phase == ExecutionPhase.PENDING) || (phase == ExecutionPhase.EXECUTING)) {
+                setPhase(ExecutionPhase.ABORTED);
+            }
+        }
+
+        void delete() {
+            abort();
+            input.delete();
+            output.delete();
+            log.delete();
+        }
+
+        synchronized JobSummary toSummary(final Request request) {
+            final JobSummary summary = new JobSummary();
+            summary.setJobId(id);
+            summary.setOwnerId("anonymous");
+            summary.setPhase(phase);
+            summary.setResults(toResults(request));
+            summary.setErrorSummary(toErrorSummary());
+            try {
+                final GregorianCalendar cal = new GregorianCalendar();
+                cal.setTimeInMillis(creationTime);
+                summary.setStartTime(DatatypeFactory.newInstance().newXMLGregorianCalendar(cal));
+            } catch (DatatypeConfigurationException dce) {
+                logger.debug("toSummary: failure", dce);
+            }
+            return summary;
+        }
+
+        synchronized Results toResults(final Request request) {
+            final Results results = new Results();
+            results.getResult().add(toResult(request, "logfile"));
+            if (phase == ExecutionPhase.COMPLETED) {
+                results.getResult().add(toResult(request, "outputfile"));
+            }
+            return results;
+        }
+
+        private ResultReference toResult(final Request request, final String name) {
+            final ResultReference ref = new ResultReference();
+            ref.setId(name);
+            ref.setHref(jobUrl(request, this) + "/results/" + name);
+            return ref;
+        }
+
+        synchronized ErrorSummary toErrorSummary() {
+            if (error == null) {
+                return null;
+            }
+            final ErrorSummary summary = new ErrorSummary();
+            summary.setMessage(error);
+            summary.setType(ErrorType.FATAL);
+            return summary;
+        }
+    }
+
+    /**
+     * Serve the stand-in server on the given port (8080 by default) until killed
+     * @param args [port] [solver duration in ms]
+     * @throws Exception if the server can not start
+     */
+    public static void main(final String[] args) throws Exception {
+        final StandInUwsServer server = new StandInUwsServer((args.length > 0) ? Integer.parseInt(args[0]) : 8080);
+        if (args.length > 1) {
+            server.setSolverDuration(Long.parseLong(args[1]));
+        }
+        server.start();
+    }
+}
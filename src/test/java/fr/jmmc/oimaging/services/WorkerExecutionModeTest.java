@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.oimaging.services;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Run jobs on several worker agents started on localhost (fake solver copying its input)
+ */
+public class WorkerExecutionModeTest {
+
+    private static final File INPUT_FILE = new File("src/test/resources/Bin_Ary--MIRC_H_with_img.fits");
+
+    private static final int[] CAPACITIES = {1, 2, 3};
+
+    private static final String TOKEN = "test-token";
+
+    private static final List<WorkerAgent> agents = new ArrayList<WorkerAgent>();
+
+    private static WorkerExecutionMode mode = null;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        final List<String> hosts = new ArrayList<String>();
+        for (int capacity : CAPACITIES) {
+            final WorkerAgent agent = new WorkerAgent(null, 0, capacity, TOKEN, new CopyExecutionMode(200L));
+            agent.start();
+            agents.add(agent);
+            hosts.add("127.0.0.1:" + agent.getPort());
+        }
+        mode = new WorkerExecutionMode(hosts, TOKEN);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        mode.close();
+        for (WorkerAgent agent : agents) {
+            agent.stop();
+        }
+    }
+
+    @Test
+    public void runJobs() throws Exception {
+        final int nJobs = 24;
+        final List<CompletableFuture<ServiceResult>> futures = new ArrayList<CompletableFuture<ServiceResult>>(nJobs);
+        for (int i = 0; i < nJobs; i++) {
+            futures.add(mode.reconstructsImageAsync(ServiceList.CMD_WISARD, "-iter=" + i, INPUT_FILE, null));
+        }
+        for (CompletableFuture<ServiceResult> future : futures) {
+            final ServiceResult result = future.get(60, TimeUnit.SECONDS);
+            Assert.assertNull(result.getErrorMessage());
+            Assert.assertFalse(result.isCancelled());
+            Assert.assertEquals(INPUT_FILE.length(), result.getOifitsResultFile().length());
+            Assert.assertTrue(new String(Files.readAllBytes(result.getExecutionLogResultFile().toPath()),
+                    StandardCharsets.UTF_8).contains(ServiceList.CMD_WISARD));
+            result.getOifitsResultFile().delete();
+            result.getExecutionLogResultFile().delete();
+        }
+        long total = 0L;
+        for (WorkerPool.WorkerNode node : mode.getPool().getNodes()) {
+            Assert.assertTrue("idle node " + node, node.completed.get() > 0L);
+            total += node.completed.get();
+        }
+        Assert.assertEquals(nJobs, total);
+    }
+
+    @Test
+    public void cancelJob() throws Exception {
+        final CompletableFuture<ServiceResult> future = mode.reconstructsImageAsync(ServiceList.CMD_WISARD, "-sleep", INPUT_FILE, null);
+        // let the job start:
+        Thread.sleep(100L);
+        future.cancel(true);
+
+        // agents release the slot once the job is aborted:
+        for (int i = 0; i < 50; i++) {
+            int running = 0;
+            for (WorkerAgent agent : agents) {
+                running += agent.getRunningJobs();
+            }
+            if (running == 0) {
+                return;
+            }
+            Thread.sleep(100L);
+        }
+        Assert.fail("job still running on a worker agent");
+    }
+
+    @Test
+    public void rejectRequests() throws Exception {
+        final WorkerAgent agent = agents.get(0);
+
+        // wrong token:
+        Assert.assertEquals("Unauthorized", request(agent, WorkerProtocol.REQ_HELLO, "other", null));
+        // not a solver command:
+        Assert.assertEquals("Unsupported software: /bin/sh", request(agent, WorkerProtocol.REQ_RUN, TOKEN, "/bin/sh"));
+        Assert.assertEquals("no job started", 0, agent.getRunningJobs());
+    }
+
+    /**
+     * Send a request and return the error message
+     */
+    private static String request(final WorkerAgent agent, final byte type, final String token, final String software) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), agent.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            WorkerProtocol.writeHeader(out, type, token);
+            if (type == WorkerProtocol.REQ_RUN) {
+                WorkerProtocol.writeString(out, software);
+                WorkerProtocol.writeString(out, null);
+                // no input sent: rejected before
+            }
+            out.flush();
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            Assert.assertEquals("error reply", WorkerProtocol.REP_ERROR, in.readByte());
+            return WorkerProtocol.readString(in);
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Fake execution mode copying the input file after a delay (10 s if cliOptions is '-sleep')
+     */
+    private static final class CopyExecutionMode implements OImagingExecutionMode {
+
+        private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        private final long delay;
+
+        CopyExecutionMode(final long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public ServiceResult reconstructsImage(final String software, final String cliOptions, final File inputFile) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<ServiceResult> reconstructsImageAsync(final String software, final String cliOptions, final File inputFile,
+                                                                       final ServiceProgressListener listener) {
+            final CompletableFuture<ServiceResult> future = new CompletableFuture<>();
+            final ServiceResult result;
+            try {
+                result = new ServiceResult(inputFile, File.createTempFile("fake-", ".output.fits"), File.createTempFile("fake-", ".log"));
+                Files.write(result.getExecutionLogResultFile().toPath(), (software + " " + cliOptions + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ioe) {
+                future.completeExceptionally(ioe);
+                return future;
+            }
+            ServiceProgressListener.fire(listener, result, ServicePhase.EXECUTING);
+            future.whenComplete((r, th) -> result.setTerminated());
+
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Files.copy(inputFile.toPath(), result.getOifitsResultFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        future.complete(result);
+                    } catch (IOException ioe) {
+                        future.completeExceptionally(ioe);
+                    }
+                }
+            }, ("-sleep".equals(cliOptions)) ? 10000L : delay, TimeUnit.MILLISECONDS);
+            return future;
+        }
+
+        @Override
+        public int getMaxConcurrentJobs() {
+            return 1;
+        }
+
+        @Override
+        public ExecutionLogTail openExecutionLog(final ServiceResult result) {
+            return ExecutionLogTail.forFile(result.getExecutionLogResultFile());
+        }
+    }
+}